@@ -0,0 +1,411 @@
+package com.edexui.android;
+
+/**
+ * VT100/ANSI escape sequence parser for the Edex-UI terminal
+ * A char-at-a-time state machine in the style of the DEC parser: text and
+ * control sequences are applied to a ScreenGrid as they arrive, so sequences
+ * split across reads are handled without buffering. Has no Android
+ * dependencies and allocates nothing per char.
+ */
+public class AnsiParser {
+
+    private static final int STATE_GROUND = 0;
+    private static final int STATE_ESCAPE = 1;
+    private static final int STATE_ESCAPE_SKIP = 2;
+    private static final int STATE_CSI = 3;
+    private static final int STATE_OSC = 4;
+    private static final int STATE_OSC_ESCAPE = 5;
+
+    private static final int MAX_PARAMS = 16;
+    private static final int MAX_PARAM_VALUE = 9999;
+
+    private final ScreenGrid screen;
+    private final int[] params = new int[MAX_PARAMS];
+    private int paramCount;
+    private boolean paramStarted;
+    private char privateMarker;
+    private int state = STATE_GROUND;
+
+    public AnsiParser(ScreenGrid screen) {
+        this.screen = screen;
+    }
+
+    public void feed(CharSequence text) {
+        for (int i = 0, n = text.length(); i < n; i++) {
+            process(text.charAt(i), null);
+        }
+    }
+
+    public void feed(char[] text, int offset, int length) {
+        for (int i = offset, end = offset + length; i < end; i++) {
+            process(text[i], null);
+        }
+    }
+
+    /**
+     * Feed text and also collect its printable content, with escape
+     * sequences stripped, for plain-text consumers such as logs
+     */
+    public void feed(CharSequence text, StringBuilder plain) {
+        for (int i = 0, n = text.length(); i < n; i++) {
+            process(text.charAt(i), plain);
+        }
+    }
+
+    public ScreenGrid getScreen() {
+        return screen;
+    }
+
+    private void process(char c, StringBuilder plain) {
+        switch (state) {
+            case STATE_GROUND:
+                if (c >= ' ' && c != 0x7F) {
+                    screen.putChar(c);
+                    if (plain != null) {
+                        plain.append(c);
+                    }
+                } else {
+                    control(c, plain);
+                }
+                break;
+            case STATE_ESCAPE:
+                escape(c);
+                break;
+            case STATE_ESCAPE_SKIP:
+                // Charset designation such as ESC ( B; the charset itself is ignored
+                state = STATE_GROUND;
+                break;
+            case STATE_CSI:
+                csi(c);
+                break;
+            case STATE_OSC:
+                // Window title and similar; consumed until BEL or ST
+                if (c == 0x07) {
+                    state = STATE_GROUND;
+                } else if (c == 0x1B) {
+                    state = STATE_OSC_ESCAPE;
+                }
+                break;
+            case STATE_OSC_ESCAPE:
+                state = c == '\\' ? STATE_GROUND : STATE_OSC;
+                break;
+            default:
+                state = STATE_GROUND;
+                break;
+        }
+    }
+
+    private void control(char c, StringBuilder plain) {
+        switch (c) {
+            case 0x1B:
+                state = STATE_ESCAPE;
+                break;
+            case '\n':
+            case 0x0B:
+            case 0x0C:
+                // Output from pipes has no tty to translate LF into CR LF
+                screen.carriageReturn();
+                screen.lineFeed();
+                if (plain != null) {
+                    plain.append('\n');
+                }
+                break;
+            case '\r':
+                screen.carriageReturn();
+                break;
+            case '\b':
+                screen.backspace();
+                break;
+            case '\t':
+                screen.tab();
+                if (plain != null) {
+                    plain.append('\t');
+                }
+                break;
+            default:
+                // BEL and other controls are ignored
+                break;
+        }
+    }
+
+    private void escape(char c) {
+        state = STATE_GROUND;
+        switch (c) {
+            case '[':
+                paramCount = 0;
+                paramStarted = false;
+                privateMarker = 0;
+                params[0] = 0;
+                state = STATE_CSI;
+                break;
+            case ']':
+                state = STATE_OSC;
+                break;
+            case '(':
+            case ')':
+            case '*':
+            case '+':
+                state = STATE_ESCAPE_SKIP;
+                break;
+            case '7':
+                screen.saveCursor();
+                break;
+            case '8':
+                screen.restoreCursor();
+                break;
+            case 'D':
+                screen.lineFeed();
+                break;
+            case 'E':
+                screen.carriageReturn();
+                screen.lineFeed();
+                break;
+            case 'M':
+                screen.reverseLineFeed();
+                break;
+            case 'c':
+                screen.reset();
+                break;
+            default:
+                // Keypad modes and unsupported sequences
+                break;
+        }
+    }
+
+    private void csi(char c) {
+        if (c >= '0' && c <= '9') {
+            if (!paramStarted) {
+                paramStarted = true;
+                params[paramCount] = 0;
+            }
+            int value = params[paramCount] * 10 + (c - '0');
+            params[paramCount] = Math.min(value, MAX_PARAM_VALUE);
+            return;
+        }
+        if (c == ';' || c == ':') {
+            nextParam();
+            return;
+        }
+        if (c == '?' || c == '>' || c == '=' || c == '!') {
+            privateMarker = c;
+            return;
+        }
+        if (c < 0x40 || c > 0x7E) {
+            if (c == 0x1B) {
+                state = STATE_ESCAPE;
+            } else if (c < ' ') {
+                // Controls are executed even in the middle of a sequence
+                control(c, null);
+            }
+            // Intermediate bytes are ignored
+            return;
+        }
+
+        if (paramStarted) {
+            paramCount++;
+        }
+        state = STATE_GROUND;
+        dispatch(c);
+    }
+
+    private void nextParam() {
+        if (!paramStarted) {
+            params[paramCount] = 0;
+        }
+        if (paramCount < MAX_PARAMS - 1) {
+            paramCount++;
+        }
+        params[paramCount] = 0;
+        paramStarted = true;
+    }
+
+    private void dispatch(char c) {
+        if (privateMarker == '?') {
+            if (c == 'h' || c == 'l') {
+                setPrivateModes(c == 'h');
+            }
+            return;
+        }
+        if (privateMarker != 0) {
+            return;
+        }
+
+        switch (c) {
+            case 'A':
+                screen.moveCursor(-param(0, 1), 0);
+                break;
+            case 'B':
+            case 'e':
+                screen.moveCursor(param(0, 1), 0);
+                break;
+            case 'C':
+            case 'a':
+                screen.moveCursor(0, param(0, 1));
+                break;
+            case 'D':
+                screen.moveCursor(0, -param(0, 1));
+                break;
+            case 'E':
+                screen.moveCursor(param(0, 1), 0);
+                screen.carriageReturn();
+                break;
+            case 'F':
+                screen.moveCursor(-param(0, 1), 0);
+                screen.carriageReturn();
+                break;
+            case 'G':
+            case '`':
+                screen.setCursor(screen.getCursorRow(), param(0, 1) - 1);
+                break;
+            case 'd':
+                screen.setCursor(param(0, 1) - 1, screen.getCursorColumn());
+                break;
+            case 'H':
+            case 'f':
+                screen.setCursor(param(0, 1) - 1, param(1, 1) - 1);
+                break;
+            case 'J':
+                screen.eraseInDisplay(param(0, 0));
+                break;
+            case 'K':
+                screen.eraseInLine(param(0, 0));
+                break;
+            case 'L':
+                screen.insertLines(param(0, 1));
+                break;
+            case 'M':
+                screen.deleteLines(param(0, 1));
+                break;
+            case '@':
+                screen.insertChars(param(0, 1));
+                break;
+            case 'P':
+                screen.deleteChars(param(0, 1));
+                break;
+            case 'X':
+                screen.eraseChars(param(0, 1));
+                break;
+            case 'S':
+                screen.scrollUp(param(0, 1));
+                break;
+            case 'T':
+                screen.scrollDown(param(0, 1));
+                break;
+            case 'r':
+                screen.setScrollRegion(param(0, 1) - 1, param(1, screen.getRows()) - 1);
+                break;
+            case 's':
+                screen.saveCursor();
+                break;
+            case 'u':
+                screen.restoreCursor();
+                break;
+            case 'm':
+                selectGraphicRendition();
+                break;
+            default:
+                // Reports and modes that need a reply channel are ignored
+                break;
+        }
+    }
+
+    private void setPrivateModes(boolean enabled) {
+        for (int i = 0; i < Math.max(1, paramCount); i++) {
+            switch (param(i, 0)) {
+                case 7:
+                    screen.setAutoWrap(enabled);
+                    break;
+                case 25:
+                    screen.setCursorVisible(enabled);
+                    break;
+                case 47:
+                case 1047:
+                case 1049:
+                    screen.setAlternateScreen(enabled);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    private void selectGraphicRendition() {
+        if (paramCount == 0) {
+            screen.resetAttributes();
+            return;
+        }
+        for (int i = 0; i < paramCount; i++) {
+            int code = params[i];
+            if (code == 0) {
+                screen.resetAttributes();
+            } else if (code == 1) {
+                screen.setFlag(ScreenGrid.FLAG_BOLD, true);
+            } else if (code == 4) {
+                screen.setFlag(ScreenGrid.FLAG_UNDERLINE, true);
+            } else if (code == 7) {
+                screen.setFlag(ScreenGrid.FLAG_INVERSE, true);
+            } else if (code == 22) {
+                screen.setFlag(ScreenGrid.FLAG_BOLD, false);
+            } else if (code == 24) {
+                screen.setFlag(ScreenGrid.FLAG_UNDERLINE, false);
+            } else if (code == 27) {
+                screen.setFlag(ScreenGrid.FLAG_INVERSE, false);
+            } else if (code >= 30 && code <= 37) {
+                screen.setForeground(code - 30);
+            } else if (code == 39) {
+                screen.setForeground(ScreenGrid.COLOR_DEFAULT);
+            } else if (code >= 40 && code <= 47) {
+                screen.setBackground(code - 40);
+            } else if (code == 49) {
+                screen.setBackground(ScreenGrid.COLOR_DEFAULT);
+            } else if (code >= 90 && code <= 97) {
+                screen.setForeground(code - 90 + 8);
+            } else if (code >= 100 && code <= 107) {
+                screen.setBackground(code - 100 + 8);
+            } else if (code == 38 || code == 48) {
+                // Extended colors are approximated to the 16-color palette
+                int color = -1;
+                if (i + 2 < paramCount && params[i + 1] == 5) {
+                    color = paletteFrom256(params[i + 2]);
+                    i += 2;
+                } else if (i + 4 < paramCount && params[i + 1] == 2) {
+                    color = paletteFromRgb(params[i + 2], params[i + 3], params[i + 4]);
+                    i += 4;
+                }
+                if (color >= 0) {
+                    if (code == 38) {
+                        screen.setForeground(color);
+                    } else {
+                        screen.setBackground(color);
+                    }
+                }
+            }
+        }
+    }
+
+    private int param(int index, int defaultValue) {
+        if (index >= paramCount || params[index] == 0) {
+            return defaultValue;
+        }
+        return params[index];
+    }
+
+    private static int paletteFrom256(int index) {
+        if (index < 16) {
+            return index;
+        }
+        if (index >= 232) {
+            // Grayscale ramp
+            int level = index - 232;
+            return level < 6 ? 0 : (level < 12 ? 8 : (level < 18 ? 7 : 15));
+        }
+        int cube = index - 16;
+        return paletteFromRgb((cube / 36) * 51, ((cube / 6) % 6) * 51, (cube % 6) * 51);
+    }
+
+    private static int paletteFromRgb(int red, int green, int blue) {
+        int color = (red >= 96 ? 1 : 0) | (green >= 96 ? 2 : 0) | (blue >= 96 ? 4 : 0);
+        int max = Math.max(red, Math.max(green, blue));
+        return max >= 192 ? color + 8 : color;
+    }
+}
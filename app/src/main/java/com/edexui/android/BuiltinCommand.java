@@ -0,0 +1,36 @@
+package com.edexui.android;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * Command run inside the app process by the Edex-UI terminal
+ * Built-ins answer common queries without forking a process
+ */
+public interface BuiltinCommand {
+
+    /**
+     * Name the command is typed as
+     */
+    String getName();
+
+    /**
+     * One-line description for the help text
+     */
+    String getDescription();
+
+    /**
+     * Whether the command implements these arguments. If not, the line is
+     * left to the shell, whose command of the same name handles it.
+     */
+    boolean accepts(List<String> args);
+
+    /**
+     * Run the command. args.get(0) is the command name; in is the command's
+     * standard input, empty when nothing is piped in.
+     * Returns the exit code.
+     */
+    int run(List<String> args, Reader in, Writer out) throws IOException;
+}
@@ -0,0 +1,594 @@
+package com.edexui.android;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Default built-in commands of the Edex-UI terminal
+ */
+public final class BuiltinCommands {
+
+    private BuiltinCommands() {
+    }
+
+    /**
+     * Register every default command for a terminal
+     */
+    public static void registerDefaults(CommandRegistry registry, TerminalEmulator terminal) {
+        registry.register(new HelpCommand(registry));
+        registry.register(new ClearCommand(terminal));
+        registry.register(new EchoCommand());
+        registry.register(new DateCommand());
+        registry.register(new WhoamiCommand());
+        registry.register(new PwdCommand(terminal));
+        registry.register(new CdCommand(terminal));
+        registry.register(new LsCommand(terminal));
+        registry.register(new UnameCommand());
+        registry.register(new HistoryCommand(terminal));
+        registry.register(new SysinfoCommand());
+        registry.register(new FreeCommand());
+        registry.register(new CpuCommand());
+        registry.register(new LocateCommand());
+        registry.register(new DuCommand(terminal));
+    }
+
+    /**
+     * Base for commands with a fixed name and description
+     */
+    private abstract static class Command implements BuiltinCommand {
+        private final String name;
+        private final String description;
+
+        Command(String name, String description) {
+            this.name = name;
+            this.description = description;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public String getDescription() {
+            return description;
+        }
+
+        /**
+         * Commands of the app's own accept anything; those standing in for a
+         * shell command override this to pass on what they do not implement
+         */
+        @Override
+        public boolean accepts(List<String> args) {
+            return true;
+        }
+    }
+
+    /**
+     * Whether args holds only operands, and options made of the given
+     * letters; anything else is left to the shell's command
+     */
+    private static boolean onlyOptions(List<String> args, String letters) {
+        for (int i = 1; i < args.size(); i++) {
+            String arg = args.get(i);
+            if (arg.startsWith("-") && arg.length() > 1) {
+                for (int j = 1; j < arg.length(); j++) {
+                    if (letters.indexOf(arg.charAt(j)) < 0) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    private static final class HelpCommand extends Command {
+        private final CommandRegistry registry;
+
+        HelpCommand(CommandRegistry registry) {
+            super("help", "Show this help message");
+            this.registry = registry;
+        }
+
+        @Override
+        public int run(List<String> args, Reader in, Writer out) throws IOException {
+            out.write(registry.getHelpText());
+            return 0;
+        }
+    }
+
+    private static final class ClearCommand extends Command {
+        private final TerminalEmulator terminal;
+
+        ClearCommand(TerminalEmulator terminal) {
+            super("clear", "Clear terminal output");
+            this.terminal = terminal;
+        }
+
+        @Override
+        public int run(List<String> args, Reader in, Writer out) {
+            terminal.clearScreen();
+            return 0;
+        }
+    }
+
+    private static final class EchoCommand extends Command {
+        EchoCommand() {
+            super("echo", "Display a line of text");
+        }
+
+        @Override
+        public boolean accepts(List<String> args) {
+            // A leading -n is implemented; -e and the like are left to the shell
+            int first = args.size() > 1 && args.get(1).equals("-n") ? 2 : 1;
+            for (int i = first; i < args.size(); i++) {
+                if (args.get(i).startsWith("-")) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int run(List<String> args, Reader in, Writer out) throws IOException {
+            int first = 1;
+            boolean newline = true;
+            if (args.size() > 1 && args.get(1).equals("-n")) {
+                newline = false;
+                first = 2;
+            }
+            for (int i = first; i < args.size(); i++) {
+                if (i > first) {
+                    out.write(' ');
+                }
+                out.write(args.get(i));
+            }
+            if (newline) {
+                out.write('\n');
+            }
+            return 0;
+        }
+    }
+
+    private static final class DateCommand extends Command {
+        DateCommand() {
+            super("date", "Display current date/time");
+        }
+
+        @Override
+        public boolean accepts(List<String> args) {
+            // Formats and options such as +%s and -u are left to the shell
+            return args.size() == 1;
+        }
+
+        @Override
+        public int run(List<String> args, Reader in, Writer out) throws IOException {
+            out.write(new Date().toString());
+            out.write('\n');
+            return 0;
+        }
+    }
+
+    private static final class WhoamiCommand extends Command {
+        WhoamiCommand() {
+            super("whoami", "Display current user");
+        }
+
+        @Override
+        public boolean accepts(List<String> args) {
+            return args.size() == 1;
+        }
+
+        @Override
+        public int run(List<String> args, Reader in, Writer out) throws IOException {
+            out.write("android-user\n");
+            return 0;
+        }
+    }
+
+    private static final class PwdCommand extends Command {
+        private final TerminalEmulator terminal;
+
+        PwdCommand(TerminalEmulator terminal) {
+            super("pwd", "Print working directory");
+            this.terminal = terminal;
+        }
+
+        @Override
+        public boolean accepts(List<String> args) {
+            return args.size() == 1;
+        }
+
+        @Override
+        public int run(List<String> args, Reader in, Writer out) throws IOException {
+            out.write(terminal.getCurrentDirectory());
+            out.write('\n');
+            return 0;
+        }
+    }
+
+    private static final class CdCommand extends Command {
+        private final TerminalEmulator terminal;
+
+        CdCommand(TerminalEmulator terminal) {
+            super("cd", "Change directory");
+            this.terminal = terminal;
+        }
+
+        /**
+         * Only cd DIR; plain cd, cd - and options need the shell's HOME,
+         * OLDPWD and option handling
+         */
+        @Override
+        public boolean accepts(List<String> args) {
+            return args.size() == 2 && !args.get(1).startsWith("-");
+        }
+
+        @Override
+        public int run(List<String> args, Reader in, Writer out) throws IOException {
+            String path = args.get(1);
+            // Check in-process so a bad path fails without touching the shell
+            String logical = resolveLogical(terminal.getCurrentDirectory(), path);
+            File target = new File(logical);
+            if (!target.isDirectory()) {
+                out.write("cd: " + path + ": No such directory\n");
+                return 1;
+            }
+            if (!target.canExecute()) {
+                out.write("cd: " + path + ": Permission denied\n");
+                return 1;
+            }
+            return terminal.changeDirectory(logical, out);
+        }
+    }
+
+    private static final class LsCommand extends Command {
+        private final TerminalEmulator terminal;
+        private final SimpleDateFormat dateFormat = new SimpleDateFormat("MMM dd HH:mm", Locale.US);
+
+        LsCommand(TerminalEmulator terminal) {
+            super("ls", "List directory contents (-a, -l, -1)");
+            this.terminal = terminal;
+        }
+
+        @Override
+        public boolean accepts(List<String> args) {
+            // -R, -t, -h and the rest are left to the shell's ls
+            return onlyOptions(args, "al1");
+        }
+
+        @Override
+        public int run(List<String> args, Reader in, Writer out) throws IOException {
+            boolean all = false;
+            boolean longFormat = false;
+            boolean onePerLine = false;
+            List<String> targets = new ArrayList<>();
+            for (int i = 1; i < args.size(); i++) {
+                String arg = args.get(i);
+                if (arg.startsWith("-") && arg.length() > 1) {
+                    all |= arg.indexOf('a') > 0;
+                    longFormat |= arg.indexOf('l') > 0;
+                    onePerLine |= arg.indexOf('1') > 0;
+                } else {
+                    targets.add(arg);
+                }
+            }
+            if (targets.isEmpty()) {
+                targets.add(".");
+            }
+
+            int exitCode = 0;
+            for (String target : targets) {
+                File file = resolve(terminal.getCurrentDirectory(), target);
+                if (targets.size() > 1) {
+                    out.write(target + ":\n");
+                }
+                if (!file.exists()) {
+                    out.write("ls: " + target + ": No such file or directory\n");
+                    exitCode = 1;
+                    continue;
+                }
+                String[] names = file.isDirectory() ? file.list() : new String[] {file.getName()};
+                File directory = file.isDirectory() ? file : file.getParentFile();
+                if (names == null) {
+                    out.write("ls: " + target + ": Permission denied\n");
+                    exitCode = 1;
+                    continue;
+                }
+                Arrays.sort(names);
+
+                List<String> shown = new ArrayList<>(names.length);
+                for (String name : names) {
+                    if (all || !name.startsWith(".")) {
+                        shown.add(name);
+                    }
+                }
+                if (longFormat) {
+                    for (String name : shown) {
+                        writeLong(new File(directory, name), name, out);
+                    }
+                } else if (onePerLine) {
+                    for (String name : shown) {
+                        out.write(name);
+                        out.write('\n');
+                    }
+                } else {
+                    out.write(TerminalEmulator.formatColumns(shown, terminal.getScreenColumns(), Integer.MAX_VALUE));
+                }
+            }
+            return exitCode;
+        }
+
+        private void writeLong(File file, String name, Writer out) throws IOException {
+            StringBuilder line = new StringBuilder();
+            line.append(file.isDirectory() ? 'd' : '-');
+            line.append(file.canRead() ? 'r' : '-');
+            line.append(file.canWrite() ? 'w' : '-');
+            line.append(file.canExecute() ? 'x' : '-');
+            String size = String.valueOf(file.length());
+            for (int pad = size.length(); pad < 10; pad++) {
+                line.append(' ');
+            }
+            line.append(size).append(' ');
+            line.append(dateFormat.format(new Date(file.lastModified()))).append(' ');
+            line.append(name).append('\n');
+            out.write(line.toString());
+        }
+    }
+
+    private static final class UnameCommand extends Command {
+        UnameCommand() {
+            super("uname", "Display system information");
+        }
+
+        @Override
+        public boolean accepts(List<String> args) {
+            // -r, -a and the like print kernel fields only the shell's uname has
+            return args.size() == 1;
+        }
+
+        @Override
+        public int run(List<String> args, Reader in, Writer out) throws IOException {
+            out.write("Android " + android.os.Build.VERSION.RELEASE +
+                " " + android.os.Build.DEVICE +
+                " " + System.getProperty("os.arch") + "\n");
+            return 0;
+        }
+    }
+
+    private static final class HistoryCommand extends Command {
+        private static final int LIST_LIMIT = 50;
+
+        private final TerminalEmulator terminal;
+
+        HistoryCommand(TerminalEmulator terminal) {
+            super("history", "List or search command history");
+            this.terminal = terminal;
+        }
+
+        @Override
+        public int run(List<String> args, Reader in, Writer out) throws IOException {
+            String text = args.size() > 1 ? args.get(1) : "";
+            List<String> entries = terminal.getHistory().search(text, LIST_LIMIT);
+            // Newest last, like the shell
+            for (int i = entries.size() - 1; i >= 0; i--) {
+                out.write("  " + entries.get(i) + "\n");
+            }
+            return 0;
+        }
+    }
+
+    private static final class SysinfoCommand extends Command {
+        SysinfoCommand() {
+            super("sysinfo", "Display device and OS details");
+        }
+
+        @Override
+        public int run(List<String> args, Reader in, Writer out) throws IOException {
+            out.write(SystemMonitor.getSystemInfo());
+            return 0;
+        }
+    }
+
+    private static final class FreeCommand extends Command {
+        FreeCommand() {
+            super("free", "Display memory usage");
+        }
+
+        @Override
+        public boolean accepts(List<String> args) {
+            // Units such as -m and -h are left to the shell's free
+            return args.size() == 1;
+        }
+
+        @Override
+        public int run(List<String> args, Reader in, Writer out) throws IOException {
+            out.write(SystemMonitor.getRamInfo());
+            return 0;
+        }
+    }
+
+    private static final class CpuCommand extends Command {
+        CpuCommand() {
+            super("cpu", "Display CPU usage per core");
+        }
+
+        @Override
+        public int run(List<String> args, Reader in, Writer out) throws IOException {
+            out.write(SystemMonitor.getCpuInfo());
+            return 0;
+        }
+    }
+
+    private static final class LocateCommand extends Command {
+        LocateCommand() {
+            super("locate", "Find files on storage by name (-u to reindex)");
+        }
+
+        @Override
+        public int run(List<String> args, Reader in, Writer out) throws IOException {
+            FileIndex index = FileIndex.peekInstance();
+            if (index == null) {
+                out.write("locate: file index is not available\n");
+                return 1;
+            }
+            if (args.size() > 1 && args.get(1).equals("-u")) {
+                index.refresh();
+                out.write("locate: reindexing storage in the background\n");
+                return 0;
+            }
+            if (args.size() < 2) {
+                out.write("usage: locate [-u] NAME\n");
+                return 1;
+            }
+            if (!index.isReady()) {
+                out.write("locate: index is still being built, try again shortly\n");
+                return 1;
+            }
+
+            // One extra result tells whether the list was cut short
+            List<FileIndex.Result> results = index.search(args.get(1), FileIndex.DEFAULT_LIMIT + 1);
+            int shown = Math.min(results.size(), FileIndex.DEFAULT_LIMIT);
+            for (int i = 0; i < shown; i++) {
+                out.write(results.get(i).getPath());
+                out.write('\n');
+            }
+            if (results.size() > shown) {
+                out.write("... more than " + shown + " matches; refine the name\n");
+            }
+            return results.isEmpty() ? 1 : 0;
+        }
+    }
+
+    private static final class DuCommand extends Command {
+        private final TerminalEmulator terminal;
+
+        DuCommand(TerminalEmulator terminal) {
+            super("du", "Show disk usage of a directory tree (-d DEPTH, -f to rescan all)");
+            this.terminal = terminal;
+        }
+
+        @Override
+        public boolean accepts(List<String> args) {
+            // -s, -h and the like are left to the shell's du
+            for (int i = 1; i < args.size(); i++) {
+                String arg = args.get(i);
+                if (arg.equals("-d") && i + 1 < args.size()) {
+                    i++;
+                } else if (arg.startsWith("-") && !arg.equals("-f")) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int run(List<String> args, Reader in, Writer out) throws IOException {
+            int depth = 1;
+            boolean full = false;
+            String target = ".";
+            for (int i = 1; i < args.size(); i++) {
+                String arg = args.get(i);
+                if (arg.equals("-d") && i + 1 < args.size()) {
+                    try {
+                        depth = Integer.parseInt(args.get(++i));
+                    } catch (NumberFormatException e) {
+                        out.write("du: invalid depth: " + args.get(i) + "\n");
+                        return 1;
+                    }
+                } else if (arg.equals("-f")) {
+                    full = true;
+                } else if (arg.startsWith("-")) {
+                    out.write("usage: du [-d DEPTH] [-f] [DIR]\n");
+                    return 1;
+                } else {
+                    target = arg;
+                }
+            }
+
+            File directory = resolve(terminal.getCurrentDirectory(), target);
+            if (!directory.isDirectory()) {
+                out.write("du: " + target + ": Not a directory\n");
+                return 1;
+            }
+            DiskUsageAnalyzer analyzer = DiskUsageAnalyzer.getInstance();
+            if (full) {
+                analyzer.clearCache();
+            }
+            DiskUsageAnalyzer.Usage usage = analyzer.analyze(directory, new DiskUsageAnalyzer.Analysis(), null);
+            if (usage == null) {
+                if (Thread.currentThread().isInterrupted()) {
+                    out.write("du: interrupted\n");
+                    return 130;
+                }
+                out.write("du: " + target + ": Permission denied\n");
+                return 1;
+            }
+            writeUsage(usage, depth, out);
+            out.write(usage.getFileCount() + " files, " + usage.getDirectoryCount() + " directories\n");
+            return 0;
+        }
+
+        /**
+         * Print subdirectories down to depth, largest first, each above its
+         * own subdirectories, then the directory itself
+         */
+        private static void writeUsage(DiskUsageAnalyzer.Usage usage, int depth, Writer out) throws IOException {
+            if (depth > 0) {
+                for (DiskUsageAnalyzer.Usage child : usage.getChildren()) {
+                    writeUsage(child, depth - 1, out);
+                }
+            }
+            out.write(String.format(Locale.US, "%9s  %s%n", formatSize(usage.getBytes()), usage.getPath()));
+        }
+
+        private static String formatSize(long bytes) {
+            if (bytes < 1024) return bytes + " B";
+            int exp = (int) (Math.log(bytes) / Math.log(1024));
+            String pre = "KMGTPE".charAt(exp - 1) + "";
+            return String.format(Locale.US, "%.1f %sB", bytes / Math.pow(1024, exp), pre);
+        }
+    }
+
+    /**
+     * Resolve a path typed by the user against the working directory
+     */
+    static File resolve(String workingDirectory, String path) {
+        File file = new File(path);
+        return file.isAbsolute() ? file : new File(workingDirectory, path);
+    }
+
+    /**
+     * Resolve a path like resolve(), then drop "." and ".." components
+     * without following symlinks, as the shell's cd does, so a linked
+     * directory keeps the name it was reached by
+     */
+    static String resolveLogical(String workingDirectory, String path) {
+        String absolute = path.startsWith("/") ? path : workingDirectory + "/" + path;
+        ArrayDeque<String> components = new ArrayDeque<>();
+        for (String component : absolute.split("/")) {
+            if (component.equals("..")) {
+                components.pollLast();
+            } else if (!component.isEmpty() && !component.equals(".")) {
+                components.addLast(component);
+            }
+        }
+        if (components.isEmpty()) {
+            return "/";
+        }
+        StringBuilder normalized = new StringBuilder(absolute.length());
+        for (String component : components) {
+            normalized.append('/').append(component);
+        }
+        return normalized.toString();
+    }
+}
@@ -0,0 +1,355 @@
+package com.edexui.android;
+
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Command history for the Edex-UI terminal
+ * Bounded and deduplicated: running a command again moves it to the newest
+ * position. Entries are indexed by sequence number for up/down navigation
+ * and by text for prefix lookup. Persisted as an append-only file that is
+ * rewritten once it holds twice as many lines as entries are kept.
+ */
+public class CommandHistory {
+
+    public static final int DEFAULT_MAX_ENTRIES = 1000;
+
+    private static final String TAG = "CommandHistory";
+
+    private static final ThreadFactory THREAD_FACTORY = new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "edex-history");
+            thread.setDaemon(true);
+            return thread;
+        }
+    };
+
+    private final int maxEntries;
+    private final File file;
+    private final ExecutorService ioExecutor;
+
+    // Newest entry has the highest sequence number
+    private final TreeMap<Long, String> bySequence = new TreeMap<>();
+    private final HashMap<String, Long> sequenceByCommand = new HashMap<>();
+    // Sorted by text, so all entries sharing a prefix are one contiguous range
+    private final TreeMap<String, Long> byText = new TreeMap<>();
+    private long nextSequence = 0;
+    private int fileLines = 0;
+
+    /**
+     * Create an in-memory history
+     */
+    public CommandHistory(int maxEntries) {
+        this(maxEntries, null);
+    }
+
+    /**
+     * Create a history persisted to file, or in memory only if file is null.
+     * Call load() once to read earlier sessions.
+     */
+    public CommandHistory(int maxEntries, File file) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("History must hold at least one entry");
+        }
+        this.maxEntries = maxEntries;
+        this.file = file;
+        this.ioExecutor = file != null ? Executors.newSingleThreadExecutor(THREAD_FACTORY) : null;
+    }
+
+    /**
+     * Read entries saved by earlier sessions on the IO thread, ahead of any
+     * pending writes; commands added before it completes stay newest
+     */
+    public void load() {
+        if (ioExecutor == null) {
+            return;
+        }
+        ioExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                readFile();
+            }
+        });
+    }
+
+    private void readFile() {
+        if (!file.isFile()) {
+            return;
+        }
+        List<String> saved = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    saved.add(decode(line));
+                }
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to read history", e);
+            return;
+        }
+
+        synchronized (this) {
+            // Rebuild with saved entries first, then anything added meanwhile
+            List<String> current = new ArrayList<>(bySequence.values());
+            clearIndex();
+            for (String command : saved) {
+                put(command);
+            }
+            for (String command : current) {
+                put(command);
+            }
+            fileLines = saved.size();
+        }
+        // Already on the IO thread
+        List<String> entries = takeCompactionSnapshot();
+        if (entries != null) {
+            compact(entries);
+        }
+    }
+
+    /**
+     * Add a command as the newest entry
+     */
+    public void add(String command) {
+        if (command == null || command.trim().isEmpty()) {
+            return;
+        }
+        synchronized (this) {
+            put(command);
+        }
+        if (ioExecutor != null) {
+            final String line = encode(command);
+            ioExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    appendLine(line);
+                }
+            });
+            synchronized (this) {
+                fileLines++;
+            }
+            scheduleCompactionIfNeeded();
+        }
+    }
+
+    private void put(String command) {
+        Long previous = sequenceByCommand.remove(command);
+        if (previous != null) {
+            bySequence.remove(previous);
+        }
+        long sequence = nextSequence++;
+        bySequence.put(sequence, command);
+        sequenceByCommand.put(command, sequence);
+        byText.put(command, sequence);
+
+        while (bySequence.size() > maxEntries) {
+            Map.Entry<Long, String> oldest = bySequence.pollFirstEntry();
+            sequenceByCommand.remove(oldest.getValue());
+            byText.remove(oldest.getValue());
+        }
+    }
+
+    private void clearIndex() {
+        bySequence.clear();
+        sequenceByCommand.clear();
+        byText.clear();
+    }
+
+    /**
+     * Get the newest entry older than sequence that starts with prefix, or
+     * null. Pass Long.MAX_VALUE to start from the newest entry.
+     */
+    public synchronized Map.Entry<Long, String> findOlder(long sequence, String prefix) {
+        if (prefix.isEmpty()) {
+            return bySequence.lowerEntry(sequence);
+        }
+        Map.Entry<Long, String> best = null;
+        for (Map.Entry<String, Long> entry : prefixRange(prefix).entrySet()) {
+            long candidate = entry.getValue();
+            if (candidate < sequence && (best == null || candidate > best.getKey())) {
+                best = new AbstractMap.SimpleImmutableEntry<>(candidate, entry.getKey());
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Get the oldest entry newer than sequence that starts with prefix, or null
+     */
+    public synchronized Map.Entry<Long, String> findNewer(long sequence, String prefix) {
+        if (prefix.isEmpty()) {
+            return bySequence.higherEntry(sequence);
+        }
+        Map.Entry<Long, String> best = null;
+        for (Map.Entry<String, Long> entry : prefixRange(prefix).entrySet()) {
+            long candidate = entry.getValue();
+            if (candidate > sequence && (best == null || candidate < best.getKey())) {
+                best = new AbstractMap.SimpleImmutableEntry<>(candidate, entry.getKey());
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Get the entries starting with prefix, sorted by text
+     */
+    public synchronized List<String> findByPrefix(String prefix, int limit) {
+        List<String> matches = new ArrayList<>();
+        for (String command : prefixRange(prefix).keySet()) {
+            if (matches.size() >= limit) {
+                break;
+            }
+            matches.add(command);
+        }
+        return matches;
+    }
+
+    /**
+     * Get entries containing text, newest first, like reverse-i-search
+     */
+    public synchronized List<String> search(String text, int limit) {
+        List<String> matches = new ArrayList<>();
+        for (String command : bySequence.descendingMap().values()) {
+            if (matches.size() >= limit) {
+                break;
+            }
+            if (command.contains(text)) {
+                matches.add(command);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Get all entries, oldest first
+     */
+    public synchronized List<String> getEntries() {
+        return new ArrayList<>(bySequence.values());
+    }
+
+    public synchronized int size() {
+        return bySequence.size();
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * Finish pending writes and stop the IO thread
+     */
+    public void close() {
+        if (ioExecutor != null) {
+            ioExecutor.shutdown();
+        }
+    }
+
+    private SortedMap<String, Long> prefixRange(String prefix) {
+        // Every string with the prefix sorts below prefix + U+FFFF
+        return byText.subMap(prefix, prefix + '\uffff');
+    }
+
+    // Persistence; runs on the IO thread
+
+    private void appendLine(String line) {
+        try (Writer writer = new OutputStreamWriter(
+                new FileOutputStream(file, true), StandardCharsets.UTF_8)) {
+            writer.write(line);
+            writer.write('\n');
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to save history", e);
+        }
+    }
+
+    private void scheduleCompactionIfNeeded() {
+        final List<String> entries = takeCompactionSnapshot();
+        if (entries == null) {
+            return;
+        }
+        ioExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                compact(entries);
+            }
+        });
+    }
+
+    /**
+     * Get the entries to rewrite the file with, or null if it is small enough
+     */
+    private synchronized List<String> takeCompactionSnapshot() {
+        if (fileLines <= maxEntries * 2) {
+            return null;
+        }
+        fileLines = bySequence.size();
+        return new ArrayList<>(bySequence.values());
+    }
+
+    /**
+     * Rewrite the file with only the live entries, replacing it atomically
+     */
+    private void compact(List<String> entries) {
+        File temp = new File(file.getPath() + ".tmp");
+        try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(temp), StandardCharsets.UTF_8))) {
+            for (String command : entries) {
+                writer.write(encode(command));
+                writer.write('\n');
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to compact history", e);
+            temp.delete();
+            return;
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+        }
+    }
+
+    private static String encode(String command) {
+        if (command.indexOf('\n') < 0 && command.indexOf('\\') < 0) {
+            return command;
+        }
+        return command.replace("\\", "\\\\").replace("\n", "\\n");
+    }
+
+    private static String decode(String line) {
+        if (line.indexOf('\\') < 0) {
+            return line;
+        }
+        StringBuilder out = new StringBuilder(line.length());
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '\\' && i + 1 < line.length()) {
+                char next = line.charAt(++i);
+                out.append(next == 'n' ? '\n' : next);
+            } else {
+                out.append(c);
+            }
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,87 @@
+package com.edexui.android;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Registry of built-in terminal commands for Edex-UI
+ * Resolves a command name with one hash lookup and caches the help text
+ * until the set of commands changes
+ */
+public class CommandRegistry {
+
+    private static final int NAME_COLUMN_WIDTH = 10;
+
+    private final Map<String, BuiltinCommand> commands = new HashMap<>();
+    private String helpText;
+
+    /**
+     * Register a command, replacing any with the same name
+     */
+    public synchronized void register(BuiltinCommand command) {
+        commands.put(command.getName(), command);
+        helpText = null;
+    }
+
+    /**
+     * Get the command with this name, or null if it is not built in
+     */
+    public synchronized BuiltinCommand get(String name) {
+        return commands.get(name);
+    }
+
+    /**
+     * Get the command that runs these arguments, or null if it is not
+     * built in or leaves them to the shell
+     */
+    public BuiltinCommand find(List<String> args) {
+        BuiltinCommand command = get(args.get(0));
+        return command != null && command.accepts(args) ? command : null;
+    }
+
+    /**
+     * Get the names of all commands, sorted
+     */
+    public synchronized List<String> getNames() {
+        List<String> names = new ArrayList<>(commands.keySet());
+        Collections.sort(names);
+        return names;
+    }
+
+    /**
+     * Get the help text, built once per set of commands
+     */
+    public synchronized String getHelpText() {
+        if (helpText == null) {
+            helpText = buildHelpText();
+        }
+        return helpText;
+    }
+
+    private String buildHelpText() {
+        StringBuilder help = new StringBuilder();
+        help.append("═══════════════════════════════════════\n");
+        help.append("  EDEX-UI TERMINAL - AVAILABLE COMMANDS\n");
+        help.append("═══════════════════════════════════════\n\n");
+        help.append("Built-in Commands:\n");
+        for (String name : getNames()) {
+            help.append("  ").append(name);
+            for (int pad = name.length(); pad < NAME_COLUMN_WIDTH; pad++) {
+                help.append(' ');
+            }
+            help.append("- ").append(commands.get(name).getDescription()).append("\n");
+        }
+        help.append("\nSystem Commands:\n");
+        help.append("  getprop   - Get system properties\n");
+        help.append("  ps        - Show running processes\n");
+        help.append("  top       - Display system resources\n");
+        help.append("  df        - Display disk usage\n");
+        help.append("  uptime    - Show system uptime\n\n");
+        help.append("Note: Some commands may require root access\n");
+        help.append("═══════════════════════════════════════\n");
+        return help.toString();
+    }
+}
@@ -0,0 +1,240 @@
+package com.edexui.android;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits a command line into arguments, following sh quoting rules:
+ * single quotes are literal, double quotes allow backslash escapes, and a
+ * backslash outside quotes escapes the next char
+ */
+public final class CommandTokenizer {
+
+    // Chars that make a line need real shell expansion or control operators
+    private static final String SHELL_SYNTAX = "$`*?[|&;<>(){}~";
+    // Chars a backslash must protect outside quotes
+    private static final String UNQUOTED_SPECIAL = SHELL_SYNTAX + " \t'\"\\#";
+    // Chars a backslash escapes inside double quotes
+    private static final String DOUBLE_QUOTED_SPECIAL = "\"\\$`";
+
+    private CommandTokenizer() {
+    }
+
+    /**
+     * Split line into arguments.
+     * Throws IllegalArgumentException on an unterminated quote.
+     */
+    public static List<String> tokenize(String line) {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean inToken = false;
+        int length = line.length();
+
+        for (int i = 0; i < length; i++) {
+            char c = line.charAt(i);
+            if (c == '\'') {
+                int close = line.indexOf('\'', i + 1);
+                if (close < 0) {
+                    throw new IllegalArgumentException("Unterminated quote");
+                }
+                current.append(line, i + 1, close);
+                inToken = true;
+                i = close;
+            } else if (c == '"') {
+                i = readDoubleQuoted(line, i + 1, current);
+                inToken = true;
+            } else if (c == '\\') {
+                if (i + 1 < length) {
+                    current.append(line.charAt(++i));
+                }
+                inToken = true;
+            } else if (c == ' ' || c == '\t') {
+                if (inToken) {
+                    tokens.add(current.toString());
+                    current.setLength(0);
+                    inToken = false;
+                }
+            } else {
+                current.append(c);
+                inToken = true;
+            }
+        }
+        if (inToken) {
+            tokens.add(current.toString());
+        }
+        return tokens;
+    }
+
+    /**
+     * Copy a double-quoted string starting after the opening quote; returns
+     * the index of the closing quote
+     */
+    private static int readDoubleQuoted(String line, int start, StringBuilder out) {
+        for (int i = start; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                return i;
+            }
+            if (c == '\\' && i + 1 < line.length() && DOUBLE_QUOTED_SPECIAL.indexOf(line.charAt(i + 1)) >= 0) {
+                out.append(line.charAt(++i));
+            } else {
+                out.append(c);
+            }
+        }
+        throw new IllegalArgumentException("Unterminated quote");
+    }
+
+    /**
+     * Index of the closing double quote of a string starting after the
+     * opening quote, or -1 if it is unterminated
+     */
+    private static int skipDoubleQuoted(String line, int start) {
+        for (int i = start; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                return i;
+            }
+            if (c == '\\') {
+                i++;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Index where the last word of line starts, split the way tokenize()
+     * splits; line.length() if line ends between words. A quote left open
+     * belongs to the last word.
+     */
+    public static int lastWordStart(String line) {
+        int start = 0;
+        boolean inWord = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == ' ' || c == '\t') {
+                inWord = false;
+                continue;
+            }
+            if (!inWord) {
+                start = i;
+                inWord = true;
+            }
+            if (c == '\\') {
+                i++;
+            } else if (c == '\'') {
+                i = line.indexOf('\'', i + 1);
+            } else if (c == '"') {
+                i = skipDoubleQuoted(line, i + 1);
+            }
+            if (i < 0) {
+                return start;
+            }
+        }
+        return inWord ? start : line.length();
+    }
+
+    /**
+     * The quote char left open at the end of line, or 0 if none is
+     */
+    public static char openQuote(String line) {
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            int close = i;
+            if (c == '\\') {
+                close = i + 1;
+            } else if (c == '\'') {
+                close = line.indexOf('\'', i + 1);
+            } else if (c == '"') {
+                close = skipDoubleQuoted(line, i + 1);
+            }
+            if (close < 0) {
+                return c;
+            }
+            i = close;
+        }
+        return 0;
+    }
+
+    /**
+     * Value of a word that may still be missing its closing quote, as
+     * tokenize() would read it once the quote is closed
+     */
+    public static String unquotePartial(String word) {
+        char quote = openQuote(word);
+        if (quote != 0) {
+            String closed = word + quote;
+            if (openQuote(closed) != 0) {
+                // A trailing backslash escaped the closing quote; drop it
+                closed = word.substring(0, word.length() - 1) + quote;
+            }
+            word = closed;
+        }
+        List<String> tokens = tokenize(word);
+        return tokens.isEmpty() ? "" : tokens.get(0);
+    }
+
+    /**
+     * Escape text to be appended to a line, inside the quote left open
+     * there (see openQuote()) or unquoted if quote is 0, so that sh and
+     * tokenize() read it back unchanged
+     */
+    public static String escape(String text, char quote) {
+        StringBuilder out = new StringBuilder(text.length() + 8);
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (quote == '\'') {
+                if (c == '\'') {
+                    out.append("'\\''");
+                } else {
+                    out.append(c);
+                }
+            } else if (quote == '"') {
+                if (DOUBLE_QUOTED_SPECIAL.indexOf(c) >= 0) {
+                    out.append('\\');
+                }
+                out.append(c);
+            } else if (c == '\n') {
+                // A backslash before a newline continues the line instead
+                out.append("'\n'");
+            } else {
+                if (UNQUOTED_SPECIAL.indexOf(c) >= 0) {
+                    out.append('\\');
+                }
+                out.append(c);
+            }
+        }
+        return out.toString();
+    }
+
+    /**
+     * Whether line uses expansion or operators outside single quotes, which
+     * only the shell can evaluate
+     */
+    public static boolean hasShellSyntax(String line) {
+        boolean inDouble = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '\'' && !inDouble) {
+                int close = line.indexOf('\'', i + 1);
+                if (close < 0) {
+                    return true;
+                }
+                i = close;
+            } else if (c == '"') {
+                inDouble = !inDouble;
+            } else if (inDouble ? (c == '$' || c == '`') : SHELL_SYNTAX.indexOf(c) >= 0) {
+                return true;
+            }
+        }
+        return inDouble;
+    }
+
+    /**
+     * Quote an argument so sh reads it back unchanged
+     */
+    public static String quote(String argument) {
+        return "'" + argument.replace("'", "'\\''") + "'";
+    }
+}
@@ -0,0 +1,323 @@
+package com.edexui.android;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Tab completion for the Edex-UI terminal
+ * The first word completes against an index of executables on $PATH plus
+ * the built-in commands; later words complete file paths relative to the
+ * working directory. Both use sorted name arrays, so a lookup is a binary
+ * search. The index and listings are re-read only when a directory's mtime
+ * changes.
+ */
+public class CompletionEngine {
+
+    private static final int MAX_CACHED_DIRECTORIES = 32;
+
+    private static final ThreadFactory THREAD_FACTORY = new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "edex-completion");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    };
+
+    /**
+     * Result of completing a line
+     */
+    public static final class Completion {
+        private final String line;
+        private final List<String> candidates;
+
+        Completion(String line, List<String> candidates) {
+            this.line = line;
+            this.candidates = candidates;
+        }
+
+        /**
+         * Get the line with the unambiguous part of the completion applied
+         */
+        public String getLine() {
+            return line;
+        }
+
+        /**
+         * Get all matches when more than one remains, otherwise empty
+         */
+        public List<String> getCandidates() {
+            return candidates;
+        }
+    }
+
+    /**
+     * Receives a completion on the completion thread
+     */
+    public interface Callback {
+        void onCompleted(String line, Completion completion);
+    }
+
+    /**
+     * Sorted names of one directory and the mtime they were read at
+     */
+    private static final class Listing {
+        final long modified;
+        final String[] names;
+
+        Listing(long modified, String[] names) {
+            this.modified = modified;
+            this.names = names;
+        }
+    }
+
+    private final ExecutorService indexExecutor = Executors.newSingleThreadExecutor(THREAD_FACTORY);
+    // Lists and stats directories for completeAsync()
+    private final ExecutorService completeExecutor = Executors.newSingleThreadExecutor(THREAD_FACTORY);
+    private final String[] pathDirectories;
+    private final String[] builtins;
+
+    // Swapped whole when a rescan finishes, so readers never lock
+    private volatile String[] commandIndex = new String[0];
+    private volatile long[] indexedModified;
+    private volatile boolean indexing = false;
+
+    private final Map<String, Listing> listings =
+        new LinkedHashMap<String, Listing>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Listing> eldest) {
+                return size() > MAX_CACHED_DIRECTORIES;
+            }
+        };
+
+    public CompletionEngine(Collection<String> builtins) {
+        this(System.getenv("PATH"), builtins);
+    }
+
+    public CompletionEngine(String path, Collection<String> builtins) {
+        List<String> directories = new ArrayList<>();
+        if (path != null) {
+            for (String directory : path.split(":")) {
+                if (!directory.isEmpty() && !directories.contains(directory)) {
+                    directories.add(directory);
+                }
+            }
+        }
+        this.pathDirectories = directories.toArray(new String[0]);
+        this.builtins = builtins.toArray(new String[0]);
+        this.indexedModified = new long[pathDirectories.length];
+        Arrays.fill(indexedModified, -1);
+        refreshIndex();
+    }
+
+    /**
+     * Complete the word at the end of line on the completion thread, so a
+     * directory that is not cached yet is listed without blocking the caller
+     */
+    public void completeAsync(final String line, final String workingDirectory, final Callback callback) {
+        completeExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                callback.onCompleted(line, complete(line, workingDirectory));
+            }
+        });
+    }
+
+    /**
+     * Complete the word at the end of line, blocking while directories are
+     * listed. Words are split and unquoted like CommandTokenizer does, and
+     * the completed text is escaped to match the quoting already typed.
+     */
+    public Completion complete(String line, String workingDirectory) {
+        int wordStart = CommandTokenizer.lastWordStart(line);
+        String word = CommandTokenizer.unquotePartial(line.substring(wordStart));
+        char quote = CommandTokenizer.openQuote(line);
+        boolean firstWord = line.substring(0, wordStart).trim().isEmpty();
+
+        if (firstWord && word.indexOf('/') < 0) {
+            return completeCommand(line, word, quote);
+        }
+        return completePath(line, word, quote, workingDirectory);
+    }
+
+    private Completion completeCommand(String line, String word, char quote) {
+        if (isIndexStale()) {
+            refreshIndex();
+        }
+        List<String> matches = findPrefix(commandIndex, word);
+        if (matches.size() == 1) {
+            return new Completion(extend(line, word, matches.get(0), quote) + closing(quote) + " ",
+                Collections.<String>emptyList());
+        }
+        return new Completion(extend(line, word, commonPrefix(matches, word), quote), matches);
+    }
+
+    private Completion completePath(String line, String word, char quote, String workingDirectory) {
+        int slash = word.lastIndexOf('/');
+        String directoryPart = slash >= 0 ? word.substring(0, slash + 1) : "";
+        String namePrefix = word.substring(slash + 1);
+
+        File directory;
+        if (directoryPart.startsWith("/")) {
+            directory = new File(directoryPart);
+        } else {
+            directory = new File(workingDirectory, directoryPart);
+        }
+        String[] names = list(directory);
+        List<String> matches = findPrefix(names, namePrefix);
+        if (!namePrefix.startsWith(".")) {
+            // Hidden files only complete when asked for, like the shell
+            for (int i = matches.size() - 1; i >= 0; i--) {
+                if (matches.get(i).startsWith(".")) {
+                    matches.remove(i);
+                }
+            }
+        }
+
+        if (matches.size() == 1) {
+            String name = matches.get(0);
+            boolean isDirectory = new File(directory, name).isDirectory();
+            String end = isDirectory ? "/" : closing(quote) + " ";
+            return new Completion(extend(line, namePrefix, name, quote) + end, Collections.<String>emptyList());
+        }
+        return new Completion(extend(line, namePrefix, commonPrefix(matches, namePrefix), quote), matches);
+    }
+
+    /**
+     * Append the rest of completed past what was typed, keeping the text
+     * already on the line as the user wrote it
+     */
+    private static String extend(String line, String typed, String completed, char quote) {
+        return line + CommandTokenizer.escape(completed.substring(typed.length()), quote);
+    }
+
+    private static String closing(char quote) {
+        return quote != 0 ? String.valueOf(quote) : "";
+    }
+
+    /**
+     * Get the sorted names in a directory, re-read only if its mtime changed
+     */
+    private String[] list(File directory) {
+        String key = directory.getPath();
+        long modified = directory.lastModified();
+        synchronized (listings) {
+            Listing cached = listings.get(key);
+            if (cached != null && cached.modified == modified) {
+                return cached.names;
+            }
+        }
+
+        String[] names = directory.list();
+        if (names == null) {
+            names = new String[0];
+        }
+        Arrays.sort(names);
+        synchronized (listings) {
+            listings.put(key, new Listing(modified, names));
+        }
+        return names;
+    }
+
+    private boolean isIndexStale() {
+        long[] modified = indexedModified;
+        for (int i = 0; i < pathDirectories.length; i++) {
+            if (new File(pathDirectories[i]).lastModified() != modified[i]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Rebuild the command index in the background; lookups keep using the
+     * previous index until it is done
+     */
+    private void refreshIndex() {
+        synchronized (this) {
+            if (indexing) {
+                return;
+            }
+            indexing = true;
+        }
+        indexExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    buildIndex();
+                } finally {
+                    indexing = false;
+                }
+            }
+        });
+    }
+
+    private void buildIndex() {
+        TreeSet<String> names = new TreeSet<>(Arrays.asList(builtins));
+        long[] modified = new long[pathDirectories.length];
+        for (int i = 0; i < pathDirectories.length; i++) {
+            File directory = new File(pathDirectories[i]);
+            modified[i] = directory.lastModified();
+            String[] entries = directory.list();
+            if (entries != null) {
+                Collections.addAll(names, entries);
+            }
+        }
+        commandIndex = names.toArray(new String[0]);
+        indexedModified = modified;
+    }
+
+    /**
+     * Get the number of commands indexed so far
+     */
+    public int getIndexedCommandCount() {
+        return commandIndex.length;
+    }
+
+    /**
+     * Stop the indexing and completion threads
+     */
+    public void shutdown() {
+        indexExecutor.shutdownNow();
+        completeExecutor.shutdownNow();
+    }
+
+    private static List<String> findPrefix(String[] sorted, String prefix) {
+        int index = Arrays.binarySearch(sorted, prefix);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        List<String> matches = new ArrayList<>();
+        while (index < sorted.length && sorted[index].startsWith(prefix)) {
+            matches.add(sorted[index]);
+            index++;
+        }
+        return matches;
+    }
+
+    private static String commonPrefix(List<String> matches, String fallback) {
+        if (matches.isEmpty()) {
+            return fallback;
+        }
+        // Sorted input: the common prefix of all is that of the first and last
+        String first = matches.get(0);
+        String last = matches.get(matches.size() - 1);
+        int length = 0;
+        int max = Math.min(first.length(), last.length());
+        while (length < max && first.charAt(length) == last.charAt(length)) {
+            length++;
+        }
+        return first.substring(0, length);
+    }
+}
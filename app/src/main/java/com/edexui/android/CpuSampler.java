@@ -0,0 +1,268 @@
+package com.edexui.android;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Incremental CPU sampler for Edex-UI
+ * Diffs /proc/stat between ticks to compute per-core utilization
+ */
+public class CpuSampler {
+
+    private static final String PROC_STAT = "/proc/stat";
+    private static final String PROC_CPUINFO = "/proc/cpuinfo";
+    private static final String CPUFREQ_PREFIX = "/sys/devices/system/cpu/cpu";
+    private static final String CPUFREQ_SUFFIX = "/cpufreq/scaling_cur_freq";
+
+    // user, nice, system, idle, iowait, irq, softirq, steal
+    private static final int STAT_FIELDS = 8;
+    private static final int FIELD_IDLE = 3;
+    private static final int FIELD_IOWAIT = 4;
+
+    // Only the leading cpu lines of /proc/stat are needed
+    private static final int STAT_READ_LIMIT = 8192;
+    private static final int CPUINFO_READ_LIMIT = 256 * 1024;
+
+    private static final byte[] KEY_PROCESSOR = ProcFileReader.key("processor");
+    private static final byte[] KEY_HARDWARE = ProcFileReader.key("Hardware");
+    private static final byte[] KEY_MODEL_NAME = ProcFileReader.key("model name");
+    private static final byte[] KEY_CPU = ProcFileReader.key("cpu");
+
+    private final String cpuModel;
+    private final int coreCount;
+    private final String[] freqPaths;
+
+    // Slot 0 holds the aggregate "cpu" line, slot i + 1 holds core i
+    private final long[] prevTotal;
+    private final long[] prevIdle;
+    private final long[] curTotal;
+    private final long[] curIdle;
+    private final boolean[] seen;
+    private final int[] usage;
+    private final long[] freqKhz;
+
+    private final ProcFileReader reader = new ProcFileReader();
+    private final long[] fieldValues = new long[STAT_FIELDS];
+    private boolean hasPrevious = false;
+    private boolean statAvailable = true;
+
+    public CpuSampler() {
+        this(null);
+    }
+
+    /**
+     * Parse cpuinfo from a stream, e.g. a captured copy, or from
+     * /proc/cpuinfo if it is null
+     */
+    CpuSampler(InputStream cpuinfo) {
+        String model = "Unknown";
+        int cores = 0;
+
+        // Static fields only need to be parsed once
+        boolean loaded;
+        if (cpuinfo == null) {
+            loaded = reader.read(PROC_CPUINFO);
+        } else {
+            try {
+                loaded = reader.read(cpuinfo, CPUINFO_READ_LIMIT);
+            } catch (IOException e) {
+                loaded = false;
+            }
+        }
+        if (loaded) {
+            do {
+                if (reader.startsWith(KEY_PROCESSOR)) {
+                    cores++;
+                } else if (reader.seekKeyAt(reader.getPosition(), KEY_HARDWARE)
+                        || reader.seekKeyAt(reader.getPosition(), KEY_MODEL_NAME)) {
+                    model = reader.restOfLine();
+                }
+            } while (reader.nextLine());
+        }
+
+        if (cores == 0) {
+            cores = Runtime.getRuntime().availableProcessors();
+        }
+
+        this.cpuModel = model;
+        this.coreCount = cores;
+        this.freqPaths = new String[cores];
+        for (int i = 0; i < cores; i++) {
+            freqPaths[i] = CPUFREQ_PREFIX + i + CPUFREQ_SUFFIX;
+        }
+
+        prevTotal = new long[cores + 1];
+        prevIdle = new long[cores + 1];
+        curTotal = new long[cores + 1];
+        curIdle = new long[cores + 1];
+        seen = new boolean[cores + 1];
+        usage = new int[cores + 1];
+        freqKhz = new long[cores];
+        for (int i = 0; i <= cores; i++) {
+            usage[i] = -1;
+        }
+    }
+
+    /**
+     * Take a new sample and update utilization against the previous tick
+     */
+    public void sample() {
+        sampleFrequencies();
+
+        if (!statAvailable) {
+            return;
+        }
+
+        if (!reader.read(PROC_STAT, STAT_READ_LIMIT) || reader.length() == 0) {
+            // Restricted on newer Android releases; stop retrying every tick
+            statAvailable = false;
+            return;
+        }
+        parseStat();
+    }
+
+    /**
+     * Take a sample from a stream holding /proc/stat, e.g. a captured copy,
+     * leaving frequencies alone
+     */
+    void sample(InputStream stat) throws IOException {
+        reader.read(stat, STAT_READ_LIMIT);
+        parseStat();
+    }
+
+    /**
+     * Update utilization from the /proc/stat contents in the reader
+     */
+    private void parseStat() {
+        for (int i = 0; i <= coreCount; i++) {
+            seen[i] = false;
+        }
+
+        // cpu lines always come first, everything after is irrelevant
+        while (reader.startsWith(KEY_CPU)) {
+            reader.setPosition(reader.getPosition() + KEY_CPU.length);
+            int slot = 0;
+            if (reader.hasMore() && reader.byteAt(reader.getPosition()) != ' ') {
+                int core = reader.nextInt(-1);
+                slot = core >= 0 ? core + 1 : -1;
+            }
+
+            if (slot >= 0 && slot <= coreCount) {
+                int count = 0;
+                long value;
+                while (count < STAT_FIELDS && (value = reader.nextLong(-1)) >= 0) {
+                    fieldValues[count++] = value;
+                }
+
+                long total = 0;
+                for (int i = 0; i < count; i++) {
+                    total += fieldValues[i];
+                }
+                long idle = count > FIELD_IOWAIT
+                    ? fieldValues[FIELD_IDLE] + fieldValues[FIELD_IOWAIT]
+                    : (count > FIELD_IDLE ? fieldValues[FIELD_IDLE] : 0);
+
+                curTotal[slot] = total;
+                curIdle[slot] = idle;
+                seen[slot] = true;
+            }
+
+            if (!reader.nextLine()) {
+                break;
+            }
+        }
+
+        for (int i = 0; i <= coreCount; i++) {
+            if (!seen[i]) {
+                // Core went offline, forget its history
+                usage[i] = -1;
+                prevTotal[i] = 0;
+                prevIdle[i] = 0;
+                continue;
+            }
+
+            long deltaTotal = curTotal[i] - prevTotal[i];
+            long deltaIdle = curIdle[i] - prevIdle[i];
+            if (hasPrevious && prevTotal[i] != 0 && deltaTotal > 0) {
+                usage[i] = (int) (((deltaTotal - deltaIdle) * 100) / deltaTotal);
+            }
+            prevTotal[i] = curTotal[i];
+            prevIdle[i] = curIdle[i];
+        }
+        hasPrevious = true;
+    }
+
+    /**
+     * Read the current frequency of every core from cpufreq
+     */
+    private void sampleFrequencies() {
+        for (int i = 0; i < coreCount; i++) {
+            freqKhz[i] = reader.read(freqPaths[i]) ? reader.nextLong(-1) : -1;
+        }
+    }
+
+    /**
+     * Append a formatted summary of the last sample
+     */
+    public void appendTo(StringBuilder out) {
+        out.append("CPU: ").append(cpuModel).append("\n");
+        out.append("CORES: ").append(coreCount).append("\n");
+        out.append("ARCHITECTURE: ").append(System.getProperty("os.arch")).append("\n");
+
+        out.append("LOAD: ");
+        appendPercent(out, usage[0]);
+        out.append("\n");
+
+        for (int i = 0; i < coreCount; i++) {
+            out.append("CORE ").append(i).append(": ");
+            appendPercent(out, usage[i + 1]);
+            if (freqKhz[i] > 0) {
+                out.append(" @ ").append(freqKhz[i] / 1000).append(" MHz");
+            }
+            out.append("\n");
+        }
+    }
+
+    private static void appendPercent(StringBuilder out, int percent) {
+        if (percent < 0) {
+            out.append("--");
+        } else {
+            out.append(percent).append("%");
+        }
+    }
+
+    /**
+     * Get the CPU model name parsed at startup
+     */
+    public String getCpuModel() {
+        return cpuModel;
+    }
+
+    /**
+     * Get the number of cores parsed at startup
+     */
+    public int getCoreCount() {
+        return coreCount;
+    }
+
+    /**
+     * Get overall utilization in percent, or -1 when not yet known
+     */
+    public int getTotalUsage() {
+        return usage[0];
+    }
+
+    /**
+     * Get utilization of a single core in percent, or -1 when not yet known
+     */
+    public int getCoreUsage(int core) {
+        return usage[core + 1];
+    }
+
+    /**
+     * Get current frequency of a core in kHz, or -1 when unavailable
+     */
+    public long getCoreFrequencyKhz(int core) {
+        return freqKhz[core];
+    }
+}
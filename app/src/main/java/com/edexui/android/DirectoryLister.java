@@ -0,0 +1,212 @@
+package com.edexui.android;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Directory listing engine for the Edex-UI file navigator
+ * Reads every entry once with DirectoryScanner, sorts on the stored fields and keeps recent
+ * listings keyed by path, reusing one while the directory's mtime is
+ * unchanged so going back to a directory costs a single stat.
+ */
+public class DirectoryLister {
+
+    private static final int MAX_CACHED_DIRECTORIES = 32;
+    // Past this many changed names, listing again is cheaper than patching
+    private static final int MAX_PATCHED_ENTRIES = 512;
+
+    private static final ThreadFactory THREAD_FACTORY = new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "edex-files");
+            thread.setDaemon(true);
+            return thread;
+        }
+    };
+
+    /**
+     * Sorted entries of one directory and the mtime they were read at, in
+     * nanoseconds
+     */
+    public static final class Listing {
+        private final String path;
+        private final long modified;
+        private final FileEntry[] entries;
+
+        Listing(String path, long modified, FileEntry[] entries) {
+            this.path = path;
+            this.modified = modified;
+            this.entries = entries;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public long getModified() {
+            return modified;
+        }
+
+        /**
+         * Entries sorted directories first, or null if the directory could
+         * not be read. Shared with the cache; do not modify.
+         */
+        public FileEntry[] getEntries() {
+            return entries;
+        }
+    }
+
+    /**
+     * Receives a listing on the lister's thread
+     */
+    public interface Callback {
+        void onListed(Listing listing);
+    }
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(THREAD_FACTORY);
+
+    private final Map<String, Listing> listings =
+        new LinkedHashMap<String, Listing>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Listing> eldest) {
+                return size() > MAX_CACHED_DIRECTORIES;
+            }
+        };
+
+    /**
+     * List a directory, blocking; served from the cache while it is unchanged
+     */
+    public Listing list(File directory) {
+        return list(directory, null);
+    }
+
+    /**
+     * List a directory, blocking, passing entries to progress in batches
+     * as they are read. A cached listing is returned without any batches.
+     */
+    public Listing list(File directory, DirectoryScanner.BatchListener progress) {
+        String path = directory.getAbsolutePath();
+        // Read before listing, so a change made meanwhile invalidates the result
+        long modified = FileEntry.modifiedNanos(path);
+        synchronized (listings) {
+            Listing cached = listings.get(path);
+            if (cached != null && cached.modified == modified && modified != 0) {
+                return cached;
+            }
+        }
+
+        Listing listing = new Listing(path, modified, readEntries(directory, progress));
+        if (listing.entries != null) {
+            synchronized (listings) {
+                listings.put(path, listing);
+            }
+        }
+        return listing;
+    }
+
+    /**
+     * List a directory on the lister's thread. Requests run in order, so
+     * the last callback is for the last directory asked for.
+     */
+    public void listAsync(File directory, Callback callback) {
+        listAsync(directory, null, callback);
+    }
+
+    /**
+     * List a directory on the lister's thread, passing batches to progress
+     * as they are read, on that thread
+     */
+    public void listAsync(final File directory, final DirectoryScanner.BatchListener progress,
+                          final Callback callback) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                callback.onListed(list(directory, progress));
+            }
+        });
+    }
+
+    /**
+     * Bring the cached listing of a directory up to date with changes to
+     * the named entries, stat-ing only those, and store the result. With
+     * null changedNames, no cached listing or too many changes, the
+     * directory is read again.
+     */
+    public Listing update(File directory, Collection<String> changedNames) {
+        String path = directory.getAbsolutePath();
+        long modified = FileEntry.modifiedNanos(path);
+        Listing cached;
+        synchronized (listings) {
+            cached = listings.get(path);
+        }
+
+        FileEntry[] entries;
+        if (changedNames == null || cached == null || cached.entries == null
+                || changedNames.size() > MAX_PATCHED_ENTRIES) {
+            entries = readEntries(directory, null);
+        } else {
+            Set<String> changed = new HashSet<>(changedNames);
+            List<FileEntry> patched = new ArrayList<>(cached.entries.length + changed.size());
+            for (FileEntry entry : cached.entries) {
+                if (!changed.contains(entry.getName())) {
+                    patched.add(entry);
+                }
+            }
+            for (String name : changed) {
+                FileEntry entry = FileEntry.statIfExists(directory, name);
+                if (entry != null) {
+                    patched.add(entry);
+                }
+            }
+            entries = patched.toArray(new FileEntry[0]);
+            Arrays.sort(entries, FileEntry.DIRECTORIES_FIRST);
+        }
+
+        Listing listing = new Listing(path, modified, entries);
+        synchronized (listings) {
+            if (entries != null) {
+                listings.put(path, listing);
+            } else {
+                listings.remove(path);
+            }
+        }
+        return listing;
+    }
+
+    /**
+     * Run update() on the lister's thread
+     */
+    public void updateAsync(final File directory, final Collection<String> changedNames,
+                            final Callback callback) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                callback.onListed(update(directory, changedNames));
+            }
+        });
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private static FileEntry[] readEntries(File directory, DirectoryScanner.BatchListener progress) {
+        List<FileEntry> scanned = DirectoryScanner.scan(directory, progress);
+        if (scanned == null) {
+            return null;
+        }
+        FileEntry[] entries = scanned.toArray(new FileEntry[0]);
+        Arrays.sort(entries, FileEntry.DIRECTORIES_FIRST);
+        return entries;
+    }
+}
@@ -0,0 +1,139 @@
+package com.edexui.android;
+
+import android.os.Build;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the entries of one directory for the Edex-UI file navigator
+ * Uses java.nio.file on API 26+, where a directory stream and one
+ * attribute read per entry replace File's per-field queries; older
+ * releases list names with File and stat each one. Entries are handed
+ * out in batches as they are read.
+ */
+public final class DirectoryScanner {
+
+    public static final int BATCH_SIZE = 256;
+
+    /**
+     * Receives entries while a directory is being read, in directory order
+     */
+    public interface BatchListener {
+        void onBatch(List<FileEntry> batch, int totalSoFar);
+    }
+
+    private DirectoryScanner() {
+    }
+
+    /**
+     * Read every entry of directory, unsorted, or return null if it cannot
+     * be read. listener may be null.
+     */
+    public static List<FileEntry> scan(File directory, BatchListener listener) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            return NioScanner.scan(directory, listener);
+        }
+        return scanLegacy(directory, listener);
+    }
+
+    /**
+     * Read entries with File.list() and one stat() each; works on every API level
+     */
+    public static List<FileEntry> scanLegacy(File directory, BatchListener listener) {
+        String[] names = directory.list();
+        if (names == null) {
+            return null;
+        }
+        List<FileEntry> entries = new ArrayList<>(names.length);
+        int batchStart = 0;
+        for (String name : names) {
+            entries.add(FileEntry.stat(directory, name));
+            batchStart = deliver(entries, batchStart, listener, false);
+        }
+        deliver(entries, batchStart, listener, true);
+        return entries;
+    }
+
+    /**
+     * Read entries with a directory stream and one attribute read each; API 26+
+     */
+    public static List<FileEntry> scanNio(File directory, BatchListener listener) {
+        return NioScanner.scan(directory, listener);
+    }
+
+    /**
+     * Pass on the entries added since batchStart once a batch is full, or
+     * whatever is left at the end; returns the new batch start
+     */
+    private static int deliver(List<FileEntry> entries, int batchStart, BatchListener listener, boolean last) {
+        int size = entries.size();
+        if (listener != null && size > batchStart && (last || size - batchStart >= BATCH_SIZE)) {
+            listener.onBatch(entries.subList(batchStart, size), size);
+            return size;
+        }
+        return batchStart;
+    }
+
+    /**
+     * Kept apart so java.nio.file is only loaded where it exists
+     */
+    private static final class NioScanner {
+
+        static List<FileEntry> scan(File directory, BatchListener listener) {
+            List<FileEntry> entries = new ArrayList<>();
+            int batchStart = 0;
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory.toPath())) {
+                for (Path path : stream) {
+                    entries.add(read(directory, path));
+                    batchStart = deliver(entries, batchStart, listener, false);
+                }
+            } catch (IOException | DirectoryIteratorException | SecurityException e) {
+                // Never hand out part of a directory as all of it; File may
+                // still list it, and batches already delivered are not repeated
+                return scanLegacy(directory, batchStart == 0 ? listener : null);
+            }
+            deliver(entries, batchStart, listener, true);
+            return entries;
+        }
+
+        private static FileEntry read(File directory, Path path) {
+            String name = path.getFileName().toString();
+            PosixFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(path, PosixFileAttributes.class);
+            } catch (IOException | UnsupportedOperationException e) {
+                // Dangling link or a file system without POSIX attributes
+                return FileEntry.stat(directory, name);
+            }
+            int permissions = 0;
+            for (PosixFilePermission permission : attributes.permissions()) {
+                permissions |= bitOf(permission);
+            }
+            return new FileEntry(name, attributes.isDirectory(), attributes.size(),
+                attributes.lastModifiedTime().toMillis(), permissions);
+        }
+
+        private static int bitOf(PosixFilePermission permission) {
+            switch (permission) {
+                case OWNER_READ: return 0400;
+                case OWNER_WRITE: return 0200;
+                case OWNER_EXECUTE: return 0100;
+                case GROUP_READ: return 040;
+                case GROUP_WRITE: return 020;
+                case GROUP_EXECUTE: return 010;
+                case OTHERS_READ: return 04;
+                case OTHERS_WRITE: return 02;
+                default: return 01;
+            }
+        }
+    }
+}
@@ -0,0 +1,361 @@
+package com.edexui.android;
+
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+import android.system.StructStat;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Disk usage analyzer for Edex-UI
+ * Walks a directory tree on a fork-join pool, one task per directory, and
+ * adds up the sizes and file counts of every subtree. Links are counted but
+ * never followed. Results are kept by path; analyzing again reuses the
+ * file totals of every directory whose mtime is unchanged, so only changed
+ * directories are listed again. A file that grows in place does not change
+ * its directory's mtime, so clearCache() forces a full walk.
+ */
+public final class DiskUsageAnalyzer {
+
+    public static final long PROGRESS_INTERVAL_MS = 200;
+
+    private static final int MAX_CACHED_TREES = 8;
+
+    private static final ThreadFactory THREAD_FACTORY = new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "edex-du");
+            thread.setDaemon(true);
+            return thread;
+        }
+    };
+
+    /**
+     * Largest subtree first
+     */
+    public static final Comparator<Usage> LARGEST_FIRST = new Comparator<Usage>() {
+        @Override
+        public int compare(Usage a, Usage b) {
+            return Long.compare(b.bytes, a.bytes);
+        }
+    };
+
+    private static DiskUsageAnalyzer instance;
+
+    /**
+     * Totals of one directory and everything below it. Subdirectories are
+     * sorted largest first. Shared with the cache; do not modify.
+     */
+    public static final class Usage {
+        private final String path;
+        private final long modified;
+        // Regular files and links directly in this directory
+        private final long ownBytes;
+        private final int ownFiles;
+        private final Usage[] children;
+        private final long bytes;
+        private final int files;
+        private final int directories;
+
+        Usage(String path, long modified, long ownBytes, int ownFiles, Usage[] children) {
+            this.path = path;
+            this.modified = modified;
+            this.ownBytes = ownBytes;
+            this.ownFiles = ownFiles;
+            this.children = children;
+            long totalBytes = ownBytes;
+            int totalFiles = ownFiles;
+            int totalDirectories = 0;
+            for (Usage child : children) {
+                totalBytes += child.bytes;
+                totalFiles += child.files;
+                totalDirectories += child.directories + 1;
+            }
+            this.bytes = totalBytes;
+            this.files = totalFiles;
+            this.directories = totalDirectories;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * Total size in bytes of the files in this subtree
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        public int getFileCount() {
+            return files;
+        }
+
+        /**
+         * Directories below this one, not counting itself
+         */
+        public int getDirectoryCount() {
+            return directories;
+        }
+
+        public Usage[] getChildren() {
+            return children;
+        }
+
+        /**
+         * Usage of a directory in this subtree, or null if it is not part of it
+         */
+        public Usage find(String path) {
+            Usage node = this;
+            while (node != null && !node.path.equals(path)) {
+                Usage next = null;
+                for (Usage child : node.children) {
+                    if (path.startsWith(child.path)
+                            && (path.length() == child.path.length() || path.charAt(child.path.length()) == '/')) {
+                        next = child;
+                        break;
+                    }
+                }
+                node = next;
+            }
+            return node;
+        }
+    }
+
+    /**
+     * Receives running totals while a tree is walked, every
+     * PROGRESS_INTERVAL_MS, on the thread running analyze()
+     */
+    public interface ProgressListener {
+        void onProgress(String path, long bytesSoFar, long filesSoFar);
+    }
+
+    /**
+     * Receives the result on the analyzer's thread; usage is null if the
+     * analysis was cancelled or the directory could not be read
+     */
+    public interface Callback {
+        void onAnalyzed(String path, Usage usage);
+    }
+
+    /**
+     * A running analysis that can be cancelled
+     */
+    public static final class Analysis {
+        private volatile boolean cancelled = false;
+        private final AtomicLong bytes = new AtomicLong();
+        private final AtomicLong files = new AtomicLong();
+
+        public void cancel() {
+            cancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(THREAD_FACTORY);
+    private final ForkJoinPool pool = new ForkJoinPool(Math.max(2, Runtime.getRuntime().availableProcessors()));
+
+    // Last complete tree per analyzed path
+    private final Map<String, Usage> trees =
+        new LinkedHashMap<String, Usage>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Usage> eldest) {
+                return size() > MAX_CACHED_TREES;
+            }
+        };
+
+    /**
+     * Get the analyzer shared by the navigator and the terminal
+     */
+    public static synchronized DiskUsageAnalyzer getInstance() {
+        if (instance == null) {
+            instance = new DiskUsageAnalyzer();
+        }
+        return instance;
+    }
+
+    /**
+     * Analyze a directory, blocking. Returns null if analysis was
+     * cancelled or the directory could not be read. progress may be null.
+     */
+    public Usage analyze(File directory, Analysis analysis, ProgressListener progress) {
+        String path = directory.getAbsolutePath();
+        if (!directory.isDirectory() || !directory.canRead()) {
+            return null;
+        }
+        ForkJoinTask<Usage> task = pool.submit(
+            new UsageTask(path, FileEntry.modifiedNanos(path), getCached(path), analysis));
+        Usage usage;
+        try {
+            while (true) {
+                try {
+                    usage = task.get(PROGRESS_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                    break;
+                } catch (TimeoutException e) {
+                    if (progress != null) {
+                        progress.onProgress(path, analysis.bytes.get(), analysis.files.get());
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            analysis.cancel();
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            return null;
+        }
+        if (analysis.isCancelled() || usage == null) {
+            return null;
+        }
+        synchronized (trees) {
+            trees.put(path, usage);
+        }
+        return usage;
+    }
+
+    /**
+     * Analyze a directory on the analyzer's thread. Requests run one at a
+     * time, in order; the returned Analysis cancels this one.
+     */
+    public Analysis analyzeAsync(final File directory, final ProgressListener progress, final Callback callback) {
+        final Analysis analysis = new Analysis();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Usage usage = analysis.isCancelled() ? null : analyze(directory, analysis, progress);
+                callback.onAnalyzed(directory.getAbsolutePath(), usage);
+            }
+        });
+        return analysis;
+    }
+
+    /**
+     * The last result covering a directory, from its own analysis or that
+     * of a parent, or null. May be out of date.
+     */
+    public Usage getCached(String path) {
+        synchronized (trees) {
+            Usage best = null;
+            for (Usage tree : trees.values()) {
+                Usage found = tree.find(path);
+                // A later analysis of a subtree is more recent than its parent's
+                if (found != null && (best == null || tree.path.length() > best.path.length())) {
+                    best = found;
+                }
+            }
+            return best;
+        }
+    }
+
+    /**
+     * Forget every result, so the next analysis reads every file again
+     */
+    public void clearCache() {
+        synchronized (trees) {
+            trees.clear();
+        }
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+        pool.shutdownNow();
+    }
+
+    /**
+     * Adds up one directory's files, or reuses the previous totals if its
+     * mtime is unchanged, and forks a task for each subdirectory
+     */
+    private static final class UsageTask extends RecursiveTask<Usage> {
+        private static final long serialVersionUID = 1L;
+
+        private final String path;
+        private final long modified;
+        private final Usage previous;
+        private final Analysis analysis;
+
+        UsageTask(String path, long modified, Usage previous, Analysis analysis) {
+            this.path = path;
+            this.modified = modified;
+            this.previous = previous;
+            this.analysis = analysis;
+        }
+
+        @Override
+        protected Usage compute() {
+            if (analysis.isCancelled()) {
+                return null;
+            }
+            String prefix = path.endsWith("/") ? path : path + "/";
+            long ownBytes = 0;
+            int ownFiles = 0;
+            List<UsageTask> tasks = new ArrayList<>();
+
+            if (previous != null && modified != 0 && previous.modified == modified) {
+                // Same entries as last time; only subdirectories can have changed
+                ownBytes = previous.ownBytes;
+                ownFiles = previous.ownFiles;
+                for (Usage child : previous.children) {
+                    tasks.add(new UsageTask(child.path, FileEntry.modifiedNanos(child.path), child, analysis));
+                }
+            } else {
+                String[] names = new File(path).list();
+                if (names == null) {
+                    names = new String[0];
+                }
+                for (String name : names) {
+                    String childPath = prefix + name;
+                    StructStat stat;
+                    try {
+                        stat = Os.lstat(childPath);
+                    } catch (ErrnoException e) {
+                        // Removed while walking
+                        continue;
+                    }
+                    if (OsConstants.S_ISDIR(stat.st_mode)) {
+                        Usage known = previous != null ? previous.find(childPath) : null;
+                        tasks.add(new UsageTask(childPath, FileEntry.modifiedNanos(stat), known, analysis));
+                    } else {
+                        ownBytes += stat.st_size;
+                        ownFiles++;
+                    }
+                }
+            }
+            analysis.bytes.addAndGet(ownBytes);
+            analysis.files.addAndGet(ownFiles);
+
+            invokeAll(tasks);
+            List<Usage> children = new ArrayList<>(tasks.size());
+            for (UsageTask task : tasks) {
+                Usage child = task.join();
+                if (child == null) {
+                    // Cancelled below here
+                    return null;
+                }
+                children.add(child);
+            }
+            Usage[] sorted = children.toArray(new Usage[0]);
+            Arrays.sort(sorted, LARGEST_FIRST);
+            return new Usage(path, modified, ownBytes, ownFiles, sorted);
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.edexui.android;
+
+import android.os.Build;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+import android.system.StructStat;
+
+import java.io.File;
+import java.util.Comparator;
+
+/**
+ * One directory entry for the Edex-UI file navigator
+ * Holds everything the navigator shows about a file, read with a single
+ * stat() so listing and sorting never go back to the file system.
+ */
+public final class FileEntry {
+
+    // Permission bits of st_mode, owner first
+    private static final int MODE_PERMISSIONS = 0777;
+
+    /**
+     * Directories first, then by name ignoring case
+     */
+    public static final Comparator<FileEntry> DIRECTORIES_FIRST = new Comparator<FileEntry>() {
+        @Override
+        public int compare(FileEntry a, FileEntry b) {
+            if (a.directory != b.directory) {
+                return a.directory ? -1 : 1;
+            }
+            return String.CASE_INSENSITIVE_ORDER.compare(a.name, b.name);
+        }
+    };
+
+    private final String name;
+    private final boolean directory;
+    private final long size;
+    private final long modified;
+    private final int permissions;
+
+    public FileEntry(String name, boolean directory, long size, long modified, int permissions) {
+        this.name = name;
+        this.directory = directory;
+        this.size = size;
+        this.modified = modified;
+        this.permissions = permissions;
+    }
+
+    /**
+     * Read an entry of directory with one stat(); falls back to File's
+     * separate queries if stat fails, e.g. for a dangling link
+     */
+    public static FileEntry stat(File directory, String name) {
+        File file = new File(directory, name);
+        try {
+            return fromStat(name, Os.stat(file.getPath()));
+        } catch (ErrnoException e) {
+            return fromFile(name, file);
+        }
+    }
+
+    /**
+     * Like stat(), but returns null if the entry no longer exists
+     */
+    public static FileEntry statIfExists(File directory, String name) {
+        File file = new File(directory, name);
+        try {
+            return fromStat(name, Os.stat(file.getPath()));
+        } catch (ErrnoException e) {
+            if (e.errno != OsConstants.ENOENT) {
+                return fromFile(name, file);
+            }
+        }
+        // A dangling link is still an entry of the directory
+        try {
+            Os.lstat(file.getPath());
+            return fromFile(name, file);
+        } catch (ErrnoException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Mtime of path as given by modifiedNanos(StructStat), or 0 if it
+     * cannot be read
+     */
+    static long modifiedNanos(String path) {
+        try {
+            return modifiedNanos(Os.stat(path));
+        } catch (ErrnoException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Mtime in nanoseconds, so a directory changed within the same second
+     * as an earlier read is still seen as changed. Before API 27 StructStat
+     * only has whole seconds.
+     */
+    static long modifiedNanos(StructStat stat) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O_MR1 && stat.st_mtim != null) {
+            return stat.st_mtim.tv_sec * 1000000000L + stat.st_mtim.tv_nsec;
+        }
+        return stat.st_mtime * 1000000000L;
+    }
+
+    private static FileEntry fromStat(String name, StructStat stat) {
+        return new FileEntry(name, OsConstants.S_ISDIR(stat.st_mode), stat.st_size,
+            stat.st_mtime * 1000, stat.st_mode & MODE_PERMISSIONS);
+    }
+
+    private static FileEntry fromFile(String name, File file) {
+        int permissions = (file.canRead() ? 0400 : 0)
+            | (file.canWrite() ? 0200 : 0)
+            | (file.canExecute() ? 0100 : 0);
+        return new FileEntry(name, file.isDirectory(), file.length(), file.lastModified(), permissions);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isDirectory() {
+        return directory;
+    }
+
+    /**
+     * Size in bytes; not meaningful for directories
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Last modified time in milliseconds
+     */
+    public long getModified() {
+        return modified;
+    }
+
+    /**
+     * Permission bits in octal, as in st_mode
+     */
+    public int getPermissions() {
+        return permissions;
+    }
+
+    public boolean isHidden() {
+        return name.startsWith(".");
+    }
+
+    /**
+     * Permissions as ls shows them, e.g. "rwxr-x---"
+     */
+    public String getPermissionString() {
+        char[] text = new char[9];
+        String letters = "rwx";
+        for (int i = 0; i < 9; i++) {
+            boolean set = (permissions & (0400 >> i)) != 0;
+            text[i] = set ? letters.charAt(i % 3) : '-';
+        }
+        return new String(text);
+    }
+}
@@ -0,0 +1,597 @@
+package com.edexui.android;
+
+import android.content.Context;
+import android.os.Environment;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Filename index of external storage for Edex-UI
+ * A background crawl walks the tree on a fork-join pool, one task per
+ * directory. Names are stored grouped by directory with a trigram index
+ * over them, so a substring query only checks names sharing its rarest
+ * trigram. The index is saved to app storage and refreshed by re-listing
+ * only directories whose mtime changed.
+ */
+public final class FileIndex {
+
+    public static final int DEFAULT_LIMIT = 200;
+
+    private static final String TAG = "FileIndex";
+    private static final String INDEX_FILE_NAME = "file_index";
+    private static final int FORMAT_VERSION = 2;
+    // Symlinked directories are not crawled; this only bounds deep trees
+    private static final int MAX_DEPTH = 32;
+
+    private static final ThreadFactory THREAD_FACTORY = new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "edex-index");
+            thread.setDaemon(true);
+            return thread;
+        }
+    };
+
+    private static FileIndex instance;
+
+    /**
+     * Receives query results on the index's query thread
+     */
+    public interface SearchCallback {
+        void onResults(String query, List<Result> results);
+    }
+
+    /**
+     * One matching file or directory
+     */
+    public static final class Result {
+        private final String path;
+        private final boolean directory;
+
+        Result(String path, boolean directory) {
+            this.path = path;
+            this.directory = directory;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public boolean isDirectory() {
+            return directory;
+        }
+    }
+
+    /**
+     * Immutable index contents, replaced whole after each crawl.
+     * Entries of directory d are names[starts[d]] up to names[starts[d + 1]].
+     */
+    private static final class Snapshot {
+        final String[] directories;
+        final long[] modified;
+        final int[] starts;
+        final String[] names;
+        final BitSet subdirectories;
+        final Map<Long, int[]> trigrams;
+        // Directory of each entry, derived from starts
+        final int[] parents;
+
+        Snapshot(String[] directories, long[] modified, int[] starts, String[] names,
+                 BitSet subdirectories, Map<Long, int[]> trigrams) {
+            this.directories = directories;
+            this.modified = modified;
+            this.starts = starts;
+            this.names = names;
+            this.subdirectories = subdirectories;
+            this.trigrams = trigrams;
+            this.parents = new int[names.length];
+            for (int d = 0; d < directories.length; d++) {
+                Arrays.fill(parents, starts[d], starts[d + 1], d);
+            }
+        }
+
+        String pathOf(int entry) {
+            String directory = directories[parents[entry]];
+            return directory.endsWith("/") ? directory + names[entry] : directory + "/" + names[entry];
+        }
+    }
+
+    /**
+     * One directory as read by the crawl
+     */
+    private static final class Node {
+        String path;
+        long modified;
+        String[] names;
+        boolean[] subdirectory;
+        Node[] children;
+    }
+
+    private final File root;
+    private final File indexFile;
+    private final ExecutorService crawlExecutor = Executors.newSingleThreadExecutor(THREAD_FACTORY);
+    private final ExecutorService queryExecutor = Executors.newSingleThreadExecutor(THREAD_FACTORY);
+
+    private volatile Snapshot snapshot;
+    private volatile boolean crawling = false;
+    // System.nanoTime() when the last refresh was started, 0 before the first
+    private volatile long refreshedAt = 0;
+
+    /**
+     * Create an index of root saved in indexFile, or kept in memory only if
+     * indexFile is null. Call refresh() to load and crawl.
+     */
+    public FileIndex(File root, File indexFile) {
+        this.root = root;
+        this.indexFile = indexFile;
+    }
+
+    /**
+     * Get the index of external storage, creating it and starting a
+     * refresh on first use
+     */
+    public static synchronized FileIndex getInstance(Context context) {
+        if (instance == null) {
+            instance = new FileIndex(Environment.getExternalStorageDirectory(),
+                new File(context.getApplicationContext().getFilesDir(), INDEX_FILE_NAME));
+            instance.refresh();
+        }
+        return instance;
+    }
+
+    /**
+     * Get the index if something has created it, or null
+     */
+    public static synchronized FileIndex peekInstance() {
+        return instance;
+    }
+
+    /**
+     * Load the saved index if none is held yet, then crawl for changes
+     */
+    public void refresh() {
+        crawling = true;
+        refreshedAt = System.nanoTime();
+        crawlExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (snapshot == null && indexFile != null && indexFile.exists()) {
+                        snapshot = read(indexFile);
+                    }
+                    long start = System.nanoTime();
+                    Snapshot updated = crawl(snapshot);
+                    snapshot = updated;
+                    Log.d(TAG, "Indexed " + updated.names.length + " entries in "
+                        + ((System.nanoTime() - start) / 1000000) + " ms");
+                    if (indexFile != null) {
+                        write(updated, indexFile);
+                    }
+                } finally {
+                    crawling = false;
+                }
+            }
+        });
+    }
+
+    /**
+     * Refresh unless a crawl is running or the last one started less than
+     * minIntervalMs ago
+     */
+    public void refreshIfStale(long minIntervalMs) {
+        if (crawling) {
+            return;
+        }
+        if (refreshedAt == 0 || System.nanoTime() - refreshedAt >= TimeUnit.MILLISECONDS.toNanos(minIntervalMs)) {
+            refresh();
+        }
+    }
+
+    /**
+     * Whether the index has been loaded or built at least once
+     */
+    public boolean isReady() {
+        return snapshot != null;
+    }
+
+    /**
+     * Whether a crawl is in progress
+     */
+    public boolean isCrawling() {
+        return crawling;
+    }
+
+    /**
+     * Number of files and directories indexed
+     */
+    public int size() {
+        Snapshot current = snapshot;
+        return current != null ? current.names.length : 0;
+    }
+
+    /**
+     * Find entries whose name contains query, ignoring case, in directory
+     * order. At most limit results are returned.
+     */
+    public List<Result> search(String query, int limit) {
+        List<Result> results = new ArrayList<>();
+        Snapshot current = snapshot;
+        if (current == null || query.isEmpty()) {
+            return results;
+        }
+
+        if (query.length() < 3) {
+            // Too short for a trigram; the names are scanned in place
+            for (int i = 0; i < current.names.length && results.size() < limit; i++) {
+                if (containsIgnoreCase(current.names[i], query)) {
+                    results.add(new Result(current.pathOf(i), current.subdirectories.get(i)));
+                }
+            }
+            return results;
+        }
+
+        // Every match contains every trigram of the query; check the rarest
+        int[] candidates = null;
+        for (int i = 0; i + 3 <= query.length(); i++) {
+            int[] postings = current.trigrams.get(trigramAt(query, i));
+            if (postings == null) {
+                return results;
+            }
+            if (candidates == null || postings.length < candidates.length) {
+                candidates = postings;
+            }
+        }
+        for (int i = 0; i < candidates.length && results.size() < limit; i++) {
+            int entry = candidates[i];
+            if (containsIgnoreCase(current.names[entry], query)) {
+                results.add(new Result(current.pathOf(entry), current.subdirectories.get(entry)));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Search on the index's query thread, which never waits for a crawl
+     */
+    public void searchAsync(final String query, final int limit, final SearchCallback callback) {
+        queryExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                callback.onResults(query, search(query, limit));
+            }
+        });
+    }
+
+    public void shutdown() {
+        crawlExecutor.shutdownNow();
+        queryExecutor.shutdownNow();
+    }
+
+    private Snapshot crawl(Snapshot previous) {
+        Map<String, Integer> previousDirectories = new HashMap<>();
+        if (previous != null) {
+            for (int d = 0; d < previous.directories.length; d++) {
+                previousDirectories.put(previous.directories[d], d);
+            }
+        }
+        ForkJoinPool pool = new ForkJoinPool(Math.max(2, Runtime.getRuntime().availableProcessors()));
+        try {
+            Node tree = pool.invoke(new CrawlTask(root.getAbsolutePath(), 0, previous, previousDirectories));
+            return flatten(tree);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Reads one directory, reusing the previous names if its mtime is
+     * unchanged, and forks a task for each subdirectory
+     */
+    private static final class CrawlTask extends RecursiveTask<Node> {
+        private static final long serialVersionUID = 1L;
+
+        private final String path;
+        private final int depth;
+        private final Snapshot previous;
+        private final Map<String, Integer> previousDirectories;
+
+        CrawlTask(String path, int depth, Snapshot previous, Map<String, Integer> previousDirectories) {
+            this.path = path;
+            this.depth = depth;
+            this.previous = previous;
+            this.previousDirectories = previousDirectories;
+        }
+
+        @Override
+        protected Node compute() {
+            Node node = new Node();
+            node.path = path;
+            File directory = new File(path);
+            node.modified = FileEntry.modifiedNanos(path);
+
+            Integer known = previousDirectories.get(path);
+            if (known != null && node.modified != 0 && previous.modified[known] == node.modified) {
+                int start = previous.starts[known];
+                int end = previous.starts[known + 1];
+                node.names = Arrays.copyOfRange(previous.names, start, end);
+                node.subdirectory = new boolean[end - start];
+                for (int i = start; i < end; i++) {
+                    node.subdirectory[i - start] = previous.subdirectories.get(i);
+                }
+            } else {
+                List<FileEntry> entries = DirectoryScanner.scan(directory, null);
+                int count = entries != null ? entries.size() : 0;
+                node.names = new String[count];
+                node.subdirectory = new boolean[count];
+                for (int i = 0; i < count; i++) {
+                    node.names[i] = entries.get(i).getName();
+                    node.subdirectory[i] = entries.get(i).isDirectory();
+                }
+            }
+
+            List<CrawlTask> tasks = new ArrayList<>();
+            if (depth < MAX_DEPTH) {
+                String prefix = path.endsWith("/") ? path : path + "/";
+                for (int i = 0; i < node.names.length; i++) {
+                    String childPath = prefix + node.names[i];
+                    if (node.subdirectory[i] && !isSymlink(childPath)) {
+                        tasks.add(new CrawlTask(childPath, depth + 1, previous, previousDirectories));
+                    }
+                }
+            }
+            invokeAll(tasks);
+            node.children = new Node[tasks.size()];
+            for (int i = 0; i < node.children.length; i++) {
+                node.children[i] = tasks.get(i).join();
+            }
+            return node;
+        }
+
+        /**
+         * Whether path is a symlink, which is listed but not crawled: its
+         * target is indexed under its real path, and a link to a parent
+         * would otherwise be walked again at every level
+         */
+        private static boolean isSymlink(String path) {
+            try {
+                return OsConstants.S_ISLNK(Os.lstat(path).st_mode);
+            } catch (ErrnoException e) {
+                // Removed since it was listed
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Lay the crawled tree out as arrays, each directory's names together
+     */
+    private static Snapshot flatten(Node tree) {
+        List<String> directories = new ArrayList<>();
+        List<Long> modified = new ArrayList<>();
+        List<Integer> starts = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        BitSet subdirectories = new BitSet();
+
+        List<Node> pending = new ArrayList<>();
+        pending.add(tree);
+        while (!pending.isEmpty()) {
+            Node node = pending.remove(pending.size() - 1);
+            directories.add(node.path);
+            modified.add(node.modified);
+            starts.add(names.size());
+            for (int i = 0; i < node.names.length; i++) {
+                if (node.subdirectory[i]) {
+                    subdirectories.set(names.size());
+                }
+                names.add(node.names[i]);
+            }
+            for (int i = node.children.length - 1; i >= 0; i--) {
+                pending.add(node.children[i]);
+            }
+        }
+
+        int directoryCount = directories.size();
+        long[] modifiedArray = new long[directoryCount];
+        int[] startArray = new int[directoryCount + 1];
+        for (int d = 0; d < directoryCount; d++) {
+            modifiedArray[d] = modified.get(d);
+            startArray[d] = starts.get(d);
+        }
+        startArray[directoryCount] = names.size();
+        String[] nameArray = names.toArray(new String[0]);
+        return new Snapshot(directories.toArray(new String[0]), modifiedArray, startArray,
+            nameArray, subdirectories, buildTrigrams(nameArray));
+    }
+
+    private static Map<Long, int[]> buildTrigrams(String[] names) {
+        Map<Long, IntList> lists = new HashMap<>();
+        for (int entry = 0; entry < names.length; entry++) {
+            String name = names[entry];
+            for (int i = 0; i + 3 <= name.length(); i++) {
+                Long key = trigramAt(name, i);
+                IntList list = lists.get(key);
+                if (list == null) {
+                    list = new IntList();
+                    lists.put(key, list);
+                }
+                // A trigram repeated within one name is listed once
+                list.addIfNotLast(entry);
+            }
+        }
+        Map<Long, int[]> trigrams = new HashMap<>(lists.size() * 2);
+        for (Map.Entry<Long, IntList> list : lists.entrySet()) {
+            trigrams.put(list.getKey(), list.getValue().toArray());
+        }
+        return trigrams;
+    }
+
+    private static long trigramAt(String text, int index) {
+        return ((long) Character.toLowerCase(text.charAt(index)) << 32)
+            | ((long) Character.toLowerCase(text.charAt(index + 1)) << 16)
+            | Character.toLowerCase(text.charAt(index + 2));
+    }
+
+    private static boolean containsIgnoreCase(String text, String query) {
+        int last = text.length() - query.length();
+        char first = Character.toLowerCase(query.charAt(0));
+        for (int i = 0; i <= last; i++) {
+            // Cheap first-char test before the full comparison
+            if (Character.toLowerCase(text.charAt(i)) == first
+                    && text.regionMatches(true, i, query, 0, query.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Save the index, writing a temporary file first so a crash leaves the
+     * old one intact. Posting lists are delta-encoded as varints.
+     */
+    private static void write(Snapshot index, File file) {
+        File temp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(index.directories.length);
+            for (int d = 0; d < index.directories.length; d++) {
+                out.writeUTF(index.directories[d]);
+                out.writeLong(index.modified[d]);
+                out.writeInt(index.starts[d]);
+            }
+            out.writeInt(index.names.length);
+            for (int i = 0; i < index.names.length; i++) {
+                out.writeUTF(index.names[i]);
+                out.writeBoolean(index.subdirectories.get(i));
+            }
+            out.writeInt(index.trigrams.size());
+            for (Map.Entry<Long, int[]> trigram : index.trigrams.entrySet()) {
+                int[] postings = trigram.getValue();
+                out.writeLong(trigram.getKey());
+                writeVarInt(out, postings.length);
+                int previous = 0;
+                for (int entry : postings) {
+                    writeVarInt(out, entry - previous);
+                    previous = entry;
+                }
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to save index", e);
+            temp.delete();
+            return;
+        }
+        if (!temp.renameTo(file)) {
+            Log.w(TAG, "Unable to replace index file");
+            temp.delete();
+        }
+    }
+
+    private static Snapshot read(File file) {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != FORMAT_VERSION) {
+                return null;
+            }
+            int directoryCount = in.readInt();
+            String[] directories = new String[directoryCount];
+            long[] modified = new long[directoryCount];
+            int[] starts = new int[directoryCount + 1];
+            for (int d = 0; d < directoryCount; d++) {
+                directories[d] = in.readUTF();
+                modified[d] = in.readLong();
+                starts[d] = in.readInt();
+            }
+            int nameCount = in.readInt();
+            starts[directoryCount] = nameCount;
+            String[] names = new String[nameCount];
+            BitSet subdirectories = new BitSet(nameCount);
+            for (int i = 0; i < nameCount; i++) {
+                names[i] = in.readUTF();
+                if (in.readBoolean()) {
+                    subdirectories.set(i);
+                }
+            }
+            int trigramCount = in.readInt();
+            Map<Long, int[]> trigrams = new HashMap<>(trigramCount * 2);
+            for (int t = 0; t < trigramCount; t++) {
+                long key = in.readLong();
+                int[] postings = new int[readVarInt(in)];
+                int previous = 0;
+                for (int i = 0; i < postings.length; i++) {
+                    previous += readVarInt(in);
+                    postings[i] = previous;
+                }
+                trigrams.put(key, postings);
+            }
+            return new Snapshot(directories, modified, starts, names, subdirectories, trigrams);
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Discarding unreadable index", e);
+            return null;
+        }
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            out.writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    /**
+     * Growable int array for building posting lists without boxing
+     */
+    private static final class IntList {
+        private int[] values = new int[4];
+        private int size = 0;
+
+        void addIfNotLast(int value) {
+            if (size > 0 && values[size - 1] == value) {
+                return;
+            }
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.edexui.android;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Recycling adapter for the file navigator
+ * Formats a row only when it is bound, so row text scales with the visible
+ * window rather than the size of the directory. Changes to the directory
+ * shown are diffed off the main thread by ListAdapter, so only rows that
+ * changed are rebound and the scroll position is kept.
+ */
+public class FileListAdapter extends ListAdapter<FileEntry, FileListAdapter.ViewHolder> {
+
+    // Stands for the ".." row, compared by identity
+    private static final FileEntry PARENT = new FileEntry("..", true, -1, 0, 0);
+
+    private static final DiffUtil.ItemCallback<FileEntry> DIFF_CALLBACK =
+        new DiffUtil.ItemCallback<FileEntry>() {
+            @Override
+            public boolean areItemsTheSame(@NonNull FileEntry oldItem, @NonNull FileEntry newItem) {
+                if (oldItem == PARENT || newItem == PARENT) {
+                    return oldItem == newItem;
+                }
+                return oldItem.getName().equals(newItem.getName());
+            }
+
+            @Override
+            public boolean areContentsTheSame(@NonNull FileEntry oldItem, @NonNull FileEntry newItem) {
+                // Only what the row shows
+                return oldItem.isDirectory() == newItem.isDirectory()
+                    && oldItem.getSize() == newItem.getSize();
+            }
+        };
+
+    /**
+     * Receives taps on rows
+     */
+    public interface OnEntryClickListener {
+        void onParentClicked();
+        void onEntryClicked(FileEntry entry);
+
+        /**
+         * Returns true if the long press was handled; view is the row, e.g.
+         * to anchor a menu
+         */
+        boolean onEntryLongClicked(View view, FileEntry entry);
+    }
+
+    private final OnEntryClickListener clickListener;
+    private final StringBuilder rowBuilder = new StringBuilder(64);
+    private boolean showParent = false;
+
+    public FileListAdapter(OnEntryClickListener clickListener) {
+        super(DIFF_CALLBACK);
+        this.clickListener = clickListener;
+    }
+
+    /**
+     * Show a new directory, replacing the list without diffing it against
+     * the old one
+     */
+    public void setEntries(FileEntry[] entries, boolean showParent) {
+        this.showParent = showParent;
+        // Submitting null first drops any diff in progress and skips diffing
+        submitList(null);
+        submitList(toRows(entries));
+    }
+
+    /**
+     * Replace the entries of the directory already shown, e.g. after it
+     * changed. Only the rows that differ are updated.
+     */
+    public void updateEntries(FileEntry[] entries) {
+        submitList(toRows(entries));
+    }
+
+    private List<FileEntry> toRows(FileEntry[] entries) {
+        List<FileEntry> rows = new ArrayList<>(entries.length + 1);
+        if (showParent) {
+            rows.add(PARENT);
+        }
+        Collections.addAll(rows, entries);
+        return rows;
+    }
+
+    @NonNull
+    @Override
+    public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext())
+            .inflate(R.layout.item_file, parent, false);
+        final ViewHolder holder = new ViewHolder(view);
+        view.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                int position = holder.getBindingAdapterPosition();
+                if (position == RecyclerView.NO_POSITION) {
+                    return;
+                }
+                FileEntry entry = getEntry(position);
+                if (entry == null) {
+                    clickListener.onParentClicked();
+                } else {
+                    clickListener.onEntryClicked(entry);
+                }
+            }
+        });
+        view.setOnLongClickListener(new View.OnLongClickListener() {
+            @Override
+            public boolean onLongClick(View v) {
+                int position = holder.getBindingAdapterPosition();
+                if (position == RecyclerView.NO_POSITION) {
+                    return false;
+                }
+                FileEntry entry = getEntry(position);
+                return entry != null && clickListener.onEntryLongClicked(v, entry);
+            }
+        });
+        return holder;
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
+        FileEntry entry = getEntry(position);
+        StringBuilder out = rowBuilder;
+        out.setLength(0);
+        if (entry == null) {
+            out.append("[DIR]  ..");
+        } else if (entry.isDirectory()) {
+            out.append("[DIR]  ").append(entry.getName());
+        } else {
+            out.append("[FILE] ").append(entry.getName());
+            // Search results carry no size
+            if (entry.getSize() >= 0) {
+                out.append(" (").append(formatFileSize(entry.getSize())).append(')');
+            }
+        }
+        holder.text.setText(out.toString());
+    }
+
+    /**
+     * Entry at an adapter position, or null for the parent row
+     */
+    private FileEntry getEntry(int position) {
+        FileEntry entry = getItem(position);
+        return entry == PARENT ? null : entry;
+    }
+
+    /**
+     * Format file size to human-readable format
+     */
+    private static String formatFileSize(long bytes) {
+        if (bytes < 1024) return bytes + " B";
+        int exp = (int) (Math.log(bytes) / Math.log(1024));
+        String pre = "KMGTPE".charAt(exp - 1) + "";
+        return String.format(Locale.getDefault(), "%.1f %sB",
+            bytes / Math.pow(1024, exp), pre);
+    }
+
+    static class ViewHolder extends RecyclerView.ViewHolder {
+        final TextView text;
+
+        ViewHolder(View itemView) {
+            super(itemView);
+            text = (TextView) itemView;
+        }
+    }
+}
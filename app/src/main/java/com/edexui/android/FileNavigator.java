@@ -1,22 +1,92 @@
 package com.edexui.android;
 
 import android.os.Environment;
+import android.os.FileObserver;
+import android.os.Handler;
+import android.os.Looper;
 
 import java.io.File;
 import java.text.SimpleDateFormat;
-import java.util.Arrays;
-import java.util.Comparator;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * File system navigator for Edex-UI
- * Provides directory listing and file information
+ * Provides directory listing and file information. Listings are read by a
+ * DirectoryLister and can be loaded off the main thread; a loaded directory
+ * is then watched, and changes to it are delivered as fresh listings.
  */
 public class FileNavigator {
 
+    /**
+     * Receives a listing on the main thread, after progress reports while
+     * a large directory is still being read
+     */
+    public interface ListingCallback {
+        /**
+         * entries are those read so far, in directory order with hidden
+         * files left out; the sorted listing follows in onListingReady
+         */
+        void onListingProgress(String path, FileEntry[] entries);
+
+        /**
+         * entries are sorted with hidden files already left out, or null
+         * if the directory could not be read
+         */
+        void onListingReady(String path, FileEntry[] entries);
+    }
+
+    /**
+     * Receives disk usage of a directory on the main thread, after
+     * running totals while it is walked
+     */
+    public interface UsageCallback {
+        void onUsageProgress(String path, long bytesSoFar, long filesSoFar);
+
+        /**
+         * usage is null if the analysis was cancelled or the directory
+         * could not be read
+         */
+        void onUsageReady(String path, DiskUsageAnalyzer.Usage usage);
+    }
+
+    /**
+     * Receives progress and the outcome of a copy, move or delete on the
+     * main thread
+     */
+    public interface OperationCallback {
+        void onOperationProgress(FileOperations.Operation operation);
+        void onOperationFinished(FileOperations.Operation operation);
+    }
+
+    // Subdirectories listed by formatUsage()
+    private static final int USAGE_TOP_ENTRIES = 5;
+
+    // Changes arriving within this window are applied together
+    private static final long COALESCE_MS = 250;
+
+    private static final int WATCH_EVENTS = FileObserver.CREATE | FileObserver.DELETE
+        | FileObserver.MOVED_FROM | FileObserver.MOVED_TO | FileObserver.CLOSE_WRITE
+        | FileObserver.MODIFY | FileObserver.ATTRIB
+        | FileObserver.DELETE_SELF | FileObserver.MOVE_SELF;
+
+    private static final int SELF_EVENTS = FileObserver.DELETE_SELF | FileObserver.MOVE_SELF;
+
+    private final DirectoryLister lister = new DirectoryLister();
+    private Handler mainHandler;
+    private DirectoryWatcher watcher;
+    // Files picked with copy or cut, waiting to be pasted
+    private final List<File> clipboard = new ArrayList<>();
+    private boolean clipboardMove = false;
+    // The move of the clipboard in progress, which keeps it until done
+    private FileOperations.Operation clipboardOperation;
     private File currentDirectory;
-    private boolean showHidden = false;
+    private volatile boolean showHidden = false;
 
     public FileNavigator() {
         if (Environment.getExternalStorageState().equals(Environment.MEDIA_MOUNTED)) {
@@ -83,58 +153,314 @@ public class FileNavigator {
     }
 
     /**
-     * Get directory listing as formatted string
+     * Get the entries of the current directory, sorted directories first,
+     * or null if it cannot be read. Blocks while the directory is listed.
+     */
+    public FileEntry[] getEntries() {
+        return lister.list(currentDirectory).getEntries();
+    }
+
+    /**
+     * Get directory listing as formatted string.
+     * Blocks while the directory is listed; see loadDirectoryListing().
      */
     public String getDirectoryListing() {
-        StringBuilder content = new StringBuilder();
+        return formatListing(lister.list(currentDirectory));
+    }
 
-        try {
-            File[] files = currentDirectory.listFiles();
+    /**
+     * List the current directory on a background thread, then deliver it
+     * on the main thread. The directory is watched afterwards, and each
+     * change delivers an updated listing to the same callback until
+     * another directory is loaded or stopWatching() is called. Must be
+     * called on the main thread.
+     */
+    public void loadDirectoryListing(final ListingCallback callback) {
+        if (mainHandler == null) {
+            mainHandler = new Handler(Looper.getMainLooper());
+        }
+        final String path = currentDirectory.getAbsolutePath();
+        final boolean includeHidden = showHidden;
+        DirectoryScanner.BatchListener progress = new DirectoryScanner.BatchListener() {
+            // Visible entries read so far, on the lister's thread
+            private final List<FileEntry> visible = new ArrayList<>();
+            // Whether a progress report is waiting for the main thread
+            private final AtomicBoolean posted = new AtomicBoolean();
 
-            if (files == null) {
-                return "Unable to list files (permission denied)";
+            @Override
+            public void onBatch(List<FileEntry> batch, int totalSoFar) {
+                for (FileEntry entry : batch) {
+                    if (includeHidden || !entry.isHidden()) {
+                        visible.add(entry);
+                    }
+                }
+                // Small directories finish before progress is worth showing, and
+                // a busy main thread gets one snapshot at a time
+                if (totalSoFar < DirectoryScanner.BATCH_SIZE || posted.getAndSet(true)) {
+                    return;
+                }
+                final FileEntry[] entries = visible.toArray(new FileEntry[0]);
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        posted.set(false);
+                        callback.onListingProgress(path, entries);
+                    }
+                });
+            }
+        };
+        lister.listAsync(currentDirectory, progress, new DirectoryLister.Callback() {
+            @Override
+            public void onListed(final DirectoryLister.Listing listing) {
+                final FileEntry[] entries = filterHidden(listing.getEntries());
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onListingReady(listing.getPath(), entries);
+                    }
+                });
             }
+        });
+        startWatching(currentDirectory, callback);
+    }
 
-            // Sort files: directories first, then by name
-            Arrays.sort(files, new Comparator<File>() {
-                @Override
-                public int compare(File f1, File f2) {
-                    if (f1.isDirectory() && !f2.isDirectory()) {
-                        return -1;
-                    } else if (!f1.isDirectory() && f2.isDirectory()) {
-                        return 1;
-                    } else {
-                        return f1.getName().compareToIgnoreCase(f2.getName());
+    private void startWatching(File directory, ListingCallback callback) {
+        stopWatching();
+        watcher = new DirectoryWatcher(directory, callback);
+        watcher.startWatching();
+    }
+
+    /**
+     * Stop delivering changes to the last loaded directory, e.g. while the
+     * navigator is not visible. Must be called on the main thread.
+     */
+    public void stopWatching() {
+        if (watcher != null) {
+            watcher.stopWatching();
+            watcher = null;
+        }
+    }
+
+    /**
+     * Add up the size of a directory in the current one on a background
+     * thread. Must be called on the main thread; the returned Analysis
+     * cancels it.
+     */
+    public DiskUsageAnalyzer.Analysis analyzeUsage(String fileName, final UsageCallback callback) {
+        if (mainHandler == null) {
+            mainHandler = new Handler(Looper.getMainLooper());
+        }
+        DiskUsageAnalyzer.ProgressListener progress = new DiskUsageAnalyzer.ProgressListener() {
+            @Override
+            public void onProgress(final String path, final long bytesSoFar, final long filesSoFar) {
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onUsageProgress(path, bytesSoFar, filesSoFar);
                     }
+                });
+            }
+        };
+        return DiskUsageAnalyzer.getInstance().analyzeAsync(new File(currentDirectory, fileName), progress,
+            new DiskUsageAnalyzer.Callback() {
+                @Override
+                public void onAnalyzed(final String path, final DiskUsageAnalyzer.Usage usage) {
+                    mainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            callback.onUsageReady(path, usage);
+                        }
+                    });
                 }
             });
+    }
 
-            // Add parent directory option if not at root
-            if (currentDirectory.getParent() != null) {
-                content.append("[DIR]  ..\n");
-            }
+    /**
+     * Describe a directory's usage with its largest subdirectories
+     */
+    public String formatUsage(DiskUsageAnalyzer.Usage usage) {
+        StringBuilder text = new StringBuilder();
+        text.append(new File(usage.getPath()).getName()).append(": ")
+            .append(formatFileSize(usage.getBytes())).append(" in ")
+            .append(usage.getFileCount()).append(" files");
+        DiskUsageAnalyzer.Usage[] children = usage.getChildren();
+        for (int i = 0; i < children.length && i < USAGE_TOP_ENTRIES; i++) {
+            text.append("\n").append(formatFileSize(children[i].getBytes())).append("  ")
+                .append(new File(children[i].getPath()).getName());
+        }
+        return text.toString();
+    }
+
+    /**
+     * Pick a file in the current directory to be copied, or moved if move
+     * is set, by the next paste()
+     */
+    public void copyToClipboard(String fileName, boolean move) {
+        clipboard.clear();
+        clipboard.add(new File(currentDirectory, fileName));
+        clipboardMove = move;
+        clipboardOperation = null;
+    }
+
+    /**
+     * Whether files are waiting to be pasted; not while they are being moved
+     */
+    public boolean hasClipboard() {
+        return !clipboard.isEmpty() && clipboardOperation == null;
+    }
 
-            for (File file : files) {
-                // Skip hidden files if option is disabled
-                if (!showHidden && file.getName().startsWith(".")) {
-                    continue;
+    /**
+     * Copy or move the picked files into the current directory. Moved
+     * files leave the clipboard once the move is done, so a cancelled or
+     * failed move can be pasted again to resume it. Returns null if too
+     * many operations are already queued.
+     */
+    public FileOperations.Operation paste(final OperationCallback callback) {
+        FileOperations operations = FileOperations.getInstance();
+        if (!clipboardMove) {
+            return operations.copy(clipboard, currentDirectory, postToMain(callback));
+        }
+        final FileOperations.Operation operation = operations.move(clipboard, currentDirectory,
+            postToMain(new OperationCallback() {
+                @Override
+                public void onOperationProgress(FileOperations.Operation progressed) {
+                    callback.onOperationProgress(progressed);
                 }
 
-                if (file.canRead()) {
-                    String type = file.isDirectory() ? "[DIR] " : "[FILE]";
-                    String size = file.isDirectory() ? "" : " (" + formatFileSize(file.length()) + ")";
-                    content.append(type).append(" ").append(file.getName()).append(size).append("\n");
+                @Override
+                public void onOperationFinished(FileOperations.Operation finished) {
+                    if (finished == clipboardOperation) {
+                        clipboardOperation = null;
+                        if (finished.getState() == FileOperations.State.DONE) {
+                            clipboard.clear();
+                        }
+                    }
+                    callback.onOperationFinished(finished);
                 }
+            }));
+        clipboardOperation = operation;
+        return operation;
+    }
+
+    /**
+     * Delete a file or directory tree in the current directory; null if
+     * too many operations are already queued
+     */
+    public FileOperations.Operation delete(String fileName, OperationCallback callback) {
+        List<File> files = new ArrayList<>();
+        files.add(new File(currentDirectory, fileName));
+        return FileOperations.getInstance().delete(files, postToMain(callback));
+    }
+
+    private FileOperations.Listener postToMain(final OperationCallback callback) {
+        if (mainHandler == null) {
+            mainHandler = new Handler(Looper.getMainLooper());
+        }
+        return new FileOperations.Listener() {
+            @Override
+            public void onProgress(final FileOperations.Operation operation) {
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onOperationProgress(operation);
+                    }
+                });
             }
 
-            if (content.length() == 0) {
-                content.append("Directory is empty or no readable files");
+            @Override
+            public void onFinished(final FileOperations.Operation operation) {
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onOperationFinished(operation);
+                    }
+                });
+            }
+        };
+    }
+
+    /**
+     * One-line progress of an operation, e.g.
+     * "Copying 42% 1.2 GB of 2.9 GB, 48.0 MB/s, 0:36 left"
+     */
+    public String formatOperation(FileOperations.Operation operation) {
+        StringBuilder text = new StringBuilder();
+        switch (operation.getType()) {
+            case COPY:
+                text.append("Copying ");
+                break;
+            case MOVE:
+                text.append("Moving ");
+                break;
+            default:
+                text.append("Deleting ");
+                break;
+        }
+        text.append((int) (operation.getProgress() * 100)).append("% ");
+        if (operation.getType() == FileOperations.Type.DELETE) {
+            text.append(operation.getFilesDone()).append(" of ").append(operation.getTotalFiles()).append(" files");
+            return text.toString();
+        }
+        text.append(formatFileSize(operation.getBytesDone())).append(" of ")
+            .append(formatFileSize(operation.getTotalBytes()))
+            .append(", ").append(formatFileSize((long) operation.getBytesPerSecond())).append("/s");
+        long secondsLeft = operation.getSecondsLeft();
+        if (secondsLeft >= 0) {
+            text.append(String.format(Locale.US, ", %d:%02d left", secondsLeft / 60, secondsLeft % 60));
+        }
+        return text.toString();
+    }
+
+    /**
+     * Leave out hidden entries unless they are shown; the cached array is
+     * never changed
+     */
+    private FileEntry[] filterHidden(FileEntry[] entries) {
+        if (entries == null || showHidden) {
+            return entries;
+        }
+        List<FileEntry> visible = new ArrayList<>(entries.length);
+        for (FileEntry entry : entries) {
+            if (!entry.isHidden()) {
+                visible.add(entry);
+            }
+        }
+        return visible.toArray(new FileEntry[0]);
+    }
+
+    /**
+     * Whether the current directory has a parent to go up to
+     */
+    public boolean hasParent() {
+        return currentDirectory.getParentFile() != null;
+    }
+
+    private String formatListing(DirectoryLister.Listing listing) {
+        FileEntry[] entries = listing.getEntries();
+        if (entries == null) {
+            return "Unable to list files (permission denied)";
+        }
+
+        StringBuilder content = new StringBuilder();
+        // Add parent directory option if not at root
+        if (new File(listing.getPath()).getParent() != null) {
+            content.append("[DIR]  ..\n");
+        }
+
+        for (FileEntry entry : entries) {
+            // Skip hidden files if option is disabled
+            if (!showHidden && entry.isHidden()) {
+                continue;
             }
 
-        } catch (Exception e) {
-            return "Error: " + e.getMessage();
+            String type = entry.isDirectory() ? "[DIR] " : "[FILE]";
+            String size = entry.isDirectory() ? "" : " (" + formatFileSize(entry.getSize()) + ")";
+            content.append(type).append(" ").append(entry.getName()).append(size).append("\n");
         }
 
+        if (content.length() == 0) {
+            content.append("Directory is empty or no readable files");
+        }
         return content.toString();
     }
 
@@ -142,27 +468,28 @@ public class FileNavigator {
      * Get detailed file information
      */
     public String getFileDetails(String fileName) {
-        File file = new File(currentDirectory, fileName);
-
-        if (!file.exists()) {
+        if (!new File(currentDirectory, fileName).exists()) {
             return "File not found";
         }
+        FileEntry entry = FileEntry.stat(currentDirectory, fileName);
 
         StringBuilder details = new StringBuilder();
-        details.append("Name: ").append(file.getName()).append("\n");
-        details.append("Type: ").append(file.isDirectory() ? "Directory" : "File").append("\n");
-        details.append("Size: ").append(formatFileSize(file.length())).append("\n");
-
-        // Permissions
-        details.append("Permissions: ");
-        details.append(file.canRead() ? "r" : "-");
-        details.append(file.canWrite() ? "w" : "-");
-        details.append(file.canExecute() ? "x" : "-");
-        details.append("\n");
+        details.append("Name: ").append(entry.getName()).append("\n");
+        details.append("Type: ").append(entry.isDirectory() ? "Directory" : "File").append("\n");
+        if (entry.isDirectory()) {
+            // A directory's own size says nothing about its contents
+            DiskUsageAnalyzer.Usage usage = DiskUsageAnalyzer.getInstance()
+                .getCached(new File(currentDirectory, fileName).getAbsolutePath());
+            details.append("Size: ").append(usage == null ? "not analyzed"
+                : formatFileSize(usage.getBytes()) + " in " + usage.getFileCount() + " files").append("\n");
+        } else {
+            details.append("Size: ").append(formatFileSize(entry.getSize())).append("\n");
+        }
+        details.append("Permissions: ").append(entry.getPermissionString()).append("\n");
 
         // Last modified
         SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault());
-        details.append("Modified: ").append(sdf.format(new Date(file.lastModified()))).append("\n");
+        details.append("Modified: ").append(sdf.format(new Date(entry.getModified()))).append("\n");
 
         return details.toString();
     }
@@ -181,6 +508,14 @@ public class FileNavigator {
         return showHidden;
     }
 
+    /**
+     * Stop watching and the background listing thread
+     */
+    public void shutdown() {
+        stopWatching();
+        lister.shutdown();
+    }
+
     /**
      * Format file size to human-readable format
      */
@@ -191,4 +526,77 @@ public class FileNavigator {
         return String.format(Locale.getDefault(), "%.1f %sB",
             bytes / Math.pow(1024, exp), pre);
     }
+
+    /**
+     * Watches one directory, collecting the names of changed entries and
+     * applying them to the listing in one batch per COALESCE_MS, so a burst
+     * such as an unpacked archive costs one update rather than one per file
+     */
+    private final class DirectoryWatcher extends FileObserver {
+        final File directory;
+        final ListingCallback callback;
+        private final Set<String> changedNames = new HashSet<>();
+        private boolean relistAll = false;
+        private boolean flushPending = false;
+
+        private final Runnable flush = new Runnable() {
+            @Override
+            public void run() {
+                applyChanges();
+            }
+        };
+
+        DirectoryWatcher(File directory, ListingCallback callback) {
+            super(directory.getAbsolutePath(), WATCH_EVENTS);
+            this.directory = directory;
+            this.callback = callback;
+        }
+
+        // Runs on the FileObserver thread
+        @Override
+        public void onEvent(int event, String path) {
+            if ((event & WATCH_EVENTS) == 0) {
+                return;
+            }
+            synchronized (this) {
+                if ((event & SELF_EVENTS) != 0 || path == null) {
+                    relistAll = true;
+                } else {
+                    changedNames.add(path);
+                }
+                if (!flushPending) {
+                    flushPending = true;
+                    mainHandler.postDelayed(flush, COALESCE_MS);
+                }
+            }
+        }
+
+        private void applyChanges() {
+            if (watcher != this) {
+                return;
+            }
+            List<String> names;
+            synchronized (this) {
+                names = relistAll ? null : new ArrayList<>(changedNames);
+                changedNames.clear();
+                relistAll = false;
+                flushPending = false;
+            }
+            lister.updateAsync(directory, names, new DirectoryLister.Callback() {
+                @Override
+                public void onListed(final DirectoryLister.Listing listing) {
+                    final FileEntry[] entries = filterHidden(listing.getEntries());
+                    mainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            // Another directory may have been loaded meanwhile
+                            if (watcher == DirectoryWatcher.this) {
+                                callback.onListingReady(listing.getPath(), entries);
+                            }
+                        }
+                    });
+                }
+            });
+        }
+    }
 }
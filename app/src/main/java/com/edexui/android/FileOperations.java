@@ -0,0 +1,603 @@
+package com.edexui.android;
+
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+import android.system.StructStat;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Copy, move and delete engine for the Edex-UI file navigator
+ * Operations queue per volume: those on one volume run one at a time so
+ * they do not compete for the same storage, while different volumes work
+ * in parallel. Files are copied with FileChannel.transferTo, or through
+ * pooled direct buffers where that is refused, into a ".part" file that
+ * is renamed into place when complete. Copying the same file again after
+ * an interruption resumes from what the ".part" file holds, and files
+ * already copied whole are skipped. Moves within a volume are renames.
+ */
+public final class FileOperations {
+
+    public static final int MAX_PENDING = 16;
+    public static final String PART_SUFFIX = ".part";
+    public static final long PROGRESS_INTERVAL_MS = 250;
+
+    // Bytes per transferTo call, so progress and cancellation are seen
+    private static final long TRANSFER_CHUNK = 8L << 20;
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final int MAX_POOLED_BUFFERS = 4;
+    // Weight of the newest sample in the smoothed throughput
+    private static final double RATE_SMOOTHING = 0.3;
+
+    private static final ThreadFactory THREAD_FACTORY = new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "edex-fileops");
+            thread.setDaemon(true);
+            return thread;
+        }
+    };
+
+    private static FileOperations instance;
+
+    public enum Type {
+        COPY, MOVE, DELETE
+    }
+
+    public enum State {
+        QUEUED, RUNNING, DONE, FAILED, CANCELLED
+    }
+
+    /**
+     * Receives progress every PROGRESS_INTERVAL_MS and the outcome, on the
+     * operation's thread
+     */
+    public interface Listener {
+        void onProgress(Operation operation);
+        void onFinished(Operation operation);
+    }
+
+    /**
+     * One queued or running operation. Written only by the thread running
+     * it; readable from any thread.
+     */
+    public static final class Operation {
+        private final Type type;
+        private final List<File> sources;
+        private final File targetDirectory;
+        private final Listener listener;
+
+        private volatile State state = State.QUEUED;
+        private volatile boolean cancelled = false;
+        private volatile String error;
+        private volatile long totalBytes;
+        private volatile int totalFiles;
+        private volatile long bytesDone;
+        private volatile int filesDone;
+        private volatile double bytesPerSecond;
+
+        private long lastReportNanos;
+        private long lastReportBytes;
+
+        Operation(Type type, List<File> sources, File targetDirectory, Listener listener) {
+            this.type = type;
+            this.sources = Collections.unmodifiableList(new ArrayList<>(sources));
+            this.targetDirectory = targetDirectory;
+            this.listener = listener;
+        }
+
+        public Type getType() {
+            return type;
+        }
+
+        public List<File> getSources() {
+            return sources;
+        }
+
+        /**
+         * Directory copied or moved into; null for a delete
+         */
+        public File getTargetDirectory() {
+            return targetDirectory;
+        }
+
+        public State getState() {
+            return state;
+        }
+
+        /**
+         * Why the operation failed, or null
+         */
+        public String getError() {
+            return error;
+        }
+
+        public long getTotalBytes() {
+            return totalBytes;
+        }
+
+        public long getBytesDone() {
+            return bytesDone;
+        }
+
+        public int getTotalFiles() {
+            return totalFiles;
+        }
+
+        public int getFilesDone() {
+            return filesDone;
+        }
+
+        /**
+         * Recent throughput, smoothed over the last few reports
+         */
+        public double getBytesPerSecond() {
+            return bytesPerSecond;
+        }
+
+        /**
+         * Seconds left at the current throughput, or -1 if not known yet
+         */
+        public long getSecondsLeft() {
+            double rate = bytesPerSecond;
+            if (rate <= 0) {
+                return -1;
+            }
+            return (long) Math.ceil(Math.max(0, totalBytes - bytesDone) / rate);
+        }
+
+        /**
+         * Fraction done, 0 to 1, by bytes or else by files
+         */
+        public float getProgress() {
+            if (totalBytes > 0) {
+                return Math.min(1f, (float) bytesDone / totalBytes);
+            }
+            return totalFiles > 0 ? Math.min(1f, (float) filesDone / totalFiles) : 0f;
+        }
+
+        /**
+         * Stop at the next chunk. A partly copied file is kept as ".part"
+         * so running the same copy again resumes it.
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        public boolean isFinished() {
+            State current = state;
+            return current == State.DONE || current == State.FAILED || current == State.CANCELLED;
+        }
+    }
+
+    // One queue per volume, keyed by st_dev
+    private final Map<Long, ExecutorService> volumes = new HashMap<>();
+    private final ArrayDeque<ByteBuffer> buffers = new ArrayDeque<>();
+    // Copies whose mtime the volume refused to set, by destination path,
+    // with their source's mtime; stands in for it when a copy is run again
+    private final Map<String, Long> unstampedCopies = new HashMap<>();
+    private int pending = 0;
+
+    /**
+     * Get the engine shared by the whole app
+     */
+    public static synchronized FileOperations getInstance() {
+        if (instance == null) {
+            instance = new FileOperations();
+        }
+        return instance;
+    }
+
+    /**
+     * Queue copying sources into targetDirectory. Returns null if
+     * MAX_PENDING operations are already queued or running.
+     */
+    public Operation copy(List<File> sources, File targetDirectory, Listener listener) {
+        Operation operation = new Operation(Type.COPY, sources, targetDirectory, listener);
+        return submit(operation, targetDirectory);
+    }
+
+    /**
+     * Queue moving sources into targetDirectory; null if the queue is full
+     */
+    public Operation move(List<File> sources, File targetDirectory, Listener listener) {
+        Operation operation = new Operation(Type.MOVE, sources, targetDirectory, listener);
+        return submit(operation, targetDirectory);
+    }
+
+    /**
+     * Queue deleting sources, directories with everything in them; null if
+     * the queue is full
+     */
+    public Operation delete(List<File> sources, Listener listener) {
+        Operation operation = new Operation(Type.DELETE, sources, null, listener);
+        return submit(operation, sources.isEmpty() ? null : sources.get(0));
+    }
+
+    /**
+     * Whether any operation is queued or running
+     */
+    public synchronized boolean isBusy() {
+        return pending > 0;
+    }
+
+    public synchronized void shutdown() {
+        for (ExecutorService executor : volumes.values()) {
+            executor.shutdownNow();
+        }
+        volumes.clear();
+    }
+
+    private Operation submit(final Operation operation, File volume) {
+        long device = deviceOf(volume);
+        ExecutorService executor;
+        synchronized (this) {
+            if (pending >= MAX_PENDING) {
+                return null;
+            }
+            pending++;
+            executor = volumes.get(device);
+            if (executor == null) {
+                executor = Executors.newSingleThreadExecutor(THREAD_FACTORY);
+                volumes.put(device, executor);
+            }
+        }
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    execute(operation);
+                } finally {
+                    synchronized (FileOperations.this) {
+                        pending--;
+                    }
+                }
+            }
+        });
+        return operation;
+    }
+
+    private void execute(Operation operation) {
+        operation.state = State.RUNNING;
+        operation.lastReportNanos = System.nanoTime();
+        try {
+            checkCancelled(operation);
+            switch (operation.type) {
+                case COPY:
+                    copyAll(operation, operation.sources);
+                    break;
+                case MOVE:
+                    moveAll(operation);
+                    break;
+                case DELETE:
+                    for (File source : operation.sources) {
+                        measure(operation, source);
+                    }
+                    for (File source : operation.sources) {
+                        deleteTree(operation, source, true);
+                    }
+                    break;
+            }
+            operation.state = State.DONE;
+        } catch (IOException e) {
+            operation.error = e.getMessage();
+            operation.state = operation.cancelled ? State.CANCELLED : State.FAILED;
+        }
+        report(operation, true);
+        if (operation.listener != null) {
+            operation.listener.onFinished(operation);
+        }
+    }
+
+    private void copyAll(Operation operation, List<File> sources) throws IOException {
+        String target = operation.targetDirectory.getAbsolutePath() + "/";
+        for (File source : sources) {
+            if (target.startsWith(source.getAbsolutePath() + "/")) {
+                throw new IOException("Cannot copy " + source.getName() + " into itself");
+            }
+            if (source.getParentFile() != null
+                    && target.equals(source.getParentFile().getAbsolutePath() + "/")) {
+                throw new IOException(source.getName() + " is already here");
+            }
+            measure(operation, source);
+        }
+        for (File source : sources) {
+            copyTree(operation, source, new File(operation.targetDirectory, source.getName()));
+        }
+    }
+
+    /**
+     * Rename what can be renamed; copy and then delete the rest, which
+     * lives on another volume
+     */
+    private void moveAll(Operation operation) throws IOException {
+        List<File> crossVolume = new ArrayList<>();
+        for (File source : operation.sources) {
+            File destination = new File(operation.targetDirectory, source.getName());
+            if (destination.getAbsolutePath().equals(source.getAbsolutePath())) {
+                continue;
+            }
+            if (destination.exists()) {
+                throw new IOException(destination.getName() + " already exists");
+            }
+            try {
+                Os.rename(source.getPath(), destination.getPath());
+                operation.totalFiles++;
+                operation.filesDone++;
+            } catch (ErrnoException e) {
+                if (e.errno != OsConstants.EXDEV) {
+                    throw new IOException("Unable to move " + source.getName(), e);
+                }
+                crossVolume.add(source);
+            }
+        }
+        copyAll(operation, crossVolume);
+        for (File source : crossVolume) {
+            deleteTree(operation, source, false);
+        }
+    }
+
+    /**
+     * Add a file or tree to the operation's totals, without following links
+     */
+    private void measure(Operation operation, File file) throws IOException {
+        checkCancelled(operation);
+        StructStat stat = lstat(file);
+        if (OsConstants.S_ISDIR(stat.st_mode)) {
+            String[] names = file.list();
+            if (names != null) {
+                for (String name : names) {
+                    measure(operation, new File(file, name));
+                }
+            }
+        } else {
+            operation.totalFiles++;
+            if (OsConstants.S_ISREG(stat.st_mode)) {
+                operation.totalBytes += stat.st_size;
+            }
+        }
+    }
+
+    private void copyTree(Operation operation, File source, File destination) throws IOException {
+        checkCancelled(operation);
+        StructStat stat = lstat(source);
+        if (OsConstants.S_ISDIR(stat.st_mode)) {
+            // An existing directory is merged into, so a stopped copy can be run again
+            if (!destination.isDirectory() && !destination.mkdir()) {
+                throw new IOException("Unable to create " + destination.getPath());
+            }
+            String[] names = source.list();
+            if (names == null) {
+                throw new IOException("Unable to read " + source.getPath());
+            }
+            for (String name : names) {
+                copyTree(operation, new File(source, name), new File(destination, name));
+            }
+        } else if (OsConstants.S_ISLNK(stat.st_mode)) {
+            if (!destination.exists()) {
+                try {
+                    Os.symlink(Os.readlink(source.getPath()), destination.getPath());
+                } catch (ErrnoException e) {
+                    throw new IOException("Unable to copy link " + source.getName(), e);
+                }
+            }
+            operation.filesDone++;
+        } else {
+            copyFile(operation, source, destination, stat.st_size);
+            operation.filesDone++;
+        }
+        report(operation, false);
+    }
+
+    /**
+     * Copy one regular file of the given size, as measured when the copy
+     * started, through its ".part" file
+     */
+    void copyFile(Operation operation, File source, File destination, long size) throws IOException {
+        long modified = source.lastModified();
+        if (destination.exists()) {
+            // Copied whole by an earlier run
+            if (destination.length() == size && (destination.lastModified() == modified
+                    || isUnstampedCopy(destination, modified))) {
+                operation.bytesDone += size;
+                return;
+            }
+            throw new IOException(destination.getName() + " already exists");
+        }
+
+        File part = new File(destination.getPath() + PART_SUFFIX);
+        long position = 0;
+        // Resume only if the source has not changed since the part was written
+        if (part.isFile() && part.length() <= size && part.lastModified() >= modified) {
+            position = part.length();
+        } else if (part.exists() && !part.delete()) {
+            throw new IOException("Unable to replace " + part.getName());
+        }
+        operation.bytesDone += position;
+
+        ByteBuffer buffer = null;
+        try (FileInputStream in = new FileInputStream(source);
+             FileOutputStream out = new FileOutputStream(part, position > 0)) {
+            FileChannel input = in.getChannel();
+            FileChannel output = out.getChannel();
+            while (position < size) {
+                checkCancelled(operation);
+                long count = Math.min(TRANSFER_CHUNK, size - position);
+                long copied = 0;
+                if (buffer == null) {
+                    try {
+                        copied = input.transferTo(position, count, output);
+                    } catch (IOException e) {
+                        // Some file systems refuse it; copy through memory instead
+                        copied = 0;
+                    }
+                }
+                if (copied <= 0) {
+                    if (buffer == null) {
+                        buffer = acquireBuffer();
+                    }
+                    copied = copyThrough(buffer, input, output, position, count);
+                    if (copied <= 0) {
+                        // Keep the part file; a retry resumes or restarts it
+                        throw new IOException(source.getName() + " shrank while being copied");
+                    }
+                }
+                position += copied;
+                operation.bytesDone += copied;
+                report(operation, false);
+            }
+            output.force(false);
+        } finally {
+            if (buffer != null) {
+                releaseBuffer(buffer);
+            }
+        }
+
+        // Stamped before the rename, so a whole copy always carries its source's mtime
+        boolean stamped = part.setLastModified(modified);
+        if (!part.renameTo(destination)) {
+            throw new IOException("Unable to create " + destination.getPath());
+        }
+        if (!stamped) {
+            // Some FUSE and sdcardfs volumes refuse utimes
+            synchronized (unstampedCopies) {
+                unstampedCopies.put(destination.getAbsolutePath(), modified);
+            }
+        }
+    }
+
+    private boolean isUnstampedCopy(File destination, long modified) {
+        synchronized (unstampedCopies) {
+            Long recorded = unstampedCopies.get(destination.getAbsolutePath());
+            return recorded != null && recorded == modified;
+        }
+    }
+
+    private static long copyThrough(ByteBuffer buffer, FileChannel input, FileChannel output,
+                                    long position, long count) throws IOException {
+        buffer.clear();
+        buffer.limit((int) Math.min(buffer.capacity(), count));
+        int read = input.read(buffer, position);
+        if (read <= 0) {
+            return read;
+        }
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            output.write(buffer);
+        }
+        return read;
+    }
+
+    private void deleteTree(Operation operation, File file, boolean counted) throws IOException {
+        checkCancelled(operation);
+        StructStat stat = lstat(file);
+        if (OsConstants.S_ISDIR(stat.st_mode)) {
+            String[] names = file.list();
+            if (names != null) {
+                for (String name : names) {
+                    deleteTree(operation, new File(file, name), counted);
+                }
+            }
+        }
+        if (!file.delete()) {
+            throw new IOException("Unable to delete " + file.getPath());
+        }
+        if (counted && !OsConstants.S_ISDIR(stat.st_mode)) {
+            operation.filesDone++;
+            if (OsConstants.S_ISREG(stat.st_mode)) {
+                operation.bytesDone += stat.st_size;
+            }
+            report(operation, false);
+        }
+    }
+
+    /**
+     * Update the throughput and tell the listener, at most every
+     * PROGRESS_INTERVAL_MS unless force is set
+     */
+    private static void report(Operation operation, boolean force) {
+        long now = System.nanoTime();
+        long elapsed = now - operation.lastReportNanos;
+        if (!force && elapsed < PROGRESS_INTERVAL_MS * 1000000) {
+            return;
+        }
+        if (elapsed > 0) {
+            double rate = (operation.bytesDone - operation.lastReportBytes) * 1e9 / elapsed;
+            double previous = operation.bytesPerSecond;
+            operation.bytesPerSecond = previous == 0 ? rate
+                : previous + RATE_SMOOTHING * (rate - previous);
+        }
+        operation.lastReportNanos = now;
+        operation.lastReportBytes = operation.bytesDone;
+        if (operation.listener != null && !force) {
+            operation.listener.onProgress(operation);
+        }
+    }
+
+    private static void checkCancelled(Operation operation) throws IOException {
+        if (operation.cancelled || Thread.currentThread().isInterrupted()) {
+            operation.cancelled = true;
+            throw new InterruptedIOException("Cancelled");
+        }
+    }
+
+    private static StructStat lstat(File file) throws IOException {
+        try {
+            return Os.lstat(file.getPath());
+        } catch (ErrnoException e) {
+            throw new IOException("Unable to read " + file.getPath(), e);
+        }
+    }
+
+    /**
+     * Device of the volume holding file, or of its nearest existing parent
+     */
+    private static long deviceOf(File file) {
+        for (File f = file; f != null; f = f.getParentFile()) {
+            try {
+                return Os.stat(f.getPath()).st_dev;
+            } catch (ErrnoException e) {
+                // Try the parent
+            }
+        }
+        return -1;
+    }
+
+    private ByteBuffer acquireBuffer() {
+        synchronized (buffers) {
+            ByteBuffer buffer = buffers.poll();
+            if (buffer != null) {
+                return buffer;
+            }
+        }
+        return ByteBuffer.allocateDirect(BUFFER_SIZE);
+    }
+
+    private void releaseBuffer(ByteBuffer buffer) {
+        synchronized (buffers) {
+            if (buffers.size() < MAX_POOLED_BUFFERS) {
+                buffers.push(buffer);
+            }
+        }
+    }
+}
@@ -0,0 +1,349 @@
+package com.edexui.android;
+
+import androidx.appcompat.app.AppCompatActivity;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.view.KeyEvent;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.inputmethod.EditorInfo;
+import android.widget.Button;
+import android.widget.EditText;
+import android.widget.SeekBar;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * File Viewer Activity - Pages through a file of any size
+ * The file is memory-mapped and only the rows on screen are decoded, so
+ * opening a multi-GB log is immediate and the heap stays flat. Lines are
+ * indexed in the background for line numbers; search scans raw bytes.
+ */
+public class FileViewerActivity extends AppCompatActivity {
+
+    public static final String EXTRA_PATH = "com.edexui.android.extra.PATH";
+
+    private static final String TAG = "FileViewerActivity";
+    private static final int POSITION_STEPS = 1000;
+    private static final long PROGRESS_INTERVAL_MS = 500;
+
+    private static final ThreadFactory THREAD_FACTORY = new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "edex-viewer");
+            thread.setDaemon(true);
+            return thread;
+        }
+    };
+
+    private TextView titleView;
+    private TextView contentView;
+    private EditText searchField;
+    private SeekBar positionBar;
+
+    private Handler handler;
+    // Separate threads so a search does not wait for indexing to finish
+    private final ExecutorService indexExecutor = Executors.newSingleThreadExecutor(THREAD_FACTORY);
+    private final ExecutorService searchExecutor = Executors.newSingleThreadExecutor(THREAD_FACTORY);
+    private Future<?> pendingSearch;
+
+    private File source;
+    private MappedFile file;
+    // Offset of the first row on screen
+    private long topOffset = 0;
+    // Offset of the last match, or -1
+    private long matchOffset = -1;
+    private final StringBuilder window = new StringBuilder();
+
+    private final Runnable titleUpdater = new Runnable() {
+        @Override
+        public void run() {
+            updateTitle();
+            if (!file.isIndexComplete()) {
+                handler.postDelayed(this, PROGRESS_INTERVAL_MS);
+            }
+        }
+    };
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_file_viewer);
+
+        titleView = findViewById(R.id.fileViewerTitle);
+        contentView = findViewById(R.id.fileViewerContent);
+        searchField = findViewById(R.id.fileViewerSearch);
+        positionBar = findViewById(R.id.fileViewerPosition);
+        Button findButton = findViewById(R.id.fileViewerFindButton);
+        handler = new Handler(Looper.getMainLooper());
+
+        String path = getIntent().getStringExtra(EXTRA_PATH);
+        source = new File(path != null ? path : "");
+        try {
+            // Only sizes the file; pages are read as rows are shown
+            file = new MappedFile(source);
+        } catch (IOException | SecurityException e) {
+            Toast.makeText(this, "Unable to open " + source.getName(), Toast.LENGTH_SHORT).show();
+            finish();
+            return;
+        }
+
+        indexExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    file.indexLines();
+                } catch (IOException e) {
+                    Log.w(TAG, "Indexing stopped: " + e.getMessage());
+                }
+            }
+        });
+        handler.post(titleUpdater);
+
+        // The number of rows is known once the content is laid out
+        contentView.addOnLayoutChangeListener(new View.OnLayoutChangeListener() {
+            @Override
+            public void onLayoutChange(View v, int left, int top, int right, int bottom,
+                                       int oldLeft, int oldTop, int oldRight, int oldBottom) {
+                if (bottom - top != oldBottom - oldTop) {
+                    render();
+                }
+            }
+        });
+
+        // Dragging moves one row per line height
+        contentView.setOnTouchListener(new View.OnTouchListener() {
+            private float lastY;
+
+            @Override
+            public boolean onTouch(View v, MotionEvent event) {
+                switch (event.getActionMasked()) {
+                    case MotionEvent.ACTION_DOWN:
+                        lastY = event.getY();
+                        return true;
+                    case MotionEvent.ACTION_MOVE:
+                        int rows = (int) ((lastY - event.getY()) / contentView.getLineHeight());
+                        if (rows != 0) {
+                            lastY -= rows * contentView.getLineHeight();
+                            scrollRows(rows);
+                        }
+                        return true;
+                    default:
+                        return false;
+                }
+            }
+        });
+
+        positionBar.setMax(POSITION_STEPS);
+        positionBar.setOnSeekBarChangeListener(new SeekBar.OnSeekBarChangeListener() {
+            @Override
+            public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
+                if (fromUser) {
+                    jumpTo(file.length() * progress / POSITION_STEPS);
+                }
+            }
+
+            @Override
+            public void onStartTrackingTouch(SeekBar seekBar) {
+            }
+
+            @Override
+            public void onStopTrackingTouch(SeekBar seekBar) {
+            }
+        });
+
+        findButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                findNext();
+            }
+        });
+        searchField.setOnEditorActionListener(new TextView.OnEditorActionListener() {
+            @Override
+            public boolean onEditorAction(TextView v, int actionId, KeyEvent event) {
+                if (actionId == EditorInfo.IME_ACTION_SEARCH) {
+                    findNext();
+                    return true;
+                }
+                return false;
+            }
+        });
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (handler != null) {
+            handler.removeCallbacks(titleUpdater);
+        }
+        indexExecutor.shutdownNow();
+        searchExecutor.shutdownNow();
+        if (file != null) {
+            try {
+                file.close();
+            } catch (IOException e) {
+                // Nothing left to release
+            }
+        }
+    }
+
+    /**
+     * Decode and show the rows that fit on screen, starting at topOffset
+     */
+    private void render() {
+        int rows = Math.max(1, contentView.getHeight() / contentView.getLineHeight());
+        window.setLength(0);
+        try {
+            long offset = topOffset;
+            for (int i = 0; i < rows && offset < file.length(); i++) {
+                if (i > 0) {
+                    window.append('\n');
+                }
+                window.append(file.readRow(offset));
+                offset = file.nextRowStart(offset);
+            }
+        } catch (IOException e) {
+            window.append("Read error: ").append(e.getMessage());
+        }
+        contentView.setText(window.toString());
+        positionBar.setProgress(file.length() == 0 ? 0 : (int) (topOffset * POSITION_STEPS / file.length()));
+        updateTitle();
+    }
+
+    /**
+     * Move the window down (positive) or up (negative) by rows
+     */
+    private void scrollRows(int rows) {
+        try {
+            long offset = topOffset;
+            for (int i = 0; i < rows; i++) {
+                long next = file.nextRowStart(offset);
+                // Keep the last row on screen
+                if (next >= file.length()) {
+                    break;
+                }
+                offset = next;
+            }
+            for (int i = 0; i > rows && offset > 0; i--) {
+                offset = file.previousRowStart(offset);
+            }
+            topOffset = offset;
+        } catch (IOException e) {
+            Log.w(TAG, "Scroll failed: " + e.getMessage());
+        }
+        render();
+    }
+
+    /**
+     * Show the row holding a byte offset at the top
+     */
+    private void jumpTo(long offset) {
+        try {
+            topOffset = file.rowStart(offset);
+        } catch (IOException e) {
+            Log.w(TAG, "Seek failed: " + e.getMessage());
+        }
+        render();
+    }
+
+    private void updateTitle() {
+        StringBuilder title = new StringBuilder(source.getName())
+            .append("  ").append(formatBytes(file.length()));
+        long lines = file.getLineCount();
+        long line = -1;
+        try {
+            line = file.lineNumberOf(topOffset);
+        } catch (IOException e) {
+            // Shown without a line number
+        }
+        if (line >= 0) {
+            title.append("  line ").append(line + 1);
+        }
+        if (lines >= 0) {
+            title.append(" of ").append(lines);
+        } else {
+            title.append(String.format(Locale.US, "  indexing %d%%", (int) (file.getIndexProgress() * 100)));
+        }
+        titleView.setText(title.toString());
+    }
+
+    /**
+     * Find the query after the last match on screen, or from the top row,
+     * wrapping around to the start of the file once
+     */
+    private void findNext() {
+        String query = searchField.getText().toString();
+        if (query.isEmpty()) {
+            return;
+        }
+        final byte[] pattern = query.getBytes(StandardCharsets.UTF_8);
+        if (pattern.length > MappedFile.MAX_PATTERN_BYTES) {
+            Toast.makeText(this, "Search text is too long", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        long start = topOffset;
+        try {
+            if (matchOffset >= 0 && file.rowStart(matchOffset) == topOffset) {
+                start = matchOffset + 1;
+            }
+        } catch (IOException e) {
+            // Search from the top row
+        }
+        final long from = start;
+        if (pendingSearch != null) {
+            pendingSearch.cancel(true);
+        }
+        titleView.setText("Searching for \"" + query + "\"...");
+        pendingSearch = searchExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                long found;
+                try {
+                    found = file.find(pattern, true, from);
+                    if (found < 0 && from > 0 && !Thread.currentThread().isInterrupted()) {
+                        found = file.find(pattern, true, 0);
+                    }
+                } catch (IOException e) {
+                    found = -1;
+                }
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+                final long match = found;
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (match < 0) {
+                            Toast.makeText(FileViewerActivity.this, "Not found", Toast.LENGTH_SHORT).show();
+                            updateTitle();
+                            return;
+                        }
+                        matchOffset = match;
+                        jumpTo(match);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Format bytes to human-readable format
+     */
+    private String formatBytes(long bytes) {
+        if (bytes < 1024) return bytes + " B";
+        int exp = (int) (Math.log(bytes) / Math.log(1024));
+        String pre = "KMGTPE".charAt(exp - 1) + "";
+        return String.format(Locale.getDefault(), "%.1f %sB", bytes / Math.pow(1024, exp), pre);
+    }
+}
@@ -0,0 +1,115 @@
+package com.edexui.android;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.view.Choreographer;
+
+/**
+ * Frame-time measurement hook for Edex-UI
+ * Measures main-thread time from a UI update until the frame that shows it
+ * has been laid out and drawn
+ */
+public class FrameTimer {
+
+    /**
+     * Receives every measurement on the main thread
+     */
+    public interface Listener {
+        void onFrameMeasured(String label, long durationNanos);
+    }
+
+    public static final long FRAME_BUDGET_NANOS = 16_666_667L;
+
+    private static final String TAG = "FrameTimer";
+
+    private final String label;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private Listener listener;
+
+    private long startNanos = 0;
+    private long lastNanos = 0;
+    private long maxNanos = 0;
+    private int measuredCount = 0;
+    private int overBudgetCount = 0;
+
+    private final Runnable endRunnable = new Runnable() {
+        @Override
+        public void run() {
+            end();
+        }
+    };
+
+    private final Choreographer.FrameCallback frameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            // Frame callbacks run before traversal; a message posted now runs after draw
+            handler.post(endRunnable);
+        }
+    };
+
+    public FrameTimer(String label) {
+        this.label = label;
+    }
+
+    /**
+     * Set a listener for measurements, or null to only log over-budget frames
+     */
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Start measuring; call on the main thread right before changing the UI
+     */
+    public void begin() {
+        if (startNanos != 0) {
+            // Previous update has not been drawn yet; measure both together
+            return;
+        }
+        startNanos = System.nanoTime();
+        Choreographer.getInstance().postFrameCallback(frameCallback);
+    }
+
+    private void end() {
+        long duration = System.nanoTime() - startNanos;
+        startNanos = 0;
+
+        lastNanos = duration;
+        maxNanos = Math.max(maxNanos, duration);
+        measuredCount++;
+        if (duration > FRAME_BUDGET_NANOS) {
+            overBudgetCount++;
+            Log.w(TAG, label + " update took " + (duration / 1000) + "us (over one frame)");
+        }
+
+        if (listener != null) {
+            listener.onFrameMeasured(label, duration);
+        }
+    }
+
+    /**
+     * Stop any pending measurement
+     */
+    public void cancel() {
+        Choreographer.getInstance().removeFrameCallback(frameCallback);
+        handler.removeCallbacks(endRunnable);
+        startNanos = 0;
+    }
+
+    public long getLastNanos() {
+        return lastNanos;
+    }
+
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    public int getMeasuredCount() {
+        return measuredCount;
+    }
+
+    public int getOverBudgetCount() {
+        return overBudgetCount;
+    }
+}
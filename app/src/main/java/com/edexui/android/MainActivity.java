@@ -5,30 +5,73 @@ import android.content.Intent;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.widget.Button;
+import android.widget.EditText;
+import android.widget.PopupMenu;
 import android.widget.TextView;
+import android.widget.Toast;
 import android.view.View;
 import android.view.WindowManager;
+import android.content.DialogInterface;
+import androidx.appcompat.app.AlertDialog;
 import androidx.cardview.widget.CardView;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.InputStreamReader;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.List;
 import java.util.Locale;
 
 public class MainActivity extends AppCompatActivity {
 
+    private static final long CPU_INTERVAL_MS = 2000;
+    private static final long RAM_INTERVAL_MS = 2000;
+    private static final long NETWORK_INTERVAL_MS = 5000;
+    private static final long SEARCH_DELAY_MS = 150;
+    // Coming back to the app re-crawls the index at most this often
+    private static final long INDEX_REFRESH_INTERVAL_MS = 60000;
+
     private TextView systemInfoText;
     private TextView cpuInfoText;
     private TextView ramUsageText;
     private TextView networkInfoText;
     private TextView clockDisplay;
     private TextView fileNavigatorPath;
+    private Button fileNavigatorPasteButton;
     private TextView fileNavigatorContent;
+    private EditText fileNavigatorSearch;
+    private FileIndex fileIndex;
+    private Runnable pendingSearch;
+    private RecyclerView fileNavigatorList;
+    private FileListAdapter fileListAdapter;
+    // Directory the list shows, or null while it shows search results
+    private String shownPath;
+    // Directory whose partial listing is on screen while it is read, or null
+    private String streamingPath;
+    private DiskUsageAnalyzer.Analysis usageAnalysis;
+    // Bumped per analysis so a replaced one's results are dropped
+    private int usageGeneration = 0;
+    // Latest copy, move or delete; tapping the status line cancels it
+    private FileOperations.Operation fileOperation;
+
+    // Long-press menu of a file navigator row
+    private static final int MENU_DETAILS = 1;
+    private static final int MENU_COPY = 2;
+    private static final int MENU_CUT = 3;
+    private static final int MENU_DELETE = 4;
     private CardView terminalCard;
     
     private Handler handler;
     private Runnable updateRunnable;
+    private SamplingScheduler samplingScheduler;
+    private final SimpleDateFormat clockFormat = new SimpleDateFormat("HH:mm:ss", Locale.getDefault());
     private FileNavigator fileNavigator;
     private SoundManager soundManager;
 
@@ -61,7 +104,10 @@ public class MainActivity extends AppCompatActivity {
         networkInfoText = findViewById(R.id.networkInfoText);
         clockDisplay = findViewById(R.id.clockDisplay);
         fileNavigatorPath = findViewById(R.id.fileNavigatorPath);
+        fileNavigatorPasteButton = findViewById(R.id.fileNavigatorPasteButton);
         fileNavigatorContent = findViewById(R.id.fileNavigatorContent);
+        fileNavigatorList = findViewById(R.id.fileNavigatorList);
+        fileNavigatorSearch = findViewById(R.id.fileNavigatorSearch);
         terminalCard = findViewById(R.id.terminalCard);
         
         // Set up terminal card click listener
@@ -76,37 +122,192 @@ public class MainActivity extends AppCompatActivity {
             });
         }
         
-        // Initialize system info
-        updateSystemInfo();
-        updateFileNavigator();
+        // Initialize file navigator
+        fileListAdapter = new FileListAdapter(new FileListAdapter.OnEntryClickListener() {
+            @Override
+            public void onParentClicked() {
+                if (fileNavigator.navigateUp()) {
+                    updateFileNavigator();
+                }
+            }
+
+            @Override
+            public void onEntryClicked(FileEntry entry) {
+                if (isSearching()) {
+                    openSearchResult(entry);
+                } else if (entry.isDirectory()) {
+                    if (fileNavigator.navigateInto(entry.getName())) {
+                        updateFileNavigator();
+                    } else {
+                        Toast.makeText(MainActivity.this, "Permission denied", Toast.LENGTH_SHORT).show();
+                    }
+                } else {
+                    Intent intent = new Intent(MainActivity.this, FileViewerActivity.class);
+                    intent.putExtra(FileViewerActivity.EXTRA_PATH,
+                        new File(fileNavigator.getCurrentPath(), entry.getName()).getAbsolutePath());
+                    startActivity(intent);
+                }
+            }
+
+            @Override
+            public boolean onEntryLongClicked(View view, FileEntry entry) {
+                if (isSearching()) {
+                    return false;
+                }
+                showEntryMenu(view, entry);
+                return true;
+            }
+        });
+        fileNavigatorList.setLayoutManager(new LinearLayoutManager(this));
+        fileNavigatorList.setAdapter(fileListAdapter);
+        fileNavigatorPasteButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                startFileOperation(fileNavigator.paste(fileOperationCallback));
+                updatePasteButton();
+            }
+        });
+        fileNavigatorContent.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                if (fileOperation != null && !fileOperation.isFinished()) {
+                    fileOperation.cancel();
+                }
+            }
+        });
+        
+        // Typing searches the storage index instead of the current directory
+        fileIndex = FileIndex.getInstance(this);
+        fileNavigatorSearch.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                final String query = s.toString().trim();
+                if (pendingSearch != null) {
+                    handler.removeCallbacks(pendingSearch);
+                }
+                if (query.isEmpty()) {
+                    updateFileNavigator();
+                    return;
+                }
+                pendingSearch = new Runnable() {
+                    @Override
+                    public void run() {
+                        searchFiles(query);
+                    }
+                };
+                handler.postDelayed(pendingSearch, SEARCH_DELAY_MS);
+            }
+        });
         
-        // Start periodic updates
+        // Clock is cheap enough to stay on the main thread
         handler = new Handler(Looper.getMainLooper());
         updateRunnable = new Runnable() {
             @Override
             public void run() {
                 updateClock();
-                updateCpuInfo();
-                updateRamUsage();
-                updateNetworkInfo();
-                handler.postDelayed(this, 2000); // Update every 2 seconds
+                handler.postDelayed(this, 1000); // Update every second
             }
         };
-        handler.post(updateRunnable);
+        
+        // Metrics are sampled on a background thread, each at its own cadence
+        samplingScheduler = new SamplingScheduler();
+        samplingScheduler.schedule(0, new SamplingScheduler.Sampler<MetricSnapshot>() {
+            @Override
+            public MetricSnapshot sample() {
+                return new MetricSnapshot(SystemMonitor.getSystemInfo());
+            }
+        }, new SamplingScheduler.Listener<MetricSnapshot>() {
+            @Override
+            public void onSample(MetricSnapshot snapshot) {
+                systemInfoText.setText(snapshot.getText());
+            }
+        });
+        samplingScheduler.schedule(CPU_INTERVAL_MS, new SamplingScheduler.Sampler<MetricSnapshot>() {
+            @Override
+            public MetricSnapshot sample() {
+                return SystemMonitor.sampleCpu();
+            }
+        }, new SamplingScheduler.Listener<MetricSnapshot>() {
+            @Override
+            public void onSample(MetricSnapshot snapshot) {
+                cpuInfoText.setText(snapshot.getText());
+            }
+        });
+        samplingScheduler.schedule(RAM_INTERVAL_MS, new SamplingScheduler.Sampler<MetricSnapshot>() {
+            @Override
+            public MetricSnapshot sample() {
+                return SystemMonitor.sampleRam();
+            }
+        }, new SamplingScheduler.Listener<MetricSnapshot>() {
+            @Override
+            public void onSample(MetricSnapshot snapshot) {
+                ramUsageText.setText(snapshot.getText());
+            }
+        });
+        samplingScheduler.schedule(NETWORK_INTERVAL_MS, new SamplingScheduler.Sampler<MetricSnapshot>() {
+            @Override
+            public MetricSnapshot sample() {
+                return new MetricSnapshot(SystemMonitor.getNetworkInfo());
+            }
+        }, new SamplingScheduler.Listener<MetricSnapshot>() {
+            @Override
+            public void onSample(MetricSnapshot snapshot) {
+                networkInfoText.setText(snapshot.getText());
+            }
+        });
         
         // Apply entrance animations
         applyEntranceAnimations();
     }
     
+    @Override
+    protected void onResume() {
+        super.onResume();
+        handler.post(updateRunnable);
+        samplingScheduler.start();
+        // Lists the directory again and resumes watching it for changes
+        if (!isSearching()) {
+            updateFileNavigator();
+        }
+        // Picks up files changed while the app was in the background
+        fileIndex.refreshIfStale(INDEX_REFRESH_INTERVAL_MS);
+    }
+    
+    @Override
+    protected void onPause() {
+        super.onPause();
+        handler.removeCallbacks(updateRunnable);
+        samplingScheduler.stop();
+        fileNavigator.stopWatching();
+    }
+    
     @Override
     protected void onDestroy() {
         super.onDestroy();
         if (handler != null && updateRunnable != null) {
             handler.removeCallbacks(updateRunnable);
         }
+        if (samplingScheduler != null) {
+            samplingScheduler.shutdown();
+        }
         if (soundManager != null) {
             soundManager.release();
         }
+        if (usageAnalysis != null) {
+            usageAnalysis.cancel();
+        }
+        // Copies keep running in the background; only their reports stop
+        if (fileNavigator != null) {
+            fileNavigator.shutdown();
+        }
     }
     
     private void applyEntranceAnimations() {
@@ -145,28 +346,256 @@ public class MainActivity extends AppCompatActivity {
     }
     
     private void updateClock() {
-        SimpleDateFormat sdf = new SimpleDateFormat("HH:mm:ss", Locale.getDefault());
-        clockDisplay.setText(sdf.format(new Date()));
+        clockDisplay.setText(clockFormat.format(new Date()));
+    }
+    
+    private void updateFileNavigator() {
+        fileNavigatorPath.setText(fileNavigator.getCurrentPath());
+        updatePasteButton();
+        // Listed off the main thread; large folders would otherwise stall the dashboard
+        fileNavigator.loadDirectoryListing(new FileNavigator.ListingCallback() {
+            @Override
+            public void onListingProgress(String path, FileEntry[] entries) {
+                if (!path.equals(fileNavigator.getCurrentPath()) || isSearching()) {
+                    return;
+                }
+                showFileStatus("Reading directory... " + entries.length + " entries");
+                // Show a new directory as it is read; one already shown is
+                // left alone until the complete listing replaces it
+                if (path.equals(streamingPath) && path.equals(shownPath)) {
+                    fileListAdapter.updateEntries(entries);
+                } else if (!path.equals(shownPath)) {
+                    fileListAdapter.setEntries(entries, fileNavigator.hasParent());
+                    fileNavigatorList.scrollToPosition(0);
+                    shownPath = path;
+                    streamingPath = path;
+                }
+            }
+
+            @Override
+            public void onListingReady(String path, FileEntry[] entries) {
+                // Drop listings of a directory we have since left, or hidden by a search
+                if (!path.equals(fileNavigator.getCurrentPath()) || isSearching()) {
+                    return;
+                }
+                boolean streamed = path.equals(streamingPath);
+                streamingPath = null;
+                if (entries == null) {
+                    showFileStatus("Unable to list files (permission denied)");
+                    entries = new FileEntry[0];
+                } else if (entries.length == 0) {
+                    showFileStatus("Directory is empty or no readable files");
+                } else {
+                    fileNavigatorContent.setVisibility(View.GONE);
+                }
+                if (path.equals(shownPath) && streamed) {
+                    // Read order gives way to sorted order; a diff would only find moves
+                    fileListAdapter.setEntries(entries, fileNavigator.hasParent());
+                } else if (path.equals(shownPath)) {
+                    // The directory changed while shown; keep the user's place
+                    fileListAdapter.updateEntries(entries);
+                } else {
+                    fileListAdapter.setEntries(entries, fileNavigator.hasParent());
+                    fileNavigatorList.scrollToPosition(0);
+                    shownPath = path;
+                }
+            }
+        });
     }
     
-    private void updateSystemInfo() {
-        systemInfoText.setText(SystemMonitor.getSystemInfo());
+    /**
+     * Offer the actions for one row of the file navigator
+     */
+    private void showEntryMenu(View anchor, final FileEntry entry) {
+        PopupMenu menu = new PopupMenu(this, anchor);
+        menu.getMenu().add(Menu.NONE, MENU_DETAILS, Menu.NONE, entry.isDirectory() ? "Analyze size" : "Details");
+        menu.getMenu().add(Menu.NONE, MENU_COPY, Menu.NONE, "Copy");
+        menu.getMenu().add(Menu.NONE, MENU_CUT, Menu.NONE, "Cut");
+        menu.getMenu().add(Menu.NONE, MENU_DELETE, Menu.NONE, "Delete");
+        menu.setOnMenuItemClickListener(new PopupMenu.OnMenuItemClickListener() {
+            @Override
+            public boolean onMenuItemClick(MenuItem item) {
+                switch (item.getItemId()) {
+                    case MENU_DETAILS:
+                        if (entry.isDirectory()) {
+                            analyzeUsage(entry.getName());
+                        } else {
+                            Toast.makeText(MainActivity.this, fileNavigator.getFileDetails(entry.getName()),
+                                Toast.LENGTH_LONG).show();
+                        }
+                        return true;
+                    case MENU_COPY:
+                    case MENU_CUT:
+                        fileNavigator.copyToClipboard(entry.getName(), item.getItemId() == MENU_CUT);
+                        updatePasteButton();
+                        return true;
+                    case MENU_DELETE:
+                        confirmDelete(entry);
+                        return true;
+                    default:
+                        return false;
+                }
+            }
+        });
+        menu.show();
+    }
+
+    private void confirmDelete(final FileEntry entry) {
+        new AlertDialog.Builder(this)
+            .setTitle("Delete " + entry.getName() + "?")
+            .setMessage(entry.isDirectory() ? "The folder and everything in it will be deleted."
+                : "The file will be deleted.")
+            .setPositiveButton("Delete", new DialogInterface.OnClickListener() {
+                @Override
+                public void onClick(DialogInterface dialog, int which) {
+                    startFileOperation(fileNavigator.delete(entry.getName(), fileOperationCallback));
+                }
+            })
+            .setNegativeButton("Cancel", null)
+            .show();
+    }
+
+    private void startFileOperation(FileOperations.Operation operation) {
+        if (operation == null) {
+            Toast.makeText(this, "Too many file operations queued", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        fileOperation = operation;
+        showFileStatus(fileNavigator.formatOperation(operation) + " (tap to cancel)");
+    }
+
+    private void updatePasteButton() {
+        fileNavigatorPasteButton.setVisibility(fileNavigator.hasClipboard() ? View.VISIBLE : View.GONE);
+    }
+
+    // Listings refresh themselves as files change; this only reports
+    private final FileNavigator.OperationCallback fileOperationCallback = new FileNavigator.OperationCallback() {
+        @Override
+        public void onOperationProgress(FileOperations.Operation operation) {
+            if (operation == fileOperation && !isSearching()) {
+                showFileStatus(fileNavigator.formatOperation(operation) + " (tap to cancel)");
+            }
+        }
+
+        @Override
+        public void onOperationFinished(FileOperations.Operation operation) {
+            switch (operation.getState()) {
+                case FAILED:
+                    Toast.makeText(MainActivity.this, operation.getError(), Toast.LENGTH_LONG).show();
+                    break;
+                case CANCELLED:
+                    Toast.makeText(MainActivity.this, operation.getType() == FileOperations.Type.DELETE
+                        ? "Delete cancelled" : "Cancelled; paste again to resume", Toast.LENGTH_SHORT).show();
+                    break;
+                default:
+                    break;
+            }
+            if (operation == fileOperation) {
+                fileOperation = null;
+                if (!isSearching()) {
+                    updateFileNavigator();
+                }
+            }
+            // A finished move empties the clipboard; an unfinished one can be pasted again
+            updatePasteButton();
+        }
+    };
+
+    /**
+     * Show where a directory's storage went, with progress while it is walked
+     */
+    private void analyzeUsage(final String name) {
+        if (usageAnalysis != null) {
+            usageAnalysis.cancel();
+        }
+        final int generation = ++usageGeneration;
+        showFileStatus("Analyzing " + name + "...");
+        usageAnalysis = fileNavigator.analyzeUsage(name, new FileNavigator.UsageCallback() {
+            @Override
+            public void onUsageProgress(String path, long bytesSoFar, long filesSoFar) {
+                if (generation == usageGeneration && !isSearching()) {
+                    showFileStatus("Analyzing " + name + "... " + filesSoFar + " files, "
+                        + (bytesSoFar >> 20) + " MB");
+                }
+            }
+
+            @Override
+            public void onUsageReady(String path, DiskUsageAnalyzer.Usage usage) {
+                if (generation != usageGeneration) {
+                    return;
+                }
+                usageAnalysis = null;
+                if (usage != null) {
+                    Toast.makeText(MainActivity.this, fileNavigator.formatUsage(usage),
+                        Toast.LENGTH_LONG).show();
+                } else {
+                    Toast.makeText(MainActivity.this, "Unable to analyze " + name,
+                        Toast.LENGTH_SHORT).show();
+                }
+                // Put back the listing's own status line
+                if (!isSearching()) {
+                    updateFileNavigator();
+                }
+            }
+        });
     }
     
-    private void updateCpuInfo() {
-        cpuInfoText.setText(SystemMonitor.getCpuInfo());
+    private boolean isSearching() {
+        return fileNavigatorSearch.getText().toString().trim().length() > 0;
     }
     
-    private void updateRamUsage() {
-        ramUsageText.setText(SystemMonitor.getRamInfo());
+    private void searchFiles(final String query) {
+        if (!fileIndex.isReady()) {
+            showFileStatus("Indexing storage, try again shortly...");
+            return;
+        }
+        fileIndex.searchAsync(query, FileIndex.DEFAULT_LIMIT, new FileIndex.SearchCallback() {
+            @Override
+            public void onResults(String query, List<FileIndex.Result> results) {
+                // Paths stand in for names; sizes are not indexed
+                final FileEntry[] entries = new FileEntry[results.size()];
+                for (int i = 0; i < entries.length; i++) {
+                    FileIndex.Result result = results.get(i);
+                    entries[i] = new FileEntry(result.getPath(), result.isDirectory(), -1, 0, 0);
+                }
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        // Drop results of a query that has since been edited
+                        if (!query.equals(fileNavigatorSearch.getText().toString().trim())) {
+                            return;
+                        }
+                        if (entries.length == 0) {
+                            showFileStatus("No matches for \"" + query + "\"");
+                        } else {
+                            fileNavigatorContent.setVisibility(View.GONE);
+                        }
+                        fileListAdapter.setEntries(entries, false);
+                        fileNavigatorList.scrollToPosition(0);
+                        shownPath = null;
+                        streamingPath = null;
+                    }
+                });
+            }
+        });
     }
     
-    private void updateNetworkInfo() {
-        networkInfoText.setText(SystemMonitor.getNetworkInfo());
+    /**
+     * Open the directory of a search result and leave search
+     */
+    private void openSearchResult(FileEntry result) {
+        File file = new File(result.getName());
+        File directory = result.isDirectory() ? file : file.getParentFile();
+        if (directory != null && fileNavigator.navigateTo(directory.getPath())) {
+            // Clearing the query lists the new directory
+            fileNavigatorSearch.setText("");
+        } else {
+            Toast.makeText(this, "Unable to open " + result.getName(), Toast.LENGTH_SHORT).show();
+        }
     }
     
-    private void updateFileNavigator() {
-        fileNavigatorPath.setText(fileNavigator.getCurrentPath());
-        fileNavigatorContent.setText(fileNavigator.getDirectoryListing());
+    private void showFileStatus(String status) {
+        fileNavigatorContent.setText(status);
+        fileNavigatorContent.setVisibility(View.VISIBLE);
     }
 }
@@ -0,0 +1,373 @@
+package com.edexui.android;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Read-only view of a file of any size for the Edex-UI file viewer
+ * The file is memory-mapped a chunk at a time, so only the pages being
+ * read are loaded, and text is decoded one line at a time. A sparse index
+ * of every INDEX_INTERVAL-th line start is built by indexLines(), which
+ * turns line numbers into offsets and back with a short scan. Search works
+ * on the raw bytes.
+ */
+public final class MappedFile implements Closeable {
+
+    // Lines between two recorded line starts
+    public static final int INDEX_INTERVAL = 1024;
+    // Longer lines are shown as several rows of this many bytes
+    public static final int MAX_ROW_BYTES = 4096;
+    public static final int MAX_PATTERN_BYTES = 1024;
+
+    // Mappings are limited to 2 GB; smaller chunks also suit 32-bit address spaces
+    private static final int CHUNK_SIZE = 1 << 26;
+    private static final int MAX_MAPPED_CHUNKS = 4;
+    // Bytes read at a time when scanning for newlines or a pattern
+    static final int BLOCK_SIZE = 64 * 1024;
+
+    private final RandomAccessFile input;
+    private final FileChannel channel;
+    private final long length;
+
+    // Mapped chunks by index, least recently used first
+    private final Map<Long, MappedByteBuffer> chunks =
+        new LinkedHashMap<Long, MappedByteBuffer>(8, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, MappedByteBuffer> eldest) {
+                return size() > MAX_MAPPED_CHUNKS;
+            }
+        };
+
+    // lineStarts[k] is the offset of line k * INDEX_INTERVAL
+    private long[] lineStarts = new long[16];
+    private int lineStartCount = 0;
+    // Bytes scanned by indexLines() so far, and the lines they hold
+    private long indexedLength = 0;
+    private long indexedLines = 0;
+    private boolean indexComplete = false;
+
+    public MappedFile(File file) throws IOException {
+        input = new RandomAccessFile(file, "r");
+        channel = input.getChannel();
+        length = channel.size();
+    }
+
+    public long length() {
+        return length;
+    }
+
+    /**
+     * Copy up to length bytes at position into buffer; returns the count,
+     * which is less than length only at the end of the file
+     */
+    public int read(long position, byte[] buffer, int offset, int length) throws IOException {
+        int count = (int) Math.max(0, Math.min(length, this.length - position));
+        int done = 0;
+        while (done < count) {
+            long at = position + done;
+            ByteBuffer chunk = chunk(at / CHUNK_SIZE).duplicate();
+            int inChunk = (int) (at % CHUNK_SIZE);
+            int n = Math.min(count - done, chunk.limit() - inChunk);
+            chunk.position(inChunk);
+            chunk.get(buffer, offset + done, n);
+            done += n;
+        }
+        return count;
+    }
+
+    private MappedByteBuffer chunk(long index) throws IOException {
+        synchronized (chunks) {
+            MappedByteBuffer chunk = chunks.get(index);
+            if (chunk == null) {
+                long start = index * CHUNK_SIZE;
+                chunk = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(CHUNK_SIZE, length - start));
+                chunks.put(index, chunk);
+            }
+            return chunk;
+        }
+    }
+
+    /**
+     * Start of the row after the one starting at offset: past the next
+     * newline, or MAX_ROW_BYTES on for a longer line
+     */
+    public long nextRowStart(long offset) throws IOException {
+        byte[] row = new byte[MAX_ROW_BYTES];
+        int count = read(offset, row, 0, row.length);
+        for (int i = 0; i < count; i++) {
+            if (row[i] == '\n') {
+                return offset + i + 1;
+            }
+        }
+        return offset + count;
+    }
+
+    /**
+     * Start of the row holding offset: just past the newline before it, or
+     * at most MAX_ROW_BYTES back within a longer line
+     */
+    public long rowStart(long offset) throws IOException {
+        offset = Math.max(0, Math.min(offset, length));
+        long from = Math.max(0, offset - MAX_ROW_BYTES);
+        byte[] row = new byte[(int) (offset - from)];
+        read(from, row, 0, row.length);
+        for (int i = row.length - 1; i >= 0; i--) {
+            if (row[i] == '\n') {
+                return from + i + 1;
+            }
+        }
+        return from;
+    }
+
+    /**
+     * Start of the row before the one starting at offset
+     */
+    public long previousRowStart(long offset) throws IOException {
+        return offset == 0 ? 0 : rowStart(offset - 1);
+    }
+
+    /**
+     * Text of the row starting at offset, without its line ending
+     */
+    public String readRow(long offset) throws IOException {
+        byte[] row = new byte[MAX_ROW_BYTES];
+        int count = read(offset, row, 0, row.length);
+        int end = 0;
+        while (end < count && row[end] != '\n') {
+            end++;
+        }
+        if (end > 0 && row[end - 1] == '\r') {
+            end--;
+        }
+        return new String(row, 0, end, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Scan the whole file once, recording every INDEX_INTERVAL-th line
+     * start. Meant for a background thread; stops early, leaving the
+     * index partial, if the thread is interrupted.
+     */
+    public void indexLines() throws IOException {
+        byte[] block = new byte[BLOCK_SIZE];
+        long position;
+        long lines;
+        synchronized (this) {
+            if (lineStartCount == 0) {
+                addLineStart(0);
+            }
+            position = indexedLength;
+            lines = indexedLines;
+        }
+        while (position < length) {
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+            int count = read(position, block, 0, block.length);
+            synchronized (this) {
+                for (int i = 0; i < count; i++) {
+                    if (block[i] == '\n') {
+                        lines++;
+                        if (lines % INDEX_INTERVAL == 0) {
+                            addLineStart(position + i + 1);
+                        }
+                    }
+                }
+                position += count;
+                indexedLength = position;
+                indexedLines = lines;
+            }
+        }
+        synchronized (this) {
+            indexComplete = true;
+        }
+    }
+
+    private void addLineStart(long offset) {
+        if (lineStartCount == lineStarts.length) {
+            lineStarts = Arrays.copyOf(lineStarts, lineStartCount * 2);
+        }
+        lineStarts[lineStartCount++] = offset;
+    }
+
+    public synchronized boolean isIndexComplete() {
+        return indexComplete;
+    }
+
+    /**
+     * Fraction of the file indexed so far, 0 to 1
+     */
+    public synchronized float getIndexProgress() {
+        return length == 0 ? 1 : (float) indexedLength / length;
+    }
+
+    /**
+     * Number of lines, counting a last line without a newline, or -1
+     * until the index is complete
+     */
+    public synchronized long getLineCount() {
+        if (!indexComplete) {
+            return -1;
+        }
+        boolean openLastLine = length > 0 && indexedLength == length && !endsWithNewline();
+        return indexedLines + (openLastLine ? 1 : 0);
+    }
+
+    private boolean endsWithNewline() {
+        byte[] last = new byte[1];
+        try {
+            read(length - 1, last, 0, 1);
+        } catch (IOException e) {
+            return false;
+        }
+        return last[0] == '\n';
+    }
+
+    /**
+     * Zero-based line number of the line holding offset, or -1 if the
+     * index has not reached it yet
+     */
+    public long lineNumberOf(long offset) throws IOException {
+        long start;
+        long line;
+        synchronized (this) {
+            if (offset > indexedLength || lineStartCount == 0) {
+                return -1;
+            }
+            int k = Arrays.binarySearch(lineStarts, 0, lineStartCount, offset);
+            if (k < 0) {
+                k = -k - 2;
+            }
+            start = lineStarts[k];
+            line = (long) k * INDEX_INTERVAL;
+        }
+        return line + countNewlines(start, offset);
+    }
+
+    /**
+     * Offset of the start of a zero-based line, or -1 if the index has
+     * not reached it yet
+     */
+    public long offsetOfLine(long line) throws IOException {
+        long offset;
+        int remaining;
+        synchronized (this) {
+            if (line < 0 || line > indexedLines || lineStartCount == 0) {
+                return -1;
+            }
+            int k = (int) Math.min(line / INDEX_INTERVAL, lineStartCount - 1);
+            offset = lineStarts[k];
+            remaining = (int) (line - (long) k * INDEX_INTERVAL);
+        }
+        byte[] block = new byte[BLOCK_SIZE];
+        while (remaining > 0 && offset < length) {
+            int count = read(offset, block, 0, block.length);
+            for (int i = 0; i < count; i++) {
+                if (block[i] == '\n' && --remaining == 0) {
+                    return offset + i + 1;
+                }
+            }
+            offset += count;
+        }
+        return offset;
+    }
+
+    private long countNewlines(long from, long to) throws IOException {
+        byte[] block = new byte[BLOCK_SIZE];
+        long newlines = 0;
+        while (from < to) {
+            int count = read(from, block, 0, (int) Math.min(block.length, to - from));
+            for (int i = 0; i < count; i++) {
+                if (block[i] == '\n') {
+                    newlines++;
+                }
+            }
+            from += count;
+        }
+        return newlines;
+    }
+
+    /**
+     * Offset of the first occurrence of pattern at or after from, or -1.
+     * Compares bytes, folding ASCII letters if ignoreCase, so the file is
+     * never decoded. Gives up, returning -1, if the thread is interrupted.
+     */
+    public long find(byte[] pattern, boolean ignoreCase, long from) throws IOException {
+        int m = pattern.length;
+        if (m == 0 || m > MAX_PATTERN_BYTES) {
+            return -1;
+        }
+        byte[] needle = ignoreCase ? foldCase(pattern) : pattern;
+        // Boyer-Moore-Horspool: shift by how far the last byte's value is from the end
+        int[] shift = new int[256];
+        Arrays.fill(shift, m);
+        for (int i = 0; i < m - 1; i++) {
+            shift[needle[i] & 0xff] = m - 1 - i;
+            if (ignoreCase) {
+                shift[upper(needle[i]) & 0xff] = m - 1 - i;
+            }
+        }
+
+        // Blocks overlap by m - 1 bytes so no match is split between two
+        byte[] block = new byte[BLOCK_SIZE + m - 1];
+        long position = Math.max(0, from);
+        while (position + m <= length) {
+            if (Thread.currentThread().isInterrupted()) {
+                return -1;
+            }
+            int count = read(position, block, 0, block.length);
+            int i = 0;
+            while (i + m <= count) {
+                int j = m - 1;
+                while (j >= 0 && matches(block[i + j], needle[j], ignoreCase)) {
+                    j--;
+                }
+                if (j < 0) {
+                    return position + i;
+                }
+                i += shift[block[i + m - 1] & 0xff];
+            }
+            if (position + count >= length) {
+                break;
+            }
+            position += BLOCK_SIZE;
+        }
+        return -1;
+    }
+
+    private static boolean matches(byte b, byte folded, boolean ignoreCase) {
+        return (ignoreCase ? lower(b) : b) == folded;
+    }
+
+    private static byte[] foldCase(byte[] bytes) {
+        byte[] folded = new byte[bytes.length];
+        for (int i = 0; i < bytes.length; i++) {
+            folded[i] = lower(bytes[i]);
+        }
+        return folded;
+    }
+
+    private static byte lower(byte b) {
+        return b >= 'A' && b <= 'Z' ? (byte) (b + ('a' - 'A')) : b;
+    }
+
+    private static byte upper(byte b) {
+        return b >= 'a' && b <= 'z' ? (byte) (b - ('a' - 'A')) : b;
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (chunks) {
+            chunks.clear();
+        }
+        input.close();
+    }
+}
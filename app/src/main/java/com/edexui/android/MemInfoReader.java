@@ -0,0 +1,211 @@
+package com.edexui.android;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Device memory reader for Edex-UI
+ * Parses /proc/meminfo and zram statistics into primitive fields without
+ * intermediate Strings
+ */
+public class MemInfoReader {
+
+    private static final String PROC_MEMINFO = "/proc/meminfo";
+    private static final String ZRAM_MM_STAT = "/sys/block/zram0/mm_stat";
+    private static final int MEMINFO_READ_LIMIT = 64 * 1024;
+
+    private static final int MEM_TOTAL = 0;
+    private static final int MEM_FREE = 1;
+    private static final int MEM_AVAILABLE = 2;
+    private static final int CACHED = 3;
+    private static final int SWAP_TOTAL = 4;
+    private static final int SWAP_FREE = 5;
+
+    private static final int OFFSET_UNKNOWN = -1;
+    private static final int OFFSET_ABSENT = -2;
+
+    // Indexed by the field constants above, in file order
+    private static final byte[][] KEYS = {
+        ProcFileReader.key("MemTotal"),
+        ProcFileReader.key("MemFree"),
+        ProcFileReader.key("MemAvailable"),
+        ProcFileReader.key("Cached"),
+        ProcFileReader.key("SwapTotal"),
+        ProcFileReader.key("SwapFree"),
+    };
+
+    private final ProcFileReader reader = new ProcFileReader();
+
+    // Values in kB, -1 when the kernel does not report the field
+    private final long[] values = new long[KEYS.length];
+
+    // The layout of /proc/meminfo never changes at runtime, so the line offset
+    // of each field is remembered and verified instead of searched for again
+    private final int[] offsets = new int[KEYS.length];
+
+    private boolean zramAvailable = true;
+    private long zramOriginalBytes = -1;
+    private long zramCompressedBytes = -1;
+    private long zramUsedBytes = -1;
+
+    public MemInfoReader() {
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = OFFSET_UNKNOWN;
+        }
+    }
+
+    /**
+     * Re-read /proc/meminfo, returning false if it is not accessible
+     */
+    public boolean read() {
+        if (!reader.read(PROC_MEMINFO)) {
+            return false;
+        }
+        boolean valid = parseMemInfo();
+        readZram();
+        return valid;
+    }
+
+    /**
+     * Parse meminfo from a stream, e.g. a captured copy, leaving zram
+     * statistics alone
+     */
+    boolean read(InputStream meminfo) throws IOException {
+        reader.read(meminfo, MEMINFO_READ_LIMIT);
+        return parseMemInfo();
+    }
+
+    private boolean parseMemInfo() {
+        for (int i = 0; i < KEYS.length; i++) {
+            values[i] = readField(i);
+        }
+
+        if (values[MEM_AVAILABLE] < 0) {
+            // Kernels before 3.14 do not report MemAvailable
+            values[MEM_AVAILABLE] = Math.max(values[MEM_FREE], 0) + Math.max(values[CACHED], 0);
+        }
+        return values[MEM_TOTAL] > 0;
+    }
+
+    private long readField(int field) {
+        byte[] key = KEYS[field];
+        int cached = offsets[field];
+        if (cached == OFFSET_ABSENT) {
+            return -1;
+        }
+        if (cached >= 0 && reader.seekKeyAt(cached, key)) {
+            return reader.nextLong(-1);
+        }
+
+        reader.setPosition(0);
+        int lineStart = reader.seekKey(key);
+        if (lineStart < 0) {
+            offsets[field] = OFFSET_ABSENT;
+            return -1;
+        }
+        offsets[field] = lineStart;
+        return reader.nextLong(-1);
+    }
+
+    /**
+     * Read compression statistics of the first zram device, if any
+     */
+    private void readZram() {
+        if (!zramAvailable) {
+            return;
+        }
+        if (!reader.read(ZRAM_MM_STAT) || reader.length() == 0) {
+            // Missing or not readable; this does not change while running
+            zramAvailable = false;
+            return;
+        }
+        // orig_data_size compr_data_size mem_used_total ...
+        zramOriginalBytes = reader.nextLong(-1);
+        zramCompressedBytes = reader.nextLong(-1);
+        zramUsedBytes = reader.nextLong(-1);
+    }
+
+    /**
+     * Get total device memory in bytes
+     */
+    public long getTotalBytes() {
+        return toBytes(values[MEM_TOTAL]);
+    }
+
+    /**
+     * Get memory available to new allocations in bytes
+     */
+    public long getAvailableBytes() {
+        return toBytes(values[MEM_AVAILABLE]);
+    }
+
+    /**
+     * Get completely unused memory in bytes
+     */
+    public long getFreeBytes() {
+        return toBytes(values[MEM_FREE]);
+    }
+
+    /**
+     * Get page cache size in bytes
+     */
+    public long getCachedBytes() {
+        return toBytes(values[CACHED]);
+    }
+
+    /**
+     * Get memory in use (total minus available) in bytes
+     */
+    public long getUsedBytes() {
+        return toBytes(values[MEM_TOTAL] - values[MEM_AVAILABLE]);
+    }
+
+    /**
+     * Get total swap in bytes, including zram-backed swap
+     */
+    public long getSwapTotalBytes() {
+        return toBytes(values[SWAP_TOTAL]);
+    }
+
+    /**
+     * Get swap in use in bytes
+     */
+    public long getSwapUsedBytes() {
+        if (values[SWAP_TOTAL] < 0 || values[SWAP_FREE] < 0) {
+            return 0;
+        }
+        return toBytes(values[SWAP_TOTAL] - values[SWAP_FREE]);
+    }
+
+    /**
+     * Whether zram statistics were read
+     */
+    public boolean hasZram() {
+        return zramAvailable && zramOriginalBytes >= 0;
+    }
+
+    /**
+     * Get uncompressed size of data stored in zram in bytes
+     */
+    public long getZramOriginalBytes() {
+        return zramOriginalBytes;
+    }
+
+    /**
+     * Get compressed size of data stored in zram in bytes
+     */
+    public long getZramCompressedBytes() {
+        return zramCompressedBytes;
+    }
+
+    /**
+     * Get memory consumed by zram including overhead in bytes
+     */
+    public long getZramUsedBytes() {
+        return zramUsedBytes;
+    }
+
+    private static long toBytes(long kb) {
+        return kb > 0 ? kb * 1024 : 0;
+    }
+}
@@ -0,0 +1,50 @@
+package com.edexui.android;
+
+/**
+ * Immutable result of a single metric sample
+ * Produced on the sampling thread and handed to the UI thread as-is
+ */
+public final class MetricSnapshot {
+
+    private final String text;
+    private final int[] values;
+    private final long timestamp;
+
+    public MetricSnapshot(String text) {
+        this(text, null);
+    }
+
+    public MetricSnapshot(String text, int[] values) {
+        this.text = text;
+        this.values = values != null ? values.clone() : new int[0];
+        this.timestamp = System.currentTimeMillis();
+    }
+
+    /**
+     * Get the formatted text for display
+     */
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * Get the number of numeric values attached to this sample
+     */
+    public int getValueCount() {
+        return values.length;
+    }
+
+    /**
+     * Get a numeric value attached to this sample
+     */
+    public int getValue(int index) {
+        return values[index];
+    }
+
+    /**
+     * Get the wall-clock time at which the sample was taken
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+}
@@ -0,0 +1,250 @@
+package com.edexui.android;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Parsed command pipeline for the Edex-UI terminal
+ * Understands '|', '<', '>', '>>', '2>', '2>>' and '2>&1' with sh quoting.
+ * Lines using anything else (expansion, globs, lists, subshells, other
+ * descriptors) are left to the shell.
+ */
+public final class Pipeline {
+
+    // Unquoted chars that need the real shell
+    private static final String SHELL_ONLY = "$`*?[&;(){}~";
+
+    /**
+     * One command of a pipeline with its redirections
+     */
+    public static final class Stage {
+        private final List<String> args = new ArrayList<>();
+        private String inputFile;
+        private String outputFile;
+        private boolean append;
+        private String errorFile;
+        private boolean errorAppend;
+        private boolean mergeStderr;
+
+        public List<String> getArgs() {
+            return Collections.unmodifiableList(args);
+        }
+
+        public String getInputFile() {
+            return inputFile;
+        }
+
+        public String getOutputFile() {
+            return outputFile;
+        }
+
+        public boolean isAppend() {
+            return append;
+        }
+
+        /**
+         * File that stderr is redirected to with 2> or 2>>, or null
+         */
+        public String getErrorFile() {
+            return errorFile;
+        }
+
+        public boolean isErrorAppend() {
+            return errorAppend;
+        }
+
+        public boolean isMergeStderr() {
+            return mergeStderr;
+        }
+    }
+
+    private final List<Stage> stages;
+
+    private Pipeline(List<Stage> stages) {
+        this.stages = stages;
+    }
+
+    public List<Stage> getStages() {
+        return Collections.unmodifiableList(stages);
+    }
+
+    /**
+     * Whether any stage is a built-in, which only the app can run
+     */
+    public boolean usesBuiltin(CommandRegistry registry) {
+        for (Stage stage : stages) {
+            if (registry.find(stage.args) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Parse a line, returning null if it is malformed or needs shell features
+     */
+    public static Pipeline parse(String line) {
+        List<Stage> stages = new ArrayList<>();
+        Stage stage = new Stage();
+        StringBuilder word = new StringBuilder();
+        boolean inWord = false;
+        // Whether any of the current word was quoted or escaped
+        boolean quoted = false;
+        // Redirection waiting for its file name: '<', '>' or 'a' for '>>',
+        // and the descriptor it applies to
+        char pendingRedirect = 0;
+        int pendingFd = -1;
+        int length = line.length();
+
+        for (int i = 0; i <= length; i++) {
+            char c = i < length ? line.charAt(i) : ' ';
+            boolean operator = c == '|' || c == '<' || c == '>';
+            // Descriptor written right before a redirection, as in 2>file
+            int fd = -1;
+
+            if (c == ' ' || c == '\t' || operator) {
+                if (inWord) {
+                    String text = word.toString();
+                    word.setLength(0);
+                    inWord = false;
+                    if (pendingRedirect == '<') {
+                        stage.inputFile = text;
+                    } else if (pendingRedirect != 0 && pendingFd == 2) {
+                        stage.errorFile = text;
+                        stage.errorAppend = pendingRedirect == 'a';
+                    } else if (pendingRedirect != 0) {
+                        stage.outputFile = text;
+                        stage.append = pendingRedirect == 'a';
+                    } else if (c != '|' && operator && !quoted && isDigits(text)) {
+                        fd = text.length() == 1 ? text.charAt(0) - '0' : Integer.MAX_VALUE;
+                    } else {
+                        stage.args.add(text);
+                    }
+                    pendingRedirect = 0;
+                    quoted = false;
+                }
+                if (!operator) {
+                    continue;
+                }
+                if (pendingRedirect != 0) {
+                    return null;
+                }
+                if (c == '|') {
+                    if (stage.args.isEmpty() || (i + 1 < length && line.charAt(i + 1) == '|')) {
+                        return null;
+                    }
+                    stages.add(stage);
+                    stage = new Stage();
+                    continue;
+                }
+                if (c == '<') {
+                    if (fd != -1 && fd != 0) {
+                        return null;
+                    }
+                    pendingRedirect = '<';
+                    continue;
+                }
+                if (fd == -1) {
+                    fd = 1;
+                } else if (fd != 1 && fd != 2) {
+                    return null;
+                }
+                if (line.startsWith(">&", i)) {
+                    // Only 2>&1 is understood; other duplications need the shell
+                    if (fd != 2 || !line.startsWith(">&1", i)
+                            || (i + 3 < length && " \t|<>".indexOf(line.charAt(i + 3)) < 0)) {
+                        return null;
+                    }
+                    stage.mergeStderr = true;
+                    i += 2;
+                    continue;
+                }
+                if (i + 1 < length && line.charAt(i + 1) == '>') {
+                    pendingRedirect = 'a';
+                    i++;
+                } else {
+                    pendingRedirect = '>';
+                }
+                pendingFd = fd;
+                continue;
+            }
+
+            if (c == '\'') {
+                int close = line.indexOf('\'', i + 1);
+                if (close < 0) {
+                    return null;
+                }
+                word.append(line, i + 1, close);
+                inWord = true;
+                quoted = true;
+                i = close;
+            } else if (c == '"') {
+                int close = readDoubleQuoted(line, i + 1, word);
+                if (close < 0) {
+                    return null;
+                }
+                inWord = true;
+                quoted = true;
+                i = close;
+            } else if (c == '\\') {
+                if (i + 1 < length) {
+                    word.append(line.charAt(++i));
+                }
+                inWord = true;
+                quoted = true;
+            } else if (SHELL_ONLY.indexOf(c) >= 0) {
+                return null;
+            } else {
+                word.append(c);
+                inWord = true;
+            }
+        }
+
+        if (pendingRedirect != 0 || stage.args.isEmpty()) {
+            return null;
+        }
+        stages.add(stage);
+        for (Stage parsed : stages) {
+            // Order decides where 2>&1 points when both are given; leave that to sh
+            if (parsed.mergeStderr && parsed.errorFile != null) {
+                return null;
+            }
+        }
+        return new Pipeline(stages);
+    }
+
+    private static boolean isDigits(String text) {
+        if (text.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) < '0' || text.charAt(i) > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Copy a double-quoted string, returning the index of the closing quote
+     * or -1 if it is unterminated; expansion inside means the shell is needed
+     */
+    private static int readDoubleQuoted(String line, int start, StringBuilder out) {
+        for (int i = start; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                return i;
+            }
+            if (c == '$' || c == '`') {
+                return -1;
+            }
+            if (c == '\\' && i + 1 < line.length() && "\"\\$`".indexOf(line.charAt(i + 1)) >= 0) {
+                out.append(line.charAt(++i));
+            } else {
+                out.append(c);
+            }
+        }
+        return -1;
+    }
+}
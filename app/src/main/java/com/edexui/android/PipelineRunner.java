@@ -0,0 +1,352 @@
+package com.edexui.android;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Runs pipelines that include built-in commands for the Edex-UI terminal
+ * Built-in stages run on their own threads joined by in-process pipes;
+ * external stages are started directly and their pipes pumped, so data
+ * streams through every stage instead of being collected in between.
+ */
+public class PipelineRunner {
+
+    public static final int EXIT_NOT_FOUND = 127;
+    // Exit code of a stage whose reader went away, as with SIGPIPE
+    public static final int EXIT_BROKEN_PIPE = 141;
+
+    private static final int PIPE_SIZE = 64 * 1024;
+    private static final int COPY_BUFFER_SIZE = 8192;
+
+    private final CommandRegistry registry;
+    private final ExecutorService executor;
+
+    // Everything the running pipeline holds open, released by cancel()
+    private final List<Process> processes = new ArrayList<>();
+    private final List<Closeable> streams = new ArrayList<>();
+    private boolean running;
+    private boolean cancelled;
+
+    /**
+     * Create a runner whose stages and pumps run on executor, which must
+     * start a thread per task since stages block on each other
+     */
+    public PipelineRunner(CommandRegistry registry, ExecutorService executor) {
+        this.registry = registry;
+        this.executor = executor;
+    }
+
+    /**
+     * Run a pipeline, blocking until every stage has finished. Output of the
+     * last stage, and stderr of external stages not redirected with 2>, is
+     * written to terminal.
+     * Returns the exit code of the last stage.
+     */
+    public int run(Pipeline pipeline, String workingDirectory, Writer terminal) {
+        synchronized (this) {
+            running = true;
+            cancelled = false;
+        }
+
+        List<Pipeline.Stage> stages = pipeline.getStages();
+        List<Future<?>> tasks = new ArrayList<>();
+        Process lastProcess = null;
+        Future<Integer> lastBuiltin = null;
+        int exitCode;
+        try {
+            // Build from the end so each stage's output has somewhere to go;
+            // null means the terminal
+            OutputStream downstream = null;
+            for (int i = stages.size() - 1; i >= 0; i--) {
+                Pipeline.Stage stage = stages.get(i);
+                OutputStream out = downstream;
+                if (stage.getOutputFile() != null) {
+                    if (downstream != null) {
+                        // The next stage reads nothing, as in sh
+                        downstream.close();
+                    }
+                    out = track(new FileOutputStream(
+                        BuiltinCommands.resolve(workingDirectory, stage.getOutputFile()), stage.isAppend()));
+                }
+
+                OutputStream input;
+                BuiltinCommand builtin = registry.find(stage.getArgs());
+                if (builtin != null) {
+                    if (stage.getErrorFile() != null) {
+                        // Built-ins report errors on their output, so the file is only created
+                        track(new FileOutputStream(
+                            BuiltinCommands.resolve(workingDirectory, stage.getErrorFile()), stage.isErrorAppend()));
+                    }
+                    PipedInputStream pipe = track(new PipedInputStream(PIPE_SIZE));
+                    input = new PipedOutputStream(pipe);
+                    Future<Integer> task = executor.submit(
+                        runBuiltin(builtin, stage.getArgs(), pipe, out, terminal));
+                    tasks.add(task);
+                    if (lastBuiltin == null && lastProcess == null) {
+                        lastBuiltin = task;
+                    }
+                } else {
+                    Process process = start(stage, workingDirectory);
+                    input = process.getOutputStream();
+                    if (out != null) {
+                        tasks.add(executor.submit(copy(process.getInputStream(), out)));
+                    }
+                    if (!stage.isMergeStderr() && stage.getErrorFile() == null) {
+                        tasks.add(executor.submit(copy(process.getErrorStream(), terminal)));
+                    }
+                    if (lastBuiltin == null && lastProcess == null) {
+                        lastProcess = process;
+                    }
+                }
+
+                if (stage.getInputFile() != null) {
+                    InputStream file = track(new FileInputStream(
+                        BuiltinCommands.resolve(workingDirectory, stage.getInputFile())));
+                    tasks.add(executor.submit(copy(file, input)));
+                    downstream = new DiscardStream();
+                } else if (i == 0) {
+                    input.close();
+                } else {
+                    downstream = input;
+                }
+            }
+
+            // The last stage's output is copied here, on the calling thread
+            if (lastProcess != null && stages.get(stages.size() - 1).getOutputFile() == null) {
+                copy(lastProcess.getInputStream(), terminal).run();
+            }
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+            if (lastProcess != null) {
+                exitCode = lastProcess.waitFor();
+            } else {
+                exitCode = lastBuiltin.get();
+            }
+            synchronized (this) {
+                for (Process process : processes) {
+                    process.waitFor();
+                }
+            }
+        } catch (IOException e) {
+            write(terminal, e.getMessage() + "\n");
+            cancel();
+            exitCode = e instanceof CommandNotFoundException ? EXIT_NOT_FOUND : 1;
+        } catch (ExecutionException e) {
+            write(terminal, e.getCause() + "\n");
+            cancel();
+            exitCode = 1;
+        } catch (InterruptedException e) {
+            cancel();
+            Thread.currentThread().interrupt();
+            exitCode = -1;
+        } finally {
+            release();
+        }
+        return exitCode;
+    }
+
+    /**
+     * Kill the running pipeline's processes and close its pipes.
+     * Returns false if no pipeline is running.
+     */
+    public synchronized boolean cancel() {
+        if (!running) {
+            return false;
+        }
+        cancelled = true;
+        for (Process process : processes) {
+            process.destroy();
+        }
+        for (Closeable stream : streams) {
+            closeQuietly(stream);
+        }
+        return true;
+    }
+
+    /**
+     * Whether a pipeline is running
+     */
+    public synchronized boolean isRunning() {
+        return running;
+    }
+
+    private synchronized void release() {
+        for (Closeable stream : streams) {
+            closeQuietly(stream);
+        }
+        streams.clear();
+        processes.clear();
+        running = false;
+    }
+
+    private synchronized <T extends Closeable> T track(T stream) throws IOException {
+        if (cancelled) {
+            stream.close();
+            throw new IOException("Interrupted");
+        }
+        streams.add(stream);
+        return stream;
+    }
+
+    private Process start(Pipeline.Stage stage, String workingDirectory) throws IOException {
+        ProcessBuilder builder = new ProcessBuilder(stage.getArgs());
+        builder.redirectErrorStream(stage.isMergeStderr());
+        if (stage.getErrorFile() != null) {
+            File errorFile = BuiltinCommands.resolve(workingDirectory, stage.getErrorFile());
+            builder.redirectError(stage.isErrorAppend()
+                ? ProcessBuilder.Redirect.appendTo(errorFile)
+                : ProcessBuilder.Redirect.to(errorFile));
+        }
+        File directory = new File(workingDirectory);
+        if (directory.isDirectory()) {
+            builder.directory(directory);
+        }
+        builder.environment().put("TERM", "dumb");
+
+        Process process;
+        try {
+            process = builder.start();
+        } catch (IOException e) {
+            throw new CommandNotFoundException(stage.getArgs().get(0) + ": not found");
+        }
+        synchronized (this) {
+            processes.add(process);
+            if (cancelled) {
+                process.destroy();
+                throw new IOException("Interrupted");
+            }
+        }
+        return process;
+    }
+
+    private Callable<Integer> runBuiltin(final BuiltinCommand builtin, final List<String> args,
+                                         final PipedInputStream pipe, final OutputStream out,
+                                         final Writer terminal) {
+        return new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                Reader in = new InputStreamReader(pipe, StandardCharsets.UTF_8);
+                Writer writer = out != null
+                    ? new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))
+                    : terminal;
+                try {
+                    int exitCode = builtin.run(args, in, writer);
+                    writer.flush();
+                    return exitCode;
+                } catch (IOException e) {
+                    // Usually the next stage exited without reading everything
+                    return EXIT_BROKEN_PIPE;
+                } finally {
+                    if (out != null) {
+                        closeQuietly(writer);
+                    }
+                    closeQuietly(pipe);
+                }
+            }
+        };
+    }
+
+    /**
+     * Pump bytes between stages, closing both ends when either is done
+     */
+    private static Runnable copy(final InputStream in, final OutputStream out) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                byte[] buffer = new byte[COPY_BUFFER_SIZE];
+                try {
+                    int read;
+                    while ((read = in.read(buffer)) > 0) {
+                        out.write(buffer, 0, read);
+                        out.flush();
+                    }
+                } catch (IOException e) {
+                    // One side closed; closing the other passes that on
+                } finally {
+                    closeQuietly(in);
+                    closeQuietly(out);
+                }
+            }
+        };
+    }
+
+    /**
+     * Pump a process's output to the terminal as it arrives
+     */
+    private static Runnable copy(final InputStream in, final Writer terminal) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8);
+                char[] buffer = new char[COPY_BUFFER_SIZE];
+                try {
+                    int read;
+                    while ((read = reader.read(buffer)) > 0) {
+                        terminal.write(buffer, 0, read);
+                    }
+                } catch (IOException e) {
+                    // Process was destroyed
+                } finally {
+                    closeQuietly(reader);
+                }
+            }
+        };
+    }
+
+    private static void write(Writer terminal, String text) {
+        try {
+            terminal.write(text);
+        } catch (IOException e) {
+            // Nothing left to report to
+        }
+    }
+
+    private static void closeQuietly(Closeable stream) {
+        try {
+            stream.close();
+        } catch (IOException e) {
+            // Already closed
+        }
+    }
+
+    /**
+     * Output of a stage whose successor reads a file instead
+     */
+    private static final class DiscardStream extends OutputStream {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) {
+        }
+    }
+
+    private static final class CommandNotFoundException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        CommandNotFoundException(String message) {
+            super(message);
+        }
+    }
+}
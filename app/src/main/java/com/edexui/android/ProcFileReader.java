@@ -0,0 +1,330 @@
+package com.edexui.android;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Allocation-free reader for /proc and /sys pseudo-files
+ * Loads a file into a reused byte buffer and walks it with a cursor,
+ * extracting numbers and key/value fields without creating Strings
+ */
+public class ProcFileReader {
+
+    private static final int DEFAULT_CAPACITY = 4096;
+    private static final int MAX_CAPACITY = 1024 * 1024;
+
+    private byte[] buffer;
+    private int length = 0;
+    private int position = 0;
+
+    public ProcFileReader() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public ProcFileReader(int initialCapacity) {
+        this.buffer = new byte[initialCapacity];
+    }
+
+    /**
+     * Load a file into the buffer, returning false if it cannot be read
+     */
+    public boolean read(String path) {
+        return read(path, MAX_CAPACITY);
+    }
+
+    /**
+     * Load at most maxBytes of a file into the buffer
+     */
+    public boolean read(String path, int maxBytes) {
+        FileInputStream in = null;
+        try {
+            in = new FileInputStream(path);
+            return read(in, maxBytes);
+        } catch (IOException | SecurityException e) {
+            length = 0;
+            position = 0;
+            return false;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // Ignore
+                }
+            }
+        }
+    }
+
+    /**
+     * Load at most maxBytes from a stream into the buffer, growing it as needed.
+     * The stream is not closed.
+     */
+    public boolean read(InputStream in, int maxBytes) throws IOException {
+        length = 0;
+        position = 0;
+
+        // /proc files report no size up front, so read until EOF
+        while (length < maxBytes) {
+            if (length == buffer.length) {
+                int grown = Math.min(buffer.length * 2, maxBytes);
+                byte[] larger = new byte[grown];
+                System.arraycopy(buffer, 0, larger, 0, length);
+                buffer = larger;
+            }
+            int read = in.read(buffer, length, Math.min(buffer.length, maxBytes) - length);
+            if (read <= 0) {
+                break;
+            }
+            length += read;
+        }
+        return true;
+    }
+
+    /**
+     * Number of bytes currently loaded
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Current cursor position
+     */
+    public int getPosition() {
+        return position;
+    }
+
+    /**
+     * Move the cursor to an absolute position
+     */
+    public void setPosition(int position) {
+        this.position = Math.max(0, Math.min(position, length));
+    }
+
+    /**
+     * Whether the cursor has not yet reached the end of the data
+     */
+    public boolean hasMore() {
+        return position < length;
+    }
+
+    /**
+     * Get the byte at an absolute position
+     */
+    public byte byteAt(int index) {
+        return buffer[index];
+    }
+
+    /**
+     * Find the last occurrence of a byte in the loaded data, or -1
+     */
+    public int lastIndexOf(byte value) {
+        for (int i = length - 1; i >= 0; i--) {
+            if (buffer[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Check whether a byte range holds exactly the characters of an ASCII string
+     */
+    public boolean rangeEquals(int start, int end, String value) {
+        if (value == null || value.length() != end - start) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if (buffer[i] != (byte) value.charAt(i - start)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Advance the cursor to the start of the next line.
+     * Returns false if there is no further line.
+     */
+    public boolean nextLine() {
+        while (position < length && buffer[position] != '\n') {
+            position++;
+        }
+        if (position < length) {
+            position++;
+        }
+        return position < length;
+    }
+
+    /**
+     * Skip spaces and tabs at the cursor
+     */
+    public void skipSpaces() {
+        while (position < length && (buffer[position] == ' ' || buffer[position] == '\t')) {
+            position++;
+        }
+    }
+
+    /**
+     * Skip the whitespace-delimited token at the cursor, plus any leading whitespace
+     */
+    public void skipToken() {
+        skipSpaces();
+        while (position < length && !isSeparator(buffer[position])) {
+            position++;
+        }
+    }
+
+    /**
+     * Check whether the bytes at the cursor start with the given prefix
+     */
+    public boolean startsWith(byte[] prefix) {
+        return matchesAt(position, prefix);
+    }
+
+    /**
+     * Check whether the bytes at an absolute position start with the given prefix
+     */
+    public boolean matchesAt(int index, byte[] prefix) {
+        if (index < 0 || index + prefix.length > length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer[index + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Find the next line of the form "key: value" at or after the cursor.
+     * On success the cursor is left just after the colon and the line start is
+     * returned; otherwise -1 is returned and the cursor is unchanged.
+     */
+    public int seekKey(byte[] key) {
+        int lineStart = position;
+        // Only match at line boundaries
+        if (lineStart > 0 && buffer[lineStart - 1] != '\n') {
+            while (lineStart < length && buffer[lineStart] != '\n') {
+                lineStart++;
+            }
+            lineStart++;
+        }
+
+        while (lineStart < length) {
+            if (isKeyAt(lineStart, key)) {
+                position = afterColon(lineStart + key.length);
+                return lineStart;
+            }
+            while (lineStart < length && buffer[lineStart] != '\n') {
+                lineStart++;
+            }
+            lineStart++;
+        }
+        return -1;
+    }
+
+    /**
+     * Check whether the line at lineStart holds the given key.
+     * If so the cursor is moved just after its colon.
+     */
+    public boolean seekKeyAt(int lineStart, byte[] key) {
+        if (!isKeyAt(lineStart, key)) {
+            return false;
+        }
+        position = afterColon(lineStart + key.length);
+        return true;
+    }
+
+    private boolean isKeyAt(int index, byte[] key) {
+        if (!matchesAt(index, key)) {
+            return false;
+        }
+        int end = index + key.length;
+        while (end < length && (buffer[end] == ' ' || buffer[end] == '\t')) {
+            end++;
+        }
+        return end < length && buffer[end] == ':';
+    }
+
+    private int afterColon(int index) {
+        while (index < length && buffer[index] != ':') {
+            index++;
+        }
+        return Math.min(index + 1, length);
+    }
+
+    /**
+     * Parse the next decimal number after the cursor, skipping leading whitespace.
+     * Returns defaultValue if no digits are found on the current line.
+     */
+    public long nextLong(long defaultValue) {
+        skipSpaces();
+        boolean negative = false;
+        if (position < length && buffer[position] == '-') {
+            negative = true;
+            position++;
+        }
+        if (position >= length || !isDigit(buffer[position])) {
+            return defaultValue;
+        }
+        long value = 0;
+        while (position < length && isDigit(buffer[position])) {
+            value = value * 10 + (buffer[position] - '0');
+            position++;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parse the next decimal number as an int
+     */
+    public int nextInt(int defaultValue) {
+        return (int) nextLong(defaultValue);
+    }
+
+    /**
+     * Copy the rest of the current line, trimmed, into a String.
+     * Intended for static fields read once; allocates.
+     */
+    public String restOfLine() {
+        skipSpaces();
+        int start = position;
+        while (position < length && buffer[position] != '\n') {
+            position++;
+        }
+        int end = position;
+        while (end > start && isSeparator(buffer[end - 1])) {
+            end--;
+        }
+        return new String(buffer, start, end - start);
+    }
+
+    /**
+     * Copy a byte range into a String
+     */
+    public String substring(int start, int end) {
+        return new String(buffer, start, end - start);
+    }
+
+    /**
+     * Encode an ASCII key once so it can be matched repeatedly without allocation
+     */
+    public static byte[] key(String name) {
+        byte[] bytes = new byte[name.length()];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) name.charAt(i);
+        }
+        return bytes;
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private static boolean isSeparator(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+    }
+}
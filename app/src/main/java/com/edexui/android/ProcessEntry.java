@@ -0,0 +1,97 @@
+package com.edexui.android;
+
+/**
+ * One row of the process table
+ * Instances are owned by ProcessTable and updated in place on every refresh
+ */
+public class ProcessEntry {
+
+    int pid;
+    int ppid;
+    int uid;
+    char state;
+    int threads;
+    String name;
+
+    long cpuTicks;
+    long previousCpuTicks;
+    float cpuPercent;
+
+    long rssBytes;
+    long previousRssBytes;
+    long vsizeBytes;
+
+    String statPath;
+    String statusPath;
+    int generation;
+
+    /**
+     * Prepare a pooled entry for a new pid
+     */
+    void reset(int pid) {
+        this.pid = pid;
+        this.ppid = 0;
+        this.uid = -1;
+        this.state = '?';
+        this.threads = 0;
+        this.name = null;
+        this.cpuTicks = 0;
+        this.previousCpuTicks = -1;
+        this.cpuPercent = 0f;
+        this.rssBytes = 0;
+        this.previousRssBytes = -1;
+        this.vsizeBytes = 0;
+        this.statPath = "/proc/" + pid + "/stat";
+        this.statusPath = "/proc/" + pid + "/status";
+        this.generation = 0;
+    }
+
+    public int getPid() {
+        return pid;
+    }
+
+    public int getParentPid() {
+        return ppid;
+    }
+
+    public int getUid() {
+        return uid;
+    }
+
+    /**
+     * Get the scheduler state letter (R, S, D, Z, ...)
+     */
+    public char getState() {
+        return state;
+    }
+
+    public int getThreadCount() {
+        return threads;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get CPU usage since the previous refresh, 100% being one full core
+     */
+    public float getCpuPercent() {
+        return cpuPercent;
+    }
+
+    public long getRssBytes() {
+        return rssBytes;
+    }
+
+    /**
+     * Get the change in resident memory since the previous refresh
+     */
+    public long getRssDeltaBytes() {
+        return previousRssBytes < 0 ? 0 : rssBytes - previousRssBytes;
+    }
+
+    public long getVirtualBytes() {
+        return vsizeBytes;
+    }
+}
@@ -2,21 +2,40 @@ package com.edexui.android;
 
 import androidx.appcompat.app.AppCompatActivity;
 import android.os.Bundle;
-import android.os.Handler;
-import android.os.Looper;
+import android.system.Os;
+import android.system.OsConstants;
+import android.util.Log;
 import android.widget.TextView;
 import android.view.View;
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * Process List Activity - Shows running processes similar to 'top' command
  */
 public class ProcessListActivity extends AppCompatActivity {
 
+    private static final String TAG = "ProcessListActivity";
+    private static final long REFRESH_INTERVAL_MS = 3000;
+
+    private static final byte[] KEY_VM_RSS = ProcFileReader.key("VmRSS");
+    private static final byte[] KEY_VM_SIZE = ProcFileReader.key("VmSize");
+    private static final byte[] KEY_THREADS = ProcFileReader.key("Threads");
+
     private TextView processListText;
-    private Handler handler;
-    private Runnable updateRunnable;
+    private TextView processListTitle;
+    private RecyclerView processListView;
+    private ProcessListAdapter processListAdapter;
+    private SamplingScheduler samplingScheduler;
+    private ProcessTable processTable;
+    private FrameTimer frameTimer;
+
+    // Only touched on the sampling thread
+    private final MemInfoReader memInfoReader = new MemInfoReader();
+    private final ProcFileReader statusReader = new ProcFileReader();
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -24,63 +43,116 @@ public class ProcessListActivity extends AppCompatActivity {
         setContentView(R.layout.activity_process_list);
 
         processListText = findViewById(R.id.processListText);
+        processListTitle = findViewById(R.id.processListTitle);
+        processListView = findViewById(R.id.processListView);
+
+        processListAdapter = new ProcessListAdapter();
+        processListView.setLayoutManager(new LinearLayoutManager(this));
+        processListView.setHasFixedSize(true);
+        // Rows change in place every refresh; skip change animations
+        processListView.setItemAnimator(null);
+        processListView.setAdapter(processListAdapter);
+
+        // Confirms that applying a refresh stays within one frame
+        frameTimer = new FrameTimer("Process list");
+        frameTimer.setListener(new FrameTimer.Listener() {
+            @Override
+            public void onFrameMeasured(String label, long durationNanos) {
+                Log.d(TAG, label + " frame: " + (durationNanos / 1000) + "us, over budget "
+                    + frameTimer.getOverBudgetCount() + "/" + frameTimer.getMeasuredCount());
+            }
+        });
 
-        // Update process list
-        updateProcessList();
+        processTable = new ProcessTable(Os.sysconf(OsConstants._SC_CLK_TCK));
 
-        // Start periodic updates
-        handler = new Handler(Looper.getMainLooper());
-        updateRunnable = new Runnable() {
+        // Tap the title to cycle the sort column, like the keys in 'top'
+        processListTitle.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                ProcessTable.SortOrder[] orders = ProcessTable.SortOrder.values();
+                ProcessTable.SortOrder next =
+                    orders[(processTable.getSortOrder().ordinal() + 1) % orders.length];
+                // Does not wait for a refresh; show the rows already on screen in the new order
+                processTable.setSortOrder(next);
+                processListTitle.setText(getString(R.string.process_list) + " [" + next.name() + "]");
+                processListAdapter.submitList(sortRows(processListAdapter.getCurrentList(), next));
+            }
+        });
+        processListTitle.setText(getString(R.string.process_list)
+            + " [" + processTable.getSortOrder().name() + "]");
+
+        // Scan /proc and snapshot rows on a background thread; the UI only diffs and binds
+        samplingScheduler = new SamplingScheduler();
+        samplingScheduler.schedule(REFRESH_INTERVAL_MS, new SamplingScheduler.Sampler<ProcessListSample>() {
+            @Override
+            public ProcessListSample sample() {
+                return buildProcessList();
+            }
+        }, new SamplingScheduler.Listener<ProcessListSample>() {
             @Override
-            public void run() {
-                updateProcessList();
-                handler.postDelayed(this, 3000); // Update every 3 seconds
+            public void onSample(ProcessListSample sample) {
+                processListText.setText(sample.summary);
+                ProcessTable.SortOrder order = processTable.getSortOrder();
+                // Sampled before the sort order last changed
+                List<ProcessRow> rows = sample.sortOrder == order
+                    ? sample.rows : sortRows(sample.rows, order);
+                processListAdapter.submitList(rows, new Runnable() {
+                    @Override
+                    public void run() {
+                        // Diff has been applied; time the rebind, layout and draw
+                        frameTimer.begin();
+                    }
+                });
             }
-        };
-        handler.post(updateRunnable);
+        });
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        samplingScheduler.start();
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        samplingScheduler.stop();
     }
 
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        if (handler != null && updateRunnable != null) {
-            handler.removeCallbacks(updateRunnable);
+        if (samplingScheduler != null) {
+            samplingScheduler.shutdown();
+        }
+        if (frameTimer != null) {
+            frameTimer.cancel();
         }
     }
 
     /**
-     * Update process list
+     * Build the summary and row snapshot; runs on the sampling thread
      */
-    private void updateProcessList() {
+    private ProcessListSample buildProcessList() {
         StringBuilder processes = new StringBuilder();
-        processes.append("═══════════════════════════════════════\n");
-        processes.append("  PROCESS LIST (TOP)\n");
-        processes.append("═══════════════════════════════════════\n\n");
-
-        try {
-            // Try to execute 'ps' command
-            Process process = Runtime.getRuntime().exec("ps");
-            BufferedReader reader = new BufferedReader(
-                new InputStreamReader(process.getInputStream()));
-            String line;
-            int count = 0;
-
-            while ((line = reader.readLine()) != null && count < 50) {
-                processes.append(line).append("\n");
-                count++;
-            }
-
-            reader.close();
-            process.waitFor();
-
-            if (count == 0) {
-                processes.append("No process information available\n");
-                processes.append("(Limited access on non-rooted devices)\n");
-            }
+        List<ProcessRow> rows = Collections.emptyList();
+        // Read before the refresh; getRows() then uses this order or a newer one
+        ProcessTable.SortOrder sortOrder = processTable.getSortOrder();
+
+        // Summary line like the header of 'top'
+        if (memInfoReader.read()) {
+            processes.append("MEM: ").append(formatBytes(memInfoReader.getUsedBytes()))
+                .append(" used / ").append(formatBytes(memInfoReader.getTotalBytes()))
+                .append(" total, ").append(formatBytes(memInfoReader.getAvailableBytes()))
+                .append(" avail\n");
+        }
 
-        } catch (Exception e) {
-            processes.append("Error: Unable to retrieve process list\n");
-            processes.append("Command 'ps' may not be available\n");
+        if (processTable.refresh()) {
+            rows = processTable.getRows();
+            processes.append("TASKS: ").append(rows.size()).append("\n\n");
+            processes.append("  PID   UID S  CPU%      RSS  THR NAME");
+        } else {
+            processes.append("\nError: Unable to read /proc\n");
             processes.append("\nFallback: Application processes only\n\n");
 
             // Show Java process information as fallback
@@ -89,16 +161,53 @@ public class ProcessListActivity extends AppCompatActivity {
             processes.append("UID: ").append(android.os.Process.myUid()).append("\n");
             processes.append("TID: ").append(android.os.Process.myTid()).append("\n");
 
-            // Memory info
-            Runtime runtime = Runtime.getRuntime();
-            processes.append("\nMemory Usage:\n");
-            processes.append("Total: ").append(formatBytes(runtime.totalMemory())).append("\n");
-            processes.append("Free: ").append(formatBytes(runtime.freeMemory())).append("\n");
-            processes.append("Max: ").append(formatBytes(runtime.maxMemory())).append("\n");
+            // Memory info of this process, straight from the kernel
+            if (statusReader.read("/proc/self/status")) {
+                processes.append("\nMemory Usage:\n");
+                appendStatusField(processes, "Resident: ", KEY_VM_RSS);
+                appendStatusField(processes, "Virtual: ", KEY_VM_SIZE);
+                statusReader.setPosition(0);
+                if (statusReader.seekKey(KEY_THREADS) >= 0) {
+                    processes.append("Threads: ").append(statusReader.nextLong(0)).append("\n");
+                }
+            }
+        }
+
+        return new ProcessListSample(processes.toString(), rows, sortOrder);
+    }
+
+    /**
+     * Copy of rows in the given order
+     */
+    private static List<ProcessRow> sortRows(List<ProcessRow> rows, ProcessTable.SortOrder order) {
+        List<ProcessRow> sorted = new ArrayList<>(rows);
+        Collections.sort(sorted, ProcessRow.comparatorFor(order));
+        return sorted;
+    }
+
+    /**
+     * Append a kB-valued field from /proc/self/status
+     */
+    private void appendStatusField(StringBuilder out, String label, byte[] key) {
+        statusReader.setPosition(0);
+        if (statusReader.seekKey(key) >= 0) {
+            out.append(label).append(formatBytes(statusReader.nextLong(0) * 1024)).append("\n");
         }
+    }
 
-        processes.append("\n═══════════════════════════════════════\n");
-        processListText.setText(processes.toString());
+    /**
+     * Immutable result of one refresh, handed from the sampling thread to the UI
+     */
+    private static final class ProcessListSample {
+        final String summary;
+        final List<ProcessRow> rows;
+        final ProcessTable.SortOrder sortOrder;
+
+        ProcessListSample(String summary, List<ProcessRow> rows, ProcessTable.SortOrder sortOrder) {
+            this.summary = summary;
+            this.rows = rows;
+            this.sortOrder = sortOrder;
+        }
     }
 
     /**
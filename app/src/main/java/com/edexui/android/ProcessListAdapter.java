@@ -0,0 +1,102 @@
+package com.edexui.android;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.Locale;
+
+/**
+ * Recycling adapter for the process list
+ * Diffs are computed off the main thread by ListAdapter, so a refresh only
+ * rebinds rows whose contents actually changed
+ */
+public class ProcessListAdapter extends ListAdapter<ProcessRow, ProcessListAdapter.ViewHolder> {
+
+    private static final DiffUtil.ItemCallback<ProcessRow> DIFF_CALLBACK =
+        new DiffUtil.ItemCallback<ProcessRow>() {
+            @Override
+            public boolean areItemsTheSame(@NonNull ProcessRow oldItem, @NonNull ProcessRow newItem) {
+                return oldItem.getPid() == newItem.getPid();
+            }
+
+            @Override
+            public boolean areContentsTheSame(@NonNull ProcessRow oldItem, @NonNull ProcessRow newItem) {
+                return oldItem.equals(newItem);
+            }
+        };
+
+    private final StringBuilder rowBuilder = new StringBuilder(64);
+
+    public ProcessListAdapter() {
+        super(DIFF_CALLBACK);
+        setHasStableIds(true);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return getItem(position).getPid();
+    }
+
+    @NonNull
+    @Override
+    public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext())
+            .inflate(R.layout.item_process, parent, false);
+        return new ViewHolder(view);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
+        ProcessRow row = getItem(position);
+        StringBuilder out = rowBuilder;
+        out.setLength(0);
+
+        appendPadded(out, String.valueOf(row.getPid()), 5);
+        out.append(' ');
+        appendPadded(out, String.valueOf(row.getUid()), 5);
+        out.append(' ').append(row.getState()).append(' ');
+        int tenths = row.getCpuTenths();
+        appendPadded(out, (tenths / 10) + "." + (tenths % 10), 5);
+        out.append(' ');
+        appendPadded(out, formatBytes(row.getRssBytes()), 8);
+        out.append(' ');
+        appendPadded(out, String.valueOf(row.getThreadCount()), 4);
+        out.append(' ').append(row.getName());
+
+        holder.text.setText(out.toString());
+    }
+
+    private static void appendPadded(StringBuilder out, String value, int width) {
+        for (int i = value.length(); i < width; i++) {
+            out.append(' ');
+        }
+        out.append(value);
+    }
+
+    /**
+     * Format bytes to human-readable format
+     */
+    private static String formatBytes(long bytes) {
+        if (bytes < 1024) return bytes + " B";
+        int exp = (int) (Math.log(bytes) / Math.log(1024));
+        String pre = "KMGTPE".charAt(exp - 1) + "";
+        return String.format(Locale.getDefault(), "%.1f %sB",
+            bytes / Math.pow(1024, exp), pre);
+    }
+
+    static class ViewHolder extends RecyclerView.ViewHolder {
+        final TextView text;
+
+        ViewHolder(View itemView) {
+            super(itemView);
+            text = (TextView) itemView;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.edexui.android;
+
+import java.util.Comparator;
+
+/**
+ * Immutable copy of a ProcessEntry for display
+ * ProcessTable updates its entries in place, so the list UI diffs these instead
+ */
+public final class ProcessRow {
+
+    private static final Comparator<ProcessRow> BY_CPU = new Comparator<ProcessRow>() {
+        @Override
+        public int compare(ProcessRow a, ProcessRow b) {
+            int result = Integer.compare(b.cpuTenths, a.cpuTenths);
+            return result != 0 ? result : Long.compare(b.rssBytes, a.rssBytes);
+        }
+    };
+
+    private static final Comparator<ProcessRow> BY_MEMORY = new Comparator<ProcessRow>() {
+        @Override
+        public int compare(ProcessRow a, ProcessRow b) {
+            int result = Long.compare(b.rssBytes, a.rssBytes);
+            return result != 0 ? result : Integer.compare(a.pid, b.pid);
+        }
+    };
+
+    private static final Comparator<ProcessRow> BY_PID = new Comparator<ProcessRow>() {
+        @Override
+        public int compare(ProcessRow a, ProcessRow b) {
+            return Integer.compare(a.pid, b.pid);
+        }
+    };
+
+    private final int pid;
+    private final int uid;
+    private final char state;
+    private final int cpuTenths;
+    private final long rssBytes;
+    private final int threads;
+    private final String name;
+
+    public ProcessRow(ProcessEntry entry) {
+        this.pid = entry.getPid();
+        this.uid = entry.getUid();
+        this.state = entry.getState();
+        // Rounded so that sub-display changes do not trigger a rebind
+        this.cpuTenths = Math.round(entry.getCpuPercent() * 10);
+        this.rssBytes = entry.getRssBytes();
+        this.threads = entry.getThreadCount();
+        this.name = entry.getName();
+    }
+
+    public int getPid() {
+        return pid;
+    }
+
+    public int getUid() {
+        return uid;
+    }
+
+    public char getState() {
+        return state;
+    }
+
+    /**
+     * Get CPU usage in tenths of a percent
+     */
+    public int getCpuTenths() {
+        return cpuTenths;
+    }
+
+    public long getRssBytes() {
+        return rssBytes;
+    }
+
+    public int getThreadCount() {
+        return threads;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Order of the process list for a sort order. ProcessTable sorts its
+     * rows with it, and rows already on screen are re-sorted with it when
+     * the order changes between refreshes.
+     */
+    public static Comparator<ProcessRow> comparatorFor(ProcessTable.SortOrder order) {
+        switch (order) {
+            case MEMORY:
+                return BY_MEMORY;
+            case PID:
+                return BY_PID;
+            case CPU:
+            default:
+                return BY_CPU;
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ProcessRow)) {
+            return false;
+        }
+        ProcessRow other = (ProcessRow) o;
+        return pid == other.pid
+            && uid == other.uid
+            && state == other.state
+            && cpuTenths == other.cpuTenths
+            && rssBytes == other.rssBytes
+            && threads == other.threads
+            && (name == null ? other.name == null : name.equals(other.name));
+    }
+
+    @Override
+    public int hashCode() {
+        int result = pid;
+        result = 31 * result + cpuTenths;
+        result = 31 * result + (int) (rssBytes ^ (rssBytes >>> 32));
+        return result;
+    }
+}
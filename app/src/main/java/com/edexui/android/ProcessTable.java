@@ -0,0 +1,242 @@
+package com.edexui.android;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-process process table for Edex-UI
+ * Walks /proc/[pid]/stat and /proc/[pid]/status directly and keeps the
+ * previous sample of every pid to compute CPU and memory deltas, like 'top'
+ */
+public class ProcessTable {
+
+    public enum SortOrder {
+        CPU, MEMORY, PID
+    }
+
+    private static final byte[] KEY_UID = ProcFileReader.key("Uid");
+    private static final byte[] KEY_VM_RSS = ProcFileReader.key("VmRSS");
+
+    // Field numbers from proc(5), counting from 1
+    private static final int STAT_PPID = 4;
+    private static final int STAT_UTIME = 14;
+    private static final int STAT_STIME = 15;
+    private static final int STAT_THREADS = 20;
+    private static final int STAT_VSIZE = 23;
+
+    private final File procDir = new File("/proc");
+    private final ProcFileReader reader = new ProcFileReader(1024);
+    private final Map<Integer, ProcessEntry> entries = new HashMap<>();
+    private final ArrayDeque<ProcessEntry> pool = new ArrayDeque<>();
+    private final long clockTicksPerSecond;
+
+    // Set from the UI thread without waiting for a refresh in progress
+    private volatile SortOrder sortOrder = SortOrder.CPU;
+    private int generation = 0;
+    private long lastRefreshNanos = 0;
+
+    /**
+     * @param clockTicksPerSecond value of _SC_CLK_TCK, the unit of utime/stime
+     */
+    public ProcessTable(long clockTicksPerSecond) {
+        this.clockTicksPerSecond = clockTicksPerSecond > 0 ? clockTicksPerSecond : 100;
+    }
+
+    /**
+     * Re-scan /proc and update all entries.
+     * Returns false if /proc cannot be listed at all.
+     */
+    public synchronized boolean refresh() {
+        String[] names = procDir.list();
+        if (names == null) {
+            return false;
+        }
+
+        long now = System.nanoTime();
+        double elapsedSeconds = lastRefreshNanos == 0 ? 0 : (now - lastRefreshNanos) / 1e9;
+        lastRefreshNanos = now;
+        generation++;
+
+        for (String name : names) {
+            int pid = parsePid(name);
+            if (pid <= 0) {
+                continue;
+            }
+
+            ProcessEntry entry = entries.get(pid);
+            boolean isNew = entry == null;
+            if (isNew) {
+                entry = pool.isEmpty() ? new ProcessEntry() : pool.pop();
+                entry.reset(pid);
+            }
+
+            if (!readStat(entry)) {
+                // Exited between listing and reading, or not accessible
+                if (!isNew) {
+                    entries.remove(pid);
+                }
+                pool.push(entry);
+                continue;
+            }
+            readStatus(entry);
+
+            if (entry.previousCpuTicks >= 0 && elapsedSeconds > 0) {
+                // A reused pid can belong to a process with fewer ticks than the old one
+                long deltaTicks = Math.max(0, entry.cpuTicks - entry.previousCpuTicks);
+                entry.cpuPercent = (float) (deltaTicks * 100.0 / (clockTicksPerSecond * elapsedSeconds));
+            }
+            entry.generation = generation;
+
+            if (isNew) {
+                entries.put(pid, entry);
+            }
+        }
+
+        // Drop processes that have exited and recycle their entries
+        Iterator<ProcessEntry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            ProcessEntry entry = it.next();
+            if (entry.generation != generation) {
+                it.remove();
+                pool.push(entry);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parse /proc/[pid]/stat into the entry
+     */
+    private boolean readStat(ProcessEntry entry) {
+        if (!reader.read(entry.statPath) || reader.length() == 0) {
+            return false;
+        }
+        return parseStat(reader, entry);
+    }
+
+    /**
+     * Parse the /proc/[pid]/stat contents loaded in reader into the entry;
+     * false if they are malformed
+     */
+    static boolean parseStat(ProcFileReader reader, ProcessEntry entry) {
+        // The command name may itself contain spaces or parentheses
+        int open = 0;
+        while (open < reader.length() && reader.byteAt(open) != '(') {
+            open++;
+        }
+        int close = reader.lastIndexOf((byte) ')');
+        if (open >= reader.length() || close < open) {
+            return false;
+        }
+        if (!reader.rangeEquals(open + 1, close, entry.name)) {
+            entry.name = reader.substring(open + 1, close);
+        }
+
+        reader.setPosition(close + 1);
+        reader.skipSpaces();
+        entry.state = reader.hasMore() ? (char) reader.byteAt(reader.getPosition()) : '?';
+        reader.skipToken();
+
+        long utime = 0;
+        long stime = 0;
+        for (int field = STAT_PPID; field <= STAT_VSIZE; field++) {
+            long value = reader.nextLong(0);
+            switch (field) {
+                case STAT_PPID:
+                    entry.ppid = (int) value;
+                    break;
+                case STAT_UTIME:
+                    utime = value;
+                    break;
+                case STAT_STIME:
+                    stime = value;
+                    break;
+                case STAT_THREADS:
+                    entry.threads = (int) value;
+                    break;
+                case STAT_VSIZE:
+                    entry.vsizeBytes = value;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        entry.previousCpuTicks = entry.generation == 0 ? -1 : entry.cpuTicks;
+        entry.cpuTicks = utime + stime;
+        return true;
+    }
+
+    /**
+     * Parse owner and resident memory from /proc/[pid]/status
+     */
+    private void readStatus(ProcessEntry entry) {
+        entry.previousRssBytes = entry.generation == 0 ? -1 : entry.rssBytes;
+        if (!reader.read(entry.statusPath)) {
+            return;
+        }
+        parseStatus(reader, entry);
+    }
+
+    /**
+     * Parse the /proc/[pid]/status contents loaded in reader into the entry
+     */
+    static void parseStatus(ProcFileReader reader, ProcessEntry entry) {
+        if (reader.seekKey(KEY_UID) >= 0) {
+            // Real uid comes first, followed by effective, saved and fs uids
+            entry.uid = reader.nextInt(-1);
+        }
+        // Kernel threads have no VmRSS line
+        entry.rssBytes = reader.seekKey(KEY_VM_RSS) >= 0 ? reader.nextLong(0) * 1024 : 0;
+    }
+
+    /**
+     * Change the order of rows returned from now on. Does not block, so it
+     * can be called from the UI thread while a refresh is running.
+     */
+    public void setSortOrder(SortOrder sortOrder) {
+        this.sortOrder = sortOrder;
+    }
+
+    public SortOrder getSortOrder() {
+        return sortOrder;
+    }
+
+    /**
+     * Copy the entries of the last refresh into rows, sorted with
+     * ProcessRow.comparatorFor() in the current sort order
+     */
+    public synchronized List<ProcessRow> getRows() {
+        List<ProcessRow> rows = new ArrayList<>(entries.size());
+        for (ProcessEntry entry : entries.values()) {
+            rows.add(new ProcessRow(entry));
+        }
+        Collections.sort(rows, ProcessRow.comparatorFor(sortOrder));
+        return rows;
+    }
+
+    /**
+     * Get the number of processes seen in the last refresh
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private static int parsePid(String name) {
+        int pid = 0;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            pid = pid * 10 + (c - '0');
+        }
+        return pid;
+    }
+}
@@ -0,0 +1,156 @@
+package com.edexui.android;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background sampling scheduler for Edex-UI
+ * Runs metric samplers on a dedicated worker thread, each at its own cadence,
+ * and delivers the results on the main thread
+ */
+public class SamplingScheduler {
+
+    /**
+     * Produces a value on the sampling thread
+     */
+    public interface Sampler<T> {
+        T sample();
+    }
+
+    /**
+     * Receives a sampled value on the main thread
+     */
+    public interface Listener<T> {
+        void onSample(T value);
+    }
+
+    private final Handler mainHandler;
+    private final List<Task<?>> tasks = new ArrayList<>();
+    private ScheduledExecutorService executor;
+    private volatile boolean running = false;
+
+    public SamplingScheduler() {
+        this.mainHandler = new Handler(Looper.getMainLooper());
+    }
+
+    /**
+     * Register a sampler that runs every intervalMs while started.
+     * An interval of 0 samples only once, on the first start.
+     */
+    public synchronized <T> void schedule(long intervalMs, Sampler<T> sampler, Listener<T> listener) {
+        Task<T> task = new Task<>(intervalMs, sampler, listener);
+        tasks.add(task);
+        if (running) {
+            task.start(executor);
+        }
+    }
+
+    /**
+     * Start or resume sampling
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        android.os.Process.setThreadPriority(
+                            android.os.Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }
+                }, "edex-sampler");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        for (Task<?> task : tasks) {
+            task.start(executor);
+        }
+    }
+
+    /**
+     * Pause sampling; pending results are dropped
+     */
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        for (Task<?> task : tasks) {
+            task.cancel();
+        }
+        executor.shutdownNow();
+        executor = null;
+        mainHandler.removeCallbacksAndMessages(null);
+    }
+
+    /**
+     * Stop sampling and forget all registered samplers
+     */
+    public synchronized void shutdown() {
+        stop();
+        tasks.clear();
+    }
+
+    private class Task<T> implements Runnable {
+        private final long intervalMs;
+        private final Sampler<T> sampler;
+        private final Listener<T> listener;
+        private ScheduledFuture<?> future;
+        private volatile boolean sampledOnce = false;
+
+        Task(long intervalMs, Sampler<T> sampler, Listener<T> listener) {
+            this.intervalMs = intervalMs;
+            this.sampler = sampler;
+            this.listener = listener;
+        }
+
+        void start(ScheduledExecutorService executor) {
+            if (intervalMs > 0) {
+                future = executor.scheduleWithFixedDelay(this, 0, intervalMs, TimeUnit.MILLISECONDS);
+            } else if (!sampledOnce) {
+                future = executor.schedule(this, 0, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        void cancel() {
+            if (future != null) {
+                future.cancel(false);
+                future = null;
+            }
+        }
+
+        @Override
+        public void run() {
+            final T value;
+            try {
+                value = sampler.sample();
+            } catch (RuntimeException e) {
+                // A failing sampler must not kill the shared worker
+                return;
+            }
+            sampledOnce = true;
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (running) {
+                        listener.onSample(value);
+                    }
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,595 @@
+package com.edexui.android;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-size character cell screen for the Edex-UI terminal
+ * Each cell is one int packing the char with its colors and flags. Rows are
+ * reached through a row map, so scrolling rotates row indices instead of
+ * copying cells, and changed rows are flagged dirty for the renderer.
+ */
+public class ScreenGrid {
+
+    public static final int DEFAULT_ROWS = 24;
+    public static final int DEFAULT_COLUMNS = 80;
+
+    // Cell layout: char in bits 0-15, foreground 16-20, background 21-25, flags above
+    public static final int COLOR_DEFAULT = 16;
+    public static final int FLAG_BOLD = 1 << 26;
+    public static final int FLAG_UNDERLINE = 1 << 27;
+    public static final int FLAG_INVERSE = 1 << 28;
+
+    private static final int CHAR_MASK = 0xFFFF;
+    private static final int FG_SHIFT = 16;
+    private static final int BG_SHIFT = 21;
+    private static final int COLOR_MASK = 0x1F;
+    private static final int DEFAULT_ATTRIBUTES =
+        (COLOR_DEFAULT << FG_SHIFT) | (COLOR_DEFAULT << BG_SHIFT);
+    private static final int BLANK = DEFAULT_ATTRIBUTES | ' ';
+    private static final int TAB_WIDTH = 8;
+
+    private int rows;
+    private int columns;
+    private int[] cells;
+    private int[] rowMap;
+    private boolean[] dirty;
+    private boolean anyDirty;
+
+    // Alternate screen used by full-screen programs; swapped in, never copied
+    private int[] alternateCells;
+    private int[] alternateRowMap;
+    private boolean alternateActive = false;
+
+    private int cursorRow = 0;
+    private int cursorColumn = 0;
+    // Set after writing the last column; the next char wraps first
+    private boolean wrapPending = false;
+    private int attributes = DEFAULT_ATTRIBUTES;
+    private int scrollTop = 0;
+    private int scrollBottom;
+    private boolean autoWrap = true;
+    private boolean cursorVisible = true;
+
+    private int savedRow = 0;
+    private int savedColumn = 0;
+    private int savedAttributes = DEFAULT_ATTRIBUTES;
+
+    private ScrollbackBuffer scrollback;
+    private char[] lineBuffer;
+
+    public ScreenGrid() {
+        this(DEFAULT_ROWS, DEFAULT_COLUMNS);
+    }
+
+    public ScreenGrid(int rows, int columns) {
+        allocate(rows, columns);
+    }
+
+    private void allocate(int rows, int columns) {
+        if (rows < 1 || columns < 1) {
+            throw new IllegalArgumentException("Screen must have at least one cell");
+        }
+        this.rows = rows;
+        this.columns = columns;
+        this.cells = new int[rows * columns];
+        this.rowMap = identityMap(rows);
+        this.alternateCells = new int[rows * columns];
+        this.alternateRowMap = identityMap(rows);
+        this.dirty = new boolean[rows];
+        this.lineBuffer = new char[columns];
+        Arrays.fill(cells, BLANK);
+        Arrays.fill(alternateCells, BLANK);
+        this.scrollTop = 0;
+        this.scrollBottom = rows - 1;
+        markAllDirty();
+    }
+
+    private static int[] identityMap(int rows) {
+        int[] map = new int[rows];
+        for (int i = 0; i < rows; i++) {
+            map[i] = i;
+        }
+        return map;
+    }
+
+    /**
+     * Send lines scrolled off the top of the main screen to a scrollback buffer
+     */
+    public void setScrollback(ScrollbackBuffer scrollback) {
+        this.scrollback = scrollback;
+    }
+
+    /**
+     * Resize the screen, keeping the rows up to the cursor; rows that no
+     * longer fit above them move to the scrollback
+     */
+    public void resize(int newRows, int newColumns) {
+        if (newRows == rows && newColumns == columns) {
+            return;
+        }
+        int[] oldCells = cells;
+        int[] oldMap = rowMap;
+        int oldRows = rows;
+        int oldColumns = columns;
+        int keepFrom = Math.max(0, Math.min(cursorRow + 1, oldRows) - newRows);
+        if (alternateActive) {
+            // Full-screen programs redraw after a resize; main screen content is kept
+            setAlternateScreen(false);
+            oldCells = cells;
+            oldMap = rowMap;
+            keepFrom = Math.max(0, cursorRow + 1 - newRows);
+        }
+        if (scrollback != null) {
+            for (int row = 0; row < keepFrom; row++) {
+                appendToScrollback(oldMap[row]);
+            }
+        }
+
+        allocate(newRows, newColumns);
+        int copyColumns = Math.min(oldColumns, newColumns);
+        for (int row = 0; row < newRows && keepFrom + row < oldRows; row++) {
+            System.arraycopy(oldCells, oldMap[keepFrom + row] * oldColumns,
+                cells, rowMap[row] * newColumns, copyColumns);
+        }
+        cursorRow = Math.min(cursorRow - keepFrom, newRows - 1);
+        cursorColumn = Math.min(cursorColumn, newColumns - 1);
+        wrapPending = false;
+    }
+
+    /**
+     * Write a printable char at the cursor and advance it
+     */
+    public void putChar(char c) {
+        if (wrapPending) {
+            wrapPending = false;
+            if (autoWrap) {
+                cursorColumn = 0;
+                lineFeed();
+            }
+        }
+        cells[rowMap[cursorRow] * columns + cursorColumn] = attributes | c;
+        markDirty(cursorRow);
+        if (cursorColumn == columns - 1) {
+            wrapPending = true;
+        } else {
+            cursorColumn++;
+        }
+    }
+
+    public void carriageReturn() {
+        cursorColumn = 0;
+        wrapPending = false;
+    }
+
+    /**
+     * Move down one line, scrolling the region when at its bottom
+     */
+    public void lineFeed() {
+        wrapPending = false;
+        if (cursorRow == scrollBottom) {
+            scrollUp(1);
+        } else if (cursorRow < rows - 1) {
+            cursorRow++;
+        }
+    }
+
+    /**
+     * Move up one line, scrolling the region down when at its top
+     */
+    public void reverseLineFeed() {
+        wrapPending = false;
+        if (cursorRow == scrollTop) {
+            scrollDown(1);
+        } else if (cursorRow > 0) {
+            cursorRow--;
+        }
+    }
+
+    public void backspace() {
+        wrapPending = false;
+        if (cursorColumn > 0) {
+            cursorColumn--;
+        }
+    }
+
+    public void tab() {
+        wrapPending = false;
+        cursorColumn = Math.min(columns - 1, (cursorColumn / TAB_WIDTH + 1) * TAB_WIDTH);
+    }
+
+    /**
+     * Move the cursor to an absolute 0-based position, clamped to the screen
+     */
+    public void setCursor(int row, int column) {
+        cursorRow = clamp(row, 0, rows - 1);
+        cursorColumn = clamp(column, 0, columns - 1);
+        wrapPending = false;
+    }
+
+    /**
+     * Move the cursor relative to its position, staying inside the scroll
+     * region when starting inside it
+     */
+    public void moveCursor(int rowDelta, int columnDelta) {
+        int top = cursorRow >= scrollTop ? scrollTop : 0;
+        int bottom = cursorRow <= scrollBottom ? scrollBottom : rows - 1;
+        cursorRow = clamp(cursorRow + rowDelta, top, bottom);
+        cursorColumn = clamp(cursorColumn + columnDelta, 0, columns - 1);
+        wrapPending = false;
+    }
+
+    /**
+     * Scroll the region up, pushing the top line into scrollback when the
+     * region is the whole main screen
+     */
+    public void scrollUp(int lineCount) {
+        lineCount = Math.min(lineCount, scrollBottom - scrollTop + 1);
+        for (int i = 0; i < lineCount; i++) {
+            int recycled = rowMap[scrollTop];
+            if (scrollback != null && scrollTop == 0 && !alternateActive) {
+                appendToScrollback(recycled);
+            }
+            System.arraycopy(rowMap, scrollTop + 1, rowMap, scrollTop, scrollBottom - scrollTop);
+            rowMap[scrollBottom] = recycled;
+            fillRow(recycled, 0, columns);
+        }
+        markRangeDirty(scrollTop, scrollBottom);
+    }
+
+    /**
+     * Scroll the region down, inserting blank lines at its top
+     */
+    public void scrollDown(int lineCount) {
+        lineCount = Math.min(lineCount, scrollBottom - scrollTop + 1);
+        for (int i = 0; i < lineCount; i++) {
+            int recycled = rowMap[scrollBottom];
+            System.arraycopy(rowMap, scrollTop, rowMap, scrollTop + 1, scrollBottom - scrollTop);
+            rowMap[scrollTop] = recycled;
+            fillRow(recycled, 0, columns);
+        }
+        markRangeDirty(scrollTop, scrollBottom);
+    }
+
+    /**
+     * Insert blank lines at the cursor, pushing lines below it down the region
+     */
+    public void insertLines(int lineCount) {
+        if (cursorRow < scrollTop || cursorRow > scrollBottom) {
+            return;
+        }
+        int savedTop = scrollTop;
+        scrollTop = cursorRow;
+        scrollDown(lineCount);
+        scrollTop = savedTop;
+        cursorColumn = 0;
+        wrapPending = false;
+    }
+
+    /**
+     * Delete lines at the cursor, pulling lines below it up the region
+     */
+    public void deleteLines(int lineCount) {
+        if (cursorRow < scrollTop || cursorRow > scrollBottom) {
+            return;
+        }
+        int savedTop = scrollTop;
+        ScrollbackBuffer savedScrollback = scrollback;
+        scrollTop = cursorRow;
+        scrollback = null;
+        scrollUp(lineCount);
+        scrollTop = savedTop;
+        scrollback = savedScrollback;
+        cursorColumn = 0;
+        wrapPending = false;
+    }
+
+    /**
+     * Insert blanks at the cursor, shifting the rest of the line right
+     */
+    public void insertChars(int count) {
+        int start = rowMap[cursorRow] * columns;
+        count = Math.min(count, columns - cursorColumn);
+        System.arraycopy(cells, start + cursorColumn, cells, start + cursorColumn + count,
+            columns - cursorColumn - count);
+        fillRow(rowMap[cursorRow], cursorColumn, cursorColumn + count);
+        markDirty(cursorRow);
+        wrapPending = false;
+    }
+
+    /**
+     * Delete chars at the cursor, shifting the rest of the line left
+     */
+    public void deleteChars(int count) {
+        int start = rowMap[cursorRow] * columns;
+        count = Math.min(count, columns - cursorColumn);
+        System.arraycopy(cells, start + cursorColumn + count, cells, start + cursorColumn,
+            columns - cursorColumn - count);
+        fillRow(rowMap[cursorRow], columns - count, columns);
+        markDirty(cursorRow);
+        wrapPending = false;
+    }
+
+    /**
+     * Blank count chars from the cursor without moving anything
+     */
+    public void eraseChars(int count) {
+        fillRow(rowMap[cursorRow], cursorColumn, Math.min(columns, cursorColumn + count));
+        markDirty(cursorRow);
+        wrapPending = false;
+    }
+
+    /**
+     * Erase in line: 0 cursor to end, 1 start to cursor, 2 whole line
+     */
+    public void eraseInLine(int mode) {
+        int row = rowMap[cursorRow];
+        if (mode == 0) {
+            fillRow(row, cursorColumn, columns);
+        } else if (mode == 1) {
+            fillRow(row, 0, cursorColumn + 1);
+        } else if (mode == 2) {
+            fillRow(row, 0, columns);
+        }
+        markDirty(cursorRow);
+        wrapPending = false;
+    }
+
+    /**
+     * Erase in display: 0 cursor to end, 1 start to cursor, 2 and 3 whole screen
+     */
+    public void eraseInDisplay(int mode) {
+        if (mode == 0) {
+            eraseInLine(0);
+            for (int row = cursorRow + 1; row < rows; row++) {
+                fillRow(rowMap[row], 0, columns);
+            }
+            markRangeDirty(cursorRow, rows - 1);
+        } else if (mode == 1) {
+            eraseInLine(1);
+            for (int row = 0; row < cursorRow; row++) {
+                fillRow(rowMap[row], 0, columns);
+            }
+            markRangeDirty(0, cursorRow);
+        } else if (mode == 2 || mode == 3) {
+            for (int row = 0; row < rows; row++) {
+                fillRow(rowMap[row], 0, columns);
+            }
+            markAllDirty();
+        }
+        wrapPending = false;
+    }
+
+    /**
+     * Set the scroll region from 0-based inclusive rows and home the cursor
+     */
+    public void setScrollRegion(int top, int bottom) {
+        top = clamp(top, 0, rows - 1);
+        bottom = clamp(bottom, 0, rows - 1);
+        if (top >= bottom) {
+            top = 0;
+            bottom = rows - 1;
+        }
+        scrollTop = top;
+        scrollBottom = bottom;
+        setCursor(0, 0);
+    }
+
+    public void saveCursor() {
+        savedRow = cursorRow;
+        savedColumn = cursorColumn;
+        savedAttributes = attributes;
+    }
+
+    public void restoreCursor() {
+        setCursor(savedRow, savedColumn);
+        attributes = savedAttributes;
+    }
+
+    /**
+     * Switch to or from the alternate screen, as full-screen programs do on
+     * start and exit; the main screen is left untouched underneath
+     */
+    public void setAlternateScreen(boolean enabled) {
+        if (enabled == alternateActive) {
+            return;
+        }
+        int[] swapCells = cells;
+        cells = alternateCells;
+        alternateCells = swapCells;
+        int[] swapMap = rowMap;
+        rowMap = alternateRowMap;
+        alternateRowMap = swapMap;
+        alternateActive = enabled;
+        if (enabled) {
+            saveCursor();
+            eraseInDisplay(2);
+        } else {
+            restoreCursor();
+        }
+        scrollTop = 0;
+        scrollBottom = rows - 1;
+        markAllDirty();
+    }
+
+    /**
+     * Return to the power-on state
+     */
+    public void reset() {
+        if (alternateActive) {
+            setAlternateScreen(false);
+        }
+        attributes = DEFAULT_ATTRIBUTES;
+        autoWrap = true;
+        cursorVisible = true;
+        scrollTop = 0;
+        scrollBottom = rows - 1;
+        eraseInDisplay(2);
+        setCursor(0, 0);
+    }
+
+    // Attributes
+
+    public void resetAttributes() {
+        attributes = DEFAULT_ATTRIBUTES;
+    }
+
+    public void setForeground(int color) {
+        attributes = (attributes & ~(COLOR_MASK << FG_SHIFT)) | ((color & COLOR_MASK) << FG_SHIFT);
+    }
+
+    public void setBackground(int color) {
+        attributes = (attributes & ~(COLOR_MASK << BG_SHIFT)) | ((color & COLOR_MASK) << BG_SHIFT);
+    }
+
+    public void setFlag(int flag, boolean enabled) {
+        attributes = enabled ? attributes | flag : attributes & ~flag;
+    }
+
+    public void setAutoWrap(boolean autoWrap) {
+        this.autoWrap = autoWrap;
+    }
+
+    public void setCursorVisible(boolean cursorVisible) {
+        this.cursorVisible = cursorVisible;
+        markDirty(cursorRow);
+    }
+
+    // Reading
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getCursorRow() {
+        return cursorRow;
+    }
+
+    public int getCursorColumn() {
+        return cursorColumn;
+    }
+
+    public boolean isCursorVisible() {
+        return cursorVisible;
+    }
+
+    public boolean isAlternateScreen() {
+        return alternateActive;
+    }
+
+    /**
+     * Get the packed cell at a screen position
+     */
+    public int getCell(int row, int column) {
+        return cells[rowMap[row] * columns + column];
+    }
+
+    /**
+     * Copy a row's packed cells into dest, which must hold getColumns() ints
+     */
+    public void copyRow(int row, int[] dest) {
+        System.arraycopy(cells, rowMap[row] * columns, dest, 0, columns);
+    }
+
+    /**
+     * Get a row's text without trailing blanks
+     */
+    public String getRowText(int row) {
+        int length = copyRowText(rowMap[row]);
+        return new String(lineBuffer, 0, length);
+    }
+
+    public boolean isRowDirty(int row) {
+        return dirty[row];
+    }
+
+    public boolean hasDirtyRows() {
+        return anyDirty;
+    }
+
+    /**
+     * Mark every row clean; call after the renderer has drawn them
+     */
+    public void clearDirty() {
+        Arrays.fill(dirty, false);
+        anyDirty = false;
+    }
+
+    public static char charOf(int cell) {
+        return (char) (cell & CHAR_MASK);
+    }
+
+    public static int foregroundOf(int cell) {
+        return (cell >>> FG_SHIFT) & COLOR_MASK;
+    }
+
+    public static int backgroundOf(int cell) {
+        return (cell >>> BG_SHIFT) & COLOR_MASK;
+    }
+
+    public static boolean hasFlag(int cell, int flag) {
+        return (cell & flag) != 0;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder(rows * (columns + 1));
+        for (int row = 0; row < rows; row++) {
+            out.append(lineBuffer, 0, copyRowText(rowMap[row]));
+            if (row < rows - 1) {
+                out.append('\n');
+            }
+        }
+        return out.toString();
+    }
+
+    private int copyRowText(int physicalRow) {
+        int start = physicalRow * columns;
+        int length = 0;
+        for (int column = 0; column < columns; column++) {
+            char c = (char) (cells[start + column] & CHAR_MASK);
+            lineBuffer[column] = c;
+            if (c != ' ') {
+                length = column + 1;
+            }
+        }
+        return length;
+    }
+
+    private void appendToScrollback(int physicalRow) {
+        int length = copyRowText(physicalRow);
+        scrollback.append(lineBuffer, 0, length);
+        scrollback.append("\n");
+    }
+
+    private void fillRow(int physicalRow, int from, int to) {
+        int start = physicalRow * columns;
+        // Erased cells keep the current background, like a real terminal
+        int blank = (attributes & (COLOR_MASK << BG_SHIFT)) | (COLOR_DEFAULT << FG_SHIFT) | ' ';
+        Arrays.fill(cells, start + from, start + to, blank);
+    }
+
+    private void markDirty(int row) {
+        dirty[row] = true;
+        anyDirty = true;
+    }
+
+    private void markRangeDirty(int from, int to) {
+        for (int row = from; row <= to; row++) {
+            dirty[row] = true;
+        }
+        anyDirty = true;
+    }
+
+    private void markAllDirty() {
+        Arrays.fill(dirty, true);
+        anyDirty = true;
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return value < min ? min : (value > max ? max : value);
+    }
+}
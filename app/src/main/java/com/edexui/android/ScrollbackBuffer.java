@@ -0,0 +1,192 @@
+package com.edexui.android;
+
+/**
+ * Line-oriented ring buffer for terminal scrollback
+ * Appending and evicting the oldest line are constant time; line storage is
+ * recycled so memory stays flat however much output passes through
+ */
+public class ScrollbackBuffer {
+
+    public static final int DEFAULT_MAX_LINES = 2000;
+    public static final int DEFAULT_MAX_LINE_LENGTH = 1024;
+
+    private static final int INITIAL_LINE_CAPACITY = 80;
+
+    private final char[][] lines;
+    private final int[] lengths;
+    private final int maxLines;
+    private final int maxLineLength;
+
+    // Ring index of the oldest line; the newest line is always open for appends
+    private int first = 0;
+    private int count = 1;
+    private long totalLines = 1;
+
+    public ScrollbackBuffer() {
+        this(DEFAULT_MAX_LINES, DEFAULT_MAX_LINE_LENGTH);
+    }
+
+    public ScrollbackBuffer(int maxLines) {
+        this(maxLines, DEFAULT_MAX_LINE_LENGTH);
+    }
+
+    public ScrollbackBuffer(int maxLines, int maxLineLength) {
+        if (maxLines < 1 || maxLineLength < 1) {
+            throw new IllegalArgumentException("Buffer must hold at least one character");
+        }
+        this.maxLines = maxLines;
+        this.maxLineLength = maxLineLength;
+        this.lines = new char[maxLines][];
+        this.lengths = new int[maxLines];
+        this.lines[0] = new char[Math.min(INITIAL_LINE_CAPACITY, maxLineLength)];
+    }
+
+    /**
+     * Append text; '\n' starts a new line and '\r' is dropped
+     */
+    public synchronized void append(CharSequence text) {
+        for (int i = 0, n = text.length(); i < n; i++) {
+            appendChar(text.charAt(i));
+        }
+    }
+
+    /**
+     * Append a range of a char array
+     */
+    public synchronized void append(char[] text, int offset, int length) {
+        for (int i = offset, end = offset + length; i < end; i++) {
+            appendChar(text[i]);
+        }
+    }
+
+    private void appendChar(char c) {
+        if (c == '\n') {
+            newLine();
+            return;
+        }
+        if (c == '\r') {
+            return;
+        }
+
+        int index = (first + count - 1) % maxLines;
+        int length = lengths[index];
+        if (length == maxLineLength) {
+            // Over-long lines wrap instead of growing without bound
+            newLine();
+            index = (first + count - 1) % maxLines;
+            length = 0;
+        }
+
+        char[] line = lines[index];
+        if (length == line.length) {
+            char[] grown = new char[Math.min(line.length * 2, maxLineLength)];
+            System.arraycopy(line, 0, grown, 0, length);
+            lines[index] = grown;
+            line = grown;
+        }
+        line[length] = c;
+        lengths[index] = length + 1;
+    }
+
+    private void newLine() {
+        if (count == maxLines) {
+            // Evict the oldest line; its storage is reused for the new one
+            first = (first + 1) % maxLines;
+            count--;
+        }
+        int index = (first + count) % maxLines;
+        if (lines[index] == null || lines[index].length > INITIAL_LINE_CAPACITY * 4) {
+            // Do not keep rare huge lines alive forever
+            lines[index] = new char[Math.min(INITIAL_LINE_CAPACITY, maxLineLength)];
+        }
+        lengths[index] = 0;
+        count++;
+        totalLines++;
+    }
+
+    /**
+     * Get the number of lines held, including the unfinished last line
+     */
+    public synchronized int getLineCount() {
+        return count;
+    }
+
+    /**
+     * Get the number of lines ever started, including evicted ones.
+     * Useful to detect how many lines were added since a previous call.
+     */
+    public synchronized long getTotalLines() {
+        return totalLines;
+    }
+
+    /**
+     * Get a single line; 0 is the oldest line held
+     */
+    public synchronized String getLine(int line) {
+        int index = indexOf(line);
+        return new String(lines[index], 0, lengths[index]);
+    }
+
+    /**
+     * Copy a line into dest, returning the number of chars copied
+     */
+    public synchronized int copyLine(int line, char[] dest) {
+        int index = indexOf(line);
+        int length = Math.min(lengths[index], dest.length);
+        System.arraycopy(lines[index], 0, dest, 0, length);
+        return length;
+    }
+
+    /**
+     * Get the text of a window of lines, joined with '\n'
+     */
+    public synchronized String getLines(int start, int lineCount) {
+        start = Math.max(0, start);
+        int end = Math.min(count, start + Math.max(0, lineCount));
+        StringBuilder out = new StringBuilder();
+        for (int line = start; line < end; line++) {
+            int index = (first + line) % maxLines;
+            out.append(lines[index], 0, lengths[index]);
+            if (line < end - 1) {
+                out.append('\n');
+            }
+        }
+        return out.toString();
+    }
+
+    /**
+     * Get the last lineCount lines, joined with '\n'
+     */
+    public synchronized String getTail(int lineCount) {
+        return getLines(count - lineCount, lineCount);
+    }
+
+    /**
+     * Drop all lines
+     */
+    public synchronized void clear() {
+        first = 0;
+        count = 1;
+        lengths[0] = 0;
+        if (lines[0] == null) {
+            lines[0] = new char[Math.min(INITIAL_LINE_CAPACITY, maxLineLength)];
+        }
+        totalLines++;
+    }
+
+    public int getMaxLines() {
+        return maxLines;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return getLines(0, count);
+    }
+
+    private int indexOf(int line) {
+        if (line < 0 || line >= count) {
+            throw new IndexOutOfBoundsException("Line " + line + " of " + count);
+        }
+        return (first + line) % maxLines;
+    }
+}
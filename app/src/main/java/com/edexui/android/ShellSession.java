@@ -0,0 +1,325 @@
+package com.edexui.android;
+
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Long-lived shell for the Edex-UI terminal
+ * Commands are written into one sh process, so the working directory and
+ * environment persist between commands and no process is spawned per command.
+ * After each command the shell prints a marker line carrying the exit code
+ * and $PWD, which is how completion is detected.
+ */
+public class ShellSession {
+
+    /**
+     * Receives command output on the thread that called run()
+     */
+    public interface OutputSink {
+        void onOutput(char[] buffer, int offset, int length);
+    }
+
+    public static final int EXIT_SHELL_DIED = -1;
+
+    private static final String[] SHELL_PATHS = {"/system/bin/sh", "/bin/sh"};
+    private static final int CHUNK_SIZE = 4096;
+    // Record separator; never produced by ordinary text output
+    private static final char MARKER_LEAD = '\u001e';
+    private static final int MAX_TRAILER_LENGTH = 4096;
+
+    private final String nonce;
+    private final char[] marker;
+    private final char[] chunk = new char[CHUNK_SIZE];
+    private final char[] out = new char[CHUNK_SIZE + 64];
+    private final StringBuilder trailer = new StringBuilder();
+    private final ProcFileReader statReader = new ProcFileReader();
+
+    private volatile Process process;
+    private volatile int shellPid = -1;
+    private volatile boolean commandRunning;
+    private Writer stdin;
+    private Reader stdout;
+    private volatile String currentDirectory;
+    private int lastExitCode;
+
+    public ShellSession(String initialDirectory) {
+        this.nonce = Long.toHexString(new SecureRandom().nextLong() & Long.MAX_VALUE);
+        this.marker = (MARKER_LEAD + "EDEX" + nonce + ":").toCharArray();
+        this.currentDirectory = initialDirectory;
+    }
+
+    /**
+     * Start the shell if it is not running. Called automatically by run().
+     */
+    public synchronized void start() throws IOException {
+        if (isAlive()) {
+            return;
+        }
+
+        ProcessBuilder builder = new ProcessBuilder(findShell());
+        // One stream keeps stdout and stderr in the order they were written
+        builder.redirectErrorStream(true);
+        File directory = new File(currentDirectory);
+        if (directory.isDirectory()) {
+            builder.directory(directory);
+        }
+        builder.environment().put("TERM", "dumb");
+
+        Process started = builder.start();
+        stdin = new OutputStreamWriter(started.getOutputStream(), StandardCharsets.UTF_8);
+        stdout = new InputStreamReader(started.getInputStream(), StandardCharsets.UTF_8);
+        process = started;
+
+        // The first marker reports the shell's pid, used to interrupt its children
+        stdin.write("printf '\\036EDEX%s:%d:%s\\n' " + nonce + " $$ \"$PWD\"\n");
+        stdin.flush();
+        if (!readUntilMarker(null)) {
+            destroy();
+            throw new IOException("Shell did not start");
+        }
+        shellPid = lastExitCode;
+    }
+
+    /**
+     * Run a command line in the shell, blocking until it completes.
+     * Returns its exit code, or EXIT_SHELL_DIED if the shell exited or was killed;
+     * the next call then starts a fresh shell in the last known directory.
+     */
+    public synchronized int run(String command, OutputSink sink) throws IOException {
+        start();
+
+        commandRunning = true;
+        try {
+            // eval keeps cd and exports in this shell, and quoting the line means
+            // an unterminated quote or heredoc fails only this command instead of
+            // swallowing the marker; 'command' stops a syntax error from exiting
+            // sh. stdin is closed so commands that read input cannot take the marker.
+            stdin.write("command eval " + CommandTokenizer.quote(command) + " </dev/null\n");
+            stdin.write("printf '\\036EDEX%s:%d:%s\\n' " + nonce + " \"$?\" \"$PWD\"\n");
+            stdin.flush();
+        } catch (IOException e) {
+            commandRunning = false;
+            destroy();
+            return EXIT_SHELL_DIED;
+        }
+
+        try {
+            if (!readUntilMarker(sink)) {
+                destroy();
+                return EXIT_SHELL_DIED;
+            }
+            return lastExitCode;
+        } finally {
+            commandRunning = false;
+        }
+    }
+
+    /**
+     * Copy output to the sink until the marker is seen; false on end of stream
+     */
+    private boolean readUntilMarker(OutputSink sink) {
+        int matched = 0;
+        boolean inTrailer = false;
+        trailer.setLength(0);
+
+        try {
+            int read;
+            while ((read = stdout.read(chunk)) > 0) {
+                int outLength = 0;
+                for (int i = 0; i < read; i++) {
+                    char c = chunk[i];
+                    if (inTrailer) {
+                        if (c == '\n') {
+                            if (sink != null && outLength > 0) {
+                                sink.onOutput(out, 0, outLength);
+                            }
+                            parseTrailer();
+                            return true;
+                        }
+                        if (trailer.length() < MAX_TRAILER_LENGTH) {
+                            trailer.append(c);
+                        }
+                        continue;
+                    }
+
+                    if (c == marker[matched]) {
+                        matched++;
+                        if (matched == marker.length) {
+                            inTrailer = true;
+                            matched = 0;
+                        }
+                        continue;
+                    }
+
+                    // The lead char appears only once in the marker, so a mismatch
+                    // releases the held prefix and the current char starts over
+                    if (matched > 0) {
+                        System.arraycopy(marker, 0, out, outLength, matched);
+                        outLength += matched;
+                        matched = 0;
+                        if (c == marker[0]) {
+                            matched = 1;
+                            continue;
+                        }
+                    }
+                    out[outLength++] = c;
+
+                    if (outLength >= CHUNK_SIZE) {
+                        if (sink != null) {
+                            sink.onOutput(out, 0, outLength);
+                        }
+                        outLength = 0;
+                    }
+                }
+                if (sink != null && outLength > 0) {
+                    sink.onOutput(out, 0, outLength);
+                }
+            }
+        } catch (IOException e) {
+            // Stream closed because the shell was destroyed
+        }
+        return false;
+    }
+
+    /**
+     * Parse "exitcode:directory" following the marker
+     */
+    private void parseTrailer() {
+        int colon = trailer.indexOf(":");
+        if (colon < 0) {
+            return;
+        }
+        try {
+            lastExitCode = Integer.parseInt(trailer.substring(0, colon));
+        } catch (NumberFormatException e) {
+            lastExitCode = 0;
+        }
+        String directory = trailer.substring(colon + 1);
+        if (!directory.isEmpty()) {
+            currentDirectory = directory;
+        }
+    }
+
+    /**
+     * Interrupt the running command, like Ctrl-C. Sends SIGINT to the shell's
+     * children, or SIGKILL when force is set. If there is nothing to signal the
+     * command is a shell builtin or loop, so the whole shell is restarted.
+     * Returns false if no command is running.
+     */
+    public boolean interrupt(boolean force) {
+        if (!commandRunning) {
+            return false;
+        }
+        int pid = shellPid;
+        List<Integer> children = pid > 0 ? findChildren(pid) : new ArrayList<Integer>();
+        int signal = force ? OsConstants.SIGKILL : OsConstants.SIGINT;
+        int signalled = 0;
+        for (int child : children) {
+            try {
+                Os.kill(child, signal);
+                signalled++;
+            } catch (ErrnoException e) {
+                // Already exited
+            }
+        }
+        if (signalled == 0 || force) {
+            destroy();
+        }
+        return true;
+    }
+
+    /**
+     * Find direct children of a process by scanning the ppid field of /proc/[pid]/stat
+     */
+    private List<Integer> findChildren(int parentPid) {
+        List<Integer> children = new ArrayList<>();
+        String[] names = new File("/proc").list();
+        if (names == null) {
+            return children;
+        }
+        synchronized (statReader) {
+            for (String name : names) {
+                if (name.isEmpty() || name.charAt(0) < '0' || name.charAt(0) > '9') {
+                    continue;
+                }
+                if (!statReader.read("/proc/" + name + "/stat")) {
+                    continue;
+                }
+                // comm may contain spaces and parentheses; fields resume after the last ')'
+                int close = statReader.lastIndexOf((byte) ')');
+                if (close < 0) {
+                    continue;
+                }
+                statReader.setPosition(close + 1);
+                statReader.skipSpaces();
+                statReader.skipToken();
+                statReader.skipSpaces();
+                if (statReader.nextInt(-1) == parentPid) {
+                    try {
+                        children.add(Integer.parseInt(name));
+                    } catch (NumberFormatException e) {
+                        // Not a pid
+                    }
+                }
+            }
+        }
+        return children;
+    }
+
+    /**
+     * Kill the shell; the next run() starts a new one
+     */
+    public void destroy() {
+        Process current = process;
+        process = null;
+        shellPid = -1;
+        if (current != null) {
+            current.destroy();
+        }
+    }
+
+    public boolean isAlive() {
+        Process current = process;
+        if (current == null) {
+            return false;
+        }
+        try {
+            current.exitValue();
+            return false;
+        } catch (IllegalThreadStateException e) {
+            return true;
+        }
+    }
+
+    public boolean isCommandRunning() {
+        return commandRunning;
+    }
+
+    /**
+     * Get the shell's working directory as of the last completed command
+     */
+    public String getCurrentDirectory() {
+        return currentDirectory;
+    }
+
+    private static String findShell() {
+        for (String path : SHELL_PATHS) {
+            if (new File(path).canExecute()) {
+                return path;
+            }
+        }
+        return "sh";
+    }
+}
@@ -1,8 +1,5 @@
 package com.edexui.android;
 
-import java.io.BufferedReader;
-import java.io.FileInputStream;
-import java.io.InputStreamReader;
 import java.util.Locale;
 
 /**
@@ -10,6 +7,12 @@ import java.util.Locale;
  * Provides system information, CPU, RAM, and network statistics
  */
 public class SystemMonitor {
+
+    private static final int BAR_LENGTH = 20;
+    private static final char[] BAR_TABLE = buildBarTable();
+
+    private static CpuSampler cpuSampler;
+    private static MemInfoReader memInfoReader;
     
     /**
      * Get device and OS information
@@ -32,72 +35,118 @@ public class SystemMonitor {
      * Get CPU information and current usage
      */
     public static String getCpuInfo() {
+        return sampleCpu().getText();
+    }
+
+    /**
+     * Sample CPU usage into an immutable snapshot.
+     * Value 0 is the overall load, value i + 1 the load of core i (-1 if unknown).
+     */
+    public static MetricSnapshot sampleCpu() {
+        CpuSampler sampler = getCpuSampler();
         StringBuilder info = new StringBuilder();
-        
-        try {
-            BufferedReader reader = new BufferedReader(
-                new InputStreamReader(new FileInputStream("/proc/cpuinfo")));
-            String line;
-            int coreCount = 0;
-            String cpuModel = "Unknown";
-            
-            while ((line = reader.readLine()) != null) {
-                if (line.startsWith("processor")) {
-                    coreCount++;
-                } else if (line.startsWith("Hardware") || line.startsWith("model name")) {
-                    String[] parts = line.split(":");
-                    if (parts.length > 1) {
-                        cpuModel = parts[1].trim();
-                    }
-                }
+        int[] values;
+
+        synchronized (sampler) {
+            sampler.sample();
+            sampler.appendTo(info);
+
+            int cores = sampler.getCoreCount();
+            values = new int[cores + 1];
+            values[0] = sampler.getTotalUsage();
+            for (int i = 0; i < cores; i++) {
+                values[i + 1] = sampler.getCoreUsage(i);
             }
-            reader.close();
-            
-            info.append("CPU: ").append(cpuModel).append("\n");
-            info.append("CORES: ").append(coreCount).append("\n");
-            info.append("ARCHITECTURE: ").append(System.getProperty("os.arch")).append("\n");
-            
-        } catch (Exception e) {
-            info.append("CPU: Information unavailable\n");
         }
-        
-        return info.toString();
+
+        return new MetricSnapshot(info.toString(), values);
+    }
+
+    /**
+     * Get the shared CPU sampler, parsing static CPU details on first use
+     */
+    public static synchronized CpuSampler getCpuSampler() {
+        if (cpuSampler == null) {
+            cpuSampler = new CpuSampler();
+        }
+        return cpuSampler;
     }
     
     /**
      * Get RAM usage information
      */
     public static String getRamInfo() {
+        return sampleRam().getText();
+    }
+
+    /**
+     * Sample device and app memory into an immutable snapshot.
+     * Value 0 is device RAM usage, value 1 the app heap usage, both in percent.
+     */
+    public static MetricSnapshot sampleRam() {
         StringBuilder info = new StringBuilder();
-        
-        try {
-            Runtime runtime = Runtime.getRuntime();
-            long maxMemory = runtime.maxMemory();
-            long totalMemory = runtime.totalMemory();
-            long freeMemory = runtime.freeMemory();
-            long usedMemory = totalMemory - freeMemory;
-            
-            info.append("TOTAL: ").append(formatBytes(maxMemory)).append("\n");
-            info.append("USED: ").append(formatBytes(usedMemory)).append("\n");
-            info.append("FREE: ").append(formatBytes(maxMemory - usedMemory)).append("\n");
-            
-            int percentage = (int) ((usedMemory * 100) / maxMemory);
-            info.append("USAGE: ").append(percentage).append("%\n");
-            
-            // Visual progress bar
-            int barLength = 20;
-            int filled = (percentage * barLength) / 100;
-            info.append("[");
-            for (int i = 0; i < barLength; i++) {
-                info.append(i < filled ? "█" : "░");
+        int devicePercent = -1;
+
+        MemInfoReader reader = getMemInfoReader();
+        synchronized (reader) {
+            if (reader.read()) {
+                long total = reader.getTotalBytes();
+                long used = reader.getUsedBytes();
+                devicePercent = (int) ((used * 100) / total);
+
+                info.append("TOTAL: ").append(formatBytes(total)).append("\n");
+                info.append("USED: ").append(formatBytes(used)).append("\n");
+                info.append("FREE: ").append(formatBytes(reader.getAvailableBytes())).append("\n");
+                info.append("CACHED: ").append(formatBytes(reader.getCachedBytes())).append("\n");
+                info.append("USAGE: ").append(devicePercent).append("%\n");
+                appendBar(info, devicePercent);
+                info.append("\n");
+
+                if (reader.getSwapTotalBytes() > 0) {
+                    info.append("SWAP: ").append(formatBytes(reader.getSwapUsedBytes()))
+                        .append(" / ").append(formatBytes(reader.getSwapTotalBytes())).append("\n");
+                }
+                if (reader.hasZram() && reader.getZramOriginalBytes() > 0) {
+                    info.append("ZRAM: ").append(formatBytes(reader.getZramOriginalBytes()))
+                        .append(" -> ").append(formatBytes(reader.getZramCompressedBytes())).append("\n");
+                }
+            } else {
+                info.append("DEVICE RAM: Information unavailable\n");
             }
-            info.append("]");
-            
-        } catch (Exception e) {
-            info.append("RAM: Information unavailable");
         }
-        
-        return info.toString();
+
+        // The app's own footprint, reported separately from device memory
+        Runtime runtime = Runtime.getRuntime();
+        long heapUsed = runtime.totalMemory() - runtime.freeMemory();
+        long heapMax = runtime.maxMemory();
+        int heapPercent = (int) ((heapUsed * 100) / heapMax);
+        info.append("APP HEAP: ").append(formatBytes(heapUsed))
+            .append(" / ").append(formatBytes(heapMax)).append("\n");
+        info.append("APP NATIVE: ")
+            .append(formatBytes(android.os.Debug.getNativeHeapAllocatedSize()));
+
+        return new MetricSnapshot(info.toString(), new int[] { devicePercent, heapPercent });
+    }
+
+    /**
+     * Append a visual progress bar for a percentage
+     */
+    private static void appendBar(StringBuilder out, int percentage) {
+        int filled = Math.max(0, Math.min(BAR_LENGTH, (percentage * BAR_LENGTH) / 100));
+        out.append('[');
+        // Every possible bar is a window into the same table
+        out.append(BAR_TABLE, BAR_LENGTH - filled, BAR_LENGTH);
+        out.append(']');
+    }
+
+    /**
+     * Get the shared /proc/meminfo reader
+     */
+    private static synchronized MemInfoReader getMemInfoReader() {
+        if (memInfoReader == null) {
+            memInfoReader = new MemInfoReader();
+        }
+        return memInfoReader;
     }
     
     /**
@@ -143,6 +192,17 @@ public class SystemMonitor {
         return info.toString();
     }
     
+    /**
+     * Build a run of filled cells followed by a run of empty cells
+     */
+    private static char[] buildBarTable() {
+        char[] table = new char[BAR_LENGTH * 2];
+        for (int i = 0; i < table.length; i++) {
+            table[i] = i < BAR_LENGTH ? '█' : '░';
+        }
+        return table;
+    }
+    
     /**
      * Format bytes to human-readable format
      */
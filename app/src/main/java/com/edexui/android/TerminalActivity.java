@@ -1,42 +1,173 @@
 package com.edexui.android;
 
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.core.app.ActivityCompat;
+import androidx.core.content.ContextCompat;
+import android.Manifest;
+import android.content.ComponentName;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.content.pm.PackageManager;
+import android.os.Build;
 import android.os.Bundle;
+import android.os.IBinder;
+import android.util.Log;
 import android.view.KeyEvent;
+import android.view.LayoutInflater;
 import android.view.View;
 import android.view.inputmethod.EditorInfo;
 import android.widget.Button;
 import android.widget.EditText;
-import android.widget.ScrollView;
+import android.widget.LinearLayout;
 import android.widget.TextView;
 
+import java.util.Map;
+
 /**
  * Dedicated Terminal Activity with interactive command execution
+ * Shows one of the sessions hosted by TerminalService, which carry on
+ * running when the activity is recreated or in the background
  */
 public class TerminalActivity extends AppCompatActivity {
 
-    private TextView terminalOutputText;
+    private static final String TAG = "TerminalActivity";
+    private static final float INACTIVE_TAB_ALPHA = 0.5f;
+    private static final int REQUEST_CODE_NOTIFICATIONS = 1;
+
+    private TerminalView terminalView;
     private EditText terminalInput;
     private Button terminalSendButton;
-    private ScrollView terminalScrollView;
+    private Button terminalInterruptButton;
+    private Button terminalHistoryUpButton;
+    private Button terminalHistoryDownButton;
+    private Button terminalTabButton;
+    private LinearLayout terminalTabStrip;
+    // Set once TerminalService is bound
+    private TerminalSessionManager sessionManager;
+    private boolean bound = false;
+    private TerminalSession session;
     private TerminalEmulator terminal;
 
+    // History navigation: the entry shown and the text typed before navigating
+    private long historySequence = Long.MAX_VALUE;
+    private String historyPrefix = null;
+
+    // Output arrives on terminal threads; the view redraws at most once per frame
+    private final TerminalEmulator.OutputListener outputListener = new TerminalEmulator.OutputListener() {
+        @Override
+        public void onOutput(String text) {
+            terminalView.onScreenChanged();
+        }
+
+        @Override
+        public void onCleared() {
+            terminalView.post(new Runnable() {
+                @Override
+                public void run() {
+                    terminalView.scrollToBottom();
+                }
+            });
+        }
+
+        @Override
+        public void onCommandFinished(int exitCode) {
+        }
+    };
+
+    // Hidden sessions report their first new output so their tab is marked
+    private final TerminalSession.ActivityListener sessionActivityListener =
+        new TerminalSession.ActivityListener() {
+            @Override
+            public void onSessionActivity(TerminalSession session) {
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        updateTabs();
+                    }
+                });
+            }
+        };
+
+    private final ServiceConnection serviceConnection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder service) {
+            sessionManager = ((TerminalService.LocalBinder) service).getSessionManager();
+            onSessionsReady();
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            // Same process; only happens if it is going away
+            finish();
+        }
+    };
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.terminal_tab);
 
-        // Initialize terminal emulator
-        terminal = new TerminalEmulator();
+        // Started as well as bound, so the sessions outlive this activity
+        Intent service = new Intent(this, TerminalService.class);
+        ContextCompat.startForegroundService(this, service);
+        bound = bindService(service, serviceConnection, BIND_AUTO_CREATE);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU
+                && ContextCompat.checkSelfPermission(this, Manifest.permission.POST_NOTIFICATIONS)
+                    != PackageManager.PERMISSION_GRANTED) {
+            // Only needed to show the notification; the sessions run either way
+            ActivityCompat.requestPermissions(this,
+                new String[]{Manifest.permission.POST_NOTIFICATIONS}, REQUEST_CODE_NOTIFICATIONS);
+        }
 
         // Initialize views
-        terminalOutputText = findViewById(R.id.terminalOutputText);
+        terminalView = findViewById(R.id.terminalView);
         terminalInput = findViewById(R.id.terminalInput);
         terminalSendButton = findViewById(R.id.terminalSendButton);
-        terminalScrollView = findViewById(R.id.terminalScrollView);
+        terminalInterruptButton = findViewById(R.id.terminalInterruptButton);
+        terminalHistoryUpButton = findViewById(R.id.terminalHistoryUpButton);
+        terminalHistoryDownButton = findViewById(R.id.terminalHistoryDownButton);
+        terminalTabButton = findViewById(R.id.terminalTabButton);
+        terminalTabStrip = findViewById(R.id.terminalTabStrip);
+    }
+
+    /**
+     * Show the active session and wire up the controls once the service is bound
+     */
+    private void onSessionsReady() {
+        Button terminalNewTabButton = findViewById(R.id.terminalNewTabButton);
+        Button terminalCloseTabButton = findViewById(R.id.terminalCloseTabButton);
+
+        // Display the active session
+        showSession(sessionManager.getActiveSession());
+        terminalView.setDrawListener(new FrameTimer.Listener() {
+            @Override
+            public void onFrameMeasured(String label, long durationNanos) {
+                if (terminalView.getDrawCount() % 300 == 0) {
+                    Log.d(TAG, label + " draw: last " + (durationNanos / 1000) + "us, max "
+                        + (terminalView.getMaxDrawNanos() / 1000) + "us, over budget "
+                        + terminalView.getOverBudgetCount() + "/" + terminalView.getDrawCount());
+                }
+            }
+        });
 
-        // Display initial output
-        updateOutput();
+        terminalNewTabButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                TerminalSession created = sessionManager.createSession();
+                if (created != null) {
+                    showSession(created);
+                }
+            }
+        });
+        terminalCloseTabButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                session.setDisplay(null);
+                sessionManager.closeSession(session);
+                session = null;
+                showSession(sessionManager.getActiveSession());
+            }
+        });
 
         // Set up send button click listener
         terminalSendButton.setOnClickListener(new View.OnClickListener() {
@@ -46,6 +177,55 @@ public class TerminalActivity extends AppCompatActivity {
             }
         });
 
+        // Interrupt the running command, like Ctrl-C
+        terminalInterruptButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                terminal.cancelCommand();
+            }
+        });
+
+        // Step through history; typed text narrows it to entries with that prefix
+        terminalHistoryUpButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                showOlderHistory();
+            }
+        });
+        terminalHistoryDownButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                showNewerHistory();
+            }
+        });
+        terminalTabButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                completeInput();
+            }
+        });
+        terminalInput.setOnKeyListener(new View.OnKeyListener() {
+            @Override
+            public boolean onKey(View v, int keyCode, KeyEvent event) {
+                if (event.getAction() != KeyEvent.ACTION_DOWN) {
+                    return false;
+                }
+                if (keyCode == KeyEvent.KEYCODE_DPAD_UP) {
+                    showOlderHistory();
+                    return true;
+                }
+                if (keyCode == KeyEvent.KEYCODE_DPAD_DOWN) {
+                    showNewerHistory();
+                    return true;
+                }
+                if (keyCode == KeyEvent.KEYCODE_TAB) {
+                    completeInput();
+                    return true;
+                }
+                return false;
+            }
+        });
+
         // Set up enter key listener on input
         terminalInput.setOnEditorActionListener(new TextView.OnEditorActionListener() {
             @Override
@@ -67,30 +247,136 @@ public class TerminalActivity extends AppCompatActivity {
         String command = terminalInput.getText().toString().trim();
         
         if (!command.isEmpty()) {
-            // Execute command
-            terminal.executeCommand(command);
-            
-            // Update output
-            updateOutput();
+            // Execute command; output streams in through the listener
+            terminalView.scrollToBottom();
+            session.execute(command);
             
             // Clear input
             terminalInput.setText("");
-            
-            // Scroll to bottom
-            terminalScrollView.post(new Runnable() {
+            historySequence = Long.MAX_VALUE;
+            historyPrefix = null;
+        }
+    }
+
+    /**
+     * Show the next older history entry matching the typed prefix
+     */
+    private void showOlderHistory() {
+        if (historyPrefix == null) {
+            historyPrefix = terminalInput.getText().toString();
+        }
+        Map.Entry<Long, String> entry = terminal.getHistory().findOlder(historySequence, historyPrefix);
+        if (entry != null) {
+            historySequence = entry.getKey();
+            showInput(entry.getValue());
+        }
+    }
+
+    /**
+     * Show the next newer history entry, returning to the typed text past the newest
+     */
+    private void showNewerHistory() {
+        if (historyPrefix == null) {
+            return;
+        }
+        Map.Entry<Long, String> entry = terminal.getHistory().findNewer(historySequence, historyPrefix);
+        if (entry != null) {
+            historySequence = entry.getKey();
+            showInput(entry.getValue());
+        } else {
+            showInput(historyPrefix);
+            historySequence = Long.MAX_VALUE;
+            historyPrefix = null;
+        }
+    }
+
+    /**
+     * Complete the typed command or path, listing the choices if ambiguous
+     */
+    private void completeInput() {
+        final TerminalEmulator target = terminal;
+        target.complete(terminalInput.getText().toString(), new CompletionEngine.Callback() {
+            @Override
+            public void onCompleted(final String line, final CompletionEngine.Completion completion) {
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        // Dropped if the user typed on or switched sessions meanwhile
+                        if (terminal != target || !terminalInput.getText().toString().equals(line)) {
+                            return;
+                        }
+                        if (!completion.getLine().equals(line)) {
+                            showInput(completion.getLine());
+                        } else if (!completion.getCandidates().isEmpty()) {
+                            terminal.showCompletions(completion.getCandidates());
+                            terminalView.scrollToBottom();
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Show a session in the view; the one shown before keeps running hidden
+     */
+    private void showSession(TerminalSession shown) {
+        if (session != null) {
+            session.setDisplay(null);
+        }
+        session = shown;
+        terminal = shown.getTerminal();
+        sessionManager.setActiveSession(shown);
+        shown.setDisplay(outputListener);
+        terminalView.setTerminal(terminal);
+        historySequence = Long.MAX_VALUE;
+        historyPrefix = null;
+        updateTabs();
+    }
+
+    /**
+     * Rebuild the tab strip, marking hidden sessions with new output
+     */
+    private void updateTabs() {
+        terminalTabStrip.removeAllViews();
+        LayoutInflater inflater = LayoutInflater.from(this);
+        for (final TerminalSession tabSession : sessionManager.getSessions()) {
+            TextView tab = (TextView) inflater.inflate(R.layout.item_terminal_tab, terminalTabStrip, false);
+            boolean active = tabSession == session;
+            tab.setText(tabSession.getTitle() + (!active && tabSession.hasUnseenOutput() ? " •" : ""));
+            tab.setSelected(active);
+            tab.setAlpha(active ? 1f : INACTIVE_TAB_ALPHA);
+            tab.setOnClickListener(new View.OnClickListener() {
                 @Override
-                public void run() {
-                    terminalScrollView.fullScroll(View.FOCUS_DOWN);
+                public void onClick(View v) {
+                    if (tabSession != session) {
+                        showSession(tabSession);
+                    }
                 }
             });
+            tabSession.setActivityListener(sessionActivityListener);
+            terminalTabStrip.addView(tab);
         }
     }
 
-    /**
-     * Update terminal output display
-     */
-    private void updateOutput() {
-        terminalOutputText.setText(terminal.getOutput());
+    private void showInput(String text) {
+        terminalInput.setText(text);
+        terminalInput.setSelection(text.length());
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        // Sessions live on in the service; just stop them drawing into this activity
+        if (sessionManager != null) {
+            for (TerminalSession tabSession : sessionManager.getSessions()) {
+                tabSession.setActivityListener(null);
+            }
+            session.setDisplay(null);
+        }
+        if (bound) {
+            unbindService(serviceConnection);
+        }
     }
 
     @Override
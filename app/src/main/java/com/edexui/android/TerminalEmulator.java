@@ -1,9 +1,18 @@
 package com.edexui.android;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.util.ArrayList;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Basic terminal emulator for Edex-UI
@@ -11,14 +20,82 @@ import java.util.List;
  */
 public class TerminalEmulator {
     
-    private List<String> commandHistory;
-    private StringBuilder outputBuffer;
-    private String currentDirectory;
+    public static final long DEFAULT_COMMAND_TIMEOUT_MS = 5 * 60 * 1000;
+    
+    private static final int COMPLETION_LIST_LIMIT = 200;
+    private static final String COMMAND_NOT_FOUND =
+        "Error: Command not found or not supported\n" +
+        "Use 'help' to see available commands";
+    
+    private static final ThreadFactory THREAD_FACTORY = new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "edex-terminal");
+            thread.setDaemon(true);
+            return thread;
+        }
+    };
+    
+    private final ExecutorService commandExecutor = Executors.newSingleThreadExecutor(THREAD_FACTORY);
+    private final ScheduledExecutorService watchdogExecutor =
+        Executors.newSingleThreadScheduledExecutor(THREAD_FACTORY);
+    // Pipeline stages block on each other, so each needs its own thread
+    private final ExecutorService pipelineExecutor = Executors.newCachedThreadPool(THREAD_FACTORY);
+    
+    private volatile boolean cancelled;
+    // Thread running a built-in, interrupted to cancel it
+    private volatile Thread builtinThread;
+    private final Object builtinLock = new Object();
+    private volatile boolean timedOut;
+    private volatile long commandTimeoutMs = DEFAULT_COMMAND_TIMEOUT_MS;
+    
+    private final CommandHistory commandHistory;
+    private final boolean ownsHistory;
+    private final CompletionEngine completionEngine;
+    private final CommandRegistry commandRegistry = new CommandRegistry();
+    private final PipelineRunner pipelineRunner = new PipelineRunner(commandRegistry, pipelineExecutor);
+    private final ScrollbackBuffer outputBuffer;
+    private final ShellSession shellSession;
+    private final ScreenGrid screen;
+    private final AnsiParser ansiParser;
+    private final StringBuilder plainOutput = new StringBuilder();
     
     public TerminalEmulator() {
-        this.commandHistory = new ArrayList<>();
-        this.outputBuffer = new StringBuilder();
-        this.currentDirectory = "/";
+        this(ScrollbackBuffer.DEFAULT_MAX_LINES);
+    }
+    
+    public TerminalEmulator(int maxScrollbackLines) {
+        this(maxScrollbackLines, (File) null);
+    }
+    
+    /**
+     * Create a terminal whose command history is saved to historyFile,
+     * or kept in memory only if it is null
+     */
+    public TerminalEmulator(int maxScrollbackLines, File historyFile) {
+        this(maxScrollbackLines, new CommandHistory(CommandHistory.DEFAULT_MAX_ENTRIES, historyFile), true);
+        commandHistory.load();
+    }
+    
+    /**
+     * Create a terminal recording commands in a history shared with other
+     * terminals; the caller keeps ownership of it
+     */
+    public TerminalEmulator(int maxScrollbackLines, CommandHistory history) {
+        this(maxScrollbackLines, history, false);
+    }
+    
+    private TerminalEmulator(int maxScrollbackLines, CommandHistory history, boolean ownsHistory) {
+        this.commandHistory = history;
+        this.ownsHistory = ownsHistory;
+        BuiltinCommands.registerDefaults(commandRegistry, this);
+        this.completionEngine = new CompletionEngine(commandRegistry.getNames());
+        this.outputBuffer = new ScrollbackBuffer(maxScrollbackLines);
+        this.shellSession = new ShellSession("/");
+        this.screen = new ScreenGrid();
+        this.ansiParser = new AnsiParser(screen);
+        // Lines scrolled off the top of the screen become scrollback
+        screen.setScrollback(outputBuffer);
         
         // Welcome message
         appendOutput("╔════════════════════════════════════════╗\n");
@@ -29,6 +106,16 @@ public class TerminalEmulator {
         appendOutput("$ Type 'help' for available commands\n\n");
     }
     
+    /**
+     * Receives output of asynchronously executed commands.
+     * Callbacks arrive on background threads.
+     */
+    public interface OutputListener {
+        void onOutput(String text);
+        void onCleared();
+        void onCommandFinished(int exitCode);
+    }
+    
     /**
      * Execute a command
      */
@@ -40,73 +127,48 @@ public class TerminalEmulator {
         command = command.trim();
         commandHistory.add(command);
         
-        String output = "";
-        
-        // Handle built-in commands
-        if (command.equals("help")) {
-            output = getHelpText();
-        } else if (command.equals("clear")) {
-            outputBuffer = new StringBuilder();
+        if (command.equals("clear")) {
+            resetScreen();
             return "Terminal cleared";
-        } else if (command.startsWith("echo ")) {
-            output = command.substring(5);
-        } else if (command.equals("date")) {
-            output = new java.util.Date().toString();
-        } else if (command.equals("whoami")) {
-            output = "android-user";
-        } else if (command.equals("pwd")) {
-            output = currentDirectory;
-        } else if (command.equals("uname") || command.equals("uname -a")) {
-            output = "Android " + android.os.Build.VERSION.RELEASE + 
-                     " " + android.os.Build.DEVICE + 
-                     " " + System.getProperty("os.arch");
-        } else if (command.startsWith("cd ")) {
-            String path = command.substring(3).trim();
-            if (path.isEmpty() || path.equals("~")) {
-                currentDirectory = "/";
-                output = "Changed to " + currentDirectory;
-            } else {
-                output = "Directory change not fully supported in this demo";
+        }
+        
+        String output;
+        Pipeline pipeline;
+        List<String> args = parseBuiltin(command);
+        if (args != null) {
+            StringBuilder result = new StringBuilder();
+            runBuiltin(args, result);
+            // Output is shown followed by a newline below
+            if (result.length() > 0 && result.charAt(result.length() - 1) == '\n') {
+                result.setLength(result.length() - 1);
             }
-        } else if (command.equals("ls") || command.equals("ls -la")) {
-            output = "Use the File Navigator module for file listing";
+            output = result.toString();
+        } else if ((pipeline = parsePipeline(command)) != null) {
+            StringWriter result = new StringWriter();
+            int exitCode = pipelineRunner.run(pipeline, getCurrentDirectory(), result);
+            StringBuffer text = result.getBuffer();
+            if (text.length() > 0 && text.charAt(text.length() - 1) == '\n') {
+                text.setLength(text.length() - 1);
+            }
+            output = text.length() > 0 ? text.toString() : "Command executed (exit code: " + exitCode + ")";
         } else {
-            // Try to execute as system command (limited on Android)
+            // Run in the persistent shell session
             try {
-                Process process = Runtime.getRuntime().exec(command);
-                BufferedReader reader = new BufferedReader(
-                    new InputStreamReader(process.getInputStream()));
-                StringBuilder result = new StringBuilder();
-                String line;
-                
-                while ((line = reader.readLine()) != null) {
-                    result.append(line).append("\n");
-                }
-                
-                int exitCode = process.waitFor();
+                final StringBuilder result = new StringBuilder();
+                int exitCode = shellSession.run(command, new ShellSession.OutputSink() {
+                    @Override
+                    public void onOutput(char[] buffer, int offset, int length) {
+                        result.append(buffer, offset, length);
+                    }
+                });
                 
-                if (exitCode == 0 && result.length() > 0) {
+                if (result.length() > 0) {
                     output = result.toString();
                 } else {
-                    BufferedReader errorReader = new BufferedReader(
-                        new InputStreamReader(process.getErrorStream()));
-                    StringBuilder errorResult = new StringBuilder();
-                    
-                    while ((line = errorReader.readLine()) != null) {
-                        errorResult.append(line).append("\n");
-                    }
-                    
-                    if (errorResult.length() > 0) {
-                        output = "Error: " + errorResult.toString();
-                    } else {
-                        output = "Command executed (exit code: " + exitCode + ")";
-                    }
+                    output = "Command executed (exit code: " + exitCode + ")";
                 }
-                
-                reader.close();
-            } catch (Exception e) {
-                output = "Error: Command not found or not supported\n" +
-                        "Use 'help' to see available commands";
+            } catch (IOException e) {
+                output = COMMAND_NOT_FOUND;
             }
         }
         
@@ -121,45 +183,288 @@ public class TerminalEmulator {
     }
     
     /**
-     * Get help text
-     */
-    private String getHelpText() {
-        StringBuilder help = new StringBuilder();
-        help.append("═══════════════════════════════════════\n");
-        help.append("  EDEX-UI TERMINAL - AVAILABLE COMMANDS\n");
-        help.append("═══════════════════════════════════════\n\n");
-        help.append("Built-in Commands:\n");
-        help.append("  help      - Show this help message\n");
-        help.append("  clear     - Clear terminal output\n");
-        help.append("  echo      - Display a line of text\n");
-        help.append("  date      - Display current date/time\n");
-        help.append("  whoami    - Display current user\n");
-        help.append("  pwd       - Print working directory\n");
-        help.append("  uname     - Display system information\n");
-        help.append("  cd        - Change directory (limited)\n");
-        help.append("  ls        - List files (use File Navigator)\n\n");
-        help.append("System Commands:\n");
-        help.append("  getprop   - Get system properties\n");
-        help.append("  ps        - Show running processes\n");
-        help.append("  top       - Display system resources\n");
-        help.append("  df        - Display disk usage\n");
-        help.append("  free      - Display memory usage\n");
-        help.append("  uptime    - Show system uptime\n\n");
-        help.append("Note: Some commands may require root access\n");
-        help.append("═══════════════════════════════════════\n");
+     * Execute a command on a background thread, streaming its output to the
+     * listener as it arrives. Commands run one at a time in submission order.
+     */
+    public void executeCommandAsync(String command, final OutputListener listener) {
+        if (command == null || command.trim().isEmpty()) {
+            return;
+        }
+        
+        final String trimmed = command.trim();
+        commandHistory.add(trimmed);
+        
+        commandExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                int exitCode = runStreaming(trimmed, listener);
+                listener.onCommandFinished(exitCode);
+            }
+        });
+    }
+    
+    /**
+     * Run a command on the command thread, emitting output incrementally
+     */
+    private int runStreaming(String command, final OutputListener listener) {
+        if (command.equals("clear")) {
+            resetScreen();
+            listener.onCleared();
+            return 0;
+        }
+        
+        emit("$ " + command + "\n", listener);
+        
+        List<String> args = parseBuiltin(command);
+        if (args != null) {
+            StringBuilder result = new StringBuilder();
+            int exitCode = runBuiltin(args, result);
+            if (result.length() > 0) {
+                emit(result.toString(), listener);
+            }
+            emit("\n", listener);
+            return exitCode;
+        }
+        
+        cancelled = false;
+        timedOut = false;
         
-        return help.toString();
+        ScheduledFuture<?> watchdog = null;
+        if (commandTimeoutMs > 0) {
+            watchdog = watchdogExecutor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    timedOut = true;
+                    if (!pipelineRunner.cancel()) {
+                        shellSession.interrupt(true);
+                    }
+                }
+            }, commandTimeoutMs, TimeUnit.MILLISECONDS);
+        }
+        
+        final int[] written = new int[1];
+        int exitCode;
+        try {
+            Pipeline pipeline = parsePipeline(command);
+            if (pipeline != null) {
+                // Stages may write from several threads at once
+                exitCode = pipelineRunner.run(pipeline, getCurrentDirectory(), new Writer() {
+                    @Override
+                    public void write(char[] buffer, int offset, int length) {
+                        synchronized (written) {
+                            written[0] += length;
+                        }
+                        emit(new String(buffer, offset, length), listener);
+                    }
+                    
+                    @Override
+                    public void flush() {
+                    }
+                    
+                    @Override
+                    public void close() {
+                    }
+                });
+            } else {
+                exitCode = shellSession.run(command, new ShellSession.OutputSink() {
+                    @Override
+                    public void onOutput(char[] buffer, int offset, int length) {
+                        written[0] += length;
+                        emit(new String(buffer, offset, length), listener);
+                    }
+                });
+            }
+        } catch (IOException e) {
+            emit(COMMAND_NOT_FOUND + "\n\n", listener);
+            return -1;
+        } finally {
+            if (watchdog != null) {
+                watchdog.cancel(false);
+            }
+        }
+        
+        if (cancelled) {
+            emit("^C\n", listener);
+        } else if (timedOut) {
+            emit("[Timed out after " + (commandTimeoutMs / 1000) + "s]\n", listener);
+        } else if (exitCode == ShellSession.EXIT_SHELL_DIED) {
+            emit("[Shell exited; the next command starts a new session]\n", listener);
+        } else if (written[0] == 0) {
+            emit("Command executed (exit code: " + exitCode + ")\n", listener);
+        }
+        emit("\n", listener);
+        return exitCode;
+    }
+    
+    /**
+     * Tokenize a line that names a built-in, or return null if the shell
+     * should run it. Lines using expansion or operators go to the shell.
+     */
+    private List<String> parseBuiltin(String command) {
+        if (CommandTokenizer.hasShellSyntax(command)) {
+            return null;
+        }
+        List<String> args;
+        try {
+            args = CommandTokenizer.tokenize(command);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (args.isEmpty() || commandRegistry.find(args) == null) {
+            return null;
+        }
+        return args;
+    }
+    
+    /**
+     * Parse a pipeline or redirection that involves a built-in, or return
+     * null if the shell should run the line. Pipelines of external commands
+     * stay in the shell, which keeps their variables and exports.
+     */
+    private Pipeline parsePipeline(String command) {
+        Pipeline pipeline = Pipeline.parse(command);
+        if (pipeline == null || !pipeline.usesBuiltin(commandRegistry)) {
+            return null;
+        }
+        return pipeline;
+    }
+    
+    /**
+     * Run a built-in command in-process, appending its output
+     */
+    private int runBuiltin(List<String> args, StringBuilder output) {
+        StringWriter out = new StringWriter();
+        Reader in = new StringReader("");
+        int exitCode;
+        builtinThread = Thread.currentThread();
+        try {
+            exitCode = commandRegistry.find(args).run(args, in, out);
+        } catch (IOException e) {
+            out.write(args.get(0) + ": " + e.getMessage() + "\n");
+            exitCode = 1;
+        } finally {
+            synchronized (builtinLock) {
+                builtinThread = null;
+                // Do not carry a late cancel over to the next command
+                Thread.interrupted();
+            }
+        }
+        output.append(out.getBuffer());
+        return exitCode;
+    }
+    
+    /**
+     * Change the shell's working directory; used by the cd built-in
+     */
+    int changeDirectory(String path, final Writer out) throws IOException {
+        return shellSession.run("cd " + CommandTokenizer.quote(path), new ShellSession.OutputSink() {
+            @Override
+            public void onOutput(char[] buffer, int offset, int length) {
+                try {
+                    out.write(buffer, offset, length);
+                } catch (IOException e) {
+                    // Output target closed
+                }
+            }
+        });
+    }
+    
+    /**
+     * Interrupt the running command, like Ctrl-C.
+     * Returns false if no command is running.
+     */
+    public boolean cancelCommand() {
+        // Long built-ins such as du give up when interrupted
+        synchronized (builtinLock) {
+            if (builtinThread != null) {
+                builtinThread.interrupt();
+                return true;
+            }
+        }
+        // A second interrupt of the same command kills it outright
+        boolean force = cancelled;
+        cancelled = true;
+        if (!pipelineRunner.cancel() && !shellSession.interrupt(force)) {
+            cancelled = false;
+            return false;
+        }
+        return true;
+    }
+    
+    /**
+     * Whether a command is currently running
+     */
+    public boolean isCommandRunning() {
+        return builtinThread != null || shellSession.isCommandRunning() || pipelineRunner.isRunning();
+    }
+    
+    /**
+     * Set how long an external command may run before it is killed; 0 disables
+     */
+    public void setCommandTimeout(long timeoutMs) {
+        this.commandTimeoutMs = timeoutMs;
+    }
+    
+    /**
+     * Kill any running command and stop the background threads
+     */
+    public void shutdown() {
+        commandExecutor.shutdownNow();
+        watchdogExecutor.shutdownNow();
+        pipelineRunner.cancel();
+        pipelineExecutor.shutdownNow();
+        shellSession.destroy();
+        if (ownsHistory) {
+            commandHistory.close();
+        }
+        completionEngine.shutdown();
+    }
+    
+    /**
+     * Append output and forward it to the listener
+     */
+    private void emit(String text, OutputListener listener) {
+        // Escape sequences drive the screen grid; listeners get plain text
+        String plain;
+        synchronized (screen) {
+            plainOutput.setLength(0);
+            ansiParser.feed(text, plainOutput);
+            plain = plainOutput.toString();
+        }
+        listener.onOutput(plain);
     }
     
     /**
      * Append text to output buffer
      */
     private void appendOutput(String text) {
-        outputBuffer.append(text);
-        
-        // Limit buffer size to prevent memory issues
-        if (outputBuffer.length() > 50000) {
-            outputBuffer.delete(0, outputBuffer.length() - 40000);
+        // Text is drawn on the screen grid; lines scrolled off it land in the
+        // scrollback ring, which evicts the oldest once full
+        synchronized (screen) {
+            ansiParser.feed(text);
+        }
+    }
+    
+    /**
+     * Clear the scrollback and the screen
+     */
+    void clearScreen() {
+        resetScreen();
+    }
+    
+    private void resetScreen() {
+        synchronized (screen) {
+            outputBuffer.clear();
+            screen.reset();
+        }
+    }
+    
+    /**
+     * Resize the screen grid, e.g. to fit the view showing it
+     */
+    public void resize(int rows, int columns) {
+        synchronized (screen) {
+            screen.resize(rows, columns);
         }
     }
     
@@ -167,21 +472,140 @@ public class TerminalEmulator {
      * Get full output buffer
      */
     public String getOutput() {
-        return outputBuffer.toString();
+        synchronized (screen) {
+            return getVisibleLines(0, getLineCount());
+        }
+    }
+    
+    /**
+     * Get only the lines in a visible window; line 0 is the oldest scrollback
+     * line held, followed by the used rows of the screen
+     */
+    public String getVisibleLines(int firstLine, int lineCount) {
+        synchronized (screen) {
+            int scrollbackLines = outputBuffer.getLineCount() - 1;
+            int end = Math.min(getLineCount(), firstLine + lineCount);
+            StringBuilder out = new StringBuilder();
+            for (int line = Math.max(0, firstLine); line < end; line++) {
+                if (line < scrollbackLines) {
+                    out.append(outputBuffer.getLine(line));
+                } else {
+                    out.append(screen.getRowText(line - scrollbackLines));
+                }
+                if (line < end - 1) {
+                    out.append('\n');
+                }
+            }
+            return out.toString();
+        }
+    }
+    
+    /**
+     * Get the number of lines held in the scrollback and on the screen
+     */
+    public int getLineCount() {
+        synchronized (screen) {
+            // The scrollback's open last line is always empty; the screen holds it
+            int screenLines = screen.isAlternateScreen() ? screen.getRows() : screen.getCursorRow() + 1;
+            return outputBuffer.getLineCount() - 1 + screenLines;
+        }
+    }
+    
+    /**
+     * Get the scrollback buffer backing this terminal
+     */
+    public ScrollbackBuffer getScrollback() {
+        return outputBuffer;
+    }
+    
+    /**
+     * Get the screen grid that command output is rendered into.
+     * Updated on the command thread; lock on it while reading.
+     * Scrollback lines above it come from getScrollback().
+     */
+    public ScreenGrid getScreen() {
+        return screen;
+    }
+    
+    /**
+     * Complete the last word of a partially typed command line against
+     * commands on $PATH or files relative to the working directory. The
+     * callback runs on the completion thread.
+     */
+    public void complete(String line, CompletionEngine.Callback callback) {
+        completionEngine.completeAsync(line, shellSession.getCurrentDirectory(), callback);
+    }
+    
+    /**
+     * Print completion candidates in columns, like a shell does on a double tab
+     */
+    public void showCompletions(List<String> candidates) {
+        if (!candidates.isEmpty()) {
+            appendOutput(formatColumns(candidates, getScreenColumns(), COMPLETION_LIST_LIMIT));
+        }
+    }
+    
+    /**
+     * Get the width of the screen in columns
+     */
+    int getScreenColumns() {
+        synchronized (screen) {
+            return screen.getColumns();
+        }
     }
     
     /**
-     * Get command history
+     * Lay out names in columns across the screen width, like ls and the
+     * shell's completion list
+     */
+    static String formatColumns(List<String> names, int screenColumns, int limit) {
+        if (names.isEmpty()) {
+            return "";
+        }
+        int width = 0;
+        for (String name : names) {
+            width = Math.max(width, name.length() + 2);
+        }
+        int perRow = Math.max(1, screenColumns / width);
+        
+        StringBuilder out = new StringBuilder();
+        int shown = Math.min(names.size(), limit);
+        for (int i = 0; i < shown; i++) {
+            String name = names.get(i);
+            out.append(name);
+            if ((i + 1) % perRow == 0 || i == shown - 1) {
+                out.append('\n');
+            } else {
+                for (int pad = name.length(); pad < width; pad++) {
+                    out.append(' ');
+                }
+            }
+        }
+        if (names.size() > shown) {
+            out.append("... ").append(names.size() - shown).append(" more\n");
+        }
+        return out.toString();
+    }
+    
+    /**
+     * Get command history, oldest first
      */
     public List<String> getCommandHistory() {
-        return new ArrayList<>(commandHistory);
+        return commandHistory.getEntries();
+    }
+    
+    /**
+     * Get the history store, for navigation and search
+     */
+    public CommandHistory getHistory() {
+        return commandHistory;
     }
     
     /**
      * Clear output buffer
      */
     public void clearOutput() {
-        outputBuffer = new StringBuilder();
+        resetScreen();
         appendOutput("Terminal cleared\n\n");
     }
     
@@ -189,6 +613,6 @@ public class TerminalEmulator {
      * Get current directory
      */
     public String getCurrentDirectory() {
-        return currentDirectory;
+        return shellSession.getCurrentDirectory();
     }
 }
@@ -0,0 +1,94 @@
+package com.edexui.android;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.content.Intent;
+import android.content.pm.ServiceInfo;
+import android.os.Binder;
+import android.os.Build;
+import android.os.IBinder;
+
+import androidx.core.app.NotificationCompat;
+import androidx.core.app.ServiceCompat;
+
+/**
+ * Foreground service hosting the terminal sessions of Edex-UI
+ * Android kills a background process without one, and every shell with it;
+ * while this runs, commands keep going with no activity on screen.
+ * TerminalActivity starts and binds it. The notification's Exit action
+ * stops it, and the sessions close once no activity is bound.
+ */
+public class TerminalService extends Service {
+
+    public static final String ACTION_EXIT = "com.edexui.android.action.EXIT_TERMINAL";
+
+    private static final String CHANNEL_ID = "terminal_sessions";
+    private static final int NOTIFICATION_ID = 1;
+
+    /**
+     * Hands the sessions to an activity bound in this process
+     */
+    public final class LocalBinder extends Binder {
+        public TerminalSessionManager getSessionManager() {
+            return sessionManager;
+        }
+    }
+
+    private final IBinder binder = new LocalBinder();
+    private TerminalSessionManager sessionManager;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        sessionManager = new TerminalSessionManager(this);
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        if (intent != null && ACTION_EXIT.equals(intent.getAction())) {
+            ServiceCompat.stopForeground(this, ServiceCompat.STOP_FOREGROUND_REMOVE);
+            stopSelf();
+            return START_NOT_STICKY;
+        }
+        ServiceCompat.startForeground(this, NOTIFICATION_ID, buildNotification(),
+            Build.VERSION.SDK_INT >= Build.VERSION_CODES.UPSIDE_DOWN_CAKE
+                ? ServiceInfo.FOREGROUND_SERVICE_TYPE_SPECIAL_USE : 0);
+        // A restarted service would have lost its shells; nothing to restore
+        return START_NOT_STICKY;
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return binder;
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        sessionManager.closeAll();
+    }
+
+    private Notification buildNotification() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            NotificationChannel channel = new NotificationChannel(CHANNEL_ID,
+                getString(R.string.terminal_sessions_channel), NotificationManager.IMPORTANCE_LOW);
+            getSystemService(NotificationManager.class).createNotificationChannel(channel);
+        }
+        int immutable = Build.VERSION.SDK_INT >= Build.VERSION_CODES.M ? PendingIntent.FLAG_IMMUTABLE : 0;
+        PendingIntent open = PendingIntent.getActivity(this, 0,
+            new Intent(this, TerminalActivity.class), immutable);
+        PendingIntent exit = PendingIntent.getService(this, 1,
+            new Intent(this, TerminalService.class).setAction(ACTION_EXIT), immutable);
+        return new NotificationCompat.Builder(this, CHANNEL_ID)
+            .setSmallIcon(R.mipmap.ic_launcher)
+            .setContentTitle(getString(R.string.terminal_title))
+            .setContentText(getString(R.string.terminal_sessions_running))
+            .setContentIntent(open)
+            .addAction(0, getString(R.string.exit), exit)
+            .setOngoing(true)
+            .build();
+    }
+}
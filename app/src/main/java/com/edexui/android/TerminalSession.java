@@ -0,0 +1,128 @@
+package com.edexui.android;
+
+/**
+ * One terminal tab of Edex-UI
+ * Owns its emulator, scrollback and command threads, so it keeps running
+ * commands and collecting output while no view shows it. Output of a hidden
+ * session only updates its screen grid; nothing is drawn until it is shown.
+ */
+public class TerminalSession {
+
+    /**
+     * Told when a hidden session first produces output since it was last shown
+     */
+    public interface ActivityListener {
+        void onSessionActivity(TerminalSession session);
+    }
+
+    private final int id;
+    private final TerminalEmulator terminal;
+
+    // The view showing this session, or null while it is hidden
+    private volatile TerminalEmulator.OutputListener display;
+    private volatile ActivityListener activityListener;
+    private volatile boolean unseenOutput;
+    private volatile boolean closed;
+
+    private final TerminalEmulator.OutputListener outputListener = new TerminalEmulator.OutputListener() {
+        @Override
+        public void onOutput(String text) {
+            TerminalEmulator.OutputListener target = display;
+            if (target != null) {
+                target.onOutput(text);
+            } else {
+                markUnseen();
+            }
+        }
+
+        @Override
+        public void onCleared() {
+            TerminalEmulator.OutputListener target = display;
+            if (target != null) {
+                target.onCleared();
+            }
+        }
+
+        @Override
+        public void onCommandFinished(int exitCode) {
+            TerminalEmulator.OutputListener target = display;
+            if (target != null) {
+                target.onCommandFinished(exitCode);
+            }
+        }
+    };
+
+    TerminalSession(int id, TerminalEmulator terminal) {
+        this.id = id;
+        this.terminal = terminal;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Label shown on the session's tab
+     */
+    public String getTitle() {
+        return "TTY" + id;
+    }
+
+    public TerminalEmulator getTerminal() {
+        return terminal;
+    }
+
+    /**
+     * Run a command on this session's command thread
+     */
+    public void execute(String command) {
+        terminal.executeCommandAsync(command, outputListener);
+    }
+
+    /**
+     * Show this session through listener, or hide it if listener is null
+     */
+    public void setDisplay(TerminalEmulator.OutputListener listener) {
+        display = listener;
+        if (listener != null) {
+            unseenOutput = false;
+        }
+    }
+
+    public void setActivityListener(ActivityListener listener) {
+        this.activityListener = listener;
+    }
+
+    /**
+     * Whether output arrived while the session was hidden
+     */
+    public boolean hasUnseenOutput() {
+        return unseenOutput;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    private void markUnseen() {
+        // Only the first chunk is reported, so a busy hidden tab costs nothing more
+        if (unseenOutput) {
+            return;
+        }
+        unseenOutput = true;
+        ActivityListener listener = activityListener;
+        if (listener != null) {
+            listener.onSessionActivity(this);
+        }
+    }
+
+    /**
+     * Kill the session's command and stop its threads
+     */
+    void close() {
+        closed = true;
+        display = null;
+        activityListener = null;
+        terminal.shutdown();
+    }
+}
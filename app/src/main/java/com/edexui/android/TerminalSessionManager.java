@@ -0,0 +1,96 @@
+package com.edexui.android;
+
+import android.content.Context;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Keeps the terminal sessions of Edex-UI
+ * Owned by TerminalService, whose foreground state keeps the process and
+ * so the shells alive while TerminalActivity is recreated or in the
+ * background. All sessions share one command history file.
+ */
+public final class TerminalSessionManager {
+
+    public static final int MAX_SESSIONS = 8;
+
+    private static final String HISTORY_FILE_NAME = "command_history";
+
+    private final CommandHistory history;
+    private final List<TerminalSession> sessions = new ArrayList<>();
+    private int activeIndex = 0;
+    private int nextId = 1;
+
+    /**
+     * Create a manager with one session open
+     */
+    TerminalSessionManager(Context context) {
+        history = new CommandHistory(CommandHistory.DEFAULT_MAX_ENTRIES,
+            new File(context.getFilesDir(), HISTORY_FILE_NAME));
+        history.load();
+        createSession();
+    }
+
+    /**
+     * Open a new session and make it active.
+     * Returns null if MAX_SESSIONS are already open.
+     */
+    public synchronized TerminalSession createSession() {
+        if (sessions.size() >= MAX_SESSIONS) {
+            return null;
+        }
+        TerminalSession session = new TerminalSession(nextId++,
+            new TerminalEmulator(ScrollbackBuffer.DEFAULT_MAX_LINES, history));
+        sessions.add(session);
+        activeIndex = sessions.size() - 1;
+        return session;
+    }
+
+    /**
+     * Close a session, killing its command. The last session is replaced by
+     * a fresh one so there is always a terminal to show.
+     */
+    public synchronized void closeSession(TerminalSession session) {
+        int index = sessions.indexOf(session);
+        if (index < 0) {
+            return;
+        }
+        sessions.remove(index);
+        session.close();
+        if (sessions.isEmpty()) {
+            createSession();
+        } else if (activeIndex >= index && activeIndex > 0) {
+            activeIndex--;
+        }
+    }
+
+    /**
+     * Close every session, killing their commands; the manager is not used
+     * after this
+     */
+    synchronized void closeAll() {
+        for (TerminalSession session : sessions) {
+            session.close();
+        }
+        sessions.clear();
+        history.close();
+    }
+
+    public synchronized List<TerminalSession> getSessions() {
+        return Collections.unmodifiableList(new ArrayList<>(sessions));
+    }
+
+    public synchronized TerminalSession getActiveSession() {
+        return sessions.get(activeIndex);
+    }
+
+    public synchronized void setActiveSession(TerminalSession session) {
+        int index = sessions.indexOf(session);
+        if (index >= 0) {
+            activeIndex = index;
+        }
+    }
+}
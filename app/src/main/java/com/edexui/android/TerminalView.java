@@ -0,0 +1,394 @@
+package com.edexui.android;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Typeface;
+import android.util.AttributeSet;
+import android.util.Log;
+import android.util.TypedValue;
+import android.view.MotionEvent;
+import android.view.View;
+
+/**
+ * Terminal view for Edex-UI
+ * Draws the screen grid and scrollback directly with Canvas.drawText using
+ * fixed monospace cell metrics, so output never goes through text layout.
+ * Only rows flagged dirty are re-decoded from the grid; scrolling back just
+ * changes the translation the cached rows are drawn at.
+ */
+public class TerminalView extends View {
+
+    private static final String TAG = "TerminalView";
+    private static final float DEFAULT_TEXT_SIZE_SP = 12f;
+
+    private static final int DEFAULT_FOREGROUND = Color.parseColor("#00FF9F");
+    private static final int DEFAULT_BACKGROUND = Color.parseColor("#000814");
+    private static final int CURSOR_COLOR = Color.parseColor("#00D9FF");
+    // Standard 16-color palette tinted towards the Edex-UI scheme
+    private static final int[] PALETTE = {
+        Color.parseColor("#000814"), Color.parseColor("#FF006E"),
+        Color.parseColor("#00FF9F"), Color.parseColor("#FFB800"),
+        Color.parseColor("#0096C7"), Color.parseColor("#C77DFF"),
+        Color.parseColor("#00D9FF"), Color.parseColor("#B8C4D6"),
+        Color.parseColor("#1A2744"), Color.parseColor("#FF4D94"),
+        Color.parseColor("#66FFC4"), Color.parseColor("#FFD466"),
+        Color.parseColor("#48CAE4"), Color.parseColor("#E0AAFF"),
+        Color.parseColor("#90F1FF"), Color.parseColor("#FFFFFF")
+    };
+
+    private final Paint textPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint backgroundPaint = new Paint();
+
+    // Glyph metrics, measured once per text size
+    private float cellWidth;
+    private float cellHeight;
+    private float baseline;
+
+    private TerminalEmulator terminal;
+    private RowCache[] rowCaches = new RowCache[0];
+    private int[] cellScratch = new int[0];
+    // Scrollback lines on screen, copied under the grid's lock; line
+    // firstLine + i is scrollbackChars[i]
+    private char[][] scrollbackChars = new char[0][];
+    private int[] scrollbackLengths = new int[0];
+    // Lines drawn, negative above the screen
+    private int firstLine;
+    private int lastLine;
+    private int cursorRow;
+    private int cursorColumn;
+    private boolean cursorVisible;
+
+    // Pixels scrolled back from the bottom; 0 follows the live screen
+    private float scrollOffset = 0;
+    private float lastTouchY;
+
+    private FrameTimer.Listener drawListener;
+    private long lastDrawNanos = 0;
+    private long maxDrawNanos = 0;
+    private int drawCount = 0;
+    private int overBudgetCount = 0;
+
+    public TerminalView(Context context) {
+        super(context);
+        init();
+    }
+
+    public TerminalView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        init();
+    }
+
+    private void init() {
+        textPaint.setTypeface(Typeface.MONOSPACE);
+        setTextSize(TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP,
+            DEFAULT_TEXT_SIZE_SP, getResources().getDisplayMetrics()));
+        setFocusable(true);
+        setVerticalScrollBarEnabled(true);
+    }
+
+    /**
+     * Set the text size in pixels and re-measure the cell metrics
+     */
+    public void setTextSize(float sizePx) {
+        textPaint.setTextSize(sizePx);
+        Paint.FontMetrics metrics = textPaint.getFontMetrics();
+        cellWidth = textPaint.measureText("M");
+        cellHeight = (float) Math.ceil(metrics.descent - metrics.ascent);
+        baseline = -metrics.ascent;
+        resizeScreen(getWidth(), getHeight());
+        invalidate();
+    }
+
+    /**
+     * Attach the terminal whose screen and scrollback this view shows
+     */
+    public void setTerminal(TerminalEmulator terminal) {
+        this.terminal = terminal;
+        // A different grid: rebuild every row and start at its bottom
+        rowCaches = new RowCache[0];
+        scrollOffset = 0;
+        resizeScreen(getWidth(), getHeight());
+        invalidate();
+    }
+
+    /**
+     * Receive draw-time measurements for every frame
+     */
+    public void setDrawListener(FrameTimer.Listener listener) {
+        this.drawListener = listener;
+    }
+
+    /**
+     * Schedule a redraw for the next frame; safe to call from any thread and
+     * coalesced however often it is called
+     */
+    public void onScreenChanged() {
+        postInvalidateOnAnimation();
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        resizeScreen(w, h);
+    }
+
+    private void resizeScreen(int width, int height) {
+        if (terminal == null || cellWidth <= 0 || cellHeight <= 0) {
+            return;
+        }
+        int columns = (int) ((width - getPaddingLeft() - getPaddingRight()) / cellWidth);
+        int rows = (int) ((height - getPaddingTop() - getPaddingBottom()) / cellHeight);
+        if (columns > 0 && rows > 0) {
+            terminal.resize(rows, columns);
+        }
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        long start = System.nanoTime();
+        canvas.drawColor(DEFAULT_BACKGROUND);
+        if (terminal != null) {
+            syncRows();
+            drawContent(canvas);
+        }
+        recordDraw(System.nanoTime() - start);
+    }
+
+    /**
+     * Copy dirty rows and the scrollback lines on screen out of the grid
+     * while holding its lock
+     */
+    private void syncRows() {
+        ScreenGrid screen = terminal.getScreen();
+        synchronized (screen) {
+            int rows = screen.getRows();
+            int columns = screen.getColumns();
+            boolean resized = rowCaches.length != rows || cellScratch.length != columns;
+            if (resized) {
+                rowCaches = new RowCache[rows];
+                for (int row = 0; row < rows; row++) {
+                    rowCaches[row] = new RowCache(columns);
+                }
+                cellScratch = new int[columns];
+            }
+            if (resized || screen.hasDirtyRows()) {
+                for (int row = 0; row < rows; row++) {
+                    if (resized || screen.isRowDirty(row)) {
+                        screen.copyRow(row, cellScratch);
+                        rowCaches[row].update(cellScratch);
+                    }
+                }
+                screen.clearDirty();
+            }
+            cursorRow = screen.getCursorRow();
+            cursorColumn = screen.getCursorColumn();
+            cursorVisible = screen.isCursorVisible();
+            // Complete lines only; the scrollback's open last line is on the screen
+            int scrollbackLines = screen.isAlternateScreen() ? 0 : terminal.getScrollback().getLineCount() - 1;
+            copyScrollback(terminal.getScrollback(), scrollbackLines);
+        }
+    }
+
+    /**
+     * Clamp the scroll position and copy the scrollback lines it shows.
+     * Called with the grid locked: every writer of the scrollback holds that
+     * lock, so the line count cannot change until the copy is done.
+     */
+    private void copyScrollback(ScrollbackBuffer scrollback, int scrollbackLines) {
+        int height = getHeight() - getPaddingTop() - getPaddingBottom();
+        scrollOffset = Math.min(scrollOffset, scrollbackLines * cellHeight);
+        firstLine = Math.max(-scrollbackLines, (int) Math.floor(-scrollOffset / cellHeight));
+        lastLine = Math.min(rowCaches.length - 1, (int) Math.ceil((height - scrollOffset) / cellHeight));
+
+        int count = Math.max(0, Math.min(lastLine, -1) - firstLine + 1);
+        if (scrollbackChars.length < count) {
+            char[][] grown = new char[count][];
+            System.arraycopy(scrollbackChars, 0, grown, 0, scrollbackChars.length);
+            for (int i = scrollbackChars.length; i < count; i++) {
+                grown[i] = new char[ScrollbackBuffer.DEFAULT_MAX_LINE_LENGTH];
+            }
+            scrollbackChars = grown;
+            scrollbackLengths = new int[count];
+        }
+        for (int i = 0; i < count; i++) {
+            scrollbackLengths[i] = scrollback.copyLine(scrollbackLines + firstLine + i, scrollbackChars[i]);
+        }
+    }
+
+    private void drawContent(Canvas canvas) {
+        int left = getPaddingLeft();
+        int top = getPaddingTop();
+        int height = getHeight() - top - getPaddingBottom();
+
+        canvas.save();
+        canvas.clipRect(left, top, getWidth() - getPaddingRight(), top + height);
+        // Screen row 0 sits at the top; scrollback lines stack above it
+        canvas.translate(left, top + scrollOffset);
+
+        for (int line = firstLine; line <= lastLine; line++) {
+            float y = line * cellHeight;
+            if (line < 0) {
+                int index = line - firstLine;
+                textPaint.setColor(DEFAULT_FOREGROUND);
+                textPaint.setFakeBoldText(false);
+                textPaint.setUnderlineText(false);
+                canvas.drawText(scrollbackChars[index], 0, scrollbackLengths[index], 0, y + baseline, textPaint);
+            } else {
+                drawRow(canvas, rowCaches[line], y);
+            }
+        }
+
+        if (cursorVisible && cursorRow < rowCaches.length) {
+            float x = cursorColumn * cellWidth;
+            float y = cursorRow * cellHeight;
+            backgroundPaint.setColor(CURSOR_COLOR);
+            canvas.drawRect(x, y, x + cellWidth, y + cellHeight, backgroundPaint);
+        }
+        canvas.restore();
+    }
+
+    private void drawRow(Canvas canvas, RowCache row, float y) {
+        for (int run = 0; run < row.runCount; run++) {
+            int cell = row.runAttributes[run];
+            int start = row.runStarts[run];
+            int length = row.runLengths[run];
+            float x = start * cellWidth;
+
+            int foreground = ScreenGrid.foregroundOf(cell);
+            int background = ScreenGrid.backgroundOf(cell);
+            int fgColor = foreground == ScreenGrid.COLOR_DEFAULT ? DEFAULT_FOREGROUND : PALETTE[foreground];
+            int bgColor = background == ScreenGrid.COLOR_DEFAULT ? DEFAULT_BACKGROUND : PALETTE[background];
+            if (ScreenGrid.hasFlag(cell, ScreenGrid.FLAG_INVERSE)) {
+                int swap = fgColor;
+                fgColor = bgColor;
+                bgColor = swap;
+            }
+            if (bgColor != DEFAULT_BACKGROUND) {
+                backgroundPaint.setColor(bgColor);
+                canvas.drawRect(x, y, x + length * cellWidth, y + cellHeight, backgroundPaint);
+            }
+            if (row.blank[run]) {
+                continue;
+            }
+            textPaint.setColor(fgColor);
+            textPaint.setFakeBoldText(ScreenGrid.hasFlag(cell, ScreenGrid.FLAG_BOLD));
+            textPaint.setUnderlineText(ScreenGrid.hasFlag(cell, ScreenGrid.FLAG_UNDERLINE));
+            canvas.drawText(row.chars, start, length, x, y + baseline, textPaint);
+        }
+    }
+
+    private void recordDraw(long duration) {
+        lastDrawNanos = duration;
+        maxDrawNanos = Math.max(maxDrawNanos, duration);
+        drawCount++;
+        if (duration > FrameTimer.FRAME_BUDGET_NANOS) {
+            overBudgetCount++;
+            Log.w(TAG, "Draw took " + (duration / 1000) + "us (over one frame)");
+        }
+        if (drawListener != null) {
+            drawListener.onFrameMeasured(TAG, duration);
+        }
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                lastTouchY = event.getY();
+                return true;
+            case MotionEvent.ACTION_MOVE:
+                float delta = event.getY() - lastTouchY;
+                lastTouchY = event.getY();
+                // Dragging down reveals older lines; clamped against scrollback in onDraw
+                scrollOffset = Math.max(0, scrollOffset + delta);
+                awakenScrollBars();
+                invalidate();
+                return true;
+            case MotionEvent.ACTION_UP:
+                performClick();
+                return true;
+            default:
+                return super.onTouchEvent(event);
+        }
+    }
+
+    @Override
+    public boolean performClick() {
+        return super.performClick();
+    }
+
+    /**
+     * Jump back to the live screen
+     */
+    public void scrollToBottom() {
+        scrollOffset = 0;
+        invalidate();
+    }
+
+    public float getCellWidth() {
+        return cellWidth;
+    }
+
+    public float getCellHeight() {
+        return cellHeight;
+    }
+
+    public long getLastDrawNanos() {
+        return lastDrawNanos;
+    }
+
+    public long getMaxDrawNanos() {
+        return maxDrawNanos;
+    }
+
+    public int getDrawCount() {
+        return drawCount;
+    }
+
+    public int getOverBudgetCount() {
+        return overBudgetCount;
+    }
+
+    /**
+     * One screen row decoded into drawable runs of equal attributes
+     */
+    private static final class RowCache {
+        final char[] chars;
+        final int[] runStarts;
+        final int[] runLengths;
+        final int[] runAttributes;
+        final boolean[] blank;
+        int runCount;
+
+        RowCache(int columns) {
+            chars = new char[columns];
+            runStarts = new int[columns];
+            runLengths = new int[columns];
+            runAttributes = new int[columns];
+            blank = new boolean[columns];
+        }
+
+        void update(int[] cells) {
+            runCount = 0;
+            int attributeMask = ~0xFFFF;
+            for (int column = 0; column < cells.length; column++) {
+                int cell = cells[column];
+                char c = ScreenGrid.charOf(cell);
+                chars[column] = c;
+                int run = runCount - 1;
+                if (run >= 0 && (runAttributes[run] & attributeMask) == (cell & attributeMask)) {
+                    runLengths[run]++;
+                    blank[run] &= c == ' ';
+                } else {
+                    runStarts[runCount] = column;
+                    runLengths[runCount] = 1;
+                    runAttributes[runCount] = cell;
+                    blank[runCount] = c == ' ';
+                    runCount++;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.edexui.android;
+
+import static org.junit.Assert.assertTrue;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Locale;
+
+/**
+ * Throughput of AnsiParser into an 80x24 ScreenGrid with scrollback, in
+ * MB of ASCII input per second, for plain, colored and full-screen output
+ * fed in the chunk size the terminal reads from the shell. Only the best
+ * round counts, so a slow run points at the parser rather than at noise.
+ */
+public class AnsiParserBenchmarkTest {
+
+    private static final int CHUNK_SIZE = 4096;
+    private static final int INPUT_CHARS = 8 * 1024 * 1024;
+    private static final int ROUNDS = 3;
+
+    @BeforeClass
+    public static void checkEnabled() {
+        Benchmarks.assumeEnabled();
+    }
+
+    @Test
+    public void plainText() {
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; line.length() < 70; i++) {
+            line.append("word").append(i).append(' ');
+        }
+        line.append('\n');
+        report("plain text", repeat(line.toString()));
+    }
+
+    @Test
+    public void coloredText() {
+        // ls --color style: a color change around every name
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < 6; i++) {
+            line.append("\u001b[01;3").append(i % 7 + 1).append("mname").append(i).append("\u001b[0m  ");
+        }
+        line.append('\n');
+        report("colored text", repeat(line.toString()));
+    }
+
+    @Test
+    public void fullScreenRedraw() {
+        // top style: position, erase and rewrite every row of the screen
+        StringBuilder frame = new StringBuilder("\u001b[H");
+        for (int row = 1; row <= 24; row++) {
+            frame.append("\u001b[").append(row).append(";1H\u001b[K")
+                .append("\u001b[7m").append(row).append("\u001b[27m  1234 user  20   0  1.2g  88m S  3.0  1.1 app");
+        }
+        report("full-screen redraw", repeat(frame.toString()));
+    }
+
+    private static char[] repeat(String unit) {
+        char[] input = new char[INPUT_CHARS];
+        for (int i = 0; i < input.length; i++) {
+            input[i] = unit.charAt(i % unit.length());
+        }
+        return input;
+    }
+
+    private static void report(String name, char[] input) {
+        // The first round warms up the JIT and is not counted
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round <= ROUNDS; round++) {
+            ScreenGrid screen = new ScreenGrid();
+            screen.setScrollback(new ScrollbackBuffer());
+            AnsiParser parser = new AnsiParser(screen);
+            long start = System.nanoTime();
+            for (int offset = 0; offset < input.length; offset += CHUNK_SIZE) {
+                parser.feed(input, offset, Math.min(CHUNK_SIZE, input.length - offset));
+            }
+            long elapsed = System.nanoTime() - start;
+            if (round > 0) {
+                best = Math.min(best, elapsed);
+            }
+        }
+        assertTrue(best > 0);
+        double megabytes = input.length / (1024.0 * 1024.0);
+        System.out.println(String.format(Locale.US, "AnsiParser, %s: %.1f MB/s",
+            name, megabytes / (best / 1e9)));
+    }
+}
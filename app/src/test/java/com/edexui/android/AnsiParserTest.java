@@ -0,0 +1,320 @@
+package com.edexui.android;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Escape sequences applied by AnsiParser to a small ScreenGrid
+ */
+public class AnsiParserTest {
+
+    private static final String ESC = "\u001b";
+    private static final String CSI = ESC + "[";
+
+    private ScreenGrid screen;
+    private AnsiParser parser;
+
+    @Before
+    public void setUp() {
+        screen = new ScreenGrid(5, 10);
+        parser = new AnsiParser(screen);
+    }
+
+    @Test
+    public void writesTextAndNewlines() {
+        parser.feed("ab\ncd\r\nef");
+        assertEquals("ab\ncd\nef\n\n", screen.toString());
+        assertEquals(2, screen.getCursorRow());
+        assertEquals(2, screen.getCursorColumn());
+    }
+
+    @Test
+    public void wrapsAtLastColumn() {
+        parser.feed("0123456789");
+        // The cursor waits on the last column until the next char
+        assertEquals(0, screen.getCursorRow());
+        assertEquals(9, screen.getCursorColumn());
+        parser.feed("x");
+        assertEquals("0123456789", screen.getRowText(0));
+        assertEquals("x", screen.getRowText(1));
+    }
+
+    @Test
+    public void movesCursorAbsolutely() {
+        parser.feed(CSI + "3;4H" + "a");
+        assertEquals("   a", screen.getRowText(2));
+        parser.feed(CSI + "H" + "b");
+        assertEquals("b", screen.getRowText(0));
+        parser.feed(CSI + "2d" + CSI + "6G" + "c");
+        assertEquals("     c", screen.getRowText(1));
+        // Positions past the edge are clamped
+        parser.feed(CSI + "99;99f");
+        assertEquals(4, screen.getCursorRow());
+        assertEquals(9, screen.getCursorColumn());
+    }
+
+    @Test
+    public void movesCursorRelatively() {
+        parser.feed(CSI + "3;5H");
+        parser.feed(CSI + "A");
+        assertCursor(1, 4);
+        parser.feed(CSI + "2B");
+        assertCursor(3, 4);
+        parser.feed(CSI + "3C");
+        assertCursor(3, 7);
+        parser.feed(CSI + "10D");
+        assertCursor(3, 0);
+        parser.feed(CSI + "4;4H" + CSI + "2F");
+        assertCursor(1, 0);
+        parser.feed(CSI + "4;4H" + CSI + "E");
+        assertCursor(4, 0);
+    }
+
+    @Test
+    public void savesAndRestoresCursor() {
+        parser.feed(CSI + "2;3H" + ESC + "7" + CSI + "5;5H" + ESC + "8x");
+        assertEquals("  x", screen.getRowText(1));
+        parser.feed(CSI + "4;1H" + CSI + "s" + CSI + "H" + CSI + "uy");
+        assertEquals("y", screen.getRowText(3));
+    }
+
+    @Test
+    public void erasesInLine() {
+        parser.feed("abcdefgh" + CSI + "5G" + CSI + "K");
+        assertEquals("abcd", screen.getRowText(0));
+        parser.feed(CSI + "2G" + CSI + "1K");
+        assertEquals("  cd", screen.getRowText(0));
+        parser.feed(CSI + "2K");
+        assertEquals("", screen.getRowText(0));
+    }
+
+    @Test
+    public void erasesInDisplay() {
+        parser.feed("aaaa\nbbbb\ncccc");
+        parser.feed(CSI + "2;3H" + CSI + "J");
+        assertEquals("aaaa\nbb\n\n\n", screen.toString());
+        parser.feed("\nxxxx" + CSI + "2;2H" + CSI + "1J");
+        assertEquals("\n\nxxxx\n\n", screen.toString());
+        parser.feed(CSI + "2J");
+        assertEquals("\n\n\n\n", screen.toString());
+    }
+
+    @Test
+    public void editsCharacters() {
+        parser.feed("abcdef" + CSI + "3G" + CSI + "2@");
+        assertEquals("ab  cdef", screen.getRowText(0));
+        parser.feed(CSI + "3P");
+        assertEquals("abdef", screen.getRowText(0));
+        parser.feed(CSI + "1G" + CSI + "2X");
+        assertEquals("  def", screen.getRowText(0));
+    }
+
+    @Test
+    public void appliesGraphicRendition() {
+        parser.feed(CSI + "1;31;44m" + "a" + CSI + "22;39m" + "b" + CSI + "0m" + "c"
+            + CSI + "4;7;92;101m" + "d" + CSI + "m" + "e");
+        int a = screen.getCell(0, 0);
+        assertEquals('a', ScreenGrid.charOf(a));
+        assertTrue(ScreenGrid.hasFlag(a, ScreenGrid.FLAG_BOLD));
+        assertEquals(1, ScreenGrid.foregroundOf(a));
+        assertEquals(4, ScreenGrid.backgroundOf(a));
+
+        int b = screen.getCell(0, 1);
+        assertFalse(ScreenGrid.hasFlag(b, ScreenGrid.FLAG_BOLD));
+        assertEquals(ScreenGrid.COLOR_DEFAULT, ScreenGrid.foregroundOf(b));
+        assertEquals(4, ScreenGrid.backgroundOf(b));
+
+        assertDefault(screen.getCell(0, 2));
+
+        int d = screen.getCell(0, 3);
+        assertTrue(ScreenGrid.hasFlag(d, ScreenGrid.FLAG_UNDERLINE));
+        assertTrue(ScreenGrid.hasFlag(d, ScreenGrid.FLAG_INVERSE));
+        assertEquals(10, ScreenGrid.foregroundOf(d));
+        assertEquals(9, ScreenGrid.backgroundOf(d));
+
+        assertDefault(screen.getCell(0, 4));
+    }
+
+    @Test
+    public void approximatesExtendedColors() {
+        parser.feed(CSI + "38;5;196m" + "a" + CSI + "48;2;0;0;255m" + "b" + CSI + "38;5;3m" + "c");
+        assertEquals(9, ScreenGrid.foregroundOf(screen.getCell(0, 0)));
+        assertEquals(12, ScreenGrid.backgroundOf(screen.getCell(0, 1)));
+        assertEquals(3, ScreenGrid.foregroundOf(screen.getCell(0, 2)));
+    }
+
+    @Test
+    public void handlesSequencesSplitAcrossReads() {
+        String input = "ab" + CSI + "1;32m" + "cd" + CSI + "3;4H" + "e" + ESC + "]0;title" + "\u0007"
+            + CSI + "2;1H" + CSI + "K" + "fg" + ESC + "(B" + "h";
+        ScreenGrid whole = new ScreenGrid(5, 10);
+        new AnsiParser(whole).feed(input);
+
+        // Every split point, and one char per read
+        for (int split = 1; split < input.length(); split++) {
+            ScreenGrid grid = new ScreenGrid(5, 10);
+            AnsiParser split2 = new AnsiParser(grid);
+            split2.feed(input.substring(0, split));
+            split2.feed(input.substring(split));
+            assertSameScreen("split at " + split, whole, grid);
+        }
+        ScreenGrid grid = new ScreenGrid(5, 10);
+        AnsiParser single = new AnsiParser(grid);
+        char[] chars = input.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            single.feed(chars, i, 1);
+        }
+        assertSameScreen("one char per read", whole, grid);
+        assertEquals("abcd", whole.getRowText(0));
+        assertEquals("fgh", whole.getRowText(1));
+        assertEquals("   e", whole.getRowText(2));
+    }
+
+    @Test
+    public void stripsSequencesFromPlainText() {
+        StringBuilder plain = new StringBuilder();
+        parser.feed(CSI + "31mred" + CSI + "0m\t" + ESC + "]2;t" + ESC + "\\x\n", plain);
+        assertEquals("red\tx\n", plain.toString());
+    }
+
+    @Test
+    public void scrollsWithinRegion() {
+        parser.feed("1\n2\n3\n4\n5");
+        parser.feed(CSI + "2;4r");
+        // Setting the region homes the cursor
+        assertCursor(0, 0);
+        parser.feed(CSI + "4;1H" + "\n" + "x");
+        assertEquals("1\n3\n4\nx\n5", screen.toString());
+        parser.feed(CSI + "2;1H" + ESC + "M" + "y");
+        assertEquals("1\ny\n3\n4\n5", screen.toString());
+    }
+
+    @Test
+    public void scrollsRegionExplicitly() {
+        parser.feed("1\n2\n3\n4\n5" + CSI + "2;4r");
+        parser.feed(CSI + "S");
+        assertEquals("1\n3\n4\n\n5", screen.toString());
+        parser.feed(CSI + "2T");
+        assertEquals("1\n\n\n3\n5", screen.toString());
+    }
+
+    @Test
+    public void insertsAndDeletesLinesInRegion() {
+        parser.feed("1\n2\n3\n4\n5" + CSI + "2;4r");
+        parser.feed(CSI + "3;1H" + CSI + "L");
+        assertEquals("1\n2\n\n3\n5", screen.toString());
+        parser.feed(CSI + "2M");
+        assertEquals("1\n2\n\n\n5", screen.toString());
+    }
+
+    @Test
+    public void cursorMovesStayInRegion() {
+        parser.feed(CSI + "2;4r" + CSI + "3;1H" + CSI + "9B");
+        assertCursor(3, 0);
+        parser.feed(CSI + "9A");
+        assertCursor(1, 0);
+    }
+
+    @Test
+    public void invalidRegionResetsToFullScreen() {
+        parser.feed(CSI + "4;2r" + "1\n2\n3\n4\n5\n6");
+        assertEquals("2\n3\n4\n5\n6", screen.toString());
+    }
+
+    @Test
+    public void pushesScrolledLinesIntoScrollback() {
+        ScrollbackBuffer scrollback = new ScrollbackBuffer(100);
+        screen.setScrollback(scrollback);
+        parser.feed("1\n2\n3\n4\n5\n6\n7");
+        // Two lines scrolled off, plus the empty line being filled
+        assertEquals(3, scrollback.getLineCount());
+        assertEquals("1", scrollback.getLine(0));
+        assertEquals("2", scrollback.getLine(1));
+
+        // Lines scrolled out of a region below the top are lost, as in xterm
+        parser.feed(CSI + "3;5r" + CSI + "5;1H" + "\n");
+        assertEquals(3, scrollback.getLineCount());
+    }
+
+    @Test
+    public void alternateScreenKeepsMainScreen() {
+        ScrollbackBuffer scrollback = new ScrollbackBuffer(100);
+        screen.setScrollback(scrollback);
+        parser.feed("main\n$ " + CSI + "?1049h");
+        assertTrue(screen.isAlternateScreen());
+        assertEquals("\n\n\n\n", screen.toString());
+
+        parser.feed(CSI + "H" + "full\nscreen\n\n\n\n\nprogram");
+        // Only the empty line being filled
+        assertEquals(1, scrollback.getLineCount());
+
+        parser.feed(CSI + "?1049l");
+        assertFalse(screen.isAlternateScreen());
+        assertEquals("main\n$\n\n\n", screen.toString());
+        assertCursor(1, 2);
+    }
+
+    @Test
+    public void alternateScreenIsClearedOnEachEntry() {
+        parser.feed(CSI + "?47h" + "left over" + CSI + "?47l" + CSI + "?1047h");
+        assertEquals("\n\n\n\n", screen.toString());
+        parser.feed(CSI + "?1047l");
+        assertFalse(screen.isAlternateScreen());
+    }
+
+    @Test
+    public void setsPrivateModes() {
+        parser.feed(CSI + "?25l");
+        assertFalse(screen.isCursorVisible());
+        parser.feed(CSI + "?25h");
+        assertTrue(screen.isCursorVisible());
+        parser.feed(CSI + "?7l" + "0123456789xy");
+        assertEquals("012345678y", screen.getRowText(0));
+        assertEquals("", screen.getRowText(1));
+    }
+
+    @Test
+    public void resetsScreen() {
+        parser.feed(CSI + "31m" + "abc" + CSI + "?1049h" + CSI + "2;3r" + ESC + "c");
+        assertFalse(screen.isAlternateScreen());
+        assertEquals("\n\n\n\n", screen.toString());
+        assertCursor(0, 0);
+        parser.feed("x");
+        assertDefault(screen.getCell(0, 0));
+    }
+
+    @Test
+    public void ignoresUnknownSequences() {
+        parser.feed("a" + CSI + "6n" + CSI + ">c" + CSI + "?1h" + ESC + "=" + "b");
+        assertEquals("ab", screen.getRowText(0));
+    }
+
+    private void assertCursor(int row, int column) {
+        assertEquals("row", row, screen.getCursorRow());
+        assertEquals("column", column, screen.getCursorColumn());
+    }
+
+    private static void assertDefault(int cell) {
+        assertEquals(ScreenGrid.COLOR_DEFAULT, ScreenGrid.foregroundOf(cell));
+        assertEquals(ScreenGrid.COLOR_DEFAULT, ScreenGrid.backgroundOf(cell));
+        assertFalse(ScreenGrid.hasFlag(cell, ScreenGrid.FLAG_BOLD | ScreenGrid.FLAG_UNDERLINE | ScreenGrid.FLAG_INVERSE));
+    }
+
+    private static void assertSameScreen(String message, ScreenGrid expected, ScreenGrid actual) {
+        int[] expectedRow = new int[expected.getColumns()];
+        int[] actualRow = new int[actual.getColumns()];
+        for (int row = 0; row < expected.getRows(); row++) {
+            expected.copyRow(row, expectedRow);
+            actual.copyRow(row, actualRow);
+            for (int column = 0; column < expectedRow.length; column++) {
+                assertEquals(message + " at " + row + "," + column, expectedRow[column], actualRow[column]);
+            }
+        }
+        assertEquals(message, expected.getCursorRow(), actual.getCursorRow());
+        assertEquals(message, expected.getCursorColumn(), actual.getCursorColumn());
+    }
+}
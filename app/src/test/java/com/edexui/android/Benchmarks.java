@@ -0,0 +1,19 @@
+package com.edexui.android;
+
+import org.junit.Assume;
+
+/**
+ * Switch for the benchmark tests, which build large fixtures and only
+ * print timings. They are skipped unless Gradle is run with -Pbenchmarks.
+ */
+final class Benchmarks {
+
+    static final String PROPERTY = "edex.benchmarks";
+
+    private Benchmarks() {
+    }
+
+    static void assumeEnabled() {
+        Assume.assumeTrue("Benchmarks run with -Pbenchmarks", Boolean.getBoolean(PROPERTY));
+    }
+}
@@ -0,0 +1,113 @@
+package com.edexui.android;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+/**
+ * Which command lines the default built-ins run, and which they leave to
+ * the shell's command of the same name
+ */
+public class BuiltinCommandsTest {
+
+    private CommandRegistry registry;
+
+    @Before
+    public void setUp() {
+        registry = new CommandRegistry();
+        // Deciding what to run never touches the terminal
+        BuiltinCommands.registerDefaults(registry, null);
+    }
+
+    @Test
+    public void runsPlainCommands() {
+        assertBuiltin("date");
+        assertBuiltin("uname");
+        assertBuiltin("whoami");
+        assertBuiltin("pwd");
+        assertBuiltin("free");
+        assertBuiltin("echo", "hello", "world");
+        assertBuiltin("echo", "-n", "hello");
+    }
+
+    @Test
+    public void leavesFormatsAndOptionsToShell() {
+        assertShell("date", "+%s");
+        assertShell("date", "-u");
+        assertShell("uname", "-r");
+        assertShell("uname", "-a");
+        assertShell("pwd", "-P");
+        assertShell("free", "-m");
+        assertShell("echo", "-e", "a\\tb");
+        assertShell("echo", "-n", "-e", "x");
+    }
+
+    @Test
+    public void runsOnlyImplementedLsOptions() {
+        assertBuiltin("ls");
+        assertBuiltin("ls", "-la", "/sdcard");
+        assertBuiltin("ls", "-1", "-a");
+        assertShell("ls", "-R");
+        assertShell("ls", "-lt");
+        assertShell("ls", "-lS");
+        assertShell("ls", "-lh");
+        assertShell("ls", "--color=auto");
+        assertShell("ls", "--", "-a");
+    }
+
+    @Test
+    public void leavesHomeAndPreviousDirectoryToShell() {
+        assertBuiltin("cd", "/sdcard");
+        assertShell("cd");
+        assertShell("cd", "-");
+        assertShell("cd", "-P", "/sdcard");
+        assertShell("cd", "a", "b");
+    }
+
+    @Test
+    public void resolvesCdTargetsWithoutFollowingLinks() {
+        assertEquals("/sdcard", BuiltinCommands.resolveLogical("/", "/sdcard"));
+        assertEquals("/sdcard/Download", BuiltinCommands.resolveLogical("/sdcard", "Download"));
+        assertEquals("/sdcard/Music", BuiltinCommands.resolveLogical("/sdcard/Download", "../Music/"));
+        assertEquals("/sdcard", BuiltinCommands.resolveLogical("/sdcard", "./."));
+        assertEquals("/data", BuiltinCommands.resolveLogical("/sdcard", "//data//"));
+        assertEquals("/", BuiltinCommands.resolveLogical("/sdcard", "../../.."));
+    }
+
+    @Test
+    public void runsOnlyImplementedDuOptions() {
+        assertBuiltin("du");
+        assertBuiltin("du", "-d", "2", "-f", "/sdcard");
+        assertShell("du", "-sh");
+        assertShell("du", "-d");
+    }
+
+    @Test
+    public void appCommandsAcceptAnything() {
+        assertBuiltin("help");
+        assertBuiltin("cpu", "-x");
+        assertBuiltin("locate", "-u");
+        assertBuiltin("history", "git");
+    }
+
+    @Test
+    public void pipelinesLeaveUnhandledStagesToShell() {
+        assertTrue(Pipeline.parse("ls -a | wc -l").usesBuiltin(registry));
+        assertFalse(Pipeline.parse("ls -t | head").usesBuiltin(registry));
+    }
+
+    private void assertBuiltin(String... args) {
+        assertNotNull(Arrays.toString(args), registry.find(Arrays.asList(args)));
+    }
+
+    private void assertShell(String... args) {
+        assertNull(Arrays.toString(args), registry.find(Arrays.asList(args)));
+    }
+}
@@ -0,0 +1,97 @@
+package com.edexui.android;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Path completion of quoted and escaped words, checked by tokenizing the
+ * completed line the way a command would be run
+ */
+public class CompletionEngineTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private CompletionEngine engine;
+    private String directory;
+
+    @Before
+    public void setUp() throws IOException {
+        engine = new CompletionEngine("", Collections.<String>emptyList());
+        directory = folder.getRoot().getAbsolutePath();
+        folder.newFile("My Notes.txt");
+        folder.newFile("it's here");
+        folder.newFile("cost $5");
+        folder.newFolder("Photo Album");
+        folder.newFile("report-1.txt");
+        folder.newFile("report-2.txt");
+    }
+
+    @After
+    public void tearDown() {
+        engine.shutdown();
+    }
+
+    @Test
+    public void escapesCompletedNames() {
+        assertCompletes("cat My", "cat My\\ Notes.txt ", "My Notes.txt");
+        assertCompletes("cat it", "cat it\\'s\\ here ", "it's here");
+        assertCompletes("cat co", "cat cost\\ \\$5 ", "cost $5");
+    }
+
+    @Test
+    public void continuesInsideOpenQuotes() {
+        assertCompletes("cat 'My", "cat 'My Notes.txt' ", "My Notes.txt");
+        assertCompletes("cat 'it", "cat 'it'\\''s here' ", "it's here");
+        assertCompletes("cat \"co", "cat \"cost \\$5\" ", "cost $5");
+    }
+
+    @Test
+    public void splitsWordsOnUnquotedSpacesOnly() {
+        assertCompletes("cat My\\ N", "cat My\\ Notes.txt ", "My Notes.txt");
+        assertCompletes("cat 'My N", "cat 'My Notes.txt' ", "My Notes.txt");
+        assertCompletes("cat \"My\"\\ N", "cat \"My\"\\ Notes.txt ", "My Notes.txt");
+    }
+
+    @Test
+    public void completesIntoDirectories() throws IOException {
+        new File(directory, "Photo Album/beach.jpg").createNewFile();
+        CompletionEngine.Completion completion = engine.complete("ls Ph", directory);
+        assertEquals("ls Photo\\ Album/", completion.getLine());
+        assertCompletes("ls Photo\\ Album/b", "ls Photo\\ Album/beach.jpg ", "Photo Album/beach.jpg");
+    }
+
+    @Test
+    public void extendsToCommonPrefix() {
+        CompletionEngine.Completion completion = engine.complete("cat rep", directory);
+        assertEquals("cat report-", completion.getLine());
+        assertEquals(Arrays.asList("report-1.txt", "report-2.txt"), completion.getCandidates());
+    }
+
+    @Test
+    public void leavesLineAloneWithoutMatch() {
+        CompletionEngine.Completion completion = engine.complete("cat ~/nothing", directory);
+        assertEquals("cat ~/nothing", completion.getLine());
+        assertTrue(completion.getCandidates().isEmpty());
+    }
+
+    private void assertCompletes(String line, String expected, String argument) {
+        String completed = engine.complete(line, directory).getLine();
+        assertEquals(expected, completed);
+        List<String> tokens = CommandTokenizer.tokenize(completed);
+        assertEquals(2, tokens.size());
+        assertEquals(argument, tokens.get(1));
+    }
+}
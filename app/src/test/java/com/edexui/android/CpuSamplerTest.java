@@ -0,0 +1,82 @@
+package com.edexui.android;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Parsing of captured /proc/cpuinfo and /proc/stat files
+ */
+public class CpuSamplerTest {
+
+    @Test
+    public void parsesArmCpuInfo() throws IOException {
+        CpuSampler sampler = sampler("cpuinfo_arm64");
+        assertEquals(8, sampler.getCoreCount());
+        assertEquals("Qualcomm Technologies, Inc SM8150", sampler.getCpuModel());
+    }
+
+    @Test
+    public void parsesX86CpuInfo() throws IOException {
+        CpuSampler sampler = sampler("cpuinfo_x86");
+        assertEquals(2, sampler.getCoreCount());
+        assertEquals("Intel(R) Core(TM) i7-8650U CPU @ 1.90GHz", sampler.getCpuModel());
+    }
+
+    @Test
+    public void usageIsUnknownUntilSecondSample() throws IOException {
+        CpuSampler sampler = armSampler();
+        sample(sampler, "stat_1");
+        assertEquals(-1, sampler.getTotalUsage());
+        assertEquals(-1, sampler.getCoreUsage(0));
+    }
+
+    @Test
+    public void computesUsageFromDeltas() throws IOException {
+        CpuSampler sampler = armSampler();
+        sample(sampler, "stat_1");
+        sample(sampler, "stat_2");
+        // Busy time over total time, with iowait counted as idle
+        assertEquals(1300 * 100 / 3000, sampler.getTotalUsage());
+        assertEquals(80, sampler.getCoreUsage(0));
+        assertEquals(0, sampler.getCoreUsage(1));
+        assertEquals(50, sampler.getCoreUsage(2));
+        // cpu3 went offline between the samples
+        assertEquals(-1, sampler.getCoreUsage(3));
+    }
+
+    @Test
+    public void offlineCoreStartsOverWhenBack() throws IOException {
+        CpuSampler sampler = armSampler();
+        sample(sampler, "stat_1");
+        sample(sampler, "stat_2");
+        sample(sampler, "stat_1");
+        // Counters went backwards, so core 0 keeps its last usage, and core 3
+        // needs another sample now that its history was dropped
+        assertEquals(80, sampler.getCoreUsage(0));
+        assertEquals(-1, sampler.getCoreUsage(3));
+        assertEquals(-1, sampler.getCoreUsage(4));
+    }
+
+    /**
+     * Eight cores, of which the stat fixtures report the first four
+     */
+    private static CpuSampler armSampler() throws IOException {
+        return sampler("cpuinfo_arm64");
+    }
+
+    private static CpuSampler sampler(String cpuinfo) throws IOException {
+        try (InputStream in = ProcFixtures.open(cpuinfo)) {
+            return new CpuSampler(in);
+        }
+    }
+
+    private static void sample(CpuSampler sampler, String stat) throws IOException {
+        try (InputStream in = ProcFixtures.open(stat)) {
+            sampler.sample(in);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.edexui.android;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Lists every directory of a generated 50k-file tree with the java.nio.file
+ * scanner and with the File one, as the navigator would while browsing it,
+ * and reports the best of several rounds for each and their ratio
+ */
+@RunWith(RobolectricTestRunner.class)
+public class DirectoryScannerBenchmarkTest {
+
+    private static final int DIRECTORIES = 50;
+    private static final int FILES_PER_DIRECTORY = 1000;
+    private static final int FILES = DIRECTORIES * FILES_PER_DIRECTORY;
+    private static final int ROUNDS = 5;
+
+    @ClassRule
+    public static TemporaryFolder folder = new TemporaryFolder();
+
+    private static File root;
+
+    @BeforeClass
+    public static void createTree() throws IOException {
+        Benchmarks.assumeEnabled();
+        root = folder.newFolder("tree");
+        for (int i = 0; i < DIRECTORIES; i++) {
+            File directory = new File(root, "dir" + i);
+            directory.mkdir();
+            for (int j = 0; j < FILES_PER_DIRECTORY; j++) {
+                try (FileOutputStream out = new FileOutputStream(new File(directory, "file" + j + ".txt"))) {
+                    out.write(new byte[j % 100]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void benchmarkNioAgainstFile() {
+        // Warm up both paths, then keep the best of several rounds
+        assertEquals(FILES + DIRECTORIES, walk(false));
+        assertEquals(FILES + DIRECTORIES, walk(true));
+        long legacy = Long.MAX_VALUE;
+        long nio = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            walk(false);
+            legacy = Math.min(legacy, System.nanoTime() - start);
+            start = System.nanoTime();
+            walk(true);
+            nio = Math.min(nio, System.nanoTime() - start);
+        }
+        System.out.println(String.format(Locale.US,
+            "DirectoryScanner, %d files in %d directories: File %.1f ms, NIO %.1f ms (%.2fx)",
+            FILES, DIRECTORIES, legacy / 1e6, nio / 1e6, (double) legacy / nio));
+    }
+
+    /**
+     * List the root and each directory in it; returns the entries seen
+     */
+    private static int walk(boolean nio) {
+        List<FileEntry> top = scan(root, nio);
+        int entries = top.size();
+        for (FileEntry entry : top) {
+            if (entry.isDirectory()) {
+                entries += scan(new File(root, entry.getName()), nio).size();
+            }
+        }
+        return entries;
+    }
+
+    private static List<FileEntry> scan(File directory, boolean nio) {
+        return nio ? DirectoryScanner.scanNio(directory, null) : DirectoryScanner.scanLegacy(directory, null);
+    }
+}
@@ -0,0 +1,88 @@
+package com.edexui.android;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The java.nio.file and File scanners must read the same entries, and the
+ * batches streamed while scanning must add up to the whole listing
+ */
+@RunWith(RobolectricTestRunner.class)
+public class DirectoryScannerTest {
+
+    // Several batches' worth
+    private static final int FILES = DirectoryScanner.BATCH_SIZE * 3 + 10;
+    private static final int DIRECTORIES = 20;
+
+    @ClassRule
+    public static TemporaryFolder folder = new TemporaryFolder();
+
+    private static File directory;
+
+    @BeforeClass
+    public static void createListing() throws IOException {
+        directory = folder.newFolder("listing");
+        for (int i = 0; i < FILES; i++) {
+            try (FileOutputStream out = new FileOutputStream(new File(directory, "file" + i + ".txt"))) {
+                out.write(new byte[i % 100]);
+            }
+        }
+        for (int i = 0; i < DIRECTORIES; i++) {
+            new File(directory, "dir" + i).mkdir();
+        }
+    }
+
+    @Test
+    public void scannersReadTheSameEntries() {
+        assertEquals(describe(DirectoryScanner.scanLegacy(directory, null)),
+            describe(DirectoryScanner.scanNio(directory, null)));
+    }
+
+    @Test
+    public void batchesCoverEveryEntry() {
+        final int[] delivered = new int[2];
+        List<FileEntry> entries = DirectoryScanner.scanNio(directory, new DirectoryScanner.BatchListener() {
+            @Override
+            public void onBatch(List<FileEntry> batch, int totalSoFar) {
+                delivered[0] += batch.size();
+                delivered[1] = totalSoFar;
+            }
+        });
+        assertNotNull(entries);
+        assertEquals(FILES + DIRECTORIES, entries.size());
+        assertEquals(entries.size(), delivered[0]);
+        assertEquals(entries.size(), delivered[1]);
+    }
+
+    @Test
+    public void unreadableDirectoryIsNull() {
+        File missing = new File(directory, "missing");
+        assertNull(DirectoryScanner.scanLegacy(missing, null));
+        assertNull(DirectoryScanner.scanNio(missing, null));
+    }
+
+    private static List<String> describe(List<FileEntry> entries) {
+        assertNotNull(entries);
+        List<String> described = new ArrayList<>(entries.size());
+        for (FileEntry entry : entries) {
+            described.add(entry.getName() + (entry.isDirectory() ? "/" : " " + entry.getSize()));
+        }
+        Collections.sort(described);
+        return described;
+    }
+}
@@ -0,0 +1,85 @@
+package com.edexui.android;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Walks a generated tree of 100k files in 1,100 directories twice: once
+ * cold, then again against the cached result with nothing changed, which
+ * should only stat directories. Both totals are checked against what was
+ * written.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class DiskUsageAnalyzerBenchmarkTest {
+
+    private static final int TOP_DIRECTORIES = 100;
+    private static final int SUBDIRECTORIES = 10;
+    private static final int FILES_PER_DIRECTORY = 100;
+    private static final int FILES = TOP_DIRECTORIES * SUBDIRECTORIES * FILES_PER_DIRECTORY;
+    private static final int DIRECTORIES = TOP_DIRECTORIES * (SUBDIRECTORIES + 1);
+
+    @ClassRule
+    public static TemporaryFolder folder = new TemporaryFolder();
+
+    private static File root;
+    private static long expectedBytes;
+
+    @BeforeClass
+    public static void createTree() throws IOException {
+        Benchmarks.assumeEnabled();
+        root = folder.newFolder("tree");
+        for (int i = 0; i < TOP_DIRECTORIES; i++) {
+            File top = new File(root, "dir" + i);
+            for (int j = 0; j < SUBDIRECTORIES; j++) {
+                File sub = new File(top, "sub" + j);
+                sub.mkdirs();
+                for (int k = 0; k < FILES_PER_DIRECTORY; k++) {
+                    int size = k % 16;
+                    try (FileOutputStream out = new FileOutputStream(new File(sub, "file" + k))) {
+                        out.write(new byte[size]);
+                    }
+                    expectedBytes += size;
+                }
+            }
+        }
+    }
+
+    @Test
+    public void benchmarkColdAndCached() {
+        DiskUsageAnalyzer analyzer = new DiskUsageAnalyzer();
+        try {
+            long start = System.nanoTime();
+            assertTotals(analyzer.analyze(root, new DiskUsageAnalyzer.Analysis(), null));
+            long coldNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            assertTotals(analyzer.analyze(root, new DiskUsageAnalyzer.Analysis(), null));
+            long cachedNanos = System.nanoTime() - start;
+
+            System.out.println(String.format(Locale.US,
+                "DiskUsageAnalyzer, %d files in %d directories: cold %.1f ms, cached %.1f ms (%.1fx)",
+                FILES, DIRECTORIES, coldNanos / 1e6, cachedNanos / 1e6, (double) coldNanos / cachedNanos));
+        } finally {
+            analyzer.shutdown();
+        }
+    }
+
+    private static void assertTotals(DiskUsageAnalyzer.Usage usage) {
+        assertNotNull(usage);
+        assertEquals(FILES, usage.getFileCount());
+        assertEquals(DIRECTORIES, usage.getDirectoryCount());
+        assertEquals(expectedBytes, usage.getBytes());
+    }
+}
@@ -0,0 +1,93 @@
+package com.edexui.android;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Totals of a small tree, and re-analysis against the cached result when
+ * a directory changes within the same second
+ */
+@RunWith(RobolectricTestRunner.class)
+public class DiskUsageAnalyzerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private DiskUsageAnalyzer analyzer;
+    private File root;
+
+    @Before
+    public void setUp() throws IOException {
+        analyzer = new DiskUsageAnalyzer();
+        root = folder.newFolder("tree");
+        new File(root, "a/b").mkdirs();
+        new File(root, "c").mkdir();
+        write(new File(root, "top.bin"), 10);
+        write(new File(root, "a/one.bin"), 200);
+        write(new File(root, "a/b/two.bin"), 3000);
+    }
+
+    @After
+    public void tearDown() {
+        analyzer.shutdown();
+    }
+
+    @Test
+    public void addsUpTree() {
+        DiskUsageAnalyzer.Usage usage = analyze();
+        assertTotals(usage, 3, 3210);
+        assertEquals(3, usage.getDirectoryCount());
+        // Largest first
+        assertEquals(new File(root, "a").getAbsolutePath(), usage.getChildren()[0].getPath());
+        assertEquals(3200, usage.find(new File(root, "a").getAbsolutePath()).getBytes());
+    }
+
+    @Test
+    public void seesChangeWithinTheSameSecond() throws IOException {
+        File directory = new File(root, "a/b");
+        long second = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()) - 60;
+        setModified(directory, second, 0);
+        assertTotals(analyze(), 3, 3210);
+
+        // Same whole-second mtime as the cached result, later sub-second part
+        write(new File(directory, "added"), 100);
+        setModified(directory, second, 500000000L);
+        assertTotals(analyze(), 4, 3310);
+    }
+
+    private DiskUsageAnalyzer.Usage analyze() {
+        return analyzer.analyze(root, new DiskUsageAnalyzer.Analysis(), null);
+    }
+
+    private static void assertTotals(DiskUsageAnalyzer.Usage usage, int files, long bytes) {
+        assertNotNull(usage);
+        assertEquals(files, usage.getFileCount());
+        assertEquals(bytes, usage.getBytes());
+    }
+
+    private static void setModified(File file, long seconds, long nanos) throws IOException {
+        Files.setLastModifiedTime(file.toPath(),
+            FileTime.from(TimeUnit.SECONDS.toNanos(seconds) + nanos, TimeUnit.NANOSECONDS));
+    }
+
+    private static void write(File file, int size) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[size]);
+        }
+    }
+}
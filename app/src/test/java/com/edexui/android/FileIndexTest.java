@@ -0,0 +1,184 @@
+package com.edexui.android;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Crawling a tree that links back to its own parents, saving and reloading
+ * the index, incremental refreshes and both search paths
+ */
+@RunWith(RobolectricTestRunner.class)
+public class FileIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // Holds the saved index, outside the indexed tree
+    @Rule
+    public TemporaryFolder storage = new TemporaryFolder();
+
+    private File root;
+    private FileIndex index;
+
+    @Before
+    public void setUp() throws IOException {
+        root = folder.getRoot();
+        File nested = new File(root, "a/b");
+        nested.mkdirs();
+        new File(nested, "notes.txt").createNewFile();
+        // Each link would otherwise be walked again below itself, up to the depth limit
+        Files.createSymbolicLink(new File(root, "a/up").toPath(), root.toPath());
+        Files.createSymbolicLink(new File(nested, "back").toPath(), new File(root, "a").toPath());
+        index = new FileIndex(root, null);
+    }
+
+    @After
+    public void tearDown() {
+        index.shutdown();
+    }
+
+    @Test
+    public void listsSymlinksWithoutCrawlingThem() throws InterruptedException {
+        refresh(index);
+        // a, b, notes.txt and the two links
+        assertEquals(5, index.size());
+        List<FileIndex.Result> results = index.search("notes", FileIndex.DEFAULT_LIMIT);
+        assertEquals(1, results.size());
+        assertTrue(results.get(0).getPath().endsWith("/a/b/notes.txt"));
+        assertEquals(1, index.search("up", FileIndex.DEFAULT_LIMIT).size());
+    }
+
+    @Test
+    public void readsBackSavedIndex() throws Exception {
+        File indexFile = new File(storage.getRoot(), "index");
+        FileIndex saved = new FileIndex(root, indexFile);
+        try {
+            refresh(saved);
+        } finally {
+            saved.shutdown();
+        }
+        assertTrue(indexFile.isFile());
+
+        // Remove a file but keep its directory's mtime, so only the saved
+        // names can still list it
+        File nested = new File(root, "a/b");
+        FileTime modified = Files.getLastModifiedTime(nested.toPath());
+        assertTrue(new File(nested, "notes.txt").delete());
+        Files.setLastModifiedTime(nested.toPath(), modified);
+
+        FileIndex loaded = new FileIndex(root, indexFile);
+        try {
+            refresh(loaded);
+            assertEquals(5, loaded.size());
+            List<FileIndex.Result> results = loaded.search("notes", FileIndex.DEFAULT_LIMIT);
+            assertEquals(1, results.size());
+            assertTrue(results.get(0).getPath().endsWith("/a/b/notes.txt"));
+            assertTrue(loaded.search("a", FileIndex.DEFAULT_LIMIT).get(0).isDirectory());
+        } finally {
+            loaded.shutdown();
+        }
+    }
+
+    @Test
+    public void refreshPicksUpAddedFile() throws Exception {
+        refresh(index);
+        assertTrue(index.search("report", FileIndex.DEFAULT_LIMIT).isEmpty());
+
+        assertTrue(new File(root, "a/b/report.txt").createNewFile());
+        refresh(index);
+        assertEquals(6, index.size());
+        List<FileIndex.Result> results = index.search("report", FileIndex.DEFAULT_LIMIT);
+        assertEquals(1, results.size());
+        assertTrue(results.get(0).getPath().endsWith("/a/b/report.txt"));
+        assertFalse(results.get(0).isDirectory());
+        // Entries of unchanged directories are still there
+        assertEquals(1, index.search("notes", FileIndex.DEFAULT_LIMIT).size());
+    }
+
+    @Test
+    public void searchMatchesNaiveScan() throws Exception {
+        // Short names over a small alphabet, so queries of every length match often
+        Random random = new Random(42);
+        File words = new File(root, "words");
+        words.mkdir();
+        for (int i = 0; i < 300; i++) {
+            new File(words, randomText(random, 1 + random.nextInt(6)) + i).createNewFile();
+        }
+        refresh(index);
+
+        List<String> paths = new ArrayList<>();
+        collectPaths(root, paths);
+        // Queries below three chars scan the names; longer ones use trigrams
+        for (int i = 0; i < 200; i++) {
+            String query = randomText(random, 1 + random.nextInt(4));
+            List<String> expected = new ArrayList<>();
+            for (String path : paths) {
+                String name = path.substring(path.lastIndexOf('/') + 1);
+                if (name.toLowerCase(Locale.ROOT).contains(query.toLowerCase(Locale.ROOT))) {
+                    expected.add(path);
+                }
+            }
+            List<String> found = new ArrayList<>();
+            for (FileIndex.Result result : index.search(query, Integer.MAX_VALUE)) {
+                found.add(result.getPath());
+            }
+            Collections.sort(expected);
+            Collections.sort(found);
+            assertEquals(query, expected, found);
+        }
+    }
+
+    /**
+     * Start a refresh and wait for its crawl to finish
+     */
+    private static void refresh(FileIndex index) throws InterruptedException {
+        index.refresh();
+        while (index.isCrawling()) {
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Paths below directory, listing links without following them
+     */
+    private static void collectPaths(File directory, List<String> paths) {
+        File[] children = directory.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            paths.add(child.getPath());
+            if (child.isDirectory() && !Files.isSymbolicLink(child.toPath())) {
+                collectPaths(child, paths);
+            }
+        }
+    }
+
+    private static String randomText(Random random, int length) {
+        String alphabet = "abAB";
+        StringBuilder text = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return text.toString();
+    }
+}
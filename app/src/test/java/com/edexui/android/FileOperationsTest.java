@@ -0,0 +1,257 @@
+package com.edexui.android;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Copies, resumes, skips and moves of the file operation engine on real
+ * files in a temporary folder
+ */
+@RunWith(RobolectricTestRunner.class)
+public class FileOperationsTest {
+
+    private static final int SIZE = 3 * 1024 * 1024 + 17;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private FileOperations operations;
+    private File source;
+    private File target;
+
+    @Before
+    public void setUp() throws IOException {
+        operations = new FileOperations();
+        source = folder.newFolder("source");
+        target = folder.newFolder("target");
+    }
+
+    @After
+    public void tearDown() {
+        operations.shutdown();
+    }
+
+    @Test
+    public void copiesTree() throws Exception {
+        File tree = new File(source, "tree");
+        new File(tree, "sub").mkdirs();
+        byte[] big = write(new File(tree, "big.bin"), SIZE, 1);
+        byte[] small = write(new File(tree, "sub/small.txt"), 10, 2);
+
+        FileOperations.Operation operation = run(operations.copy(list(tree), target, null));
+        assertEquals(FileOperations.State.DONE, operation.getState());
+        assertArrayEquals(big, read(new File(target, "tree/big.bin")));
+        assertArrayEquals(small, read(new File(target, "tree/sub/small.txt")));
+        assertEquals(2, operation.getFilesDone());
+        assertEquals(SIZE + 10, operation.getBytesDone());
+        assertFalse(new File(target, "tree/big.bin" + FileOperations.PART_SUFFIX).exists());
+        assertEquals(new File(tree, "big.bin").lastModified(), new File(target, "tree/big.bin").lastModified());
+    }
+
+    @Test
+    public void resumesFromPartFile() throws Exception {
+        File file = new File(source, "data.bin");
+        byte[] data = write(file, SIZE, 3);
+        file.setLastModified(System.currentTimeMillis() - 60000);
+        // Bytes that differ from the source show that the part was kept, not rewritten
+        File part = new File(target, "data.bin" + FileOperations.PART_SUFFIX);
+        byte[] kept = write(part, SIZE / 2, 4);
+
+        FileOperations.Operation operation = run(operations.copy(list(file), target, null));
+        assertEquals(FileOperations.State.DONE, operation.getState());
+        byte[] copied = read(new File(target, "data.bin"));
+        assertEquals(SIZE, copied.length);
+        assertArrayEquals(kept, Arrays.copyOfRange(copied, 0, kept.length));
+        assertArrayEquals(Arrays.copyOfRange(data, kept.length, SIZE),
+            Arrays.copyOfRange(copied, kept.length, SIZE));
+        assertFalse(part.exists());
+    }
+
+    @Test
+    public void restartsPartOlderThanSource() throws Exception {
+        File file = new File(source, "data.bin");
+        File part = new File(target, "data.bin" + FileOperations.PART_SUFFIX);
+        write(part, SIZE / 2, 4);
+        part.setLastModified(System.currentTimeMillis() - 60000);
+        byte[] data = write(file, SIZE, 3);
+
+        assertEquals(FileOperations.State.DONE, run(operations.copy(list(file), target, null)).getState());
+        assertArrayEquals(data, read(new File(target, "data.bin")));
+    }
+
+    @Test
+    public void skipsFileAlreadyCopied() throws Exception {
+        File file = new File(source, "done.txt");
+        write(file, 100, 5);
+        File copy = new File(target, "done.txt");
+        // Same size and mtime as the source, as a finished copy leaves it
+        byte[] existing = write(copy, 100, 6);
+        copy.setLastModified(file.lastModified());
+
+        FileOperations.Operation operation = run(operations.copy(list(file), target, null));
+        assertEquals(FileOperations.State.DONE, operation.getState());
+        assertArrayEquals(existing, read(copy));
+        assertEquals(100, operation.getBytesDone());
+    }
+
+    @Test
+    public void refusesToOverwriteOtherFile() throws Exception {
+        File file = new File(source, "name.txt");
+        write(file, 100, 5);
+        byte[] existing = write(new File(target, "name.txt"), 50, 6);
+
+        FileOperations.Operation operation = run(operations.copy(list(file), target, null));
+        assertEquals(FileOperations.State.FAILED, operation.getState());
+        assertEquals("name.txt already exists", operation.getError());
+        assertArrayEquals(existing, read(new File(target, "name.txt")));
+    }
+
+    @Test
+    public void failsWhenSourceShrinks() throws Exception {
+        File file = new File(source, "log.txt");
+        write(file, 1000, 7);
+        File destination = new File(target, "log.txt");
+        FileOperations.Operation operation = new FileOperations.Operation(FileOperations.Type.COPY,
+            list(file), target, null);
+        try {
+            // Measured larger than what is left to read
+            operations.copyFile(operation, file, destination, 4000);
+            fail("Copied a file shorter than measured");
+        } catch (IOException e) {
+            assertEquals("log.txt shrank while being copied", e.getMessage());
+        }
+        assertFalse(destination.exists());
+        assertEquals(1000, new File(target, "log.txt" + FileOperations.PART_SUFFIX).length());
+    }
+
+    @Test
+    public void movesAcrossVolumes() throws Exception {
+        File shm = new File("/dev/shm");
+        Assume.assumeTrue(shm.isDirectory() && shm.canWrite());
+        File other = Files.createTempDirectory(shm.toPath(), "edex-move").toFile();
+        try {
+            Assume.assumeFalse(Files.getFileStore(other.toPath()).equals(Files.getFileStore(source.toPath())));
+            File tree = new File(source, "tree");
+            tree.mkdir();
+            byte[] data = write(new File(tree, "a.bin"), SIZE, 8);
+
+            // rename() fails with EXDEV; the tree is copied and then deleted
+            FileOperations.Operation operation = run(operations.move(list(tree), other, null));
+            assertEquals(FileOperations.State.DONE, operation.getState());
+            assertArrayEquals(data, read(new File(other, "tree/a.bin")));
+            assertFalse(tree.exists());
+        } finally {
+            deleteTree(other);
+        }
+    }
+
+    @Test
+    public void movesWithinVolumeByRename() throws Exception {
+        File file = new File(source, "moved.txt");
+        byte[] data = write(file, 100, 9);
+        FileOperations.Operation operation = run(operations.move(list(file), target, null));
+        assertEquals(FileOperations.State.DONE, operation.getState());
+        assertArrayEquals(data, read(new File(target, "moved.txt")));
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void cancelsQueuedOperation() throws Exception {
+        File file = new File(source, "queued.txt");
+        write(file, 100, 10);
+        // Operations on one volume run in order; hold the queue with the first
+        final CountDownLatch release = new CountDownLatch(1);
+        FileOperations.Operation blocker = operations.copy(Collections.<File>emptyList(), target,
+            new FileOperations.Listener() {
+                @Override
+                public void onProgress(FileOperations.Operation operation) {
+                }
+
+                @Override
+                public void onFinished(FileOperations.Operation operation) {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+        assertNotNull(blocker);
+        FileOperations.Operation queued = operations.copy(list(file), target, null);
+        queued.cancel();
+        release.countDown();
+
+        run(queued);
+        assertEquals(FileOperations.State.CANCELLED, queued.getState());
+        assertFalse(new File(target, "queued.txt").exists());
+    }
+
+    /**
+     * Wait for an operation to finish
+     */
+    private FileOperations.Operation run(FileOperations.Operation operation) throws InterruptedException {
+        assertNotNull(operation);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (!operation.isFinished()) {
+            assertTrue("Operation did not finish", System.nanoTime() < deadline);
+            Thread.sleep(5);
+        }
+        // The queue counts it as pending until its listener has returned
+        while (operations.isBusy()) {
+            Thread.sleep(5);
+        }
+        return operation;
+    }
+
+    private static List<File> list(File file) {
+        return Collections.singletonList(file);
+    }
+
+    private static byte[] write(File file, int size, int seed) throws IOException {
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) (i * 31 + seed);
+        }
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(data);
+        }
+        return data;
+    }
+
+    private static byte[] read(File file) throws IOException {
+        return Files.readAllBytes(file.toPath());
+    }
+
+    private static void deleteTree(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteTree(child);
+            }
+        }
+        file.delete();
+    }
+}
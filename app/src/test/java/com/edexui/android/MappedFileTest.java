@@ -0,0 +1,144 @@
+package com.edexui.android;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Byte search across the viewer's read blocks, and line numbers through
+ * the sparse line index
+ */
+public class MappedFileTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void findsMatchesAcrossBlocks() throws IOException {
+        byte[] data = new byte[3 * MappedFile.BLOCK_SIZE + 100];
+        Arrays.fill(data, (byte) '.');
+        byte[] pattern = bytes("needle");
+        // Split over the first block boundary, at the second, and at the very end
+        int[] at = {MappedFile.BLOCK_SIZE - 3, 2 * MappedFile.BLOCK_SIZE, data.length - pattern.length};
+        for (int offset : at) {
+            System.arraycopy(pattern, 0, data, offset, pattern.length);
+        }
+
+        try (MappedFile file = open(data)) {
+            long from = 0;
+            for (int offset : at) {
+                long found = file.find(pattern, false, from);
+                assertEquals(offset, found);
+                from = found + 1;
+            }
+            assertEquals(-1, file.find(pattern, false, from));
+        }
+    }
+
+    @Test
+    public void findsIgnoringCase() throws IOException {
+        try (MappedFile file = open(bytes("one Two tWO two"))) {
+            assertEquals(12, file.find(bytes("two"), false, 0));
+            assertEquals(4, file.find(bytes("two"), true, 0));
+            assertEquals(8, file.find(bytes("TWO"), true, 5));
+            assertEquals(-1, file.find(bytes("three"), true, 0));
+            assertEquals(-1, file.find(new byte[0], false, 0));
+        }
+    }
+
+    @Test
+    public void findMatchesNaiveSearch() throws IOException {
+        Random random = new Random(7);
+        for (int round = 0; round < 20; round++) {
+            // Few distinct bytes, so partial matches and repeated shifts are common
+            byte[] data = randomBytes(random, "abAB\n", random.nextInt(3 * MappedFile.BLOCK_SIZE));
+            try (MappedFile file = open(data)) {
+                for (int query = 0; query < 50; query++) {
+                    byte[] pattern = randomBytes(random, "abAB", 1 + random.nextInt(8));
+                    boolean ignoreCase = random.nextBoolean();
+                    long from = random.nextInt(data.length + 1);
+                    assertEquals(new String(pattern, StandardCharsets.US_ASCII) + " from " + from,
+                        naiveFind(data, pattern, ignoreCase, (int) from),
+                        file.find(pattern, ignoreCase, from));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void mapsLinesAndOffsets() throws IOException {
+        // Several index intervals of lines of varied length, the last one open
+        Random random = new Random(11);
+        StringBuilder text = new StringBuilder();
+        List<Integer> starts = new ArrayList<>();
+        int lines = 5 * MappedFile.INDEX_INTERVAL + 17;
+        for (int i = 0; i < lines; i++) {
+            starts.add(text.length());
+            text.append("line ").append(i);
+            for (int n = random.nextInt(40); n > 0; n--) {
+                text.append('x');
+            }
+            if (i < lines - 1) {
+                text.append('\n');
+            }
+        }
+        byte[] data = bytes(text.toString());
+
+        try (MappedFile file = open(data)) {
+            assertEquals(-1, file.lineNumberOf(10));
+            file.indexLines();
+            assertEquals(lines, file.getLineCount());
+            for (int line = 0; line < lines; line++) {
+                long start = starts.get(line);
+                long end = line + 1 < lines ? starts.get(line + 1) - 1 : data.length;
+                assertEquals(start, file.offsetOfLine(line));
+                assertEquals(line, file.lineNumberOf(start));
+                assertEquals(line, file.lineNumberOf(end));
+                assertEquals("line " + line, file.readRow(start).replace("x", ""));
+            }
+            assertEquals(-1, file.offsetOfLine(lines));
+        }
+    }
+
+    private MappedFile open(byte[] data) throws IOException {
+        File file = folder.newFile();
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(data);
+        }
+        return new MappedFile(file);
+    }
+
+    private static long naiveFind(byte[] data, byte[] pattern, boolean ignoreCase, int from) {
+        for (int i = from; i + pattern.length <= data.length; i++) {
+            String window = new String(data, i, pattern.length, StandardCharsets.US_ASCII);
+            String needle = new String(pattern, StandardCharsets.US_ASCII);
+            if (ignoreCase ? window.equalsIgnoreCase(needle) : window.equals(needle)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static byte[] randomBytes(Random random, String alphabet, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) alphabet.charAt(random.nextInt(alphabet.length()));
+        }
+        return bytes;
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,79 @@
+package com.edexui.android;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Parsing of captured /proc/meminfo files
+ */
+public class MemInfoReaderTest {
+
+    private static final long KB = 1024;
+
+    @Test
+    public void parsesMemInfo() throws IOException {
+        MemInfoReader reader = new MemInfoReader();
+        assertTrue(read(reader, "meminfo"));
+        assertEquals(7752420 * KB, reader.getTotalBytes());
+        assertEquals(220148 * KB, reader.getFreeBytes());
+        assertEquals(3021716 * KB, reader.getAvailableBytes());
+        assertEquals(2888640 * KB, reader.getCachedBytes());
+        assertEquals((7752420 - 3021716) * KB, reader.getUsedBytes());
+        assertEquals(4194300 * KB, reader.getSwapTotalBytes());
+        assertEquals((4194300 - 3196412) * KB, reader.getSwapUsedBytes());
+    }
+
+    @Test
+    public void estimatesAvailableOnOldKernels() throws IOException {
+        MemInfoReader reader = new MemInfoReader();
+        assertTrue(read(reader, "meminfo_no_available"));
+        assertEquals((102344 + 512000) * KB, reader.getAvailableBytes());
+        assertEquals(0, reader.getSwapTotalBytes());
+        assertEquals(0, reader.getSwapUsedBytes());
+    }
+
+    @Test
+    public void rereadsWithRememberedOffsets() throws IOException {
+        MemInfoReader reader = new MemInfoReader();
+        read(reader, "meminfo");
+        // Same layout, new values: the remembered line offsets still apply
+        String changed = "MemTotal:        7752420 kB\n"
+            + "MemFree:          110000 kB\n"
+            + "MemAvailable:    2000000 kB\n";
+        assertTrue(reader.read(stream(changed)));
+        assertEquals(110000 * KB, reader.getFreeBytes());
+        assertEquals(2000000 * KB, reader.getAvailableBytes());
+    }
+
+    @Test
+    public void findsFieldsThatMoved() throws IOException {
+        MemInfoReader reader = new MemInfoReader();
+        read(reader, "meminfo");
+        assertTrue(read(reader, "meminfo_no_available"));
+        assertEquals(1882140 * KB, reader.getTotalBytes());
+        assertEquals(512000 * KB, reader.getCachedBytes());
+    }
+
+    @Test
+    public void rejectsEmptyInput() throws IOException {
+        assertFalse(new MemInfoReader().read(stream("")));
+    }
+
+    private static boolean read(MemInfoReader reader, String fixture) throws IOException {
+        try (InputStream in = ProcFixtures.open(fixture)) {
+            return reader.read(in);
+        }
+    }
+
+    private static InputStream stream(String text) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.US_ASCII));
+    }
+}
@@ -0,0 +1,128 @@
+package com.edexui.android;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Pipelines mixing built-in and external commands, with redirections.
+ * External stages run real processes, so this needs a POSIX host.
+ */
+public class PipelineRunnerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ExecutorService executor;
+    private PipelineRunner runner;
+
+    @Before
+    public void setUp() {
+        CommandRegistry registry = new CommandRegistry();
+        registry.register(new TestCommands.Upper());
+        registry.register(new TestCommands.Lines());
+        executor = Executors.newCachedThreadPool();
+        runner = new PipelineRunner(registry, executor);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void pipesExternalIntoBuiltin() {
+        StringWriter out = new StringWriter();
+        assertEquals(0, run("printf 'a\\nb\\n' | upper", out));
+        assertEquals("A\nB\n", out.toString());
+    }
+
+    @Test
+    public void pipesBuiltinIntoExternal() {
+        StringWriter out = new StringWriter();
+        assertEquals(0, run("lines c a b | sort | upper", out));
+        assertEquals("A\nB\nC\n", out.toString());
+    }
+
+    @Test
+    public void returnsExitCodeOfLastStage() {
+        assertEquals(0, run("lines | cat", new StringWriter()));
+        assertEquals(1, run("echo x | lines", new StringWriter()));
+        assertEquals(0, run("lines x | cat", new StringWriter()));
+        assertEquals(3, run("lines x | sh -c 'cat >/dev/null; exit 3'", new StringWriter()));
+    }
+
+    @Test
+    public void redirectsOutputAndAppends() throws IOException {
+        File log = new File(folder.getRoot(), "log");
+        assertEquals(0, run("lines one > log", new StringWriter()));
+        assertEquals(0, run("echo two | upper >>log", new StringWriter()));
+        assertEquals("one\nTWO\n", read(log));
+    }
+
+    @Test
+    public void redirectsInput() throws IOException {
+        Files.write(new File(folder.getRoot(), "names").toPath(), "bob\nann\n".getBytes(StandardCharsets.UTF_8));
+        StringWriter out = new StringWriter();
+        assertEquals(0, run("upper < names | sort", out));
+        assertEquals("ANN\nBOB\n", out.toString());
+    }
+
+    @Test
+    public void redirectsStderrOfExternalStage() throws IOException {
+        StringWriter out = new StringWriter();
+        run("sh -c 'echo out; echo err >&2' 2>err | upper", out);
+        assertEquals("OUT\n", out.toString());
+        assertEquals("err\n", read(new File(folder.getRoot(), "err")));
+
+        run("sh -c 'echo again >&2' 2>>err | upper", new StringWriter());
+        assertEquals("err\nagain\n", read(new File(folder.getRoot(), "err")));
+    }
+
+    @Test
+    public void mergesStderrIntoPipe() {
+        StringWriter out = new StringWriter();
+        run("sh -c 'echo err >&2' 2>&1 | upper", out);
+        assertEquals("ERR\n", out.toString());
+    }
+
+    @Test
+    public void createsErrorFileForBuiltin() throws IOException {
+        StringWriter out = new StringWriter();
+        assertEquals(0, run("lines a 2>err", out));
+        assertEquals("a\n", out.toString());
+        assertTrue(new File(folder.getRoot(), "err").isFile());
+        assertEquals("", read(new File(folder.getRoot(), "err")));
+    }
+
+    @Test
+    public void reportsMissingCommand() {
+        StringWriter out = new StringWriter();
+        assertEquals(PipelineRunner.EXIT_NOT_FOUND, run("lines a | no-such-command-here", out));
+        assertTrue(out.toString().contains("not found"));
+    }
+
+    private int run(String line, StringWriter out) {
+        Pipeline pipeline = Pipeline.parse(line);
+        assertNotNull(line, pipeline);
+        return runner.run(pipeline, folder.getRoot().getAbsolutePath(), out);
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+}
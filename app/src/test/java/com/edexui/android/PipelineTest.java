@@ -0,0 +1,145 @@
+package com.edexui.android;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+/**
+ * Parsing of pipelines and redirections, and of lines left to the shell
+ */
+public class PipelineTest {
+
+    @Test
+    public void parsesPipelineStages() {
+        Pipeline pipeline = Pipeline.parse("cat notes.txt | grep -i todo | wc -l");
+        assertNotNull(pipeline);
+        assertEquals(3, pipeline.getStages().size());
+        assertEquals(Arrays.asList("cat", "notes.txt"), pipeline.getStages().get(0).getArgs());
+        assertEquals(Arrays.asList("grep", "-i", "todo"), pipeline.getStages().get(1).getArgs());
+        assertEquals(Arrays.asList("wc", "-l"), pipeline.getStages().get(2).getArgs());
+    }
+
+    @Test
+    public void parsesOutputRedirect() {
+        Pipeline.Stage stage = single("echo a >out");
+        assertEquals(Arrays.asList("echo", "a"), stage.getArgs());
+        assertEquals("out", stage.getOutputFile());
+        assertFalse(stage.isAppend());
+        assertNull(stage.getErrorFile());
+    }
+
+    @Test
+    public void parsesAppendRedirect() {
+        Pipeline.Stage stage = single("echo a >> log.txt");
+        assertEquals(Arrays.asList("echo", "a"), stage.getArgs());
+        assertEquals("log.txt", stage.getOutputFile());
+        assertTrue(stage.isAppend());
+    }
+
+    @Test
+    public void parsesInputRedirect() {
+        Pipeline.Stage stage = single("sort <names");
+        assertEquals(Arrays.asList("sort"), stage.getArgs());
+        assertEquals("names", stage.getInputFile());
+        assertEquals("names", single("sort 0< names").getInputFile());
+    }
+
+    @Test
+    public void parsesErrorRedirect() {
+        Pipeline.Stage stage = single("ls foo 2>/dev/null");
+        assertEquals(Arrays.asList("ls", "foo"), stage.getArgs());
+        assertNull(stage.getOutputFile());
+        assertEquals("/dev/null", stage.getErrorFile());
+        assertFalse(stage.isErrorAppend());
+
+        stage = single("echo a 2>>err");
+        assertEquals(Arrays.asList("echo", "a"), stage.getArgs());
+        assertEquals("err", stage.getErrorFile());
+        assertTrue(stage.isErrorAppend());
+    }
+
+    @Test
+    public void parsesExplicitStdoutDescriptor() {
+        Pipeline.Stage stage = single("echo a 1>out");
+        assertEquals(Arrays.asList("echo", "a"), stage.getArgs());
+        assertEquals("out", stage.getOutputFile());
+    }
+
+    @Test
+    public void parsesMergedStderr() {
+        Pipeline.Stage stage = single("make 2>&1 >build.log");
+        assertEquals(Arrays.asList("make"), stage.getArgs());
+        assertTrue(stage.isMergeStderr());
+        assertEquals("build.log", stage.getOutputFile());
+    }
+
+    @Test
+    public void keepsDigitsThatAreArguments() {
+        // Only a bare, unquoted number right before the operator is a descriptor
+        assertEquals(Arrays.asList("echo", "2"), single("echo 2 >out").getArgs());
+        assertEquals(Arrays.asList("echo", "a2"), single("echo a2>out").getArgs());
+        assertEquals(Arrays.asList("echo", "2"), single("echo '2'>out").getArgs());
+        assertEquals(Arrays.asList("head", "-n", "2"), Pipeline.parse("head -n 2 | cat").getStages().get(0).getArgs());
+    }
+
+    @Test
+    public void keepsQuotedOperators() {
+        Pipeline.Stage stage = single("grep 'a|b' \"x > y\" c\\<d");
+        assertEquals(Arrays.asList("grep", "a|b", "x > y", "c<d"), stage.getArgs());
+        assertNull(stage.getOutputFile());
+        assertNull(stage.getInputFile());
+    }
+
+    @Test
+    public void leavesOtherDescriptorsToShell() {
+        assertNull(Pipeline.parse("cmd 3>out"));
+        assertNull(Pipeline.parse("cmd 3<in"));
+        assertNull(Pipeline.parse("cmd 2<in"));
+        assertNull(Pipeline.parse("cmd 12>out"));
+        assertNull(Pipeline.parse("cmd 1>&2"));
+        assertNull(Pipeline.parse("cmd >&2"));
+        assertNull(Pipeline.parse("cmd 2>&1x"));
+        assertNull(Pipeline.parse("cmd 2>err 2>&1"));
+    }
+
+    @Test
+    public void leavesShellSyntaxToShell() {
+        assertNull(Pipeline.parse("echo $HOME"));
+        assertNull(Pipeline.parse("ls *.txt"));
+        assertNull(Pipeline.parse("a && b"));
+        assertNull(Pipeline.parse("a; b"));
+        assertNull(Pipeline.parse("a || b"));
+        assertNull(Pipeline.parse("echo \"$(id)\""));
+    }
+
+    @Test
+    public void rejectsMalformedLines() {
+        assertNull(Pipeline.parse("| cat"));
+        assertNull(Pipeline.parse("cat |"));
+        assertNull(Pipeline.parse("cat >"));
+        assertNull(Pipeline.parse("cat > > out"));
+        assertNull(Pipeline.parse("echo 'open"));
+        assertNull(Pipeline.parse(">out"));
+    }
+
+    @Test
+    public void detectsBuiltinStages() {
+        CommandRegistry registry = new CommandRegistry();
+        registry.register(new TestCommands.Upper());
+        assertTrue(Pipeline.parse("cat f | upper").usesBuiltin(registry));
+        assertFalse(Pipeline.parse("cat f | wc -l").usesBuiltin(registry));
+    }
+
+    private static Pipeline.Stage single(String line) {
+        Pipeline pipeline = Pipeline.parse(line);
+        assertNotNull(line, pipeline);
+        assertEquals(1, pipeline.getStages().size());
+        return pipeline.getStages().get(0);
+    }
+}
@@ -0,0 +1,104 @@
+package com.edexui.android;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Cursor parsing of /proc contents loaded through read(InputStream, int)
+ */
+public class ProcFileReaderTest {
+
+    @Test
+    public void growsPastInitialCapacity() throws IOException {
+        ProcFileReader reader = new ProcFileReader(16);
+        try (InputStream in = ProcFixtures.open("meminfo")) {
+            assertTrue(reader.read(in, 1024 * 1024));
+        }
+        assertTrue(reader.length() > 16);
+        assertEquals('\n', reader.byteAt(reader.length() - 1));
+    }
+
+    @Test
+    public void stopsAtMaxBytes() throws IOException {
+        ProcFileReader reader = new ProcFileReader(16);
+        try (InputStream in = ProcFixtures.open("stat_1")) {
+            reader.read(in, 100);
+        }
+        assertEquals(100, reader.length());
+    }
+
+    @Test
+    public void reusesBufferAcrossReads() throws IOException {
+        ProcFileReader reader = new ProcFileReader();
+        reader.read(stream("first line is long\n"), 1024);
+        reader.nextLine();
+        reader.read(stream("42\n"), 1024);
+        assertEquals(0, reader.getPosition());
+        assertEquals(3, reader.length());
+        assertEquals(42, reader.nextLong(-1));
+        assertFalse(reader.nextLine());
+    }
+
+    @Test
+    public void parsesNumbers() throws IOException {
+        ProcFileReader reader = new ProcFileReader();
+        reader.read(stream("  17\t-3 x 9\n"), 1024);
+        assertEquals(17, reader.nextLong(-1));
+        assertEquals(-3, reader.nextLong(-1));
+        assertEquals(-1, reader.nextLong(-1));
+        reader.skipToken();
+        assertEquals(9, reader.nextInt(-1));
+        assertFalse(reader.nextLine());
+    }
+
+    @Test
+    public void seeksKeysAtLineStartsOnly() throws IOException {
+        ProcFileReader reader = new ProcFileReader();
+        try (InputStream in = ProcFixtures.open("meminfo")) {
+            reader.read(in, 1024 * 1024);
+        }
+        // "Cached" must not match "SwapCached" or "SReclaimable"-style suffixes
+        int line = reader.seekKey(ProcFileReader.key("Cached"));
+        assertTrue(line >= 0);
+        assertEquals(2888640, reader.nextLong(-1));
+        assertTrue(reader.seekKeyAt(line, ProcFileReader.key("Cached")));
+        assertFalse(reader.seekKeyAt(line, ProcFileReader.key("Cach")));
+
+        reader.setPosition(0);
+        assertEquals(-1, reader.seekKey(ProcFileReader.key("Missing")));
+        assertEquals(0, reader.getPosition());
+    }
+
+    @Test
+    public void readsKeysWithSpaces() throws IOException {
+        ProcFileReader reader = new ProcFileReader();
+        try (InputStream in = ProcFixtures.open("cpuinfo_x86")) {
+            reader.read(in, 1024 * 1024);
+        }
+        assertTrue(reader.seekKey(ProcFileReader.key("model name")) >= 0);
+        assertEquals("Intel(R) Core(TM) i7-8650U CPU @ 1.90GHz", reader.restOfLine());
+    }
+
+    @Test
+    public void comparesRanges() throws IOException {
+        ProcFileReader reader = new ProcFileReader();
+        reader.read(stream("1 (sh) S"), 1024);
+        assertTrue(reader.rangeEquals(3, 5, "sh"));
+        assertFalse(reader.rangeEquals(3, 5, "su"));
+        assertFalse(reader.rangeEquals(3, 5, null));
+        assertEquals(5, reader.lastIndexOf((byte) ')'));
+        assertEquals("sh", reader.substring(3, 5));
+    }
+
+    private static InputStream stream(String text) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.US_ASCII));
+    }
+}
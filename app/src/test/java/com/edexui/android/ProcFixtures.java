@@ -0,0 +1,20 @@
+package com.edexui.android;
+
+import java.io.InputStream;
+
+/**
+ * Captured /proc files kept under src/test/resources/proc
+ */
+final class ProcFixtures {
+
+    private ProcFixtures() {
+    }
+
+    static InputStream open(String name) {
+        InputStream in = ProcFixtures.class.getResourceAsStream("/proc/" + name);
+        if (in == null) {
+            throw new IllegalArgumentException("Missing fixture " + name);
+        }
+        return in;
+    }
+}
@@ -0,0 +1,100 @@
+package com.edexui.android;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Parsing of captured /proc/[pid]/stat and status files
+ */
+public class ProcessTableTest {
+
+    private final ProcFileReader reader = new ProcFileReader(64);
+
+    @Test
+    public void parsesStatWithSpacesAndParensInName() throws IOException {
+        ProcessEntry entry = entry(1234);
+        load("pid_stat");
+        assertTrue(ProcessTable.parseStat(reader, entry));
+        assertEquals("Web Content (1)", entry.getName());
+        assertEquals('S', entry.getState());
+        assertEquals(567, entry.getParentPid());
+        assertEquals(17, entry.getThreadCount());
+        assertEquals(2147483648L, entry.getVirtualBytes());
+        assertEquals(150 + 75, entry.cpuTicks);
+    }
+
+    @Test
+    public void parsesStatWhoseNameLooksLikeFields() throws IOException {
+        ProcessEntry entry = entry(4321);
+        load("pid_stat_tricky");
+        assertTrue(ProcessTable.parseStat(reader, entry));
+        // The name runs to the last ')' in the line
+        assertEquals("x) R 9 (y", entry.getName());
+        assertEquals('S', entry.getState());
+        assertEquals(31, entry.getParentPid());
+        assertEquals(2, entry.getThreadCount());
+        assertEquals(1048576, entry.getVirtualBytes());
+        assertEquals(7 + 3, entry.cpuTicks);
+    }
+
+    @Test
+    public void keepsNameWhenUnchanged() throws IOException {
+        ProcessEntry entry = entry(1234);
+        load("pid_stat");
+        ProcessTable.parseStat(reader, entry);
+        String name = entry.getName();
+        load("pid_stat");
+        ProcessTable.parseStat(reader, entry);
+        assertTrue(name == entry.getName());
+    }
+
+    @Test
+    public void rejectsMalformedStat() throws IOException {
+        reader.read(stream("1234 sh S 1"), 1024);
+        assertFalse(ProcessTable.parseStat(reader, entry(1234)));
+        reader.read(stream("1234 (sh S 1"), 1024);
+        assertFalse(ProcessTable.parseStat(reader, entry(1234)));
+    }
+
+    @Test
+    public void parsesStatus() throws IOException {
+        ProcessEntry entry = entry(1234);
+        load("pid_status");
+        ProcessTable.parseStatus(reader, entry);
+        assertEquals(10123, entry.getUid());
+        assertEquals(36000L * 1024, entry.getRssBytes());
+    }
+
+    @Test
+    public void kernelThreadHasNoResidentMemory() throws IOException {
+        ProcessEntry entry = entry(2);
+        reader.read(stream("Name:\tkthreadd\nUid:\t0\t0\t0\t0\n"), 1024);
+        ProcessTable.parseStatus(reader, entry);
+        assertEquals(0, entry.getUid());
+        assertEquals(0, entry.getRssBytes());
+    }
+
+    private static ProcessEntry entry(int pid) {
+        ProcessEntry entry = new ProcessEntry();
+        entry.reset(pid);
+        return entry;
+    }
+
+    private void load(String fixture) throws IOException {
+        try (InputStream in = ProcFixtures.open(fixture)) {
+            reader.read(in, 4096);
+        }
+    }
+
+    private static InputStream stream(String text) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.US_ASCII));
+    }
+}
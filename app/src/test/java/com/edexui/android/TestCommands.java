@@ -0,0 +1,74 @@
+package com.edexui.android;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * Small built-ins for exercising the pipeline runner
+ */
+final class TestCommands {
+
+    private TestCommands() {
+    }
+
+    /**
+     * Copies its input upper-cased
+     */
+    static final class Upper implements BuiltinCommand {
+        @Override
+        public String getName() {
+            return "upper";
+        }
+
+        @Override
+        public String getDescription() {
+            return "Upper-case the input";
+        }
+
+        @Override
+        public boolean accepts(List<String> args) {
+            return true;
+        }
+
+        @Override
+        public int run(List<String> args, Reader in, Writer out) throws IOException {
+            char[] buffer = new char[256];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                out.write(new String(buffer, 0, read).toUpperCase());
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * Prints its arguments one per line
+     */
+    static final class Lines implements BuiltinCommand {
+        @Override
+        public String getName() {
+            return "lines";
+        }
+
+        @Override
+        public String getDescription() {
+            return "Print each argument on its own line";
+        }
+
+        @Override
+        public boolean accepts(List<String> args) {
+            // Options go to a command of the same name, as built-ins do
+            return args.size() < 2 || !args.get(1).startsWith("-");
+        }
+
+        @Override
+        public int run(List<String> args, Reader in, Writer out) throws IOException {
+            for (String arg : args.subList(1, args.size())) {
+                out.write(arg + "\n");
+            }
+            return args.size() > 1 ? 0 : 1;
+        }
+    }
+}